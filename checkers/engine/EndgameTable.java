@@ -0,0 +1,500 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.engine;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Hashtable;
+
+import checkers.game.BitBoard;
+import checkers.game.Player;
+
+/**
+ * The EndgameTable class.
+ * An endgame tablebase: the exact result of every position of up to a few pieces,
+ * with the number of plies to the end of the game under best play (the winner
+ * hastens its win and the loser delays its loss). Positions that are neither won
+ * nor lost are draws, by repetition.
+ *
+ * Only positions with white to move are stored: a position with black to move is
+ * looked up as the board turned around (square i becomes square squares-1-i) with the
+ * colors swapped, which has white to move.
+ * Positions are grouped by their material: the numbers of white peons, white kings,
+ * black peons and black kings. Each material has its own table, indexed by the
+ * combinations of squares of the white peons, the black peons (over the squares
+ * peons may stand on), the white kings and the black kings (over the squares left
+ * free by the peons, then by the white kings). Indices of impossible placements,
+ * where peons of both colors share squares, are not used.
+ *
+ * A table file (data/endgame*.dat, built by checkers.tools.EndgameBuilder) holds a
+ * header, the offset of each material table, and a byte per position: 0 for a draw,
+ * otherwise the number of plies to the end plus one. The player to move wins if that
+ * number of plies is odd, and loses if it is even. The file is memory mapped.
+ */
+public class EndgameTable
+{
+	/**
+	 * Path prefix of the table files.
+	 */
+	public static final String TABLE_FILE_PREFIX = "data/endgame";
+
+	/**
+	 * Extension of the table files.
+	 */
+	public static final String TABLE_FILE_EXTENSION = ".dat";
+
+	/**
+	 * Probe result of a position that is not in the tables.
+	 */
+	public static final int NOT_FOUND = -1;
+
+	/**
+	 * Probe result of a drawn position.
+	 */
+	public static final int DRAW = 0;
+
+	/**
+	 * Most plies to the end that can be stored.
+	 */
+	public static final int MAX_DISTANCE = 254;
+
+	/**
+	 * File header tag, "DKTB".
+	 */
+	private static final int MAGIC = 0x444b5442;
+
+	/**
+	 * Default tables, by board dimension, read on first use.
+	 */
+	private static Hashtable _tables = new Hashtable();
+
+	/**
+	 * Binomial coefficients, BINOMIAL[n][k] = n! / k!(n-k)!.
+	 */
+	private static final int[][] BINOMIAL = new int[65][65];
+
+	static
+	{
+		for (int n = 0; n <= 64; n++)
+		{
+			BINOMIAL[n][0] = 1;
+			for (int k = 1; k <= n; k++)
+				BINOMIAL[n][k] = (int) Math.min(Integer.MAX_VALUE, (long) BINOMIAL[n - 1][k - 1] + BINOMIAL[n - 1][k]);
+		}
+	}
+
+	/**
+	 * Board dimension.
+	 */
+	private int _size;
+
+	/**
+	 * Number of playable squares.
+	 */
+	private int _squares;
+
+	/**
+	 * Most pieces of a position in the tables.
+	 */
+	private int _maxPieces;
+
+	/**
+	 * Squares peons may stand on, by Player color: all but the promotion row.
+	 */
+	private long[] _peonSquares;
+
+	/**
+	 * Number of squares peons may stand on.
+	 */
+	private int _peonSquaresCount;
+
+	/**
+	 * Offsets of the material tables in the mapped data, -1 for missing tables.
+	 */
+	private long[] _offsets;
+
+	/**
+	 * The mapped tables, or null for a table being built.
+	 */
+	private MappedByteBuffer _buffer;
+
+	/**
+	 * Constructs an empty table of a board size, for building.
+	 * @param size board dimension
+	 * @param maxPieces most pieces of a position
+	 */
+	public EndgameTable(int size, int maxPieces)
+	{
+		_size = size;
+		_squares = size * size / 2;
+		_maxPieces = maxPieces;
+		BitBoard board = new BitBoard(size);
+		_peonSquares = new long[3];
+		for (int square = 0; square < _squares; square++)
+		{
+			if (!board.isPromotionSquare(Player.PLAYER_WHITE, square))
+				_peonSquares[Player.PLAYER_WHITE] |= 1L << square;
+			if (!board.isPromotionSquare(Player.PLAYER_BLACK, square))
+				_peonSquares[Player.PLAYER_BLACK] |= 1L << square;
+		}
+		_peonSquaresCount = Long.bitCount(_peonSquares[Player.PLAYER_WHITE]);
+		_offsets = new long[getNumberOfMaterials()];
+		Arrays.fill(_offsets, -1);
+	}
+
+	/**
+	 * Reads a table file.
+	 * @param fileName table file name
+	 * @return the table
+	 * @throws IOException if the file cannot be read or is not a table file
+	 */
+	public static EndgameTable load(String fileName) throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		try
+		{
+			if (file.readInt() != MAGIC)
+				throw new IOException(fileName + " is not an endgame table file");
+			int size = file.readInt();
+			EndgameTable table = new EndgameTable(size, file.readInt());
+			for (int i = 0; i < table._offsets.length; i++)
+				table._offsets[i] = file.readLong();
+			long start = file.getFilePointer();
+			FileChannel channel = file.getChannel();
+			table._buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, channel.size() - start);
+			return table;
+		}
+		finally
+		{
+			file.close(); // the mapping stays valid
+		}
+	}
+
+	/**
+	 * Returns the default table of a board size, read on first use.
+	 * @param size board dimension
+	 * @return the table, or null if its file cannot be read
+	 */
+	public static synchronized EndgameTable getTable(int size)
+	{
+		Integer key = new Integer(size);
+		Object table = _tables.get(key);
+		if (table == null)
+		{
+			try
+			{
+				if (new File(getFileName(size)).exists())
+					table = load(getFileName(size));
+			}
+			catch (IOException ioe)
+			{
+				System.err.println("Error: unable to read endgame table " + getFileName(size) + ": " + ioe.getMessage());
+			}
+			_tables.put(key, (table == null) ? (Object) Boolean.FALSE : table);
+		}
+		return (table instanceof EndgameTable) ? (EndgameTable) table : null;
+	}
+
+	/**
+	 * Returns the table file name for a board size.
+	 * @param size board dimension
+	 * @return table file name
+	 */
+	public static String getFileName(int size)
+	{
+		return TABLE_FILE_PREFIX + (size * size / 2) + TABLE_FILE_EXTENSION;
+	}
+
+	/**
+	 * Writes a table file.
+	 * @param fileName table file name
+	 * @param tables the tables of the materials, null for missing ones
+	 * @throws IOException if the file cannot be written
+	 */
+	public void write(String fileName, byte[][] tables) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(_size);
+			out.writeInt(_maxPieces);
+			long offset = 0;
+			for (int i = 0; i < tables.length; i++)
+			{
+				out.writeLong((tables[i] == null) ? -1 : offset);
+				if (tables[i] != null)
+					offset += tables[i].length;
+			}
+			for (int i = 0; i < tables.length; i++)
+				if (tables[i] != null)
+					out.write(tables[i]);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * @return board dimension
+	 */
+	public int getSize()
+	{
+		return _size;
+	}
+
+	/**
+	 * @return most pieces of a position in the tables
+	 */
+	public int getMaxPieces()
+	{
+		return _maxPieces;
+	}
+
+	/**
+	 * @return number of materials, the bound of the material indices
+	 */
+	public int getNumberOfMaterials()
+	{
+		int n = _maxPieces + 1;
+		return n * n * n * n;
+	}
+
+	/**
+	 * Returns the index of a material.
+	 * @return material index, or -1 if a player has no pieces or there are too many pieces
+	 */
+	public int getMaterial(int whitePeons, int whiteKings, int blackPeons, int blackKings)
+	{
+		if (whitePeons + whiteKings == 0 || blackPeons + blackKings == 0
+			|| whitePeons + whiteKings + blackPeons + blackKings > _maxPieces)
+			return -1;
+		int n = _maxPieces + 1;
+		return ((whitePeons * n + whiteKings) * n + blackPeons) * n + blackKings;
+	}
+
+	/**
+	 * Returns the numbers of pieces of a material.
+	 * @param material material index
+	 * @return white peons, white kings, black peons and black kings
+	 */
+	public int[] getPieces(int material)
+	{
+		int n = _maxPieces + 1;
+		return new int[] {material / (n * n * n), material / (n * n) % n, material / n % n, material % n};
+	}
+
+	/**
+	 * Returns the material of the same position with the colors swapped.
+	 * @param material material index
+	 * @return swapped material index
+	 */
+	public int getSwappedMaterial(int material)
+	{
+		int[] pieces = getPieces(material);
+		return getMaterial(pieces[2], pieces[3], pieces[0], pieces[1]);
+	}
+
+	/**
+	 * Returns the number of indices of a material table, impossible placements included.
+	 * @param material material index
+	 * @return table size
+	 */
+	public int getTableSize(int material)
+	{
+		int[] pieces = getPieces(material);
+		long size = (long) BINOMIAL[_peonSquaresCount][pieces[0]] * BINOMIAL[_peonSquaresCount][pieces[2]];
+		int free = _squares - pieces[0] - pieces[2];
+		size *= (long) BINOMIAL[free][pieces[1]] * BINOMIAL[free - pieces[1]][pieces[3]];
+		if (size > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Table too large");
+		return (int) size;
+	}
+
+	/**
+	 * Returns the material of a position with white to move.
+	 * @return material index, or -1 if the position is not covered
+	 */
+	public int getMaterial(long whitePeons, long whiteKings, long blackPeons, long blackKings)
+	{
+		return getMaterial(Long.bitCount(whitePeons), Long.bitCount(whiteKings),
+			Long.bitCount(blackPeons), Long.bitCount(blackKings));
+	}
+
+	/**
+	 * Returns the index of a position with white to move in its material table.
+	 * @param material material index of the position
+	 * @return position index
+	 */
+	public int getIndex(int material, long whitePeons, long whiteKings, long blackPeons, long blackKings)
+	{
+		int[] pieces = getPieces(material);
+		int free = _squares - pieces[0] - pieces[2];
+		long peons = whitePeons | blackPeons;
+		long index = rank(whitePeons, _peonSquares[Player.PLAYER_WHITE]);
+		index = index * BINOMIAL[_peonSquaresCount][pieces[2]] + rank(blackPeons, _peonSquares[Player.PLAYER_BLACK]);
+		index = index * BINOMIAL[free][pieces[1]] + rank(whiteKings, ~peons);
+		index = index * BINOMIAL[free - pieces[1]][pieces[3]] + rank(blackKings, ~(peons | whiteKings));
+		return (int) index;
+	}
+
+	/**
+	 * Returns the rank of a set of squares among the combinations of squares of a domain.
+	 * @param set the set, within the domain
+	 * @param domain the domain squares
+	 * @return colexicographic rank
+	 */
+	private int rank(long set, long domain)
+	{
+		int rank = 0;
+		int k = 0;
+		int position = 0;
+		for (int square = 0; square < _squares && set != 0; square++)
+		{
+			long bit = 1L << square;
+			if ((domain & bit) == 0)
+				continue;
+			if ((set & bit) != 0)
+			{
+				rank += BINOMIAL[position][++k];
+				set &= ~bit;
+			}
+			position++;
+		}
+		return rank;
+	}
+
+	/**
+	 * Returns the set of squares of a rank among the combinations of squares of a domain.
+	 * @param rank colexicographic rank
+	 * @param k number of squares in the set
+	 * @param domain the domain squares
+	 * @return the set
+	 */
+	private long unrank(int rank, int k, long domain)
+	{
+		int[] squares = new int[_squares];
+		int n = 0;
+		for (int square = 0; square < _squares; square++)
+			if ((domain & (1L << square)) != 0)
+				squares[n++] = square;
+		long set = 0;
+		for (; k > 0; k--)
+		{
+			int position = k - 1;
+			while (position + 1 < n && BINOMIAL[position + 1][k] <= rank)
+				position++;
+			rank -= BINOMIAL[position][k];
+			set |= 1L << squares[position];
+			n = position;
+		}
+		return set;
+	}
+
+	/**
+	 * Returns the position of an index in a material table, with white to move.
+	 * @param material material index
+	 * @param index position index
+	 * @return white peons, white kings, black peons and black kings, or null for an impossible placement
+	 */
+	public long[] getPosition(int material, int index)
+	{
+		int[] pieces = getPieces(material);
+		int free = _squares - pieces[0] - pieces[2];
+		int blackKingsCount = BINOMIAL[free - pieces[1]][pieces[3]];
+		int whiteKingsCount = BINOMIAL[free][pieces[1]];
+		int blackPeonsCount = BINOMIAL[_peonSquaresCount][pieces[2]];
+		int blackKingsRank = index % blackKingsCount;
+		index /= blackKingsCount;
+		int whiteKingsRank = index % whiteKingsCount;
+		index /= whiteKingsCount;
+		int blackPeonsRank = index % blackPeonsCount;
+		int whitePeonsRank = index / blackPeonsCount;
+		long whitePeons = unrank(whitePeonsRank, pieces[0], _peonSquares[Player.PLAYER_WHITE]);
+		long blackPeons = unrank(blackPeonsRank, pieces[2], _peonSquares[Player.PLAYER_BLACK]);
+		if ((whitePeons & blackPeons) != 0)
+			return null;
+		long peons = whitePeons | blackPeons;
+		long whiteKings = unrank(whiteKingsRank, pieces[1], ~peons);
+		long blackKings = unrank(blackKingsRank, pieces[3], ~(peons | whiteKings));
+		return new long[] {whitePeons, whiteKings, blackPeons, blackKings};
+	}
+
+	/**
+	 * Turns a set of squares around the board center.
+	 * @param set the set
+	 * @return the turned set: square i becomes square squares-1-i
+	 */
+	public long mirror(long set)
+	{
+		return Long.reverse(set) >>> (64 - _squares);
+	}
+
+	/**
+	 * Looks up a position.
+	 * @param board the position
+	 * @param color color of the player to move
+	 * @return NOT_FOUND if the position is not in the tables, DRAW, or the number of plies
+	 *         to the end of the game plus one
+	 */
+	public int probe(BitBoard board, byte color)
+	{
+		long whitePeons, whiteKings, blackPeons, blackKings;
+		if (color == Player.PLAYER_WHITE)
+		{
+			whitePeons = board.getWhitePeons();
+			whiteKings = board.getWhiteKings();
+			blackPeons = board.getBlackPeons();
+			blackKings = board.getBlackKings();
+		}
+		else
+		{
+			whitePeons = mirror(board.getBlackPeons());
+			whiteKings = mirror(board.getBlackKings());
+			blackPeons = mirror(board.getWhitePeons());
+			blackKings = mirror(board.getWhiteKings());
+		}
+		int material = getMaterial(whitePeons, whiteKings, blackPeons, blackKings);
+		if (material < 0 || _offsets[material] < 0)
+			return NOT_FOUND;
+		return _buffer.get((int) (_offsets[material] + getIndex(material, whitePeons, whiteKings, blackPeons, blackKings))) & 0xff;
+	}
+
+	/**
+	 * @param entry a probe result
+	 * @return true iff the position is won or lost
+	 */
+	public static boolean isDecided(int entry)
+	{
+		return entry > DRAW;
+	}
+
+	/**
+	 * @param entry a probe result of a won or lost position
+	 * @return true iff the player to move wins
+	 */
+	public static boolean isWin(int entry)
+	{
+		return (entry - 1) % 2 == 1;
+	}
+
+	/**
+	 * @param entry a probe result of a won or lost position
+	 * @return number of plies to the end of the game
+	 */
+	public static int getDistance(int entry)
+	{
+		return entry - 1;
+	}
+}
@@ -0,0 +1,877 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.engine;
+
+import checkers.game.BitBoard;
+import checkers.game.MoveGenerator;
+import checkers.game.MoveList;
+import checkers.game.Player;
+
+/**
+ * The Evaluator class.
+ * Evaluates a board as a weighted sum of 20 parameters, with a different set of
+ * weights for each game stage. This is a port of ParamBoard::eval of the native code,
+ * and gives the same values for the same board and weights.
+ * All parameters are evaluated from the point of view of the evaluating player
+ * (the "active" side), against its opponent (the "passive" side).
+ * An Evaluator keeps scratch data, so each thread should use its own instance.
+ */
+public class Evaluator
+{
+	/**
+	 * Parameters indices.
+	 */
+	public static final int PIECES_ADVANTAGE = 0;
+	public static final int OPPONENT_LIBERTY = 1;
+	public static final int KINGS = 2;
+	public static final int CENTER_CONTROL = 3;
+	public static final int KINGS_CENTER_CONTROL = 4;
+	public static final int OPPONENT_CENTER_CONTROL = 5;
+	public static final int ADVANCEMENT = 6;
+	public static final int OPPONENT_KINGS = 7;
+	public static final int OPPONENT_GUARD = 8;
+	public static final int CRAMP = 9;
+	public static final int DOUBLE_DIAGONAL_FILE = 10;
+	public static final int DIAGONAL_MOMENT_VALUE = 11;
+	public static final int DYKE = 12;
+	public static final int EXPOSURE = 13;
+	public static final int GAP = 14;
+	public static final int HOLE = 15;
+	public static final int NODE = 16;
+	public static final int POLE = 17;
+	public static final int BACK_ROW_CONTROL = 18;
+	public static final int OPPONENT_HITTING = 19;
+
+	/**
+	 * Parameters names, as shown by the training tools.
+	 */
+	public static final String[] PARAMETERS_NAMES = {
+		"Pieces Advantage", "Opponent Liberty", "Kings", "Center Control",
+		"Kings Center Control", "Opponent Center Control", "Advance", "Opponent Kings",
+		"Opponent Guard", "Cramp", "Double Diagonal File", "Diagonal Moment Value",
+		"Dyke", "Exposure", "Gap", "Hole", "Node", "Pole", "Back Row Control",
+		"Opponent Hitting"};
+
+	/**
+	 * Weight threshold, below it a parameter is considered insignificant and is not calculated.
+	 */
+	public static final int WEIGHT_THRESHOLD = 5;
+
+	/**
+	 * Cost of calculating each parameter: 0 for bit counts, 1 for scans of the board
+	 * squares, 2 for the move generation of the opponent liberty.
+	 * Parameters of cost 0 are always calculated by a lazy evaluation.
+	 */
+	private static final int[] COSTS = {0, 2, 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 1, 1, 1, 1, 0, 0};
+
+	/**
+	 * Board dimension.
+	 */
+	private int _size;
+
+	/**
+	 * Number of playable squares per row.
+	 */
+	private int _half;
+
+	/**
+	 * Number of playable squares.
+	 */
+	protected int _squares;
+
+	/**
+	 * Weights of the parameters.
+	 */
+	private Weights _weights;
+
+	/**
+	 * Evaluate all parameters, regardless of their weights (used for learning).
+	 */
+	private boolean _learning;
+
+	// special squares used by parameters, see GameBoard.cpp
+	protected int[] _centerField;
+	private int[] _otherNearCrampWhite, _otherNearCrampBlack;
+	private int[] _nearCrampWhite, _nearCrampBlack;
+	protected int[] _triangleOfOreoWhite, _triangleOfOreoBlack;
+	private int[] _backRowBridgeWhiteSquares, _backRowBridgeBlackSquares;
+	private int _whiteCrampingSquare, _blackCrampingSquare;
+
+	/**
+	 * Rows 3,4 and rows 5,6 masks used by the advancement parameter.
+	 */
+	protected long _rows3To4, _rows5To6;
+
+	/**
+	 * Scratch data used to count opponent moves.
+	 */
+	private MoveGenerator _generator;
+	private MoveList _moves;
+
+	// pieces of the evaluated board, as seen by the evaluating player
+	private long _activeMen, _activeKings, _passiveMen, _passiveKings;
+	private long _actives, _passives, _pieces;
+
+	/**
+	 * Lazily evaluated parameters of each stage, by cost then weight, and the weights
+	 * version they were sorted for.
+	 */
+	private int[][] _order;
+	private int[] _orderVersion;
+	private Weights _orderWeights;
+
+	/**
+	 * Bounds of the unweighted parameters of the lazily evaluated board.
+	 */
+	private int[] _minimum, _maximum;
+
+	/**
+	 * Lazy evaluations made, and those cut short.
+	 */
+	private long _lazyEvaluations;
+	private long _lazyCutoffs;
+
+	/**
+	 * Constructs an evaluator for a board size.
+	 * @param size board dimension (6, 8 or 10)
+	 * @param weights weights of the parameters
+	 */
+	public Evaluator(int size, Weights weights)
+	{
+		_size = size;
+		_half = size / 2;
+		_squares = size * _half;
+		_weights = weights;
+		_generator = new MoveGenerator();
+		_moves = new MoveList();
+		_order = new int[Weights.STAGES][];
+		_orderVersion = new int[Weights.STAGES];
+		_minimum = new int[Weights.PARAMS_NUM];
+		_maximum = new int[Weights.PARAMS_NUM];
+		switch (_squares)
+		{
+			case 18:
+				_centerField = new int[]{4,5,6,7,10,11,12,13};
+				_otherNearCrampWhite = new int[]{9,10,12,13};
+				_otherNearCrampBlack = new int[]{4,5,7,9};
+				_nearCrampWhite = new int[]{10,13};
+				_nearCrampBlack = new int[]{4,7};
+				_triangleOfOreoWhite = new int[]{13,16,17};
+				_triangleOfOreoBlack = new int[]{0,1,4};
+				_backRowBridgeWhiteSquares = new int[]{0,1};
+				_backRowBridgeBlackSquares = new int[]{16,17};
+				_whiteCrampingSquare = 6;
+				_blackCrampingSquare = 11;
+				break;
+			case 50:
+				_centerField = new int[]{17,18,21,22,28,28,32,33};
+				_otherNearCrampWhite = new int[]{20,25,26,31};
+				_otherNearCrampBlack = new int[]{19,23,24,29};
+				_nearCrampWhite = new int[]{33,39};
+				_nearCrampBlack = new int[]{10,16};
+				_triangleOfOreoWhite = new int[]{42,46,48};
+				_triangleOfOreoBlack = new int[]{1,3,7};
+				_backRowBridgeWhiteSquares = new int[]{0,3};
+				_backRowBridgeBlackSquares = new int[]{46,49};
+				_whiteCrampingSquare = 15;
+				_blackCrampingSquare = 34;
+				break;
+			default:
+				_centerField = new int[]{9,10,13,14,17,18,21,22};
+				_otherNearCrampWhite = new int[]{16,20,21,24};
+				_otherNearCrampBlack = new int[]{7,10,11,15};
+				_nearCrampWhite = new int[]{18,23};
+				_nearCrampBlack = new int[]{8,13};
+				_triangleOfOreoWhite = new int[]{25,29,30};
+				_triangleOfOreoBlack = new int[]{1,2,6};
+				_backRowBridgeWhiteSquares = new int[]{0,2};
+				_backRowBridgeBlackSquares = new int[]{29,31};
+				_whiteCrampingSquare = 12;
+				_blackCrampingSquare = 19;
+		}
+		for (int i = 0; i < _half * 2; i++)
+		{
+			_rows3To4 |= bitOf(_half * 2 + i);
+			_rows5To6 |= bitOf(_half * 4 + i);
+		}
+	}
+
+	/**
+	 * Returns the weights used by this evaluator.
+	 * @return weights of the parameters
+	 */
+	public Weights getWeights()
+	{
+		return _weights;
+	}
+
+	/**
+	 * Sets the weights used by this evaluator.
+	 * @param weights weights of the parameters
+	 */
+	public void setWeights(Weights weights)
+	{
+		_weights = weights;
+	}
+
+	/**
+	 * Sets learning mode, in which all parameters are evaluated regardless of their weights.
+	 * @param learning learning mode
+	 */
+	public void setLearning(boolean learning)
+	{
+		_learning = learning;
+		_orderWeights = null; // the lazy evaluation order depends on the mode
+	}
+
+	/**
+	 * Returns the game stage of a board, according to the number of pieces on it.
+	 * Stage 0 is the end-game, stage STAGES-1 is the opening.
+	 * @param board the board
+	 * @return stage of game
+	 */
+	public int getStage(BitBoard board)
+	{
+		int count = board.getNumberOfPieces();
+		int perStage = (_squares == 18) ? 2 : (_squares == 50) ? 7 : 4;
+		int stage = (count + perStage - 1) / perStage - 1;
+		return Math.max(0, Math.min(Weights.STAGES - 1, stage));
+	}
+
+	/**
+	 * Evaluates a board.
+	 * @param board the board
+	 * @param color evaluating player's color
+	 * @return evaluation value of the board
+	 */
+	public int evaluate(BitBoard board, byte color)
+	{
+		return evaluate(board, color, null);
+	}
+
+	/**
+	 * Evaluates a board, and returns the weighted value of each parameter.
+	 * @param board the board
+	 * @param color evaluating player's color
+	 * @param values to be set with the weighted values of the parameters, or null
+	 * @return evaluation value of the board
+	 */
+	public int evaluate(BitBoard board, byte color, int[] values)
+	{
+		int[] weights = _weights.getStageWeights(getStage(board));
+		updateFields(board, color);
+		int value = 0;
+		int opponentHitting = 0;
+		for (int param = 0; param < Weights.PARAMS_NUM - 1; param++)
+		{
+			int v = 0;
+			if (_learning || isActiveWeight(weights[param]))
+			{
+				if (param == OPPONENT_LIBERTY)
+				{
+					int count = _generator.generate(board, Player.reverse(color), _moves);
+					if (count > 0 && _moves.isCapture(0))
+						opponentHitting = -32;
+					v = -count;
+				}
+				else
+					v = getParameter(param, color);
+			}
+			v *= weights[param];
+			if (values != null) values[param] = v;
+			value += v;
+		}
+		int v = opponentHitting * weights[OPPONENT_HITTING];
+		if (values != null) values[OPPONENT_HITTING] = v;
+		return value + v;
+	}
+
+	/**
+	 * Evaluates a board lazily, for a search window.
+	 * The significant parameters are calculated cheapest first, and the most weighted
+	 * first among parameters of the same cost. The evaluation stops as soon as the
+	 * parameters left cannot bring the value inside the window, and then returns the
+	 * bound reached: a value at most lower is an upper bound of the full evaluation, and
+	 * a value at least upper is a lower bound of it. Values inside the window are exact.
+	 * @param board the board
+	 * @param color evaluating player's color
+	 * @param lower lower bound of the window
+	 * @param upper upper bound of the window
+	 * @return evaluation value of the board, or a bound of it outside the window
+	 */
+	public int evaluate(BitBoard board, byte color, int lower, int upper)
+	{
+		_lazyEvaluations++;
+		int[] weights = _weights.getStageWeights(getStage(board));
+		int[] order = getOrder(getStage(board), weights);
+		updateFields(board, color);
+		long value = 0;
+		for (int param = 0; param < Weights.PARAMS_NUM - 1; param++)
+			if (COSTS[param] == 0 && isEvaluated(weights[param]))
+				value += getParameter(param, color) * weights[param];
+		byte opponent = Player.reverse(color);
+		boolean hitting = isEvaluated(weights[OPPONENT_LIBERTY]) && _generator.hasCapture(board, opponent);
+		if (hitting)
+			value -= 32 * weights[OPPONENT_HITTING];
+		updateBounds(hitting);
+		long minimum = 0, maximum = 0;
+		for (int i = 0; i < order.length; i++)
+		{
+			minimum += (long) _minimum[order[i]] * weights[order[i]];
+			maximum += (long) _maximum[order[i]] * weights[order[i]];
+		}
+		for (int i = 0; i < order.length; i++)
+		{
+			if (value + maximum <= lower)
+			{
+				_lazyCutoffs++;
+				return (int) (value + maximum);
+			}
+			if (value + minimum >= upper)
+			{
+				_lazyCutoffs++;
+				return (int) (value + minimum);
+			}
+			int param = order[i];
+			int v = (param == OPPONENT_LIBERTY)
+				? -_generator.generate(board, opponent, _moves)
+				: getParameter(param, color);
+			value += v * weights[param];
+			minimum -= (long) _minimum[param] * weights[param];
+			maximum -= (long) _maximum[param] * weights[param];
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Returns the parameters lazily evaluated in a stage: the significant parameters
+	 * which are not bit counts, by cost, then by weight.
+	 * The order is kept until the weights change.
+	 * @param stage game stage
+	 * @param weights weights of the stage
+	 * @return parameters indices
+	 */
+	private int[] getOrder(int stage, int[] weights)
+	{
+		if (_order[stage] != null && _orderWeights == _weights && _orderVersion[stage] == _weights.getVersion())
+			return _order[stage];
+		if (_orderWeights != _weights)
+		{
+			for (int s = 0; s < Weights.STAGES; s++)
+				_order[s] = null;
+			_orderWeights = _weights;
+		}
+		int count = 0;
+		int[] order = new int[Weights.PARAMS_NUM];
+		for (int param = 0; param < Weights.PARAMS_NUM - 1; param++)
+			if (COSTS[param] > 0 && isEvaluated(weights[param]))
+				order[count++] = param;
+		for (int i = 1; i < count; i++) // insertion sort, by cost then weight
+		{
+			int param = order[i];
+			int j = i;
+			for (; j > 0 && (COSTS[order[j - 1]] > COSTS[param]
+				|| (COSTS[order[j - 1]] == COSTS[param] && weights[order[j - 1]] < weights[param])); j--)
+				order[j] = order[j - 1];
+			order[j] = param;
+		}
+		_order[stage] = new int[count];
+		System.arraycopy(order, 0, _order[stage], 0, count);
+		_orderVersion[stage] = _weights.getVersion();
+		return _order[stage];
+	}
+
+	/**
+	 * Sets the bounds of the parameters that are not bit counts, from the pieces of the
+	 * evaluated board. The board fields must have been set by updateFields.
+	 * @param hitting true iff the opponent can capture
+	 */
+	private void updateBounds(boolean hitting)
+	{
+		int passives = Long.bitCount(_passives);
+		int passiveMen = Long.bitCount(_passiveMen);
+		int empty = _squares - Long.bitCount(_pieces);
+		// with captures, the number of opponent moves is not bounded by its pieces
+		_minimum[OPPONENT_LIBERTY] = hitting ? -(1 << 16) : -(2 * passiveMen + 4 * (passives - passiveMen));
+		_minimum[DOUBLE_DIAGONAL_FILE] = -4 * Math.min(passives, _size);
+		_minimum[DIAGONAL_MOMENT_VALUE] = -4 * passives;
+		_minimum[DYKE] = -8 * passives;
+		_maximum[EXPOSURE] = 4 * passives;
+		_maximum[GAP] = empty;
+		_minimum[HOLE] = -8 * empty;
+		_maximum[NODE] = 4 * passives;
+		_maximum[POLE] = 4 * passiveMen;
+	}
+
+	/**
+	 * @return number of lazy evaluations made since the counters were reset
+	 */
+	public long getLazyEvaluations()
+	{
+		return _lazyEvaluations;
+	}
+
+	/**
+	 * @return number of lazy evaluations cut short since the counters were reset
+	 */
+	public long getLazyCutoffs()
+	{
+		return _lazyCutoffs;
+	}
+
+	/**
+	 * Resets the lazy evaluation counters.
+	 */
+	public void resetCounters()
+	{
+		_lazyEvaluations = 0;
+		_lazyCutoffs = 0;
+	}
+
+	/**
+	 * Returns the unweighted value of a single parameter.
+	 * The board fields must have been set by updateFields.
+	 * The opponent liberty and opponent hitting parameters are computed by evaluate.
+	 * @param param parameter index
+	 * @param color evaluating player's color
+	 * @return parameter value
+	 */
+	protected int getParameter(int param, byte color)
+	{
+		switch (param)
+		{
+			case PIECES_ADVANTAGE: return piecesAdvantage();
+			case KINGS: return kings();
+			case CENTER_CONTROL: return centerControl();
+			case KINGS_CENTER_CONTROL: return kingsCenterControl();
+			case OPPONENT_CENTER_CONTROL: return opponentCenterControl();
+			case ADVANCEMENT: return advancement(color);
+			case OPPONENT_KINGS: return oppKings();
+			case OPPONENT_GUARD: return opponentGuard(color);
+			case CRAMP: return cramp(color);
+			case DOUBLE_DIAGONAL_FILE: return doubleDiagonalFile();
+			case DIAGONAL_MOMENT_VALUE: return diagonalMomentValue();
+			case DYKE: return dyke();
+			case EXPOSURE: return exposure();
+			case GAP: return gap();
+			case HOLE: return hole();
+			case NODE: return node();
+			case POLE: return pole();
+			case BACK_ROW_CONTROL: return backRowControl(color);
+		}
+		return 0;
+	}
+
+	/**
+	 * @param weight A weight of parameter
+	 * @return if weight is active (not below threshold)
+	 */
+	private static boolean isActiveWeight(int weight)
+	{
+		return weight > WEIGHT_THRESHOLD;
+	}
+
+	/**
+	 * @param weight A weight of parameter
+	 * @return if the parameter is calculated: its weight is active, or in learning mode
+	 */
+	private boolean isEvaluated(int weight)
+	{
+		return _learning || isActiveWeight(weight);
+	}
+
+	/**
+	 * Updates the board fields used to calculate parameters.
+	 * @param board the evaluated board
+	 * @param color evaluating Player's color
+	 */
+	private void updateFields(BitBoard board, byte color)
+	{
+		byte opponent = Player.reverse(color);
+		_activeMen = board.getPeons(color);
+		_activeKings = board.getKings(color);
+		_passiveMen = board.getPeons(opponent);
+		_passiveKings = board.getKings(opponent);
+		_actives = _activeMen | _activeKings;
+		_passives = _passiveMen | _passiveKings;
+		_pieces = _actives | _passives;
+	}
+
+	/**
+	 * @return mask of a square, or 0 if it is off the board
+	 */
+	private long bitOf(int square)
+	{
+		return (square >= 0 && square < _squares) ? (1L << square) : 0;
+	}
+
+	/**
+	 * @return 1 if the square is set in the mask, 0 otherwise (or if it is off the board)
+	 */
+	private int test(long mask, int square)
+	{
+		return ((mask & bitOf(square)) != 0) ? 1 : 0;
+	}
+
+	/**
+	 * Pieces Advantage.
+	 * The difference in number of pieces, where a king counts as 3 points and a peon as 2.
+	 */
+	private int piecesAdvantage()
+	{
+		return (3 * (Long.bitCount(_activeKings) - Long.bitCount(_passiveKings))
+			+ 2 * (Long.bitCount(_activeMen) - Long.bitCount(_passiveMen))) << 2;
+	}
+
+	/**
+	 * Kings.
+	 * @return the number of kings of the evaluating player.
+	 */
+	private int kings()
+	{
+		return Long.bitCount(_activeKings) << 2;
+	}
+
+	/**
+	 * Opponent Kings.
+	 * @return the number of kings of the opponent.
+	 */
+	private int oppKings()
+	{
+		return -(Long.bitCount(_passiveKings) << 2);
+	}
+
+	/**
+	 * Center Control.
+	 * The number of peons the evaluating player has on the center squares.
+	 */
+	private int centerControl()
+	{
+		int credits = 0;
+		for (int i = 0; i < _centerField.length; i++)
+			credits += test(_activeMen, _centerField[i]);
+		return credits << 2;
+	}
+
+	/**
+	 * Kings Center Control.
+	 * The number of kings the evaluating player has on the center squares.
+	 */
+	private int kingsCenterControl()
+	{
+		int credits = 0;
+		for (int i = 0; i < _centerField.length; i++)
+			credits += test(_activeKings, _centerField[i]);
+		return credits << 2;
+	}
+
+	/**
+	 * Opponent Center Control.
+	 * The number of center squares occupied by an opponent piece, as a negative number.
+	 */
+	private int opponentCenterControl()
+	{
+		int credits = 0;
+		for (int i = 0; i < _centerField.length; i++)
+			credits += test(_passives, _centerField[i]);
+		return -(credits << 2);
+	}
+
+	/**
+	 * ADV (Advancement).
+	 * Credited with 1 for each passive man in the 5th and 6th rows
+	 * and debited with 1 for each passive man in the 3rd and 4th rows.
+	 */
+	private int advancement(byte color)
+	{
+		int rows3To4 = Long.bitCount(_rows3To4 & _passiveMen);
+		int rows5To6 = Long.bitCount(_rows5To6 & _passiveMen);
+		return (color == Player.PLAYER_BLACK)
+			? ((rows5To6 - rows3To4) << 2)
+			: ((rows3To4 - rows5To6) << 2);
+	}
+
+	/**
+	 * BACK (Back Row Bridge, modified).
+	 * Debited if the evaluating player has no kings, and the two bridge squares
+	 * in the back row are occupied by the opponent player.
+	 */
+	private int opponentGuard(byte color)
+	{
+		int[] backRowBridgeSquares = (color == Player.PLAYER_WHITE)
+			? _backRowBridgeWhiteSquares : _backRowBridgeBlackSquares;
+		for (int i = 0; i < backRowBridgeSquares.length; i++)
+			if (test(_passives, backRowBridgeSquares[i]) == 0)
+				return 0;
+		return (_activeKings == 0) ? -32 : 0;
+	}
+
+	/**
+	 * CRAMP.
+	 * Debited if the opponent occupies the cramping square and one of its nearby squares,
+	 * while the evaluating player occupies one of the squares around them.
+	 */
+	private int cramp(byte color)
+	{
+		int crampingSquare = (color == Player.PLAYER_BLACK) ? _whiteCrampingSquare : _blackCrampingSquare;
+		if (test(_passives, crampingSquare) != 0)
+		{
+			int[] nearCrampingSquares = (color == Player.PLAYER_BLACK) ? _nearCrampWhite : _nearCrampBlack;
+			int[] otherSquares = (color == Player.PLAYER_BLACK) ? _otherNearCrampWhite : _otherNearCrampBlack;
+			if (test(_passives, nearCrampingSquares[0]) != 0 || test(_passives, nearCrampingSquares[1]) != 0)
+			{
+				for (int i = 0; i < otherSquares.length; i++)
+					if (test(_actives, otherSquares[i]) != 0)
+						return -32;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * DIA (Double Diagonal File).
+	 * Debited with 1 for each opponent piece on the long double corner diagonal.
+	 */
+	private int doubleDiagonalFile()
+	{
+		int diagonal = 0, credits = 0;
+		for (int i = 0; i < _size; i++)
+		{
+			diagonal += (i % 2 == 0) ? _half - 1 : _half;
+			credits += test(_passives, diagonal);
+		}
+		return -(credits << 2);
+	}
+
+	/**
+	 * DIAV (Diagonal Moment Value).
+	 * Debited for each opponent piece according to its distance from the long double corner
+	 * diagonal. As in the native code, the squares right of the diagonal are not counted
+	 * and the squares left of it are counted twice.
+	 */
+	private int diagonalMomentValue()
+	{
+		int diagonal = 0, credits = 0;
+		for (int i = 0; i < _size; i++)
+		{
+			diagonal += (i % 2 == 0) ? _half - 1 : _half;
+			int diagonalR2m = ((diagonal - 2) >= _half * i) ? test(_passives, diagonal - 2) : 0;
+			int diagonalR2p = ((diagonal + 2) < _half * (i + 1)) ? test(_passives, diagonal + 2) : 0;
+			int diagonalR1m = ((diagonal - 1) >= _half * i) ? test(_passives, diagonal - 1) * 2 : 0;
+			credits += (diagonalR2m + diagonalR2p) + (diagonalR1m + diagonalR1m) + 3 * test(_passives, diagonal);
+		}
+		return -credits;
+	}
+
+	/**
+	 * DYKE.
+	 * Debited with 1 for each string of opponent pieces occupying three adjacent diagonal squares.
+	 */
+	private int dyke()
+	{
+		int d0, d1, d2, row, col, credits = 0;
+		for (int i = 0; i < _size - 1; i++) // left to right
+		{
+			if (i < _half)
+			{
+				d0 = i;
+				row = 0;
+				col = i * 2 + 1;
+			}
+			else
+			{
+				d0 = _half * ((i - _half) * 2 + 1);
+				row = (i - _half) * 2 + 1;
+				col = 0;
+			}
+			for (; (row < _size - 2) && (col < _size - 2); row++, col++, d0 = d1)
+			{
+				d1 = d0 + ((row % 2 == 0) ? _half + 1 : _half);
+				d2 = d0 + _half * 2 + 1;
+				if (test(_passives, d0) + test(_passives, d1) + test(_passives, d2) == 3)
+					credits++;
+			}
+		}
+		for (int i = 1; i < _size - 2; i++) // right to left
+		{
+			if (i < _half)
+			{
+				d0 = i;
+				row = 0;
+				col = i * 2 + 1;
+			}
+			else
+			{
+				d0 = _size * (i - _half + 1) + _half - 1;
+				row = (i - _half + 1) * 2;
+				col = _half * 2 - 1;
+			}
+			for (; (row < _size - 2) && (col >= 2); row++, col--, d0 = d1)
+			{
+				d1 = d0 + ((row % 2 == 0) ? _half : _half - 1);
+				d2 = d0 + _half * 2 - 1;
+				if (test(_passives, d0) + test(_passives, d1) + test(_passives, d2) == 3)
+					credits++;
+			}
+		}
+		return -(credits << 2);
+	}
+
+	/**
+	 * EXPOS (Exposure).
+	 * Credited with 1 for each opponent piece flanked along a diagonal by two empty squares.
+	 */
+	private int exposure()
+	{
+		int i = 0, credits = 0;
+		for (int iRow = 1; iRow < _size - 1; iRow++)
+		{
+			for (int iCol = 0; iCol < _half; iCol++, i++)
+			{
+				if ((iRow % 2 == 1 && iCol == 1) || (iRow % 2 == 0 && iCol == _half - 1))
+					continue;
+				if (test(_passives, i) != 0)
+				{
+					int col1a, col1b, col2a, col2b;
+					if (iRow % 2 == 0)
+					{
+						col1b = _half - 1;
+						col2a = _half + 1;
+						col2b = col1a = _half;
+					}
+					else
+					{
+						col1a = _half + 1;
+						col1b = col2a = _half;
+						col2b = _half - 1;
+					}
+					if ((test(_pieces, i + col1a) == 0 && test(_pieces, i + col2a) == 0)
+						|| (test(_pieces, i + col1b) == 0 && test(_pieces, i + col2b) == 0))
+						credits++;
+				}
+			}
+		}
+		return credits << 2;
+	}
+
+	/**
+	 * GAP.
+	 * Credited with 1 for each empty square that separates two opponent pieces along a diagonal,
+	 * or separates an opponent piece from the edge of the board.
+	 */
+	private int gap()
+	{
+		int credits = 0;
+		for (int i = 0; i < _squares; i++)
+		{
+			if (test(_pieces, i) == 0)
+			{
+				boolean credit = false;
+				int oddRow = (i / _half) % 2;
+				int i1 = i + _half + 1 - oddRow;
+				int i2 = i - _half - oddRow;
+				if (i1 < _squares && i2 > 0)
+				{
+					if (test(_passives, i1) != 0 && test(_passives, i2) != 0)
+						credit = true;
+				}
+				else credit = true;
+				i1 = i + _half - oddRow;
+				i2 = i - _half + 1 - oddRow;
+				if (i1 < _squares && i2 > 0)
+				{
+					if (test(_passives, i1) != 0 && test(_passives, i2) != 0)
+						credit = true;
+				}
+				else credit = true;
+				if (credit) credits++;
+			}
+		}
+		return credits;
+	}
+
+	/**
+	 * HOLE.
+	 * Debited with 1 for each empty square surrounded by three or more opponent pieces.
+	 */
+	private int hole()
+	{
+		int credits = 0;
+		for (int row = 1; row < _size - 1; row++)
+		{
+			int oddRow = row % 2;
+			for (int col = 1; col < _half - 1 + oddRow; col++)
+			{
+				int i = row * _half + col;
+				if (test(_pieces, i) == 0)
+				{
+					int surround = test(_passives, i + _half) + test(_passives, i + _half + 1 - 2 * oddRow)
+						+ test(_passives, i - _half) + test(_passives, i - _half + 1 - 2 * oddRow);
+					if (surround >= 3) credits++;
+				}
+			}
+		}
+		return -(credits << 3);
+	}
+
+	/**
+	 * NODE.
+	 * Credited with 1 for each opponent piece surrounded by at least 3 empty squares.
+	 */
+	private int node()
+	{
+		return isolated(_passives, 3);
+	}
+
+	/**
+	 * POLE.
+	 * Credited with 1 for each opponent peon completely surrounded by empty squares.
+	 */
+	private int pole()
+	{
+		return isolated(_passiveMen, 4);
+	}
+
+	/**
+	 * Counts the pieces of a mask that are surrounded by enough empty squares.
+	 * @param mask pieces to check
+	 * @param minEmpty number of empty surrounding squares required
+	 * @return credits, scaled as node and pole are
+	 */
+	private int isolated(long mask, int minEmpty)
+	{
+		int credits = 0;
+		for (int row = 1; row < _size - 1; row++)
+		{
+			int oddRow = row % 2;
+			for (int col = 1; col < _half - 1 + oddRow; col++)
+			{
+				int i = row * _half + col;
+				if (test(mask, i) != 0)
+				{
+					int surround = 4 - test(_pieces, i + _half) - test(_pieces, i + _half + 1 - 2 * oddRow)
+						- test(_pieces, i - _half) - test(_pieces, i - _half + 1 - 2 * oddRow);
+					if (surround >= minEmpty) credits++;
+				}
+			}
+		}
+		return credits << 2;
+	}
+
+	/**
+	 * GUARD (Back Row Control).
+	 * Credited if the evaluating player occupies the "Triangle of Oreo"
+	 * while the opponent has no kings.
+	 */
+	private int backRowControl(byte color)
+	{
+		int[] triangleOfOreoSquares = (color == Player.PLAYER_WHITE) ? _triangleOfOreoWhite : _triangleOfOreoBlack;
+		for (int i = 0; i < triangleOfOreoSquares.length; i++)
+			if (test(_actives, triangleOfOreoSquares[i]) == 0)
+				return 0;
+		return (_passiveKings == 0) ? 32 : 0;
+	}
+}
@@ -0,0 +1,240 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.engine;
+
+import checkers.game.BitBoard;
+import checkers.game.Player;
+
+/**
+ * The IncrementalEvaluator class.
+ * An Evaluator that keeps the counts behind its cheap parameters up to date as
+ * moves are made and unmade on a tracked board, instead of counting them again at
+ * every leaf: pieces and kings, peons and kings on the center squares, peons on the
+ * advancement rows and pieces on the back row triangle, for each player.
+ * The other parameters are still calculated from the board when evaluated, and only
+ * if their weight is significant.
+ *
+ * The tracked board is set by reset, and every move made or unmade on it must be
+ * reported to makeMove or unmakeMove. Other boards are evaluated in full.
+ */
+public class IncrementalEvaluator extends Evaluator
+{
+	/**
+	 * The tracked board.
+	 */
+	private BitBoard _board;
+
+	/**
+	 * True while the tracked board is evaluated.
+	 */
+	private boolean _tracked;
+
+	/**
+	 * Number of times each square appears in the center field.
+	 */
+	private int[] _centerCount;
+
+	/**
+	 * Back row triangle squares, by Player color.
+	 */
+	private long[] _triangle;
+
+	// counts of the tracked board, by Player color
+	private int[] _peons, _kings;
+	private int[] _centerPeons, _centerKings;
+	private int[] _peonsRows3To4, _peonsRows5To6;
+	private int[] _triangleCount;
+
+	/**
+	 * Constructs an incremental evaluator for a board size.
+	 * @param size board dimension (6, 8 or 10)
+	 * @param weights weights of the parameters
+	 */
+	public IncrementalEvaluator(int size, Weights weights)
+	{
+		super(size, weights);
+		_centerCount = new int[_squares];
+		for (int i = 0; i < _centerField.length; i++)
+			_centerCount[_centerField[i]]++;
+		_triangle = new long[3];
+		_triangle[Player.PLAYER_WHITE] = getMask(_triangleOfOreoWhite);
+		_triangle[Player.PLAYER_BLACK] = getMask(_triangleOfOreoBlack);
+		_peons = new int[3];
+		_kings = new int[3];
+		_centerPeons = new int[3];
+		_centerKings = new int[3];
+		_peonsRows3To4 = new int[3];
+		_peonsRows5To6 = new int[3];
+		_triangleCount = new int[3];
+	}
+
+	/**
+	 * @return mask of squares
+	 */
+	private static long getMask(int[] squares)
+	{
+		long mask = 0;
+		for (int i = 0; i < squares.length; i++)
+			mask |= 1L << squares[i];
+		return mask;
+	}
+
+	/**
+	 * Starts tracking a board, and counts its pieces.
+	 * @param board the tracked board
+	 */
+	public void reset(BitBoard board)
+	{
+		_board = board;
+		for (byte color = Player.PLAYER_WHITE; color <= Player.PLAYER_BLACK; color++)
+		{
+			_peons[color] = _kings[color] = 0;
+			_centerPeons[color] = _centerKings[color] = 0;
+			_peonsRows3To4[color] = _peonsRows5To6[color] = 0;
+			_triangleCount[color] = 0;
+			addPieces(color, false, board.getPeons(color), 1);
+			addPieces(color, true, board.getKings(color), 1);
+		}
+	}
+
+	/**
+	 * Updates the counts for a move made on the tracked board.
+	 * @param move encoded move
+	 * @param capturedPeons opponent peons captured by the move
+	 * @param capturedKings opponent kings captured by the move
+	 */
+	public void makeMove(int move, long capturedPeons, long capturedKings)
+	{
+		update(move, capturedPeons, capturedKings, 1);
+	}
+
+	/**
+	 * Updates the counts for a move taken back on the tracked board.
+	 * @param move encoded move
+	 * @param capturedPeons opponent peons captured by the move
+	 * @param capturedKings opponent kings captured by the move
+	 */
+	public void unmakeMove(int move, long capturedPeons, long capturedKings)
+	{
+		update(move, capturedPeons, capturedKings, -1);
+	}
+
+	/**
+	 * Moves the piece from its source to its target square, and removes the captured
+	 * pieces, or the other way round.
+	 * @param sign 1 to make the move, -1 to unmake it
+	 */
+	private void update(int move, long capturedPeons, long capturedKings, int sign)
+	{
+		byte color = BitBoard.getColor(move);
+		byte opponent = Player.reverse(color);
+		boolean king = (move & BitBoard.KING_MOVE) != 0;
+		addPiece(color, king, BitBoard.getFrom(move), -sign);
+		addPiece(color, king || (move & BitBoard.PROMOTION) != 0, BitBoard.getTo(move), sign);
+		addPieces(opponent, false, capturedPeons, -sign);
+		addPieces(opponent, true, capturedKings, -sign);
+	}
+
+	/**
+	 * Adds (or removes) the pieces of a mask to the counts.
+	 */
+	private void addPieces(byte color, boolean king, long mask, int sign)
+	{
+		for (; mask != 0; mask &= mask - 1)
+			addPiece(color, king, Long.numberOfTrailingZeros(mask), sign);
+	}
+
+	/**
+	 * Adds (or removes) a piece to the counts.
+	 * @param color Player color
+	 * @param king true for a king
+	 * @param square square of the piece
+	 * @param sign 1 to add the piece, -1 to remove it
+	 */
+	private void addPiece(byte color, boolean king, int square, int sign)
+	{
+		long bit = 1L << square;
+		if (king)
+		{
+			_kings[color] += sign;
+			_centerKings[color] += sign * _centerCount[square];
+		}
+		else
+		{
+			_peons[color] += sign;
+			_centerPeons[color] += sign * _centerCount[square];
+			if ((_rows3To4 & bit) != 0)
+				_peonsRows3To4[color] += sign;
+			if ((_rows5To6 & bit) != 0)
+				_peonsRows5To6[color] += sign;
+		}
+		if ((_triangle[color] & bit) != 0)
+			_triangleCount[color] += sign;
+	}
+
+	/**
+	 * Evaluates a board, with the maintained counts if it is the tracked board.
+	 * @param board the board
+	 * @param color evaluating player's color
+	 * @param values to be set with the weighted values of the parameters, or null
+	 * @return evaluation value of the board
+	 */
+	public int evaluate(BitBoard board, byte color, int[] values)
+	{
+		_tracked = board == _board;
+		return super.evaluate(board, color, values);
+	}
+
+	/**
+	 * Evaluates a board lazily, with the maintained counts if it is the tracked board.
+	 * @param board the board
+	 * @param color evaluating player's color
+	 * @param lower lower bound of the window
+	 * @param upper upper bound of the window
+	 * @return evaluation value of the board, or a bound of it outside the window
+	 */
+	public int evaluate(BitBoard board, byte color, int lower, int upper)
+	{
+		_tracked = board == _board;
+		return super.evaluate(board, color, lower, upper);
+	}
+
+	/**
+	 * Returns the unweighted value of a single parameter, from the maintained counts
+	 * for the cheap parameters of the tracked board.
+	 * @param param parameter index
+	 * @param color evaluating player's color
+	 * @return parameter value
+	 */
+	protected int getParameter(int param, byte color)
+	{
+		if (!_tracked)
+			return super.getParameter(param, color);
+		byte opponent = Player.reverse(color);
+		switch (param)
+		{
+			case PIECES_ADVANTAGE:
+				return (3 * (_kings[color] - _kings[opponent]) + 2 * (_peons[color] - _peons[opponent])) << 2;
+			case KINGS:
+				return _kings[color] << 2;
+			case OPPONENT_KINGS:
+				return -(_kings[opponent] << 2);
+			case CENTER_CONTROL:
+				return _centerPeons[color] << 2;
+			case KINGS_CENTER_CONTROL:
+				return _centerKings[color] << 2;
+			case OPPONENT_CENTER_CONTROL:
+				return -((_centerPeons[opponent] + _centerKings[opponent]) << 2);
+			case ADVANCEMENT:
+				return (color == Player.PLAYER_BLACK)
+					? ((_peonsRows5To6[opponent] - _peonsRows3To4[opponent]) << 2)
+					: ((_peonsRows3To4[opponent] - _peonsRows5To6[opponent]) << 2);
+			case BACK_ROW_CONTROL:
+				return (_triangleCount[color] == Long.bitCount(_triangle[color]) && _kings[opponent] == 0) ? 32 : 0;
+		}
+		return super.getParameter(param, color);
+	}
+}
@@ -0,0 +1,204 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.engine;
+
+import checkers.game.BitBoard;
+import checkers.game.MoveGenerator;
+import checkers.game.MoveList;
+
+/**
+ * The Learner class.
+ * Adjusts the evaluation weights of a player with Q-Learning, as the native
+ * Player::learn does.
+ * The Q value of a move is the evaluation gain it is expected to bring. After the
+ * player's move and the opponent's answer, the Q value is updated toward the reward
+ * (a win or a loss) or the gain of the player's next move, and the difference is
+ * spread over the weights of the game stage, each parameter getting its share of the
+ * evaluation. The weights are then normalized so the largest is 1.
+ *
+ * The learned weights are those of the given engine's evaluator, which the engine
+ * keeps using, so a player learns from its own searches.
+ */
+public class Learner
+{
+	/**
+	 * Reward of a move after which the opponent cannot move.
+	 */
+	public static final double WIN_REWARD = 10;
+
+	/**
+	 * Reward of a move after which the player cannot move.
+	 * The loss reward is higher than the win reward.
+	 */
+	public static final double LOSS_REWARD = -20;
+
+	/**
+	 * Discount factor of the next Q value.
+	 */
+	public static final double GAMMA = 1.0;
+
+	/**
+	 * Lowest learned weight.
+	 */
+	public static final double WEIGHT_THRESHOLD = 0.001;
+
+	/**
+	 * Expected values beyond this bound are taken as a win or a loss.
+	 */
+	private static final int DECIDED_VALUE = Weights.scale(50.0);
+
+	/**
+	 * The learning player's search engine.
+	 */
+	private SearchEngine _engine;
+
+	/**
+	 * The learning player's color.
+	 */
+	private byte _color;
+
+	/**
+	 * The learning player's level.
+	 */
+	private int _level;
+
+	/**
+	 * Move generator and list, for the player's next move.
+	 */
+	private MoveGenerator _generator;
+	private MoveList _moves;
+
+	/**
+	 * Board after the player's next move.
+	 */
+	private BitBoard _board;
+
+	/**
+	 * Weighted values of the parameters of the initial board.
+	 */
+	private int[] _values;
+
+	/**
+	 * Constructs a learner.
+	 * The engine's evaluator is put in learning mode, so that all the parameters are evaluated.
+	 * @param engine search engine of the learning player
+	 * @param color learning player's color
+	 * @param level learning player's level
+	 */
+	public Learner(SearchEngine engine, byte color, int level)
+	{
+		_engine = engine;
+		_color = color;
+		_level = level;
+		_generator = new MoveGenerator();
+		_moves = new MoveList();
+		_board = new BitBoard(engine.getSize());
+		_values = new int[Weights.PARAMS_NUM];
+		_engine.getEvaluator().setLearning(true);
+	}
+
+	/**
+	 * Learns from a move of the player and the opponent's answer.
+	 * @param initialBoard the board before the player's move
+	 * @param opponentBoard the board after the opponent's answer, or null if the opponent cannot move
+	 * @param expectedValue value the player expected of its move, from its search
+	 * @param alpha learning rate
+	 */
+	public void learn(BitBoard initialBoard, BitBoard opponentBoard, int expectedValue, double alpha)
+	{
+		Evaluator evaluator = _engine.getEvaluator();
+		Weights weights = evaluator.getWeights();
+		int stage = evaluator.getStage(initialBoard);
+		int initialValue = evaluator.evaluate(initialBoard, _color, _values);
+		// If the expected return (current Q) is win/lose, set it to the appropriate reward.
+		if (expectedValue > DECIDED_VALUE)
+			expectedValue = Weights.scale(WIN_REWARD);
+		if (expectedValue < -DECIDED_VALUE)
+			expectedValue = Weights.scale(LOSS_REWARD);
+		double oldQ = Weights.unscale(expectedValue - initialValue);
+		double nextQ = 0.0;
+		double reward;
+		if (opponentBoard == null) // opponent cant play, victory for player.
+			reward = WIN_REWARD;
+		else
+		{
+			int[] next = _engine.calculateMove(opponentBoard, _color, _level);
+			if (next == null) // player cant move after opponent move, player lost
+				reward = LOSS_REWARD;
+			else
+			{
+				reward = 0; // no reward, calculate Q(s(t+1), a')
+				_board.copyFrom(opponentBoard);
+				_generator.generate(_board, _color, _moves);
+				_moves.makeMove(_board, _moves.indexOf(next));
+				nextQ = Weights.unscale(evaluator.evaluate(_board, _color) - evaluator.evaluate(opponentBoard, _color));
+			}
+		}
+		// modify Q using Q-Learning formula
+		double newQ = oldQ * (1 - alpha) + alpha * (reward + GAMMA * nextQ);
+		updateWeights(weights, stage, newQ - oldQ);
+	}
+
+	/**
+	 * Spreads a Q value difference over the weights of a stage, by the share of each
+	 * parameter in the evaluation of the initial board, and normalizes the weights.
+	 * @param weights weights to update
+	 * @param stage game stage
+	 * @param difference Q value difference
+	 */
+	private void updateWeights(Weights weights, int stage, double difference)
+	{
+		double total = 0.0;
+		for (int i = 0; i < Weights.PARAMS_NUM; i++)
+			total += getParameter(weights, stage, i);
+		if (total == 0)
+			return;
+		double[] newWeights = new double[Weights.PARAMS_NUM];
+		double max = 0.0;
+		for (int i = 0; i < Weights.PARAMS_NUM; i++)
+		{
+			if (weights.getWeight(stage, i) != 0)
+				newWeights[i] = Weights.unscale(weights.getWeight(stage, i))
+					+ difference * (getParameter(weights, stage, i) / total);
+			if (newWeights[i] < WEIGHT_THRESHOLD)
+				newWeights[i] = WEIGHT_THRESHOLD;
+			max = Math.max(max, newWeights[i]);
+		}
+		for (int i = 0; i < Weights.PARAMS_NUM; i++)
+		{
+			int weight = Weights.scale(newWeights[i] / max);
+			weights.setWeight(stage, i, (weight == 0) ? Weights.scale(WEIGHT_THRESHOLD) : weight);
+		}
+	}
+
+	/**
+	 * @return unweighted value of a parameter of the initial board
+	 */
+	private double getParameter(Weights weights, int stage, int param)
+	{
+		int weight = weights.getWeight(stage, param);
+		return (weight != 0) ? _values[param] / weight : 0;
+	}
+
+	/**
+	 * Normalizes the weights of a stage, so the largest is 1, and raises the weights
+	 * below the threshold to it.
+	 * @param weights weights to normalize
+	 * @param stage game stage
+	 */
+	public static void normalize(Weights weights, int stage)
+	{
+		int max = 0;
+		for (int i = 0; i < Weights.PARAMS_NUM; i++)
+			max = Math.max(max, weights.getWeight(stage, i));
+		int threshold = Weights.scale(WEIGHT_THRESHOLD);
+		for (int i = 0; i < Weights.PARAMS_NUM; i++)
+		{
+			int weight = (max == 0) ? 0 : (int) ((long) weights.getWeight(stage, i) * Weights.MAX_WEIGHT / max);
+			weights.setWeight(stage, i, Math.max(threshold, weight));
+		}
+	}
+}
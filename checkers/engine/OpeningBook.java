@@ -0,0 +1,473 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.engine;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import checkers.game.BitBoard;
+import checkers.game.Player;
+
+/**
+ * The OpeningBook class.
+ * Reads and writes the opening book files (data/book*.dat) of the native ConcreteBook.
+ *
+ * A book file starts with its level byte: the book is used by players of that level
+ * or lower. Then come fixed size records, each of a position key and a move:
+ * the key has 4 bits per square (black peons, black kings, white peons and white
+ * kings, the squares mirrored when white is to move), packed from the last bit in
+ * squares/2 bytes; the move is the squares it passes through, including its source
+ * square, in 8 bytes padded with -1, mirrored when black is to move.
+ *
+ * The native book reads the file sequentially on every lookup. Here the file is
+ * memory mapped once, and a hash index from the keys to the records gives lookups in
+ * constant time. As with the native book, the first record of a position is the one
+ * used. Added records are kept in memory, indexed, and appended to the file by save.
+ */
+public class OpeningBook
+{
+	/**
+	 * Path prefix of the book files.
+	 */
+	public static final String BOOK_FILE_PREFIX = "data/book";
+
+	/**
+	 * Extension of the book files.
+	 */
+	public static final String BOOK_FILE_EXTENSION = ".dat";
+
+	/**
+	 * Number of move bytes in a record.
+	 */
+	public static final int MOVE_LENGTH = 8;
+
+	/**
+	 * Default books, by number of squares, read on first use.
+	 */
+	private static Hashtable _books = new Hashtable();
+
+	/**
+	 * Book file name.
+	 */
+	private String _fileName;
+
+	/**
+	 * Number of playable squares.
+	 */
+	private int _squares;
+
+	/**
+	 * Record length in bytes.
+	 */
+	private int _recordLength;
+
+	/**
+	 * Book level.
+	 */
+	private int _level;
+
+	/**
+	 * The mapped file, or null if it has no records.
+	 */
+	private MappedByteBuffer _buffer;
+
+	/**
+	 * Number of records in the mapped file, duplicates included.
+	 */
+	private int _fileRecords;
+
+	/**
+	 * Records added since the book was read or saved.
+	 */
+	private Vector _added;
+
+	/**
+	 * Records indices (Integer) by key (String of the key bytes).
+	 * Added records are numbered after the records of the file.
+	 */
+	private Hashtable _index;
+
+	/**
+	 * Constructs a book from a book file.
+	 * @param fileName book file name
+	 * @param size board dimension
+	 * @param level level of a new book, used when the file does not exist
+	 * @throws IOException if the file cannot be read or created
+	 */
+	public OpeningBook(String fileName, int size, int level) throws IOException
+	{
+		_fileName = fileName;
+		_squares = size * size / 2;
+		_recordLength = _squares / 2 + MOVE_LENGTH;
+		_level = level;
+		_added = new Vector();
+		_index = new Hashtable();
+		File file = new File(fileName);
+		if (!file.exists())
+		{
+			FileOutputStream out = new FileOutputStream(file);
+			out.write(level);
+			out.close();
+		}
+		map();
+	}
+
+	/**
+	 * Returns the default book of a board size, read on first use.
+	 * @param size board dimension
+	 * @return the book, or null if its file cannot be read
+	 */
+	public static synchronized OpeningBook getBook(int size)
+	{
+		Integer key = new Integer(size);
+		Object book = _books.get(key);
+		if (book == null)
+		{
+			try
+			{
+				if (new File(getFileName(size)).exists())
+					book = new OpeningBook(getFileName(size), size, 0);
+			}
+			catch (IOException ioe)
+			{
+				System.err.println("Error: unable to read book file " + getFileName(size) + ": " + ioe.getMessage());
+			}
+			_books.put(key, (book == null) ? (Object) Boolean.FALSE : book);
+		}
+		return (book instanceof OpeningBook) ? (OpeningBook) book : null;
+	}
+
+	/**
+	 * Returns the book file name for a board size.
+	 * @param size board dimension
+	 * @return book file name
+	 */
+	public static String getFileName(int size)
+	{
+		return BOOK_FILE_PREFIX + (size * size / 2) + BOOK_FILE_EXTENSION;
+	}
+
+	/**
+	 * Maps the book file, reads its level and indexes its records.
+	 */
+	private void map() throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(_fileName, "r");
+		try
+		{
+			FileChannel channel = file.getChannel();
+			long length = channel.size();
+			if (length > 0)
+				_level = file.read();
+			_fileRecords = (int) (Math.max(0, length - 1) / _recordLength);
+			_buffer = (_fileRecords == 0) ? null
+				: channel.map(FileChannel.MapMode.READ_ONLY, 1, (long) _fileRecords * _recordLength);
+		}
+		finally
+		{
+			file.close(); // the mapping stays valid
+		}
+		_index.clear();
+		byte[] key = new byte[_squares / 2];
+		for (int record = 0; record < _fileRecords; record++)
+		{
+			for (int i = 0; i < key.length; i++)
+				key[i] = _buffer.get(record * _recordLength + i);
+			index(key, record);
+		}
+	}
+
+	/**
+	 * Indexes a record, unless an earlier record has the same key.
+	 * @return true iff the record was indexed
+	 */
+	private boolean index(byte[] key, int record)
+	{
+		String k = toKeyString(key);
+		if (_index.containsKey(k))
+			return false;
+		_index.put(k, new Integer(record));
+		return true;
+	}
+
+	/**
+	 * Returns a string holding the key bytes, used as hash key.
+	 * @param key key bytes
+	 * @return the key string
+	 */
+	static String toKeyString(byte[] key)
+	{
+		char[] chars = new char[key.length];
+		for (int i = 0; i < key.length; i++)
+			chars[i] = (char) (key[i] & 0xff);
+		return new String(chars);
+	}
+
+	/**
+	 * Returns the key of a position, as stored in the book records.
+	 * @param board the position
+	 * @param color color of the player to move
+	 * @return key bytes
+	 */
+	public static byte[] getKey(BitBoard board, byte color)
+	{
+		int squares = board.getNumberOfSquares();
+		long[] masks = {board.getBlackPeons(), board.getBlackKings(), board.getWhitePeons(), board.getWhiteKings()};
+		byte[] key = new byte[squares / 2];
+		for (int i = 0; i < key.length; i++)
+		{
+			int x = 0;
+			for (int j = 0; j < 8; j++)
+			{
+				int bit = 4 * squares - (i * 8 + j) - 1;
+				int square = bit % squares;
+				if (color == Player.PLAYER_WHITE)
+					square = squares - square - 1;
+				x = (x << 1) | (int) ((masks[bit / squares] >>> square) & 1);
+			}
+			key[i] = (byte) x;
+		}
+		return key;
+	}
+
+	/**
+	 * Finds the book move of a position.
+	 * @param board the position
+	 * @param color color of the player to move
+	 * @return squares the move passes through, including its source square, or null
+	 *         if the position is not in the book
+	 */
+	public synchronized int[] getMove(BitBoard board, byte color)
+	{
+		Integer record = (Integer) _index.get(toKeyString(getKey(board, color)));
+		if (record == null)
+			return null;
+		byte[] move = new byte[MOVE_LENGTH];
+		getRecordMove(record.intValue(), move);
+		return decodeMove(move, 0, color, _squares);
+	}
+
+	/**
+	 * Adds a move to the book, unless the position is already in it.
+	 * The record is written to the file by save.
+	 * @param board the position
+	 * @param color color of the player to move
+	 * @param squares squares the move passes through, including its source square
+	 * @return true iff the move was added
+	 */
+	public synchronized boolean addMove(BitBoard board, byte color, int[] squares)
+	{
+		byte[] record = new byte[_recordLength];
+		byte[] key = getKey(board, color);
+		System.arraycopy(key, 0, record, 0, key.length);
+		encodeMove(squares, color, _squares, record, key.length);
+		return addRecord(record);
+	}
+
+	/**
+	 * Adds a record, unless its position is already in the book.
+	 * @param record key and move bytes
+	 * @return true iff the record was added
+	 */
+	private boolean addRecord(byte[] record)
+	{
+		byte[] key = new byte[_squares / 2];
+		System.arraycopy(record, 0, key, 0, key.length);
+		if (!index(key, _fileRecords + _added.size()))
+			return false;
+		_added.addElement(record);
+		return true;
+	}
+
+	/**
+	 * Adds the records of another book of the same board size, except those of
+	 * positions already in this book.
+	 * @param other the other book
+	 * @return number of records added
+	 */
+	public synchronized int merge(OpeningBook other)
+	{
+		if (other._squares != _squares)
+			throw new IllegalArgumentException("Books of different board sizes");
+		int added = 0;
+		for (int record = 0; record < other.getNumberOfRecords(); record++)
+		{
+			byte[] bytes = new byte[_recordLength];
+			other.getRecord(record, bytes);
+			if (addRecord(bytes))
+				added++;
+		}
+		return added;
+	}
+
+	/**
+	 * Appends the added records to the book file, and maps it again.
+	 * @throws IOException if the file cannot be written
+	 */
+	public synchronized void save() throws IOException
+	{
+		if (_added.isEmpty())
+			return;
+		RandomAccessFile file = new RandomAccessFile(_fileName, "rw");
+		try
+		{
+			file.seek(1 + (long) _fileRecords * _recordLength);
+			for (int i = 0; i < _added.size(); i++)
+				file.write((byte[]) _added.elementAt(i));
+			file.setLength(file.getFilePointer());
+		}
+		finally
+		{
+			file.close();
+		}
+		_added.removeAllElements();
+		map();
+	}
+
+	/**
+	 * Writes the book to a new file, without the records of positions that appear
+	 * earlier in the book, so the book plays the same moves.
+	 * @param fileName new book file name, which must not be the name of this book
+	 * @return number of records written
+	 * @throws IOException if the file cannot be written
+	 */
+	public synchronized int write(String fileName) throws IOException
+	{
+		FileOutputStream out = new FileOutputStream(fileName);
+		int written = 0;
+		try
+		{
+			out.write(_level);
+			byte[] record = new byte[_recordLength];
+			byte[] key = new byte[_squares / 2];
+			for (int i = 0; i < getNumberOfRecords(); i++)
+			{
+				getRecord(i, record);
+				System.arraycopy(record, 0, key, 0, key.length);
+				if (((Integer) _index.get(toKeyString(key))).intValue() != i)
+					continue; // a duplicate
+				out.write(record);
+				written++;
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+		return written;
+	}
+
+	/**
+	 * Copies a record.
+	 * @param record record index, records added after the file records
+	 * @param bytes set with the key and move bytes
+	 */
+	private void getRecord(int record, byte[] bytes)
+	{
+		if (record >= _fileRecords)
+			System.arraycopy((byte[]) _added.elementAt(record - _fileRecords), 0, bytes, 0, _recordLength);
+		else
+			for (int i = 0; i < _recordLength; i++)
+				bytes[i] = _buffer.get(record * _recordLength + i);
+	}
+
+	/**
+	 * Copies the move bytes of a record.
+	 */
+	private void getRecordMove(int record, byte[] move)
+	{
+		if (record >= _fileRecords)
+			System.arraycopy((byte[]) _added.elementAt(record - _fileRecords), _squares / 2, move, 0, MOVE_LENGTH);
+		else
+			for (int i = 0; i < MOVE_LENGTH; i++)
+				move[i] = _buffer.get(record * _recordLength + _squares / 2 + i);
+	}
+
+	/**
+	 * Writes the move bytes of a record.
+	 * @param squares squares the move passes through, including its source square
+	 * @param color color of the moving player
+	 * @param squaresNum number of playable squares
+	 * @param bytes record bytes
+	 * @param offset offset of the move bytes
+	 */
+	static void encodeMove(int[] squares, byte color, int squaresNum, byte[] bytes, int offset)
+	{
+		for (int i = 0; i < MOVE_LENGTH; i++)
+		{
+			int square = (i < squares.length) ? squares[i] : -1;
+			if (square >= 0 && color == Player.PLAYER_BLACK)
+				square = squaresNum - square - 1;
+			bytes[offset + i] = (byte) square;
+		}
+	}
+
+	/**
+	 * Reads the move bytes of a record.
+	 * @param bytes record bytes
+	 * @param offset offset of the move bytes
+	 * @param color color of the moving player
+	 * @param squaresNum number of playable squares
+	 * @return squares the move passes through, including its source square
+	 */
+	static int[] decodeMove(byte[] bytes, int offset, byte color, int squaresNum)
+	{
+		int count = 0;
+		while (count < MOVE_LENGTH && bytes[offset + count] >= 0)
+			count++;
+		int[] squares = new int[count];
+		for (int i = 0; i < count; i++)
+			squares[i] = (color == Player.PLAYER_BLACK) ? squaresNum - bytes[offset + i] - 1 : bytes[offset + i];
+		return squares;
+	}
+
+	/**
+	 * @return book level, players of this level or lower use the book
+	 */
+	public int getLevel()
+	{
+		return _level;
+	}
+
+	/**
+	 * Sets the book level, written by write.
+	 * @param level book level
+	 */
+	public void setLevel(int level)
+	{
+		_level = level;
+	}
+
+	/**
+	 * @return number of records, duplicates included
+	 */
+	public synchronized int getNumberOfRecords()
+	{
+		return _fileRecords + _added.size();
+	}
+
+	/**
+	 * @return number of positions in the book
+	 */
+	public synchronized int getNumberOfPositions()
+	{
+		return _index.size();
+	}
+
+	/**
+	 * @return board dimension of the book
+	 */
+	public int getSize()
+	{
+		return (int) Math.round(Math.sqrt(2 * _squares));
+	}
+}
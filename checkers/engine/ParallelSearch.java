@@ -0,0 +1,397 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.engine;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import checkers.game.BitBoard;
+
+/**
+ * The ParallelSearch class.
+ * Runs a move search on several threads, each one with its own SearchEngine.
+ *
+ * By default the search is a "lazy" shared memory search: all the engines search
+ * the whole tree and share one transposition table, so each engine gets cutoffs and
+ * move ordering from the work of the others. Half of the helper engines start one
+ * iteration deeper than the main one, so the engines do not walk the tree in step.
+ * The calling thread runs the main engine, and when it is done the helpers are stopped.
+ * The helpers run on a pool of threads shared by all the searches, which are kept
+ * alive between the moves.
+ * The move of the engine that completed the deepest iteration is played.
+ *
+ * In deterministic mode the root moves are split between the engines, each one with
+ * a private table that is cleared before every search, and the time budget is ignored.
+ * The result then depends only on the position, the history, the level, the nodes
+ * budget and the number of threads, and not on the threads timing.
+ */
+public class ParallelSearch
+{
+	/**
+	 * Seed of the engines random generators in deterministic mode.
+	 */
+	public static final long DETERMINISTIC_SEED = 1;
+
+	/**
+	 * Threads of the helper engines, shared by all the searches.
+	 */
+	private static final ExecutorService _executor = Executors.newCachedThreadPool(new ThreadFactory()
+	{
+		public Thread newThread(Runnable task)
+		{
+			Thread thread = new Thread(task, "Search");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * Board dimension.
+	 */
+	private int _size;
+
+	/**
+	 * The engines, the first one is run by the calling thread.
+	 */
+	private SearchEngine[] _engines;
+
+	/**
+	 * Transposition table shared by the engines, or null.
+	 */
+	private TranspositionTable _table;
+
+	/**
+	 * Private tables of the engines in deterministic mode.
+	 */
+	private TranspositionTable[] _privateTables;
+
+	/**
+	 * Size of the transposition table, in megabytes.
+	 */
+	private int _tableSize;
+
+	/**
+	 * True for deterministic mode.
+	 */
+	private boolean _deterministic;
+
+	/**
+	 * Set by another thread to stop the current search and the next ones, see setStopped.
+	 */
+	private boolean _stopped;
+
+	/**
+	 * Nodes visited by all the engines in the last search.
+	 */
+	private long _nodes;
+
+	/**
+	 * Depth of the last completed iteration of the played move.
+	 */
+	private int _completedDepth;
+
+	/**
+	 * Constructs a parallel search.
+	 * @param size board dimension
+	 * @param weights evaluation weights
+	 * @param threads number of searching threads, at least 1
+	 * @param tableSize size of the transposition table in megabytes, 0 for no table
+	 */
+	public ParallelSearch(int size, Weights weights, int threads, int tableSize)
+	{
+		_size = size;
+		_tableSize = tableSize;
+		_engines = new SearchEngine[Math.max(1, threads)];
+		for (int i = 0; i < _engines.length; i++)
+			_engines[i] = new SearchEngine(size, weights);
+		if (tableSize > 0)
+			_table = new TranspositionTable(tableSize);
+		setDeterministic(false);
+	}
+
+	/**
+	 * Returns the board dimension this search plays on.
+	 * @return board dimension
+	 */
+	public int getSize()
+	{
+		return _size;
+	}
+
+	/**
+	 * Returns the number of searching threads.
+	 * @return threads count
+	 */
+	public int getThreads()
+	{
+		return _engines.length;
+	}
+
+	/**
+	 * Returns the main engine.
+	 * @return the engine run by the calling thread
+	 */
+	public SearchEngine getEngine()
+	{
+		return _engines[0];
+	}
+
+	/**
+	 * Returns the shared transposition table.
+	 * @return the table, or null
+	 */
+	public TranspositionTable getTranspositionTable()
+	{
+		return _table;
+	}
+
+	/**
+	 * Sets deterministic mode.
+	 * @param deterministic true for repeatable searches
+	 */
+	public void setDeterministic(boolean deterministic)
+	{
+		_deterministic = deterministic;
+		int threads = _engines.length;
+		if (deterministic && _tableSize > 0 && _privateTables == null)
+		{
+			_privateTables = new TranspositionTable[threads];
+			for (int i = 0; i < threads; i++)
+				_privateTables[i] = new TranspositionTable(Math.max(1, _tableSize / threads));
+		}
+		for (int i = 0; i < threads; i++)
+		{
+			SearchEngine engine = _engines[i];
+			if (deterministic)
+			{
+				engine.setTranspositionTable((_privateTables == null) ? null : _privateTables[i]);
+				engine.setRootMoves(i, threads);
+				engine.setStartDepth(1);
+			}
+			else
+			{
+				engine.setTranspositionTable(_table);
+				engine.setRootMoves(0, 1);
+				engine.setStartDepth((i % 2 == 0) ? 1 : 3);
+			}
+		}
+	}
+
+	/**
+	 * @return true in deterministic mode
+	 */
+	public boolean isDeterministic()
+	{
+		return _deterministic;
+	}
+
+	/**
+	 * Sets the positions played so far in the game, see SearchEngine.setGameHistory.
+	 * @param boards played positions, oldest first
+	 * @param count number of positions
+	 */
+	public void setGameHistory(BitBoard[] boards, int count)
+	{
+		for (int i = 0; i < _engines.length; i++)
+			_engines[i].setGameHistory(boards, count);
+	}
+
+	/**
+	 * Sets the endgame table of all the engines, see SearchEngine.setEndgameTable.
+	 * @param table endgame table of the board size, or null for none
+	 */
+	public void setEndgameTable(EndgameTable table)
+	{
+		for (int i = 0; i < _engines.length; i++)
+			_engines[i].setEndgameTable(table);
+	}
+
+	/**
+	 * Stops the search running in another thread, and the searches started after it,
+	 * until the search is allowed again. A stopped search returns the move of its last
+	 * completed iteration.
+	 * @param stopped true to stop, false to allow searching again
+	 */
+	public synchronized void setStopped(boolean stopped)
+	{
+		_stopped = stopped;
+		for (int i = 0; i < _engines.length; i++)
+			_engines[i].setStopped(stopped);
+	}
+
+	/**
+	 * Sets the budget of a move search, see SearchEngine.setLimits.
+	 * In deterministic mode the time budget is ignored, and the nodes budget applies to each engine.
+	 * @param timeLimit time budget in milliseconds, 0 for none
+	 * @param nodeLimit nodes budget, 0 for none
+	 */
+	public void setLimits(long timeLimit, long nodeLimit)
+	{
+		for (int i = 0; i < _engines.length; i++)
+			_engines[i].setLimits(_deterministic ? 0 : timeLimit, nodeLimit);
+	}
+
+	/**
+	 * Returns the number of nodes visited by all the threads in the last search.
+	 * @return nodes count
+	 */
+	public long getNodes()
+	{
+		return _nodes;
+	}
+
+	/**
+	 * Returns the depth of the last completed iteration of the played move.
+	 * @return depth in plies
+	 */
+	public int getCompletedDepth()
+	{
+		return _completedDepth;
+	}
+
+	/**
+	 * Finds the "best" move for a player, see SearchEngine.calculateMove.
+	 * @param board the current position
+	 * @param color color of the moving player
+	 * @param level player's level (depth of min-max tree), 0 plays a random move
+	 * @return array of squares, or null if the player has no moves
+	 */
+	public int[] calculateMove(BitBoard board, byte color, int level)
+	{
+		int threads = _engines.length;
+		int[][] results = new int[threads][];
+		if (_deterministic)
+		{
+			for (int i = 0; i < threads; i++)
+			{
+				_engines[i].setRandomSeed(DETERMINISTIC_SEED + i);
+				if (_privateTables != null)
+					_privateTables[i].clear();
+			}
+		}
+		synchronized (this)
+		{
+			for (int i = 0; i < threads; i++)
+				_engines[i].setStopped(_stopped);
+		}
+		Future[] helpers = new Future[threads - 1];
+		for (int i = 1; i < threads; i++)
+			helpers[i - 1] = submit(new Worker(_engines[i], board, color, level, results, i));
+		results[0] = _engines[0].calculateMove(board, color, level);
+		if (!_deterministic)
+			for (int i = 1; i < threads; i++)
+				_engines[i].setStopped(true);
+		for (int i = 0; i < helpers.length; i++)
+			join(helpers[i]);
+		_nodes = 0;
+		for (int i = 0; i < threads; i++)
+			_nodes += _engines[i].getNodes();
+		int chosen = _deterministic ? chooseBestValue(results) : chooseDeepest(results);
+		_completedDepth = _engines[chosen].getCompletedDepth();
+		return results[chosen];
+	}
+
+	/**
+	 * Runs a task on the search threads, which are shared by all the searches.
+	 * @param task the task
+	 * @return the pending completion of the task, see join
+	 */
+	public static Future submit(Runnable task)
+	{
+		return _executor.submit(task);
+	}
+
+	/**
+	 * Waits for a task run by submit to be over.
+	 * @param task the pending completion of the task
+	 */
+	public static void join(Future task)
+	{
+		try
+		{
+			task.get();
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException ee)
+		{
+			ee.getCause().printStackTrace();
+		}
+	}
+
+	/**
+	 * Chooses the engine with the deepest completed iteration, the main one on equality.
+	 * @param results moves found by the engines
+	 * @return index of the chosen engine
+	 */
+	private int chooseDeepest(int[][] results)
+	{
+		int chosen = 0;
+		for (int i = 1; i < results.length; i++)
+			if (results[i] != null && _engines[i].getCompletedDepth() > _engines[chosen].getCompletedDepth())
+				chosen = i;
+		return chosen;
+	}
+
+	/**
+	 * Chooses the engine whose root moves share found the best value, the first one on equality.
+	 * @param results moves found by the engines
+	 * @return index of the chosen engine
+	 */
+	private int chooseBestValue(int[][] results)
+	{
+		int chosen = 0;
+		for (int i = 1; i < results.length; i++)
+			if (results[i] != null && (results[chosen] == null || _engines[i].getValue() > _engines[chosen].getValue()))
+				chosen = i;
+		return chosen;
+	}
+
+	/**
+	 * Runs a helper engine search on a search thread.
+	 */
+	private static class Worker implements Runnable
+	{
+		private SearchEngine _engine;
+		private BitBoard _board;
+		private byte _color;
+		private int _level;
+		private int[][] _results;
+		private int _index;
+
+		/**
+		 * Constructs a worker.
+		 * @param engine the helper engine
+		 * @param board the current position, only read
+		 * @param color color of the moving player
+		 * @param level player's level
+		 * @param results where the found move is stored
+		 * @param index index of the engine in results
+		 */
+		Worker(SearchEngine engine, BitBoard board, byte color, int level, int[][] results, int index)
+		{
+			_engine = engine;
+			_board = board;
+			_color = color;
+			_level = level;
+			_results = results;
+			_index = index;
+		}
+
+		/**
+		 * Searches the move.
+		 */
+		public void run()
+		{
+			_results[_index] = _engine.calculateMove(_board, _color, _level);
+		}
+	}
+}
@@ -0,0 +1,1271 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.engine;
+
+import java.util.Random;
+
+import checkers.game.BitBoard;
+import checkers.game.MoveGenerator;
+import checkers.game.MoveList;
+import checkers.game.Player;
+import checkers.game.Zobrist;
+
+/**
+ * The SearchEngine class.
+ * A Java implementation of the native machine player search (Player::play).
+ *
+ * The search is a MiniMax in its negamax form, with Alpha-Beta pruning.
+ * At each node the table move is tried first, then the captures by captured material,
+ * promotions, the killer moves of the ply (simple moves that gave a cutoff in a
+ * sibling node) and the other simple moves by their history score (how often and how
+ * deep they gave cutoffs). Optionally, the moves are instead sorted as the native code
+ * does, so that the moves that result in less opponent moves are checked first,
+ * which generates the replies of every move (see setHeuristicOrdering).
+ * As in the native code, the tree always ends with a move of the searching player,
+ * so a level is rounded up to an odd number of plies, and leaves are evaluated
+ * from the point of view of the searching player.
+ * A leaf where a capture is pending is not evaluated: since captures are compulsory,
+ * the capture sequences are searched on until a quiet position is reached, whose
+ * evaluation is its stand pat value (see quiesce). These sequences are narrow, as only
+ * the capture moves are legal.
+ *
+ * The search deepens iteratively, two plies at a time, up to the level depth.
+ * Each iteration tries the principal variation of the previous one first, and the
+ * search stops early when its time or nodes budget (see setLimits) is exhausted.
+ * An iteration starts with an aspiration window around the value of the previous
+ * one, and is searched again with the failing side of the window opened if its value
+ * falls outside. Below the first move of a node, moves are searched with a null window
+ * (principal variation search), only to prove they are not better, and searched again
+ * with the full window if they are.
+ *
+ * Searched positions are kept in an optional transposition table, which gives
+ * cutoffs for positions reached again, and a best move that is tried first.
+ * Since leaves are evaluated from the searching player's point of view, table keys
+ * include the searching player as well as the player to move.
+ *
+ * The search works on a single BitBoard, making and unmaking moves in place,
+ * with one reusable MoveList per ply, so no objects are created while searching.
+ * The evaluator follows the moves made on the board, see IncrementalEvaluator.
+ * A SearchEngine is not thread safe, but several engines may share a transposition
+ * table, see ParallelSearch.
+ *
+ * Positions with few pieces are looked up in an optional endgame table, which gives
+ * their exact values, with wins found sooner valued higher as in the search.
+ * When the root position itself is won or lost, the move is chosen by the table alone.
+ */
+public class SearchEngine
+{
+	/**
+	 * Value of a won position. Wins found sooner get higher values.
+	 */
+	public static final int WIN = 1000000000;
+
+	/**
+	 * Bound beyond any position value.
+	 */
+	protected static final int INFINITY = WIN + 1;
+
+	/**
+	 * Maximal search depth, in plies.
+	 */
+	public static final int MAX_PLY = 64;
+
+	/**
+	 * Budget is checked once every CHECK_INTERVAL + 1 nodes.
+	 */
+	private static final int CHECK_INTERVAL = 0x3ff;
+
+	/**
+	 * Number of killer moves kept per ply.
+	 */
+	private static final int KILLERS = 2;
+
+	/**
+	 * Ordering scores of captures (per captured peon, a king counting as two peons),
+	 * promotions and killer moves. History scores stay below KILLER_SCORE.
+	 */
+	private static final int CAPTURE_SCORE = 1 << 24;
+	private static final int PROMOTION_SCORE = 1 << 23;
+	private static final int KILLER_SCORE = 1 << 22;
+
+	/**
+	 * Default half width of the aspiration windows.
+	 */
+	public static final int DEFAULT_ASPIRATION_WINDOW = 1 << 18;
+
+	/**
+	 * Key of a search made by the black player, so both players may share a table.
+	 */
+	private static final long BLACK_SEARCH = new Random(Zobrist.BLACK_TO_MOVE).nextLong();
+
+	/**
+	 * Board dimension.
+	 */
+	protected int _size;
+
+	/**
+	 * Board evaluator, which tracks the searched board.
+	 */
+	protected IncrementalEvaluator _evaluator;
+
+	/**
+	 * Move generator.
+	 */
+	protected MoveGenerator _generator;
+
+	/**
+	 * Move lists, one per ply.
+	 */
+	protected MoveList[] _moves;
+
+	/**
+	 * Ordering keys of the moves, one array per ply.
+	 */
+	protected int[][] _keys;
+
+	/**
+	 * The searched position, updated in place.
+	 */
+	protected BitBoard _board;
+
+	/**
+	 * Color of the searching player.
+	 */
+	protected byte _color;
+
+	/**
+	 * Depth of the current search, in plies.
+	 */
+	protected int _depth;
+
+	/**
+	 * Evaluation of the root position from the searching player's point of view,
+	 * which the values of the draws are based on (see getDrawValue).
+	 */
+	protected int _drawValue;
+
+	/**
+	 * Set by search when the value returned is the value of a draw, found at the node
+	 * or passed up by its best move. Draw values depend on the ply and on the root, so
+	 * such values are not stored in the transposition table.
+	 */
+	protected boolean _drawScored;
+
+	/**
+	 * Number of nodes visited by the last search.
+	 */
+	protected long _nodes;
+
+	/**
+	 * Random generator, used to choose between equally good moves.
+	 */
+	protected Random _random;
+
+	/**
+	 * Positions from the start of the game to the current node, for draw detection.
+	 * Each position takes four entries: black peons, black kings, white peons and white kings.
+	 */
+	protected long[] _history;
+
+	/**
+	 * Number of positions in the history.
+	 */
+	protected int _historySize;
+
+	/**
+	 * Number of positions that were played in the game, the rest are search positions.
+	 */
+	protected int _gameHistorySize;
+
+	/**
+	 * Transposition table, or null.
+	 */
+	protected TranspositionTable _table;
+
+	/**
+	 * Endgame table, or null.
+	 */
+	protected EndgameTable _endgame;
+
+	/**
+	 * Time budget of a move, in milliseconds, 0 for none.
+	 */
+	protected long _timeLimit;
+
+	/**
+	 * Nodes budget of a move, 0 for none.
+	 */
+	protected long _nodeLimit;
+
+	/**
+	 * Time at which the current search must stop, 0 for none.
+	 */
+	protected long _deadline;
+
+	/**
+	 * Set when the budget runs out, the current iteration is then dropped.
+	 */
+	protected boolean _aborted;
+
+	/**
+	 * Depth of the last completed iteration.
+	 */
+	protected int _completedDepth;
+
+	/**
+	 * Value of the last completed iteration.
+	 */
+	protected int _value;
+
+	/**
+	 * Principal variations, by ply: _pv[ply] holds the best line from ply onwards.
+	 */
+	protected int[][] _pv;
+
+	/**
+	 * Lengths of the principal variations (index after their last move).
+	 */
+	protected int[] _pvLength;
+
+	/**
+	 * Principal variation of the last completed iteration.
+	 */
+	protected int[] _previousPv;
+
+	/**
+	 * Length of the principal variation of the last completed iteration.
+	 */
+	protected int _previousPvLength;
+
+	/**
+	 * True while the search follows the previous principal variation, whose moves are then tried first.
+	 */
+	protected boolean _followPv;
+
+	/**
+	 * Set by another thread to stop the search.
+	 */
+	protected volatile boolean _stopped;
+
+	/**
+	 * Depth of the first iteration.
+	 */
+	protected int _startDepth = 1;
+
+	/**
+	 * Index of the first root move searched.
+	 */
+	protected int _rootFirst;
+
+	/**
+	 * Distance between searched root moves.
+	 */
+	protected int _rootStep = 1;
+
+	/**
+	 * Moves ordered by heuristics, or by the number of opponent replies as the native code does.
+	 */
+	protected boolean _heuristicOrdering = true;
+
+	/**
+	 * Leaves with a pending capture searched on, or evaluated as they are.
+	 */
+	protected boolean _quiescence = true;
+
+	/**
+	 * Moves after the first one searched with a null window first.
+	 */
+	protected boolean _pvs = true;
+
+	/**
+	 * Half width of the aspiration windows, 0 to search every iteration with the full window.
+	 */
+	protected int _aspirationWindow = DEFAULT_ASPIRATION_WINDOW;
+
+	/**
+	 * Counters of the last search: null window searches, and those searched again;
+	 * iterations started with an aspiration window, and those searched again.
+	 */
+	protected long _nullWindowSearches;
+	protected long _pvsResearches;
+	protected long _aspirationSearches;
+	protected long _aspirationResearches;
+
+	/**
+	 * Killer moves by ply, as packed by TranspositionTable.packMove, the latest first.
+	 */
+	protected int[][] _killers;
+
+	/**
+	 * History scores of the simple moves, by color, source and target squares.
+	 */
+	protected int[] _historyScores;
+
+	/**
+	 * Number of nodes with a beta cutoff, and of those where the first move gave it, in the last search.
+	 */
+	protected long _cutoffs;
+	protected long _firstMoveCutoffs;
+
+	/**
+	 * Constructs a search engine.
+	 * @param size board dimension
+	 * @param weights evaluation weights
+	 */
+	public SearchEngine(int size, Weights weights)
+	{
+		_size = size;
+		_evaluator = new IncrementalEvaluator(size, weights);
+		_generator = new MoveGenerator();
+		_moves = new MoveList[MAX_PLY + 1];
+		_keys = new int[MAX_PLY + 1][];
+		for (int i = 0; i <= MAX_PLY; i++)
+		{
+			_moves[i] = new MoveList();
+			_keys[i] = new int[32];
+		}
+		_board = new BitBoard(size);
+		_random = new Random();
+		_history = new long[4 * (MAX_PLY + 64)];
+		_pv = new int[MAX_PLY + 1][MAX_PLY + 1];
+		_pvLength = new int[MAX_PLY + 1];
+		_previousPv = new int[MAX_PLY + 1];
+		_killers = new int[MAX_PLY + 1][KILLERS];
+		int squares = _board.getNumberOfSquares();
+		_historyScores = new int[2 * squares * squares];
+	}
+
+	/**
+	 * Returns the board dimension this engine plays on.
+	 * @return board dimension
+	 */
+	public int getSize()
+	{
+		return _size;
+	}
+
+	/**
+	 * Returns the evaluator of this engine.
+	 * @return board evaluator
+	 */
+	public Evaluator getEvaluator()
+	{
+		return _evaluator;
+	}
+
+	/**
+	 * Sets the transposition table used by the search.
+	 * @param table transposition table, or null for none
+	 */
+	public void setTranspositionTable(TranspositionTable table)
+	{
+		_table = table;
+	}
+
+	/**
+	 * Sets the move ordering.
+	 * @param heuristic true for the killer and history heuristics, false to sort the
+	 *        moves by the number of opponent replies
+	 */
+	public void setHeuristicOrdering(boolean heuristic)
+	{
+		_heuristicOrdering = heuristic;
+	}
+
+	/**
+	 * Sets the quiescence search.
+	 * @param quiescence true to search the capture sequences of the leaves
+	 */
+	public void setQuiescence(boolean quiescence)
+	{
+		_quiescence = quiescence;
+	}
+
+	/**
+	 * Sets the principal variation search.
+	 * @param pvs true to search the moves after the first one with a null window first
+	 */
+	public void setPrincipalVariationSearch(boolean pvs)
+	{
+		_pvs = pvs;
+	}
+
+	/**
+	 * Sets the aspiration windows.
+	 * @param window half width of the windows, 0 for none
+	 */
+	public void setAspirationWindow(int window)
+	{
+		_aspirationWindow = Math.max(0, window);
+	}
+
+	/**
+	 * Returns the transposition table used by the search.
+	 * @return transposition table, or null
+	 */
+	public TranspositionTable getTranspositionTable()
+	{
+		return _table;
+	}
+
+	/**
+	 * Sets the endgame table used by the search.
+	 * @param table endgame table of the board size, or null for none
+	 */
+	public void setEndgameTable(EndgameTable table)
+	{
+		_endgame = table;
+	}
+
+	/**
+	 * Returns the endgame table used by the search.
+	 * @return endgame table, or null
+	 */
+	public EndgameTable getEndgameTable()
+	{
+		return _endgame;
+	}
+
+	/**
+	 * Sets the positions played so far in the game, for draw detection.
+	 * The last position should be the current one.
+	 * @param boards played positions, oldest first
+	 * @param count number of positions
+	 */
+	public void setGameHistory(BitBoard[] boards, int count)
+	{
+		_historySize = 0;
+		for (int i = 0; i < count; i++)
+			pushHistory(boards[i]);
+		_gameHistorySize = _historySize;
+	}
+
+	/**
+	 * Returns the number of nodes visited by the last search.
+	 * @return nodes count
+	 */
+	public long getNodes()
+	{
+		return _nodes;
+	}
+
+	/**
+	 * Sets the budget of a move search. The search deepens until the level depth
+	 * is reached or a budget is exhausted, and plays the best move of the last completed depth.
+	 * The first iteration is always completed.
+	 * @param timeLimit time budget in milliseconds, 0 for none
+	 * @param nodeLimit nodes budget, 0 for none
+	 */
+	public void setLimits(long timeLimit, long nodeLimit)
+	{
+		_timeLimit = timeLimit;
+		_nodeLimit = nodeLimit;
+	}
+
+	/**
+	 * Stops or allows the search. A stopped search returns as soon as it can, with the
+	 * best move of its last completed iteration, if any.
+	 * May be called from another thread.
+	 * @param stopped true to stop, false to allow the next searches
+	 */
+	public void setStopped(boolean stopped)
+	{
+		_stopped = stopped;
+	}
+
+	/**
+	 * Sets the depth of the first iteration (rounded up to an odd number of plies).
+	 * @param depth first iteration depth
+	 */
+	public void setStartDepth(int depth)
+	{
+		_startDepth = Math.max(1, depth | 1);
+	}
+
+	/**
+	 * Restricts the search to part of the root moves: the moves first, first + step,
+	 * first + 2 * step... of the generated moves list.
+	 * @param first index of the first searched root move
+	 * @param step distance between searched root moves, 1 to search all of them
+	 */
+	public void setRootMoves(int first, int step)
+	{
+		_rootFirst = first;
+		_rootStep = step;
+	}
+
+	/**
+	 * Seeds the random generator used to choose between equally good moves,
+	 * so that searches can be repeated.
+	 * @param seed random seed
+	 */
+	public void setRandomSeed(long seed)
+	{
+		_random.setSeed(seed);
+	}
+
+	/**
+	 * Returns the depth of the last completed iteration of the last search.
+	 * @return depth in plies, 0 if no search was made
+	 */
+	public int getCompletedDepth()
+	{
+		return _completedDepth;
+	}
+
+	/**
+	 * Returns the value of the last completed iteration of the last search.
+	 * @return value of the chosen move, from the searching player's point of view
+	 */
+	public int getValue()
+	{
+		return _value;
+	}
+
+	/**
+	 * Returns the number of nodes with a beta cutoff in the last search.
+	 * @return cutoffs count
+	 */
+	public long getCutoffs()
+	{
+		return _cutoffs;
+	}
+
+	/**
+	 * Returns the number of nodes where the first move searched gave a beta cutoff in the last search.
+	 * The ratio to getCutoffs measures the move ordering.
+	 * @return first move cutoffs count
+	 */
+	public long getFirstMoveCutoffs()
+	{
+		return _firstMoveCutoffs;
+	}
+
+	/**
+	 * Returns the re-search counters of the last search.
+	 * @return null window searches, those searched again with the full window,
+	 *         iterations started with an aspiration window, and those searched again
+	 */
+	public long[] getResearchCounters()
+	{
+		return new long[] {_nullWindowSearches, _pvsResearches, _aspirationSearches, _aspirationResearches};
+	}
+
+	/**
+	 * Returns the principal variation of the last completed iteration.
+	 * Moves are given by their source and target squares, as packed by TranspositionTable.packMove.
+	 * @return moves expected from the root, the chosen move first
+	 */
+	public int[] getPrincipalVariation()
+	{
+		int[] pv = new int[_previousPvLength];
+		System.arraycopy(_previousPv, 0, pv, 0, _previousPvLength);
+		return pv;
+	}
+
+	/**
+	 * Finds the "best" move for a player.
+	 * The returned value is an array of square indices, which the selected move
+	 * passes through, including the square which the selected piece starts from,
+	 * as returned by the native calculateMove.
+	 * @param board the current position
+	 * @param color color of the moving player
+	 * @param level player's level (depth of min-max tree), 0 plays a random move
+	 * @return array of squares, or null if the player has no moves (or no searched root moves)
+	 */
+	public int[] calculateMove(BitBoard board, byte color, int level)
+	{
+		_board.copyFrom(board);
+		_evaluator.reset(_board);
+		_color = color;
+		_nodes = 0;
+		_cutoffs = 0;
+		_firstMoveCutoffs = 0;
+		_nullWindowSearches = 0;
+		_pvsResearches = 0;
+		_aspirationSearches = 0;
+		_aspirationResearches = 0;
+		_completedDepth = 0;
+		_value = 0;
+		_previousPvLength = 0;
+		_historySize = _gameHistorySize;
+		if (_historySize == 0 || !isLastInHistory())
+			pushHistory(_board);
+		MoveList moves = _moves[0];
+		int count = _generator.generate(_board, color, moves);
+		if (count == 0)
+			return null; // no moves, lose..
+		if (level <= 0)
+			return moves.getSquares(_random.nextInt(count)); // play random, can't think..
+		if (count == 1)
+			return moves.getSquares(0); // save time, only one move..
+		if (_rootStep > 1)
+		{
+			moves.retain(_rootFirst, _rootStep);
+			if (moves.size() == 0)
+			{
+				_value = -INFINITY;
+				return null;
+			}
+		}
+		int maxDepth = Math.min(MAX_PLY, (level % 2 == 0) ? level + 1 : level);
+		_drawValue = _evaluator.evaluate(_board, color);
+		int tableIndex = probeRoot();
+		if (tableIndex >= 0)
+		{
+			_completedDepth = maxDepth;
+			return moves.getSquares(tableIndex);
+		}
+		if (_table != null)
+			_table.newSearch();
+		_deadline = (_timeLimit > 0) ? System.currentTimeMillis() + _timeLimit : 0;
+		_aborted = false;
+		clearKillers();
+		orderMoves(0, _color);
+		int rootHistorySize = _historySize;
+		int bestIndex = 0;
+		for (_depth = Math.min(_startDepth, maxDepth); _depth <= maxDepth; _depth += 2)
+		{
+			int value = _value;
+			int alpha = -INFINITY;
+			int beta = INFINITY;
+			if (_aspirationWindow > 0 && _completedDepth > 0 && Math.abs(value) < WIN - MAX_PLY)
+			{
+				alpha = value - _aspirationWindow;
+				beta = value + _aspirationWindow;
+				_aspirationSearches++;
+			}
+			_followPv = _previousPvLength > 0;
+			int index = searchRoot(alpha, beta);
+			while (!_aborted && ((_value <= alpha && alpha > -INFINITY) || (_value >= beta && beta < INFINITY)))
+			{
+				_aspirationResearches++;
+				if (_value <= alpha)
+					alpha = -INFINITY;
+				else
+					beta = INFINITY;
+				_followPv = _previousPvLength > 0;
+				index = searchRoot(alpha, beta);
+			}
+			if (_aborted)
+			{
+				_historySize = rootHistorySize;
+				_value = value;
+				break;
+			}
+			bestIndex = index;
+			_completedDepth = _depth;
+			_previousPvLength = _pvLength[0];
+			System.arraycopy(_pv[0], 0, _previousPv, 0, _previousPvLength);
+			if (isOutOfBudget() || _stopped)
+				break;
+		}
+		return moves.getSquares(bestIndex);
+	}
+
+	/**
+	 * Searches the root moves.
+	 * Each move is searched with a window just below the best value found so far,
+	 * so that equally good moves get exact values, and one of them is chosen at random.
+	 * With the principal variation search, the moves after the first one are first
+	 * searched with a window of two values, which still tells equally good moves.
+	 * @param alpha lower window value
+	 * @param beta upper window value
+	 * @return index of the chosen move in the root move list
+	 */
+	protected int searchRoot(int alpha, int beta)
+	{
+		MoveList moves = _moves[0];
+		int count = moves.size();
+		long key = getKey(_color);
+		if (_table != null)
+			hashMoveFirst(0, _table.probe(key));
+		if (_followPv)
+			moveFirst(0, _previousPv[0]);
+		_pvLength[0] = 0;
+		int best = -INFINITY;
+		int bestIndex = 0;
+		int ties = 0;
+		boolean bestDraw = false;
+		byte opponent = Player.reverse(_color);
+		for (int i = 0; i < count && best < beta; i++)
+		{
+			_pvLength[1] = 0;
+			makeMove(moves, i);
+			int low = Math.max(alpha, best - 1);
+			int val;
+			_drawScored = false;
+			if (isDraw())
+			{
+				val = getDrawValue(1, _color);
+				_drawScored = true;
+			}
+			else if (_pvs && i > 0 && beta - low > 2)
+			{
+				_nullWindowSearches++;
+				val = -search(1, opponent, -(low + 2), -low);
+				if (val > low + 1 && val < beta && !_aborted)
+				{
+					_pvsResearches++;
+					val = -search(1, opponent, -beta, -low);
+				}
+			}
+			else
+				val = -search(1, opponent, -beta, -low);
+			boolean draw = _drawScored;
+			unmakeMove(moves, i);
+			_followPv = false;
+			if (_aborted)
+				return bestIndex;
+			if (val > best)
+			{
+				best = val;
+				bestIndex = i;
+				bestDraw = draw;
+				ties = 1;
+			}
+			else if (val == best && _random.nextInt(++ties) == 0)
+				bestIndex = i;
+			if (bestIndex == i)
+				updatePv(0, i);
+		}
+		_value = best;
+		if (_table != null && !bestDraw)
+			store(key, 0, best, (best <= alpha) ? TranspositionTable.BOUND_UPPER
+				: (best >= beta) ? TranspositionTable.BOUND_LOWER : TranspositionTable.BOUND_EXACT, bestIndex);
+		return bestIndex;
+	}
+
+	/**
+	 * Chooses the root move by the endgame table, if the root position is won or lost.
+	 * The winner takes the shortest way to the end, and the loser the longest, unless
+	 * a move draws by repetition.
+	 * @return index of the chosen move in the root move list, or -1 to search
+	 */
+	protected int probeRoot()
+	{
+		if (_endgame == null || _board.getNumberOfPieces() > _endgame.getMaxPieces()
+			|| !EndgameTable.isDecided(_endgame.probe(_board, _color)))
+			return -1;
+		MoveList moves = _moves[0];
+		byte opponent = Player.reverse(_color);
+		_pvLength[0] = 0;
+		int best = -INFINITY;
+		int bestIndex = 0;
+		int ties = 0;
+		for (int i = 0; i < moves.size(); i++)
+		{
+			_pvLength[1] = 0;
+			makeMove(moves, i);
+			int entry = (_board.getPieces(opponent) == 0) ? 1 : _endgame.probe(_board, opponent);
+			int val = isDraw() ? getDrawValue(1, _color)
+				: (entry == EndgameTable.NOT_FOUND) ? -INFINITY : -getEndgameValue(entry, 1, opponent);
+			unmakeMove(moves, i);
+			if (val > best)
+			{
+				best = val;
+				bestIndex = i;
+				ties = 1;
+			}
+			else if (val == best && _random.nextInt(++ties) == 0)
+				bestIndex = i;
+			if (bestIndex == i)
+				updatePv(0, i);
+		}
+		if (best == -INFINITY)
+			return -1; // table without some of the materials
+		_value = best;
+		return bestIndex;
+	}
+
+	/**
+	 * Converts an endgame table entry to a search value.
+	 * @param entry the probe result, DRAW or won or lost
+	 * @param ply distance from the root
+	 * @param color color of the player to move
+	 * @return value of the position from the point of view of the player to move
+	 */
+	protected int getEndgameValue(int entry, int ply, byte color)
+	{
+		if (!EndgameTable.isDecided(entry))
+			return getDrawValue(ply, color);
+		int end = ply + EndgameTable.getDistance(entry);
+		return EndgameTable.isWin(entry) ? WIN - end : -WIN + end;
+	}
+
+	/**
+	 * Returns the value of a draw, as scored by the native Player::play, evalMin and
+	 * evalMax: 0 after the root moves, and deeper, minus the evaluation of the root
+	 * divided by the square of the ply ("positive value if we're losing, and negative
+	 * if winning"). So a player ahead avoids the draws, and a player behind looks for them.
+	 * @param ply distance of the drawn position from the root
+	 * @param color color of the player to move
+	 * @return value of the draw from the point of view of the player to move
+	 */
+	protected int getDrawValue(int ply, byte color)
+	{
+		int value = (ply <= 1) ? 0 : -_drawValue / (ply * ply);
+		return (color == _color) ? value : -value;
+	}
+
+	/**
+	 * Searches a node.
+	 * Sets _drawScored if the value is the value of a draw.
+	 * @param ply distance from the root
+	 * @param color color of the player to move
+	 * @param alpha lower window value
+	 * @param beta upper window value
+	 * @return value of the node from the point of view of the player to move
+	 */
+	protected int search(int ply, byte color, int alpha, int beta)
+	{
+		_pvLength[ply] = 0;
+		_drawScored = false;
+		if ((++_nodes & CHECK_INTERVAL) == 0 && (_stopped || (_completedDepth > 0 && isOutOfBudget())))
+			_aborted = true;
+		if (_aborted)
+			return 0;
+		if (_endgame != null && _board.getNumberOfPieces() <= _endgame.getMaxPieces())
+		{
+			int entry = _endgame.probe(_board, color);
+			if (entry != EndgameTable.NOT_FOUND)
+			{
+				_drawScored = !EndgameTable.isDecided(entry);
+				return getEndgameValue(entry, ply, color);
+			}
+		}
+		if (ply >= _depth)
+			return _quiescence ? quiesce(ply, color, alpha, beta) : evaluate(color, alpha, beta); // final leaf
+		long key = 0;
+		long entry = 0;
+		if (_table != null)
+		{
+			key = getKey(color);
+			entry = _table.probe(key);
+			if (entry != 0 && TranspositionTable.getDepth(entry) >= _depth - ply && !_followPv)
+			{
+				int val = TranspositionTable.fromTable(TranspositionTable.getValue(entry), ply);
+				int bound = TranspositionTable.getBound(entry);
+				if (bound == TranspositionTable.BOUND_EXACT
+					|| (bound == TranspositionTable.BOUND_LOWER && val >= beta)
+					|| (bound == TranspositionTable.BOUND_UPPER && val <= alpha))
+					return val;
+			}
+		}
+		MoveList moves = _moves[ply];
+		int count = _generator.generate(_board, color, moves);
+		if (count == 0)
+			return -WIN + ply; // no moves, sure lose..
+		if (_heuristicOrdering || ply + 1 < _depth)
+			orderMoves(ply, color);
+		hashMoveFirst(ply, entry);
+		if (_followPv)
+			_followPv = ply < _previousPvLength && moveFirst(ply, _previousPv[ply]);
+		pushHistory(_board);
+		int best = -INFINITY;
+		int bestIndex = 0;
+		boolean bestDraw = false;
+		byte opponent = Player.reverse(color);
+		for (int i = 0; i < count && best < beta; i++)
+		{
+			_pvLength[ply + 1] = 0;
+			makeMove(moves, i);
+			int low = Math.max(alpha, best);
+			int val;
+			_drawScored = false;
+			if (isDraw())
+			{
+				val = getDrawValue(ply + 1, color);
+				_drawScored = true;
+			}
+			else if (_pvs && i > 0 && beta - low > 1)
+			{
+				_nullWindowSearches++;
+				val = -search(ply + 1, opponent, -(low + 1), -low);
+				if (val > low && val < beta && !_aborted)
+				{
+					_pvsResearches++;
+					val = -search(ply + 1, opponent, -beta, -low);
+				}
+			}
+			else
+				val = -search(ply + 1, opponent, -beta, -low);
+			boolean draw = _drawScored;
+			unmakeMove(moves, i);
+			_followPv = false;
+			if (_aborted)
+				break;
+			if (val > best)
+			{
+				best = val;
+				bestIndex = i;
+				bestDraw = draw;
+				updatePv(ply, i);
+			}
+		}
+		_historySize--;
+		if (_aborted)
+			return 0;
+		if (best >= beta)
+			cutoff(ply, color, bestIndex);
+		_drawScored = bestDraw;
+		if (_table != null && !bestDraw)
+			store(key, ply, best, (best <= alpha) ? TranspositionTable.BOUND_UPPER
+				: (best >= beta) ? TranspositionTable.BOUND_LOWER : TranspositionTable.BOUND_EXACT, bestIndex);
+		return best;
+	}
+
+	/**
+	 * Searches the capture sequences of a leaf.
+	 * A quiet position is evaluated, and its value stands as the player to move has
+	 * nothing forced. When a capture is pending the player must capture, so there is no
+	 * stand pat, and the value is the best of the capture moves.
+	 * @param ply distance from the root
+	 * @param color color of the player to move
+	 * @param alpha lower window value
+	 * @param beta upper window value
+	 * @return value of the node from the point of view of the player to move
+	 */
+	protected int quiesce(int ply, byte color, int alpha, int beta)
+	{
+		_pvLength[ply] = 0;
+		if (ply >= MAX_PLY || !_generator.hasCapture(_board, color))
+			return evaluate(color, alpha, beta); // quiet leaf
+		MoveList moves = _moves[ply];
+		int count = _generator.generate(_board, color, moves);
+		orderMoves(ply, color);
+		int best = -INFINITY;
+		byte opponent = Player.reverse(color);
+		for (int i = 0; i < count && best < beta; i++)
+		{
+			if ((++_nodes & CHECK_INTERVAL) == 0 && (_stopped || (_completedDepth > 0 && isOutOfBudget())))
+				_aborted = true;
+			if (_aborted)
+				return 0;
+			_pvLength[ply + 1] = 0;
+			makeMove(moves, i);
+			int val = -quiesce(ply + 1, opponent, -beta, -Math.max(alpha, best));
+			unmakeMove(moves, i);
+			if (val > best)
+			{
+				best = val;
+				updatePv(ply, i);
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Makes a move on the searched board, and reports it to the evaluator.
+	 * @param moves move list
+	 * @param index index of the move in list
+	 */
+	protected void makeMove(MoveList moves, int index)
+	{
+		moves.makeMove(_board, index);
+		_evaluator.makeMove(moves.getMove(index), moves.getCapturedPeons(index), moves.getCapturedKings(index));
+	}
+
+	/**
+	 * Takes back a move made by makeMove.
+	 * @param moves move list
+	 * @param index index of the move in list
+	 */
+	protected void unmakeMove(MoveList moves, int index)
+	{
+		moves.unmakeMove(_board, index);
+		_evaluator.unmakeMove(moves.getMove(index), moves.getCapturedPeons(index), moves.getCapturedKings(index));
+	}
+
+	/**
+	 * Checks whether the search budget is exhausted.
+	 * @return true iff the time or nodes budget is exhausted
+	 */
+	protected boolean isOutOfBudget()
+	{
+		return (_nodeLimit > 0 && _nodes >= _nodeLimit)
+			|| (_deadline > 0 && System.currentTimeMillis() >= _deadline);
+	}
+
+	/**
+	 * Sets the principal variation of a ply to a move followed by the variation of the next ply.
+	 * @param ply the ply
+	 * @param index index of the move in the ply move list
+	 */
+	protected void updatePv(int ply, int index)
+	{
+		int move = _moves[ply].getMove(index);
+		int[] pv = _pv[ply];
+		pv[ply] = TranspositionTable.packMove(BitBoard.getFrom(move), BitBoard.getTo(move));
+		int length = Math.max(ply + 1, _pvLength[ply + 1]);
+		System.arraycopy(_pv[ply + 1], ply + 1, pv, ply + 1, length - ply - 1);
+		_pvLength[ply] = length;
+	}
+
+	/**
+	 * Returns the transposition table key of the current position.
+	 * @param color color of the player to move
+	 * @return position key
+	 */
+	protected long getKey(byte color)
+	{
+		long key = _board.getHash();
+		if (color == Player.PLAYER_BLACK)
+			key ^= Zobrist.BLACK_TO_MOVE;
+		if (_color == Player.PLAYER_BLACK)
+			key ^= BLACK_SEARCH;
+		return key;
+	}
+
+	/**
+	 * Stores a searched node in the transposition table.
+	 * @param key position key
+	 * @param ply distance from the root
+	 * @param value value of the node
+	 * @param bound type of the value
+	 * @param bestIndex index of the best move in the ply move list
+	 */
+	protected void store(long key, int ply, int value, int bound, int bestIndex)
+	{
+		int move = _moves[ply].getMove(bestIndex);
+		_table.store(key, TranspositionTable.toTable(value, ply), bound, _depth - ply,
+			TranspositionTable.packMove(BitBoard.getFrom(move), BitBoard.getTo(move)));
+	}
+
+	/**
+	 * Moves the best move of a transposition table entry to the head of the ply move list.
+	 * @param ply the ply whose moves are reordered
+	 * @param entry the table entry of the position, or 0
+	 */
+	protected void hashMoveFirst(int ply, long entry)
+	{
+		if (entry != 0)
+			moveFirst(ply, TranspositionTable.getMove(entry));
+	}
+
+	/**
+	 * Moves a move to the head of the ply move list, keeping the order of the other moves.
+	 * @param ply the ply whose moves are reordered
+	 * @param packed the move, as packed by TranspositionTable.packMove
+	 * @return true iff the move was found
+	 */
+	protected boolean moveFirst(int ply, int packed)
+	{
+		MoveList moves = _moves[ply];
+		int count = moves.size();
+		for (int i = 0; i < count; i++)
+		{
+			int move = moves.getMove(i);
+			if (TranspositionTable.packMove(BitBoard.getFrom(move), BitBoard.getTo(move)) == packed)
+			{
+				for (; i > 0; i--)
+					moves.swap(i, i - 1);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Evaluates the current position, lazily: values outside the window are bounds.
+	 * @param color color of the player to move
+	 * @param alpha lower window value
+	 * @param beta upper window value
+	 * @return value of the position from the point of view of the player to move
+	 */
+	protected int evaluate(byte color, int alpha, int beta)
+	{
+		if (color == _color)
+			return _evaluator.evaluate(_board, _color, alpha, beta);
+		return -_evaluator.evaluate(_board, _color, -beta, -alpha);
+	}
+
+	/**
+	 * Records a beta cutoff: a simple move becomes the first killer of the ply, and
+	 * its history score grows by the square of the remaining depth.
+	 * The history scores are halved when one of them reaches KILLER_SCORE.
+	 * @param ply the ply of the node
+	 * @param color color of the moving player
+	 * @param index index of the move in the ply move list
+	 */
+	protected void cutoff(int ply, byte color, int index)
+	{
+		_cutoffs++;
+		if (index == 0)
+			_firstMoveCutoffs++;
+		MoveList moves = _moves[ply];
+		if (moves.isCapture(index))
+			return;
+		int move = moves.getMove(index);
+		int packed = TranspositionTable.packMove(BitBoard.getFrom(move), BitBoard.getTo(move));
+		int[] killers = _killers[ply];
+		if (killers[0] != packed)
+		{
+			System.arraycopy(killers, 0, killers, 1, KILLERS - 1);
+			killers[0] = packed;
+		}
+		int depth = _depth - ply;
+		int i = getHistoryIndex(color, move);
+		_historyScores[i] += depth * depth;
+		if (_historyScores[i] >= KILLER_SCORE)
+			for (int j = 0; j < _historyScores.length; j++)
+				_historyScores[j] >>= 1;
+	}
+
+	/**
+	 * Clears the killer moves, and ages the history scores, before a new search.
+	 */
+	protected void clearKillers()
+	{
+		for (int ply = 0; ply <= MAX_PLY; ply++)
+			for (int i = 0; i < KILLERS; i++)
+				_killers[ply][i] = 0;
+		for (int i = 0; i < _historyScores.length; i++)
+			_historyScores[i] >>= 3;
+	}
+
+	/**
+	 * @return index of a move in the history scores
+	 */
+	private int getHistoryIndex(byte color, int move)
+	{
+		int squares = _board.getNumberOfSquares();
+		return ((color == Player.PLAYER_WHITE ? squares : 0) + BitBoard.getFrom(move)) * squares + BitBoard.getTo(move);
+	}
+
+	/**
+	 * Sorts the moves of a ply, best first, by heuristics or by the number of opponent replies.
+	 * @param ply the ply whose moves are sorted
+	 * @param color color of the moving player
+	 */
+	protected void orderMoves(int ply, byte color)
+	{
+		MoveList moves = _moves[ply];
+		int count = moves.size();
+		if (_keys[ply].length < count)
+			_keys[ply] = new int[count * 2];
+		if (!_heuristicOrdering)
+		{
+			orderByReplies(ply, color);
+			return;
+		}
+		int[] keys = _keys[ply];
+		int[] killers = _killers[ply];
+		for (int i = 0; i < count; i++)
+		{
+			int move = moves.getMove(i);
+			int score;
+			if (moves.isCapture(i))
+				score = CAPTURE_SCORE * (Long.bitCount(moves.getCapturedPeons(i)) + 2 * Long.bitCount(moves.getCapturedKings(i)));
+			else
+			{
+				int packed = TranspositionTable.packMove(BitBoard.getFrom(move), BitBoard.getTo(move));
+				score = (packed == killers[0]) ? KILLER_SCORE + 1
+					: (packed == killers[1]) ? KILLER_SCORE
+					: _historyScores[getHistoryIndex(color, move)];
+			}
+			if ((move & BitBoard.PROMOTION) != 0)
+				score += PROMOTION_SCORE;
+			keys[i] = -score;
+		}
+		sortMoves(moves, keys, 0, count);
+	}
+
+	/**
+	 * Sorts the moves of a ply by the number of replies left to the opponent, fewest first.
+	 * @param ply the ply whose moves are sorted
+	 * @param color color of the moving player
+	 */
+	protected void orderByReplies(int ply, byte color)
+	{
+		MoveList moves = _moves[ply];
+		int count = moves.size();
+		int[] keys = _keys[ply];
+		byte opponent = Player.reverse(color);
+		for (int i = 0; i < count; i++) // nothing is evaluated, so the evaluator is not updated
+		{
+			moves.makeMove(_board, i);
+			keys[i] = _generator.generate(_board, opponent, _moves[ply + 1]);
+			moves.unmakeMove(_board, i);
+		}
+		sortMoves(moves, keys, 0, count);
+	}
+
+	/**
+	 * Sorts part of a move list by ascending keys. The sort is stable.
+	 * @param moves the move list
+	 * @param keys keys of the moves, sorted along with them
+	 * @param from first index to sort
+	 * @param to index after the last one to sort
+	 */
+	protected static void sortMoves(MoveList moves, int[] keys, int from, int to)
+	{
+		for (int i = from + 1; i < to; i++)
+		{
+			int key = keys[i];
+			int j = i;
+			for (; j > from && keys[j - 1] > key; j--)
+			{
+				keys[j] = keys[j - 1];
+				moves.swap(j, j - 1);
+			}
+			keys[j] = key;
+		}
+	}
+
+	/**
+	 * Adds a position to the history.
+	 * @param board the position
+	 */
+	protected void pushHistory(BitBoard board)
+	{
+		if (4 * (_historySize + 1) > _history.length)
+		{
+			long[] history = new long[_history.length * 2];
+			System.arraycopy(_history, 0, history, 0, 4 * _historySize);
+			_history = history;
+		}
+		int i = 4 * _historySize++;
+		_history[i] = board.getBlackPeons();
+		_history[i + 1] = board.getBlackKings();
+		_history[i + 2] = board.getWhitePeons();
+		_history[i + 3] = board.getWhiteKings();
+	}
+
+	/**
+	 * @return true iff the current position is the last one in the history
+	 */
+	private boolean isLastInHistory()
+	{
+		int i = 4 * (_historySize - 1);
+		return _history[i] == _board.getBlackPeons() && _history[i + 1] == _board.getBlackKings()
+			&& _history[i + 2] == _board.getWhitePeons() && _history[i + 3] == _board.getWhiteKings();
+	}
+
+	/**
+	 * Checks for a draw situation: the current position already appeared twice.
+	 * Since peons never move back and pieces never come back, the history is scanned
+	 * backwards only while peons and piece count are the same as in the current position.
+	 * @return true if draw should be announced.
+	 */
+	protected boolean isDraw()
+	{
+		long blackPeons = _board.getBlackPeons();
+		long whitePeons = _board.getWhitePeons();
+		int pieces = _board.getNumberOfPieces();
+		int count = 0;
+		for (int i = 4 * (_historySize - 1); i >= 0; i -= 4)
+		{
+			if (_history[i] != blackPeons || _history[i + 2] != whitePeons
+				|| Long.bitCount(_history[i] | _history[i + 1] | _history[i + 2] | _history[i + 3]) != pieces)
+				break;
+			if (_history[i + 1] == _board.getBlackKings() && _history[i + 3] == _board.getWhiteKings()
+				&& ++count >= 2)
+				return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,521 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.engine;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Random;
+
+import checkers.game.BitBoard;
+
+/**
+ * The StatisticsBook class.
+ * An opening book that keeps, for every position, all the moves played in it with
+ * the number of games, wins, draws and losses of the player who played them.
+ * It is built from the games archive (see checkers.game.GameArchive), and a move is
+ * selected from it at random, weighted by the results of the moves.
+ *
+ * The book file (data/bookstats*.dat) holds fixed size records sorted by position:
+ * the position key and the move bytes, encoded as in the OpeningBook files, then the
+ * games, wins, draws and losses as 4 byte integers. The file is memory mapped, and a
+ * hash index from the keys to the records of each position gives lookups in constant
+ * time. Added games are counted in memory, and merged into the file by save.
+ */
+public class StatisticsBook
+{
+	/**
+	 * Path prefix of the book files.
+	 */
+	public static final String BOOK_FILE_PREFIX = "data/bookstats";
+
+	/**
+	 * Least number of games of a selected move.
+	 */
+	public static final int MIN_GAMES = 2;
+
+	/**
+	 * Least score of a selected move.
+	 */
+	public static final double MIN_SCORE = 0.4;
+
+	/**
+	 * Number of statistics bytes in a record.
+	 */
+	private static final int STATISTICS_LENGTH = 16;
+
+	/**
+	 * Number of attempts to replace the book file by save.
+	 */
+	private static final int REPLACE_ATTEMPTS = 5;
+
+	/**
+	 * Default books, by number of squares, read on first use.
+	 */
+	private static Hashtable _books = new Hashtable();
+
+	/**
+	 * Book file name.
+	 */
+	private String _fileName;
+
+	/**
+	 * Number of playable squares.
+	 */
+	private int _squares;
+
+	/**
+	 * Key length in bytes.
+	 */
+	private int _keyLength;
+
+	/**
+	 * Record length in bytes.
+	 */
+	private int _recordLength;
+
+	/**
+	 * The mapped file, or null if it has no records.
+	 */
+	private MappedByteBuffer _buffer;
+
+	/**
+	 * Number of records in the mapped file.
+	 */
+	private int _records;
+
+	/**
+	 * First record and number of records (int[2]) of each position, by key
+	 * (String of the key bytes).
+	 */
+	private Hashtable _index;
+
+	/**
+	 * Statistics (int[4]) of the added games, by record prefix (String of the key
+	 * and move bytes).
+	 */
+	private Hashtable _added;
+
+	/**
+	 * The statistics of a move in a position.
+	 */
+	public static class Entry
+	{
+		/**
+		 * Squares of the move.
+		 */
+		private int[] _squares;
+
+		/**
+		 * Number of games, wins, draws and losses.
+		 */
+		private int _games;
+		private int _wins;
+		private int _draws;
+		private int _losses;
+
+		/**
+		 * Constructs a move entry.
+		 * @param squares squares the move passes through, including its source square
+		 * @param games number of games
+		 * @param wins number of wins of the player who played the move
+		 * @param draws number of draws
+		 * @param losses number of losses of the player who played the move
+		 */
+		public Entry(int[] squares, int games, int wins, int draws, int losses)
+		{
+			_squares = squares;
+			_games = games;
+			_wins = wins;
+			_draws = draws;
+			_losses = losses;
+		}
+
+		/**
+		 * @return squares the move passes through, including its source square
+		 */
+		public int[] getSquares()
+		{
+			return _squares;
+		}
+
+		/**
+		 * @return number of games in which the move was played
+		 */
+		public int getGames()
+		{
+			return _games;
+		}
+
+		/**
+		 * @return number of wins of the player who played the move
+		 */
+		public int getWins()
+		{
+			return _wins;
+		}
+
+		/**
+		 * @return number of draws
+		 */
+		public int getDraws()
+		{
+			return _draws;
+		}
+
+		/**
+		 * @return number of losses of the player who played the move
+		 */
+		public int getLosses()
+		{
+			return _losses;
+		}
+
+		/**
+		 * Returns the score of the move, half a point for a draw, with one win and one
+		 * loss added so that moves of few games score near 1/2.
+		 * @return score between 0 and 1
+		 */
+		public double getScore()
+		{
+			return (_wins + _draws / 2.0 + 1) / (_games + 2);
+		}
+
+		/**
+		 * @return selection weight of the move: its games times its score
+		 */
+		public double getWeight()
+		{
+			return _games * getScore();
+		}
+	}
+
+	/**
+	 * Constructs a book from a book file.
+	 * @param fileName book file name, which is created by save if it does not exist
+	 * @param size board dimension
+	 * @throws IOException if the file cannot be read
+	 */
+	public StatisticsBook(String fileName, int size) throws IOException
+	{
+		_fileName = fileName;
+		_squares = size * size / 2;
+		_keyLength = _squares / 2;
+		_recordLength = _keyLength + OpeningBook.MOVE_LENGTH + STATISTICS_LENGTH;
+		_index = new Hashtable();
+		_added = new Hashtable();
+		if (new File(fileName).exists())
+			map();
+	}
+
+	/**
+	 * Returns the default book of a board size, read on first use.
+	 * @param size board dimension
+	 * @return the book, or null if its file cannot be read
+	 */
+	public static synchronized StatisticsBook getBook(int size)
+	{
+		Integer key = new Integer(size);
+		Object book = _books.get(key);
+		if (book == null)
+		{
+			try
+			{
+				if (new File(getFileName(size)).exists())
+					book = new StatisticsBook(getFileName(size), size);
+			}
+			catch (IOException ioe)
+			{
+				System.err.println("Error: unable to read book file " + getFileName(size) + ": " + ioe.getMessage());
+			}
+			_books.put(key, (book == null) ? (Object) Boolean.FALSE : book);
+		}
+		return (book instanceof StatisticsBook) ? (StatisticsBook) book : null;
+	}
+
+	/**
+	 * Returns the book file name for a board size.
+	 * @param size board dimension
+	 * @return book file name
+	 */
+	public static String getFileName(int size)
+	{
+		return BOOK_FILE_PREFIX + (size * size / 2) + OpeningBook.BOOK_FILE_EXTENSION;
+	}
+
+	/**
+	 * Maps the book file and indexes its positions.
+	 */
+	private void map() throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(_fileName, "r");
+		try
+		{
+			FileChannel channel = file.getChannel();
+			_records = (int) (channel.size() / _recordLength);
+			_buffer = (_records == 0) ? null
+				: channel.map(FileChannel.MapMode.READ_ONLY, 0, (long) _records * _recordLength);
+		}
+		finally
+		{
+			file.close(); // the mapping stays valid
+		}
+		_index.clear();
+		byte[] key = new byte[_keyLength];
+		int[] position = null;
+		String last = null;
+		for (int record = 0; record < _records; record++)
+		{
+			for (int i = 0; i < _keyLength; i++)
+				key[i] = _buffer.get(record * _recordLength + i);
+			String k = OpeningBook.toKeyString(key);
+			if (!k.equals(last))
+			{
+				if (_index.containsKey(k))
+					throw new IOException("book file " + _fileName + " is not sorted");
+				position = new int[] {record, 0};
+				_index.put(k, position);
+				last = k;
+			}
+			position[1]++;
+		}
+	}
+
+	/**
+	 * Returns the statistics of the moves played in a position.
+	 * Games added since the book was read or saved are not included.
+	 * @param board the position
+	 * @param color color of the player to move
+	 * @return the moves entries, none if the position is not in the book
+	 */
+	public synchronized Entry[] getEntries(BitBoard board, byte color)
+	{
+		int[] position = (int[]) _index.get(OpeningBook.toKeyString(OpeningBook.getKey(board, color)));
+		if (position == null)
+			return new Entry[0];
+		Entry[] entries = new Entry[position[1]];
+		byte[] move = new byte[OpeningBook.MOVE_LENGTH];
+		for (int i = 0; i < entries.length; i++)
+		{
+			int offset = (position[0] + i) * _recordLength + _keyLength;
+			for (int j = 0; j < move.length; j++)
+				move[j] = _buffer.get(offset + j);
+			offset += move.length;
+			entries[i] = new Entry(OpeningBook.decodeMove(move, 0, color, _squares), _buffer.getInt(offset),
+				_buffer.getInt(offset + 4), _buffer.getInt(offset + 8), _buffer.getInt(offset + 12));
+		}
+		return entries;
+	}
+
+	/**
+	 * Selects a move at random, with probability proportional to its weight, among
+	 * the moves of at least MIN_GAMES games and MIN_SCORE score.
+	 * @param entries moves entries
+	 * @param random random generator, or null to select the move of highest weight
+	 * @return the selected entry, or null if no move qualifies
+	 */
+	public static Entry select(Entry[] entries, Random random)
+	{
+		double total = 0;
+		Entry best = null;
+		for (int i = 0; i < entries.length; i++)
+		{
+			if (!isSelectable(entries[i]))
+				continue;
+			total += entries[i].getWeight();
+			if (best == null || entries[i].getWeight() > best.getWeight())
+				best = entries[i];
+		}
+		if (random == null || best == null)
+			return best;
+		double r = random.nextDouble() * total;
+		for (int i = 0; i < entries.length; i++)
+		{
+			if (!isSelectable(entries[i]))
+				continue;
+			r -= entries[i].getWeight();
+			if (r < 0)
+				return entries[i];
+		}
+		return best; // rounding
+	}
+
+	/**
+	 * @return true iff the move qualifies for selection
+	 */
+	private static boolean isSelectable(Entry entry)
+	{
+		return entry.getGames() >= MIN_GAMES && entry.getScore() >= MIN_SCORE;
+	}
+
+	/**
+	 * Counts a game in which a move was played.
+	 * The game is counted in the book file by save.
+	 * @param board the position the move was played in
+	 * @param color color of the player who played the move
+	 * @param squares squares the move passes through, including its source square
+	 * @param result 1 if the player won, 0 for a draw, -1 if the player lost
+	 */
+	public synchronized void addGame(BitBoard board, byte color, int[] squares, int result)
+	{
+		byte[] prefix = new byte[_keyLength + OpeningBook.MOVE_LENGTH];
+		System.arraycopy(OpeningBook.getKey(board, color), 0, prefix, 0, _keyLength);
+		OpeningBook.encodeMove(squares, color, _squares, prefix, _keyLength);
+		add(_added, OpeningBook.toKeyString(prefix), 1, (result > 0) ? 1 : 0, (result == 0) ? 1 : 0, (result < 0) ? 1 : 0);
+	}
+
+	/**
+	 * Adds statistics to a record prefix.
+	 * @param table statistics (int[4]) by record prefix
+	 */
+	private static void add(Hashtable table, String prefix, int games, int wins, int draws, int losses)
+	{
+		int[] statistics = (int[]) table.get(prefix);
+		if (statistics == null)
+		{
+			statistics = new int[4];
+			table.put(prefix, statistics);
+		}
+		statistics[0] += games;
+		statistics[1] += wins;
+		statistics[2] += draws;
+		statistics[3] += losses;
+	}
+
+	/**
+	 * Merges the added games into the book file, and maps it again.
+	 * The merged book is written to a temporary file first, which then replaces the
+	 * book file in one rename, so the book is never lost. The added games are kept
+	 * if the book cannot be saved, and save can be called again.
+	 * @throws IOException if the file cannot be written
+	 */
+	public synchronized void save() throws IOException
+	{
+		if (_added.isEmpty())
+			return;
+		Hashtable merged = new Hashtable();
+		for (Enumeration e = _added.keys(); e.hasMoreElements();)
+		{
+			String prefix = (String) e.nextElement();
+			merged.put(prefix, ((int[]) _added.get(prefix)).clone());
+		}
+		byte[] prefix = new byte[_keyLength + OpeningBook.MOVE_LENGTH];
+		for (int record = 0; record < _records; record++)
+		{
+			int offset = record * _recordLength;
+			for (int i = 0; i < prefix.length; i++)
+				prefix[i] = _buffer.get(offset + i);
+			offset += prefix.length;
+			add(merged, OpeningBook.toKeyString(prefix), _buffer.getInt(offset), _buffer.getInt(offset + 4),
+				_buffer.getInt(offset + 8), _buffer.getInt(offset + 12));
+		}
+		String[] prefixes = new String[merged.size()];
+		int n = 0;
+		for (Enumeration e = merged.keys(); e.hasMoreElements();)
+			prefixes[n++] = (String) e.nextElement();
+		Arrays.sort(prefixes); // the records of a position together
+		File file = new File(_fileName);
+		File temporary = new File(_fileName + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+		try
+		{
+			for (int i = 0; i < prefixes.length; i++)
+			{
+				for (int j = 0; j < prefixes[i].length(); j++)
+					out.writeByte(prefixes[i].charAt(j));
+				int[] statistics = (int[]) merged.get(prefixes[i]);
+				for (int j = 0; j < statistics.length; j++)
+					out.writeInt(statistics[j]);
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+		_buffer = null; // drops the mapping of the book file
+		_records = 0;
+		_index.clear();
+		try
+		{
+			replace(temporary, file);
+			_added.clear();
+		}
+		finally
+		{
+			if (file.exists())
+				map(); // the new file, or the former one if it was not replaced
+		}
+	}
+
+	/**
+	 * Replaces a file by another one in a single rename.
+	 * Some systems (Windows) don't replace a file that is still mapped: the mapping
+	 * is released when its buffer is collected, so the rename is then tried again.
+	 * @param source the new file
+	 * @param target the replaced file
+	 * @throws IOException if the file cannot be replaced
+	 */
+	private static void replace(File source, File target) throws IOException
+	{
+		for (int attempt = 1; ; attempt++)
+		{
+			try
+			{
+				try
+				{
+					Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+				}
+				catch (AtomicMoveNotSupportedException amnse)
+				{
+					Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+				return;
+			}
+			catch (IOException ioe)
+			{
+				if (attempt == REPLACE_ATTEMPTS)
+					throw new IOException("unable to replace " + target + " by " + source + ": " + ioe.getMessage());
+			}
+			System.gc(); // collects the buffer of the former mapping
+			try
+			{
+				Thread.sleep(100);
+			}
+			catch (InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * @return number of positions in the book file
+	 */
+	public synchronized int getNumberOfPositions()
+	{
+		return _index.size();
+	}
+
+	/**
+	 * @return number of moves of all the positions in the book file
+	 */
+	public synchronized int getNumberOfRecords()
+	{
+		return _records;
+	}
+}
@@ -0,0 +1,338 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.engine;
+
+/**
+ * The TranspositionTable class.
+ * A fixed size hash table of searched positions, indexed by Zobrist hash.
+ *
+ * Each entry is a pair of longs: the packed data (value, bound, depth, best move and age)
+ * and the position key exclusive or'ed with the data. An entry is accepted only if
+ * both words agree with the probed key, so the table needs no locks: an entry torn by
+ * concurrent writers simply fails the check and is treated as a miss.
+ *
+ * Positions are mapped to buckets of two entries. The first entry keeps the deepest
+ * search of the current age, the second one is always replaced.
+ * The counters are plain fields, so they are only approximate when the table is shared
+ * between threads.
+ */
+public class TranspositionTable
+{
+	/**
+	 * No bound: the entry is empty.
+	 */
+	public static final int BOUND_NONE = 0;
+
+	/**
+	 * The stored value is an upper bound (the search failed low).
+	 */
+	public static final int BOUND_UPPER = 1;
+
+	/**
+	 * The stored value is a lower bound (the search failed high).
+	 */
+	public static final int BOUND_LOWER = 2;
+
+	/**
+	 * The stored value is exact.
+	 */
+	public static final int BOUND_EXACT = 3;
+
+	/**
+	 * Stored move when no best move is known.
+	 */
+	public static final int NO_MOVE = 0xfff;
+
+	/**
+	 * Default size of the table, in megabytes.
+	 */
+	public static final int DEFAULT_SIZE = 16;
+
+	/**
+	 * Size of an entry, in bytes.
+	 */
+	private static final int ENTRY_SIZE = 16;
+
+	private static final int MOVE_SHIFT = 32;
+	private static final int DEPTH_SHIFT = 44;
+	private static final int BOUND_SHIFT = 52;
+	private static final int AGE_SHIFT = 54;
+	private static final long MOVE_MASK = 0xfff;
+	private static final long DEPTH_MASK = 0xff;
+	private static final long BOUND_MASK = 0x3;
+	private static final long AGE_MASK = 0xff;
+
+	/**
+	 * Position keys, exclusive or'ed with the data.
+	 */
+	private long[] _keys;
+
+	/**
+	 * Packed entries data.
+	 */
+	private long[] _data;
+
+	/**
+	 * Mask of a bucket index.
+	 */
+	private int _mask;
+
+	/**
+	 * Current search age.
+	 */
+	private int _age;
+
+	/**
+	 * Number of probes.
+	 */
+	private long _probes;
+
+	/**
+	 * Number of probes that found their position.
+	 */
+	private long _hits;
+
+	/**
+	 * Number of probes that found a bucket taken by other positions.
+	 */
+	private long _collisions;
+
+	/**
+	 * Number of stored entries.
+	 */
+	private long _stores;
+
+	/**
+	 * Constructs a table.
+	 * The number of entries is the largest power of two that fits in the given size.
+	 * @param megabytes size of the table, in megabytes
+	 */
+	public TranspositionTable(int megabytes)
+	{
+		long entries = Math.max(2, ((long) megabytes << 20) / ENTRY_SIZE);
+		int size = Integer.highestOneBit((int) Math.min(entries, 1 << 30));
+		_keys = new long[size];
+		_data = new long[size];
+		_mask = (size / 2 - 1) << 1;
+	}
+
+	/**
+	 * Returns the number of entries of the table.
+	 * @return capacity of the table
+	 */
+	public int getCapacity()
+	{
+		return _data.length;
+	}
+
+	/**
+	 * Starts a new search: entries of previous searches become preferred for replacement.
+	 */
+	public void newSearch()
+	{
+		_age = (_age + 1) & (int) AGE_MASK;
+	}
+
+	/**
+	 * Empties the table and resets its counters.
+	 */
+	public void clear()
+	{
+		java.util.Arrays.fill(_keys, 0);
+		java.util.Arrays.fill(_data, 0);
+		resetStatistics();
+	}
+
+	/**
+	 * Looks a position up.
+	 * @param key position key
+	 * @return the packed entry, or 0 if the position is not in the table
+	 */
+	public long probe(long key)
+	{
+		_probes++;
+		int index = (int) key & _mask;
+		for (int i = index; i < index + 2; i++)
+		{
+			long data = _data[i];
+			if ((_keys[i] ^ data) == key && data != 0)
+			{
+				_hits++;
+				return data;
+			}
+		}
+		if (_data[index] != 0 || _data[index + 1] != 0)
+			_collisions++;
+		return 0;
+	}
+
+	/**
+	 * Stores the result of a search.
+	 * @param key position key
+	 * @param value searched value, adjusted by toTable
+	 * @param bound type of the value (BOUND_UPPER, BOUND_LOWER or BOUND_EXACT)
+	 * @param depth searched depth, in plies
+	 * @param move best move (source and target squares, see packMove), or NO_MOVE
+	 */
+	public void store(long key, int value, int bound, int depth, int move)
+	{
+		int index = (int) key & _mask;
+		long first = _data[index];
+		int slot = index + 1;
+		if (first == 0 || (_keys[index] ^ first) == key || getAge(first) != _age || depth >= getDepth(first))
+			slot = index;
+		if (move == NO_MOVE && (_keys[slot] ^ _data[slot]) == key)
+			move = getMove(_data[slot]); // keep the known best move
+		long data = (value & 0xffffffffL)
+			| ((long) move << MOVE_SHIFT)
+			| ((long) Math.min(depth, (int) DEPTH_MASK) << DEPTH_SHIFT)
+			| ((long) bound << BOUND_SHIFT)
+			| ((long) _age << AGE_SHIFT);
+		_keys[slot] = key ^ data;
+		_data[slot] = data;
+		_stores++;
+	}
+
+	/**
+	 * Packs a move into the table format.
+	 * @param from source square
+	 * @param to target square
+	 * @return packed move
+	 */
+	public static int packMove(int from, int to)
+	{
+		return from | (to << 6);
+	}
+
+	/**
+	 * Converts a value to the table format: win values are made relative to the stored position.
+	 * @param value value relative to the root
+	 * @param ply distance of the position from the root
+	 * @return value to store
+	 */
+	public static int toTable(int value, int ply)
+	{
+		if (value > SearchEngine.WIN - SearchEngine.MAX_PLY) return value + ply;
+		if (value < -SearchEngine.WIN + SearchEngine.MAX_PLY) return value - ply;
+		return value;
+	}
+
+	/**
+	 * Converts a stored value back to a value relative to the root.
+	 * @param value stored value
+	 * @param ply distance of the position from the root
+	 * @return value relative to the root
+	 */
+	public static int fromTable(int value, int ply)
+	{
+		if (value > SearchEngine.WIN - SearchEngine.MAX_PLY) return value - ply;
+		if (value < -SearchEngine.WIN + SearchEngine.MAX_PLY) return value + ply;
+		return value;
+	}
+
+	/**
+	 * @param data packed entry
+	 * @return stored value
+	 */
+	public static int getValue(long data)
+	{
+		return (int) data;
+	}
+
+	/**
+	 * @param data packed entry
+	 * @return stored best move, or NO_MOVE
+	 */
+	public static int getMove(long data)
+	{
+		return (int) ((data >>> MOVE_SHIFT) & MOVE_MASK);
+	}
+
+	/**
+	 * @param data packed entry
+	 * @return searched depth
+	 */
+	public static int getDepth(long data)
+	{
+		return (int) ((data >>> DEPTH_SHIFT) & DEPTH_MASK);
+	}
+
+	/**
+	 * @param data packed entry
+	 * @return type of the stored value
+	 */
+	public static int getBound(long data)
+	{
+		return (int) ((data >>> BOUND_SHIFT) & BOUND_MASK);
+	}
+
+	/**
+	 * @param data packed entry
+	 * @return age of the search that stored the entry
+	 */
+	private static int getAge(long data)
+	{
+		return (int) ((data >>> AGE_SHIFT) & AGE_MASK);
+	}
+
+	/**
+	 * Resets the counters.
+	 */
+	public void resetStatistics()
+	{
+		_probes = _hits = _collisions = _stores = 0;
+	}
+
+	/**
+	 * @return number of probes
+	 */
+	public long getProbes()
+	{
+		return _probes;
+	}
+
+	/**
+	 * @return number of probes that found their position
+	 */
+	public long getHits()
+	{
+		return _hits;
+	}
+
+	/**
+	 * @return number of probes that did not find their position
+	 */
+	public long getMisses()
+	{
+		return _probes - _hits;
+	}
+
+	/**
+	 * @return number of misses on a bucket taken by other positions
+	 */
+	public long getCollisions()
+	{
+		return _collisions;
+	}
+
+	/**
+	 * @return number of stored entries
+	 */
+	public long getStores()
+	{
+		return _stores;
+	}
+
+	/**
+	 * Returns a description of the table counters.
+	 * @return counters as text
+	 */
+	public String toString()
+	{
+		return "hash: " + getCapacity() + " entries, " + _probes + " probes, " + _hits + " hits, "
+			+ getMisses() + " misses, " + _collisions + " collisions, " + _stores + " stores";
+	}
+}
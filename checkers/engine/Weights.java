@@ -0,0 +1,219 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.engine;
+
+import java.io.*;
+
+/**
+ * The Weights class.
+ * Holds the weights of the evaluation parameters for each game stage,
+ * as read from the data/weights*.dat files.
+ * The files hold one weight per line as a double between 0 and 1, stage after stage.
+ * In memory, weights are scaled to "fixed point" integers, as the native code does.
+ */
+public class Weights
+{
+	/**
+	 * Number of evaluation parameters.
+	 */
+	public static final int PARAMS_NUM = 20;
+
+	/**
+	 * Number of game stages.
+	 */
+	public static final int STAGES = 6;
+
+	/**
+	 * Maximal scaled weight (a weight of 1.0).
+	 */
+	public static final int MAX_WEIGHT = 0xffff;
+
+	/**
+	 * Path prefix of the weights files.
+	 */
+	public static final String WEIGHTS_FILE_PREFIX = "data/weights";
+
+	/**
+	 * Extension of the weights files.
+	 */
+	public static final String WEIGHTS_FILE_EXTENSION = ".dat";
+
+	/**
+	 * Scaled weights, by stage and parameter.
+	 */
+	private int[][] _weights;
+
+	/**
+	 * Number of changes made to the weights.
+	 */
+	private int _version;
+
+	/**
+	 * Constructs weights set to the maximum, as the native Player does before reading a file.
+	 */
+	public Weights()
+	{
+		_weights = new int[STAGES][PARAMS_NUM];
+		for (int stage = 0; stage < STAGES; stage++)
+			for (int param = 0; param < PARAMS_NUM; param++)
+				_weights[stage][param] = MAX_WEIGHT;
+	}
+
+	/**
+	 * Constructs a copy of other weights.
+	 * @param other weights to copy
+	 */
+	public Weights(Weights other)
+	{
+		_weights = new int[STAGES][PARAMS_NUM];
+		for (int stage = 0; stage < STAGES; stage++)
+			System.arraycopy(other._weights[stage], 0, _weights[stage], 0, PARAMS_NUM);
+	}
+
+	/**
+	 * Returns the weights file name for a board size.
+	 * @param size board dimension
+	 * @return weights file name
+	 */
+	public static String getFileName(int size)
+	{
+		return WEIGHTS_FILE_PREFIX + (size * size / 2) + WEIGHTS_FILE_EXTENSION;
+	}
+
+	/**
+	 * Reads the weights of a board size from its default file.
+	 * @param size board dimension
+	 * @return the weights read
+	 * @throws IOException if the file cannot be read
+	 */
+	public static Weights load(int size) throws IOException
+	{
+		return load(getFileName(size));
+	}
+
+	/**
+	 * Reads weights from a file.
+	 * @param fileName weights file name
+	 * @return the weights read
+	 * @throws IOException if the file cannot be read or is too short
+	 */
+	public static Weights load(String fileName) throws IOException
+	{
+		Weights weights = new Weights();
+		BufferedReader reader = new BufferedReader(new FileReader(fileName));
+		try
+		{
+			for (int stage = 0; stage < STAGES; stage++)
+				for (int param = 0; param < PARAMS_NUM; param++)
+				{
+					String line = reader.readLine();
+					if (line == null)
+						throw new IOException("Weights file " + fileName + " is too short");
+					weights.setWeight(stage, param, Double.parseDouble(line.trim()));
+				}
+		}
+		catch (NumberFormatException nfe)
+		{
+			throw new IOException("Invalid weight in " + fileName + ": " + nfe.getMessage());
+		}
+		finally
+		{
+			reader.close();
+		}
+		return weights;
+	}
+
+	/**
+	 * Writes the weights to a file, in the format read by load.
+	 * @param fileName weights file name
+	 * @throws IOException if the file cannot be written
+	 */
+	public void save(String fileName) throws IOException
+	{
+		PrintWriter writer = new PrintWriter(new FileWriter(fileName));
+		for (int stage = 0; stage < STAGES; stage++)
+			for (int param = 0; param < PARAMS_NUM; param++)
+				writer.println(unscale(_weights[stage][param]));
+		writer.close();
+		if (writer.checkError())
+			throw new IOException("Error writing weights file " + fileName);
+	}
+
+	/**
+	 * Returns the scaled weights of a stage.
+	 * The returned array is the internal one, and must not be modified.
+	 * @param stage game stage
+	 * @return weights of the stage parameters
+	 */
+	public int[] getStageWeights(int stage)
+	{
+		return _weights[stage];
+	}
+
+	/**
+	 * Returns a scaled weight.
+	 * @param stage game stage
+	 * @param param parameter index
+	 * @return weight of parameter
+	 */
+	public int getWeight(int stage, int param)
+	{
+		return _weights[stage][param];
+	}
+
+	/**
+	 * Sets a scaled weight.
+	 * @param stage game stage
+	 * @param param parameter index
+	 * @param weight new scaled weight
+	 */
+	public void setWeight(int stage, int param, int weight)
+	{
+		_weights[stage][param] = Math.max(0, Math.min(MAX_WEIGHT, weight));
+		_version++;
+	}
+
+	/**
+	 * Returns the number of changes made to the weights, so users may tell when data
+	 * derived from them is stale.
+	 * @return changes count
+	 */
+	public int getVersion()
+	{
+		return _version;
+	}
+
+	/**
+	 * Sets a weight given as a double.
+	 * @param stage game stage
+	 * @param param parameter index
+	 * @param weight new weight, between 0 and 1
+	 */
+	public void setWeight(int stage, int param, double weight)
+	{
+		setWeight(stage, param, scale(weight));
+	}
+
+	/**
+	 * Scales a double weight to a "fixed point" one.
+	 * @param weight weight as double
+	 * @return scaled weight
+	 */
+	public static int scale(double weight)
+	{
+		return (int) (weight * MAX_WEIGHT);
+	}
+
+	/**
+	 * Scales a "fixed point" weight to a double.
+	 * @param weight scaled weight
+	 * @return weight as double
+	 */
+	public static double unscale(int weight)
+	{
+		return ((double) weight) / MAX_WEIGHT;
+	}
+}
@@ -0,0 +1,472 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.game;
+
+import java.io.Serializable;
+
+/**
+ * The BitBoard class.
+ * Represents the board as four bit masks (black peons, black kings, white peons, white kings).
+ * Bit i stands for playable square i, numbered row by row from the white side,
+ * which is the layout produced by Board.encode and used by the native code.
+ * Moves are made and unmade in place, without creating any objects.
+ * The board also keeps the Zobrist hash of its position, updated along with the masks.
+ */
+public class BitBoard implements Cloneable, Serializable
+{
+	/**
+	 * Bits of the source square in an encoded move.
+	 */
+	private static final int FROM_MASK = 0x3f;
+
+	/**
+	 * Shift of the target square in an encoded move.
+	 */
+	private static final int TO_SHIFT = 6;
+
+	/**
+	 * Encoded move flag: the moving piece is a king.
+	 */
+	public static final int KING_MOVE = 1 << 12;
+
+	/**
+	 * Encoded move flag: the moving peon is crowned at the target square.
+	 */
+	public static final int PROMOTION = 1 << 13;
+
+	/**
+	 * Encoded move flag: the move is played by the black player.
+	 */
+	public static final int BLACK_MOVE = 1 << 14;
+
+	/**
+	 * Board dimension (number of rows or columns).
+	 */
+	private int _size;
+
+	/**
+	 * Number of playable squares per row.
+	 */
+	private int _half;
+
+	/**
+	 * Black peons mask.
+	 */
+	private long _blackPeons;
+
+	/**
+	 * Black kings mask.
+	 */
+	private long _blackKings;
+
+	/**
+	 * White peons mask.
+	 */
+	private long _whitePeons;
+
+	/**
+	 * White kings mask.
+	 */
+	private long _whiteKings;
+
+	/**
+	 * Zobrist hash of the position.
+	 */
+	private long _hash;
+
+	/**
+	 * Constructs an empty board.
+	 * @param size dimension of the board
+	 */
+	public BitBoard(int size)
+	{
+		_size = size;
+		_half = size / 2;
+	}
+
+	/**
+	 * Constructs a board at the starting position.
+	 * @param size dimension of the board
+	 * @param rows number of starting rows for each player
+	 */
+	public BitBoard(int size, int rows)
+	{
+		this(size);
+		int squares = rows * _half;
+		for (int i = 0; i < squares; i++)
+		{
+			_whitePeons |= 1L << i;
+			_blackPeons |= 1L << (getNumberOfSquares() - 1 - i);
+		}
+		_hash = Zobrist.hash(_blackPeons, _blackKings, _whitePeons, _whiteKings);
+	}
+
+	/**
+	 * Constructs a board from its encoded masks.
+	 * @param size dimension of the board
+	 * @param blackPeons black peons mask
+	 * @param blackKings black kings mask
+	 * @param whitePeons white peons mask
+	 * @param whiteKings white kings mask
+	 */
+	public BitBoard(int size, long blackPeons, long blackKings, long whitePeons, long whiteKings)
+	{
+		this(size);
+		_blackPeons = blackPeons;
+		_blackKings = blackKings;
+		_whitePeons = whitePeons;
+		_whiteKings = whiteKings;
+		_hash = Zobrist.hash(_blackPeons, _blackKings, _whitePeons, _whiteKings);
+	}
+
+	/**
+	 * Returns the board dimension.
+	 * @return number of rows or columns
+	 */
+	public int getSize()
+	{
+		return _size;
+	}
+
+	/**
+	 * Returns the number of playable squares.
+	 * @return number of bits used by each mask
+	 */
+	public int getNumberOfSquares()
+	{
+		return _size * _half;
+	}
+
+	/**
+	 * Returns the square number of a row and column.
+	 * @param row the row
+	 * @param col the column (must be a playable square)
+	 * @return square number
+	 */
+	public int getSquare(int row, int col)
+	{
+		return row * _half + col / 2;
+	}
+
+	/**
+	 * Returns the row of a square.
+	 * @param square square number
+	 * @return row of square
+	 */
+	public int getRow(int square)
+	{
+		return square / _half;
+	}
+
+	/**
+	 * Returns the column of a square.
+	 * @param square square number
+	 * @return column of square
+	 */
+	public int getCol(int square)
+	{
+		int row = square / _half;
+		return (square % _half) * 2 + ((row % 2 == 0) ? 1 : 0);
+	}
+
+	/**
+	 * @return black peons mask
+	 */
+	public long getBlackPeons()
+	{
+		return _blackPeons;
+	}
+
+	/**
+	 * @return black kings mask
+	 */
+	public long getBlackKings()
+	{
+		return _blackKings;
+	}
+
+	/**
+	 * @return white peons mask
+	 */
+	public long getWhitePeons()
+	{
+		return _whitePeons;
+	}
+
+	/**
+	 * @return white kings mask
+	 */
+	public long getWhiteKings()
+	{
+		return _whiteKings;
+	}
+
+	/**
+	 * Returns the Zobrist hash of the position.
+	 * The hash does not depend on the player to move.
+	 * @return 64 bit position hash
+	 */
+	public long getHash()
+	{
+		return _hash;
+	}
+
+	/**
+	 * Returns the peons of a player.
+	 * @param color Player color
+	 * @return peons mask
+	 */
+	public long getPeons(byte color)
+	{
+		return (color == Player.PLAYER_BLACK) ? _blackPeons : _whitePeons;
+	}
+
+	/**
+	 * Returns the kings of a player.
+	 * @param color Player color
+	 * @return kings mask
+	 */
+	public long getKings(byte color)
+	{
+		return (color == Player.PLAYER_BLACK) ? _blackKings : _whiteKings;
+	}
+
+	/**
+	 * Returns all the pieces of a player.
+	 * @param color Player color
+	 * @return pieces mask
+	 */
+	public long getPieces(byte color)
+	{
+		return (color == Player.PLAYER_BLACK) ? (_blackPeons | _blackKings) : (_whitePeons | _whiteKings);
+	}
+
+	/**
+	 * Returns the occupied squares.
+	 * @return mask of squares that are taken
+	 */
+	public long getOccupied()
+	{
+		return _blackPeons | _blackKings | _whitePeons | _whiteKings;
+	}
+
+	/**
+	 * Returns the number of pieces on the board.
+	 * @return pieces count
+	 */
+	public int getNumberOfPieces()
+	{
+		return Long.bitCount(getOccupied());
+	}
+
+	/**
+	 * Checks if a square is the crowning row of a player.
+	 * @param color Player color
+	 * @param square square number
+	 * @return true iff a peon of this color is crowned on this square
+	 */
+	public boolean isPromotionSquare(byte color, int square)
+	{
+		return (color == Player.PLAYER_BLACK) ? (square < _half) : (square >= getNumberOfSquares() - _half);
+	}
+
+	/**
+	 * Puts a piece on a square, replacing its content.
+	 * @param square square number
+	 * @param color Player color
+	 * @param king true for a king
+	 */
+	public void setPiece(int square, byte color, boolean king)
+	{
+		clearSquare(square);
+		long bit = 1L << square;
+		_hash ^= Zobrist.getKey(color, king, square);
+		if (color == Player.PLAYER_BLACK)
+		{
+			if (king) _blackKings |= bit; else _blackPeons |= bit;
+		}
+		else
+		{
+			if (king) _whiteKings |= bit; else _whitePeons |= bit;
+		}
+	}
+
+	/**
+	 * Removes any piece from a square.
+	 * @param square square number
+	 */
+	public void clearSquare(int square)
+	{
+		long bit = 1L << square;
+		if ((getOccupied() & bit) == 0)
+			return;
+		_hash ^= Zobrist.getKey(Player.PLAYER_BLACK, false, _blackPeons & bit)
+			^ Zobrist.getKey(Player.PLAYER_BLACK, true, _blackKings & bit)
+			^ Zobrist.getKey(Player.PLAYER_WHITE, false, _whitePeons & bit)
+			^ Zobrist.getKey(Player.PLAYER_WHITE, true, _whiteKings & bit);
+		long mask = ~bit;
+		_blackPeons &= mask;
+		_blackKings &= mask;
+		_whitePeons &= mask;
+		_whiteKings &= mask;
+	}
+
+	/**
+	 * Encodes a move into an int.
+	 * Captured pieces are kept aside as masks, see makeMove.
+	 * @param from source square
+	 * @param to target square
+	 * @param color moving Player color
+	 * @param king true if the moving piece is a king
+	 * @param promotion true if the moving peon is crowned
+	 * @return encoded move
+	 */
+	public static int encodeMove(int from, int to, byte color, boolean king, boolean promotion)
+	{
+		int move = from | (to << TO_SHIFT);
+		if (king) move |= KING_MOVE;
+		if (promotion) move |= PROMOTION;
+		if (color == Player.PLAYER_BLACK) move |= BLACK_MOVE;
+		return move;
+	}
+
+	/**
+	 * @param move encoded move
+	 * @return source square of the move
+	 */
+	public static int getFrom(int move)
+	{
+		return move & FROM_MASK;
+	}
+
+	/**
+	 * @param move encoded move
+	 * @return target square of the move
+	 */
+	public static int getTo(int move)
+	{
+		return (move >>> TO_SHIFT) & FROM_MASK;
+	}
+
+	/**
+	 * @param move encoded move
+	 * @return color of the moving Player
+	 */
+	public static byte getColor(int move)
+	{
+		return ((move & BLACK_MOVE) != 0) ? Player.PLAYER_BLACK : Player.PLAYER_WHITE;
+	}
+
+	/**
+	 * Makes a move in place.
+	 * @param move encoded move
+	 * @param capturedPeons opponent peons captured by the move
+	 * @param capturedKings opponent kings captured by the move
+	 */
+	public void makeMove(int move, long capturedPeons, long capturedKings)
+	{
+		toggle(move, capturedPeons, capturedKings);
+	}
+
+	/**
+	 * Takes back a move made by makeMove, in place.
+	 * @param move encoded move
+	 * @param capturedPeons opponent peons captured by the move
+	 * @param capturedKings opponent kings captured by the move
+	 */
+	public void unmakeMove(int move, long capturedPeons, long capturedKings)
+	{
+		toggle(move, capturedPeons, capturedKings);
+	}
+
+	/**
+	 * Flips the bits touched by a move. Since every change is an exclusive or,
+	 * the same operation both makes and unmakes the move.
+	 */
+	private void toggle(int move, long capturedPeons, long capturedKings)
+	{
+		long from = 1L << (move & FROM_MASK);
+		long to = 1L << ((move >>> TO_SHIFT) & FROM_MASK);
+		boolean king = (move & KING_MOVE) != 0;
+		boolean crowned = king || (move & PROMOTION) != 0;
+		byte color = ((move & BLACK_MOVE) != 0) ? Player.PLAYER_BLACK : Player.PLAYER_WHITE;
+		_hash ^= Zobrist.getKey(color, king, move & FROM_MASK)
+			^ Zobrist.getKey(color, crowned, (move >>> TO_SHIFT) & FROM_MASK)
+			^ Zobrist.getKey(Player.reverse(color), false, capturedPeons)
+			^ Zobrist.getKey(Player.reverse(color), true, capturedKings);
+		if (color == Player.PLAYER_BLACK)
+		{
+			if (king) _blackKings ^= from; else _blackPeons ^= from;
+			if (crowned) _blackKings ^= to; else _blackPeons ^= to;
+			_whitePeons ^= capturedPeons;
+			_whiteKings ^= capturedKings;
+		}
+		else
+		{
+			if (king) _whiteKings ^= from; else _whitePeons ^= from;
+			if (crowned) _whiteKings ^= to; else _whitePeons ^= to;
+			_blackPeons ^= capturedPeons;
+			_blackKings ^= capturedKings;
+		}
+	}
+
+	/**
+	 * Creates an encoded representation of the board, as described in Board.encode.
+	 * @return black peons, black kings, white peons, white kings and used squares
+	 */
+	public long[] encode()
+	{
+		return new long[]{_blackPeons, _blackKings, _whitePeons, _whiteKings, getOccupied()};
+	}
+
+	/**
+	 * Copies the position of another board into this board.
+	 * @param other Board to copy
+	 */
+	public void copyFrom(BitBoard other)
+	{
+		_size = other._size;
+		_half = other._half;
+		_blackPeons = other._blackPeons;
+		_blackKings = other._blackKings;
+		_whitePeons = other._whitePeons;
+		_whiteKings = other._whiteKings;
+		_hash = other._hash;
+	}
+
+	/**
+	 * Checks board equality.
+	 * @param other object to compare
+	 * @return true iff other is a BitBoard with the same pieces
+	 */
+	public boolean equals(Object other)
+	{
+		if (!(other instanceof BitBoard)) return false;
+		BitBoard b = (BitBoard) other;
+		return _blackPeons == b._blackPeons && _blackKings == b._blackKings
+			&& _whitePeons == b._whitePeons && _whiteKings == b._whiteKings;
+	}
+
+	/**
+	 * Returns a hash code consistent with equals.
+	 * @return hash code of the position
+	 */
+	public int hashCode()
+	{
+		return (int)(_hash ^ (_hash >>> 32));
+	}
+
+	/**
+	 * Returns a clone of this BitBoard object
+	 * @return A new board, similar to the original
+	 */
+	public Object clone()
+	{
+		BitBoard b = new BitBoard(_size);
+		b.copyFrom(this);
+		return b;
+	}
+}
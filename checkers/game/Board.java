@@ -5,20 +5,33 @@
  *****************************************************************************/
 package checkers.game;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.Enumeration;
 
 /**
  * The Board class.
  * Represents the checkers game board.
+ * The position is kept in a BitBoard, while the matrix of peons serves as a view
+ * of the same position for the UI system.
  */
 public class Board implements Cloneable,Serializable
 {
+	/**
+	 * Keeps saved games compatible with older versions of this class.
+	 */
+	private static final long serialVersionUID = -8036219789679775968L;
 
 	/**
 	 * Matrix of peons.
 	 */	
 	private Peon[][] _peons;
+
+	/**
+	 * Bit masks representation of the board.
+	 * Not serialized, since it is rebuilt from the peons matrix.
+	 */
+	private transient BitBoard _bits;
 	
 	private Board()
 	{
@@ -26,14 +39,16 @@ public class Board implements Cloneable,Serializable
 
 	/**
 	 * Constructor for Board.
+	 * The pieces are created and added to their players.
 	 * @param size dimension of the board
 	 * @param rows number of starting rows for each player
+	 * @param white white Player
+	 * @param black black Player
 	 */
-	public Board(int size, int rows) 
+	public Board(int size, int rows, Player white, Player black)
 	{
 		_peons = new Peon[size][size];
-		Player white = Game.getInstance().getWhite();
-		Player black = Game.getInstance().getBlack();
+		_bits = new BitBoard(size, rows);
 		for (int row = 0; row < rows; row++)
 			for (int col = 0; col < size; col +=2)
 			{
@@ -47,6 +62,34 @@ public class Board implements Cloneable,Serializable
 				_peons[size - row - 1][col+blackOffset] = p2;
 			}		
 	}
+
+	/**
+	 * Constructs a board of a given position.
+	 * The pieces are created and added to their players.
+	 * @param bits the position, copied
+	 * @param white white Player
+	 * @param black black Player
+	 */
+	public Board(BitBoard bits, Player white, Player black)
+	{
+		int size = bits.getSize();
+		MoveTables tables = MoveTables.getTables(size);
+		_peons = new Peon[size][size];
+		_bits = (BitBoard) bits.clone();
+		for (int square = 0; square < bits.getNumberOfSquares(); square++)
+		{
+			long bit = 1L << square;
+			if ((bits.getOccupied() & bit) == 0)
+				continue;
+			Point point = tables.getPoint(square);
+			Player player = ((bits.getPieces(Player.PLAYER_WHITE) & bit) != 0) ? white : black;
+			Peon peon = ((bits.getKings(player.getColor()) & bit) != 0)
+				? new King(player, point.getRow(), point.getCol())
+				: new Peon(player, point.getRow(), point.getCol());
+			player.addPeon(peon);
+			_peons[point.getRow()][point.getCol()] = peon;
+		}
+	}
 	
 	/**
 	 * Returns the peon located at the given point.
@@ -66,6 +109,11 @@ public class Board implements Cloneable,Serializable
 	public void setPeonAt(Point point, Peon peon)
 	{
 		_peons[point.getRow()][point.getCol()] = peon;
+		int square = _bits.getSquare(point.getRow(), point.getCol());
+		if (peon == null)
+			_bits.clearSquare(square);
+		else
+			_bits.setPiece(square, peon.getPlayer().getColor(), peon instanceof King);
 	}
 	
 
@@ -94,8 +142,8 @@ public class Board implements Cloneable,Serializable
 		int sourceCol = move.getPeon().getCol();
 		int targetRow = move.getLastHop().getRow();
 		int targetCol = move.getLastHop().getCol();
-		Player white = Game.getInstance().getWhite();
-		Player black = Game.getInstance().getBlack();
+		Player player = move.getPeon().getPlayer();
+		makeBitMove(move);
 		move.getPeon().move(move.getLastHop());
 		_peons[sourceRow][sourceCol] = null;
 		_peons[targetRow][targetCol] = move.getPeon();
@@ -103,33 +151,167 @@ public class Board implements Cloneable,Serializable
 		{
 			Peon p = (Peon) en.nextElement();
 			_peons[p.getRow()][p.getCol()] = null;
-			if (p.getPlayer().equals(white))
-				white.removePeon(p);
-			else	
-				black.removePeon(p);
+			p.getPlayer().removePeon(p);
 		}
-		if (move.getPeon().getPlayer().equals(white))
+		if (targetRow == ((player.getColor() == Player.PLAYER_WHITE) ? _peons.length - 1 : 0))
 		{
-			if (targetRow == _peons.length - 1)
-			{
-				King king = new King(white, targetRow, targetCol);
-				white.removePeon(move.getPeon());
-				white.addPeon(king);
-				_peons[targetRow][targetCol] = king;		
-			}
+			King king = new King(player, targetRow, targetCol);
+			player.removePeon(move.getPeon());
+			player.addPeon(king);
+			_peons[targetRow][targetCol] = king;
+		}
+		return true;
+	}	
+
+	/**
+	 * Updates the bit masks according to the given Move.
+	 * @param move the Move to perform
+	 */
+	private void makeBitMove(Move move)
+	{
+		_bits.makeMove(encode(move), getCapturedMask(move, false), getCapturedMask(move, true));
+	}
+
+	/**
+	 * Adds the encoding of a Move of this board to a move list: the encoded move
+	 * (source, target and promotion, see BitBoard.encodeMove), the captured pieces
+	 * and the hops. Must be called before the Move is made.
+	 * @param move a legal Move of this board
+	 * @param list the list to add to
+	 */
+	public void encodeMove(Move move, MoveList list)
+	{
+		int[] hops = new int[move.getNumberOfHops()];
+		int i = 0;
+		for (Enumeration en = move.getHops(); en.hasMoreElements(); i++)
+		{
+			Point hop = (Point) en.nextElement();
+			hops[i] = _bits.getSquare(hop.getRow(), hop.getCol());
+		}
+		list.add(encode(move), getCapturedMask(move, false), getCapturedMask(move, true), hops, hops.length);
+	}
+
+	/**
+	 * Makes a move of a move list, as encoded by encodeMove.
+	 * The moving piece is moved, not rebuilt, and the captured pieces are removed from their player.
+	 * @param moves the move list
+	 * @param index index of the move in the list
+	 */
+	public void makeMove(MoveList moves, int index)
+	{
+		int move = moves.getMove(index);
+		MoveTables tables = MoveTables.getTables(_peons.length);
+		Point from = tables.getPoint(BitBoard.getFrom(move));
+		Point to = tables.getPoint(BitBoard.getTo(move));
+		Peon peon = _peons[from.getRow()][from.getCol()];
+		long captured = moves.getCapturedPeons(index) | moves.getCapturedKings(index);
+		for (int square = 0; captured != 0; square++, captured >>>= 1)
+		{
+			if ((captured & 1) == 0)
+				continue;
+			Point point = tables.getPoint(square);
+			Peon p = _peons[point.getRow()][point.getCol()];
+			_peons[point.getRow()][point.getCol()] = null;
+			p.getPlayer().removePeon(p);
+		}
+		_peons[from.getRow()][from.getCol()] = null;
+		if ((move & BitBoard.PROMOTION) != 0)
+		{
+			Player player = peon.getPlayer();
+			player.removePeon(peon);
+			peon = new King(player, to.getRow(), to.getCol());
+			player.addPeon(peon);
+		}
+		else
+			peon.move(to);
+		_peons[to.getRow()][to.getCol()] = peon;
+		moves.makeMove(_bits, index);
+	}
+
+	/**
+	 * Takes back a move of a move list, made by makeMove(Move) or makeMove(MoveList, int).
+	 * The moving piece is moved back (a crowned peon is demoted), and the captured
+	 * pieces are put back and returned to their player.
+	 * @param moves the move list
+	 * @param index index of the move in the list
+	 * @param opponent the Player whose pieces the move captured
+	 */
+	public void unmakeMove(MoveList moves, int index, Player opponent)
+	{
+		int move = moves.getMove(index);
+		MoveTables tables = MoveTables.getTables(_peons.length);
+		Point from = tables.getPoint(BitBoard.getFrom(move));
+		Point to = tables.getPoint(BitBoard.getTo(move));
+		Peon peon = _peons[to.getRow()][to.getCol()];
+		_peons[to.getRow()][to.getCol()] = null;
+		if ((move & BitBoard.PROMOTION) != 0)
+		{
+			Player player = peon.getPlayer();
+			player.removePeon(peon);
+			peon = new Peon(player, from.getRow(), from.getCol());
+			player.addPeon(peon);
 		}
 		else
+			peon.move(from);
+		_peons[from.getRow()][from.getCol()] = peon;
+		long capturedKings = moves.getCapturedKings(index);
+		long captured = moves.getCapturedPeons(index) | capturedKings;
+		for (int square = 0; captured != 0; square++, captured >>>= 1, capturedKings >>>= 1)
 		{
-			if (targetRow == 0)
-			{
-				King king = new King(black, targetRow, targetCol);
-				black.removePeon(move.getPeon());
-				black.addPeon(king);
-				_peons[targetRow][targetCol] = king;		
-			}		
+			if ((captured & 1) == 0)
+				continue;
+			Point point = tables.getPoint(square);
+			Peon p = ((capturedKings & 1) != 0)
+				? new King(opponent, point.getRow(), point.getCol())
+				: new Peon(opponent, point.getRow(), point.getCol());
+			opponent.addPeon(p);
+			_peons[point.getRow()][point.getCol()] = p;
 		}
-		return true;
-	}	
+		moves.unmakeMove(_bits, index);
+	}
+
+	/**
+	 * Returns the encoded form of a Move of this board, see BitBoard.encodeMove.
+	 * @param move the Move, not made yet
+	 * @return encoded move
+	 */
+	private int encode(Move move)
+	{
+		Peon peon = move.getPeon();
+		byte color = peon.getPlayer().getColor();
+		int from = _bits.getSquare(peon.getRow(), peon.getCol());
+		int to = _bits.getSquare(move.getLastHop().getRow(), move.getLastHop().getCol());
+		boolean king = peon instanceof King;
+		return BitBoard.encodeMove(from, to, color, king, !king && _bits.isPromotionSquare(color, to));
+	}
+
+	/**
+	 * Returns the squares of the peons or of the kings captured by a Move.
+	 * @param move the Move
+	 * @param kings true for the captured kings, false for the captured peons
+	 * @return bit mask of squares
+	 */
+	private long getCapturedMask(Move move, boolean kings)
+	{
+		long mask = 0;
+		for (Enumeration en = move.getCapturedPeons(); en.hasMoreElements();)
+		{
+			Peon p = (Peon) en.nextElement();
+			if ((p instanceof King) == kings)
+				mask |= 1L << _bits.getSquare(p.getRow(), p.getCol());
+		}
+		return mask;
+	}
+
+	/**
+	 * Returns the bit masks representation of the board.
+	 * The returned BitBoard is the live position, and must not be modified.
+	 * @return BitBoard of this board
+	 */
+	public BitBoard getBitBoard()
+	{
+		return _bits;
+	}
 	
 	/**
 	 * Creates an encoded representation of the board.
@@ -142,39 +324,7 @@ public class Board implements Cloneable,Serializable
 	 */
 	public long[] encode()
 	{
-		long i=0x0001;
-		long blackPeons = 0;
-		long blackKings = 0;
-		long whitePeons = 0;
-		long whiteKings = 0;
-		long usedSquares = 0;
-		for (int row=0; row<Game.getInstance().getBoardSize(); row++)
-			for (int col=0; col<Game.getInstance().getBoardSize(); col++)
-			{
-				if ((row+col)%2 == 0) continue; //white square
-				Peon p = _peons[row][col];
-				if (p != null)
-				{
-					usedSquares |= i;
-					if (p instanceof King)
-					{
-						if (p.getPlayer().getColor() == Player.PLAYER_BLACK)
-							blackKings |= i;
-						else
-							whiteKings |= i;
-					}
-					else
-					{
-						if (p.getPlayer().getColor() == Player.PLAYER_BLACK)
-							blackPeons |= i;
-						else
-							whitePeons |= i;
-					}
-							
-				}
-				i = i << 1;
-			}
-		return new long[]{blackPeons, blackKings, whitePeons, whiteKings, usedSquares};
+		return _bits.encode();
 	}
 	
 	/**
@@ -185,22 +335,7 @@ public class Board implements Cloneable,Serializable
 	public boolean equals(Board other)
 	{
 		if (other == null) return false;
-		for (int row=0; row<Game.getInstance().getBoardSize(); row++)
-			for (int col=0; col<Game.getInstance().getBoardSize(); col++)
-			{
-				if ((row+col)%2 == 0) continue; //white square
-				Peon p1 = _peons[row][col];
-				Peon p2 = other._peons[row][col];
-				//System.out.println("["+row+","+col+"] "+p1+" "+p2);
-				
-				if (p1 == null && p2 == null) continue;
-				if (p1 == null || p2 == null) return false;
-				if ((p1 instanceof King) == (p2 instanceof King))
-					if (p1.getPlayer().getColor() == p2.getPlayer().getColor())
-						continue;
-				/*if (p1 != p2) */return false;
-			}
-		return true;
+		return _bits.equals(other._bits);
 	}
 	
 	/**
@@ -210,29 +345,35 @@ public class Board implements Cloneable,Serializable
 	public Object clone()
 	{
 		Board b = new Board();
-		int sz = Game.getInstance().getBoardSize();
+		int sz = _peons.length;
 		b._peons = new Peon[sz][sz];
-		for (int row=0; row<Game.getInstance().getBoardSize(); row++)
-			for (int col=0; col<Game.getInstance().getBoardSize(); col++)
+		for (int row=0; row<sz; row++)
+			for (int col=0; col<sz; col++)
 			{
 				if ((row+col)%2 == 0) continue; //white square
 				b._peons[row][col] = _peons[row][col];
 			}		
+		b._bits = (BitBoard)_bits.clone();
 		return b;
 	}
 	
 	/**
-	 * Updates the peons inner point to board matrix points
-	 * @see Game.update
+	 * Reads the board from an ObjectInputStream, and rebuilds its bit masks.
+	 * @param stream ObjectInputStream to read from
+	 * @throws IOException
+	 * @throws ClassNotFoundException
 	 */
-	public void updatePeonsLocations()
+	private void readObject(java.io.ObjectInputStream stream)
+		throws IOException, ClassNotFoundException
 	{
-		for (int row=0; row<Game.getInstance().getBoardSize(); row++)
-			for (int col=0; col<Game.getInstance().getBoardSize(); col++)
+		stream.defaultReadObject();
+		_bits = new BitBoard(_peons.length);
+		for (int row=0; row<_peons.length; row++)
+			for (int col=0; col<_peons.length; col++)
 			{
-				if ((row+col)%2 == 0) continue; //white square
-				if (_peons[row][col]!=null)
-					_peons[row][col].move(new Point(row,col));
-			}	
+				Peon p = _peons[row][col];
+				if (p != null)
+					_bits.setPiece(_bits.getSquare(row, col), p.getPlayer().getColor(), p instanceof King);
+			}
 	}
 }
\ No newline at end of file
@@ -7,6 +7,8 @@ package checkers.game;
 
 import java.io.Serializable;
 
+import checkers.engine.Weights;
+import checkers.library.JavaCheckers;
 import checkers.library.NativeCheckers;
 import checkers.game.Game;
 import checkers.game.Move;
@@ -17,10 +19,40 @@ import checkers.game.Player;
  */
 public class CPUPlayer extends Player implements Serializable
 {
+	/**
+	 * Keeps saved games compatible with older versions of this class.
+	 */
+	private static final long serialVersionUID = 4076566167269077568L;
+
+	/**
+	 * Native search engine (checkers.dll).
+	 */
+	public static final String ENGINE_NATIVE = "native";
+
+	/**
+	 * Java search engine.
+	 */
+	public static final String ENGINE_JAVA = "java";
+
 	/**
 	 * CPU Player's level.
 	 */
 	private int _level;
+
+	/**
+	 * Java search engine of this Player, created on its first move.
+	 */
+	private transient JavaCheckers _javaEngine;
+
+	/**
+	 * Evaluation weights of the Java engine, or null for the weights file of the board size.
+	 */
+	private transient Weights _weights;
+
+	/**
+	 * Set to stop the Java engine search, see setStopped.
+	 */
+	private transient volatile boolean _stopped;
 	
 
 	/**
@@ -36,18 +68,30 @@ public class CPUPlayer extends Player implements Serializable
 	
 	/**
 	 * Plays next move.
-	 * This method uses the native bridge.
+	 * This method uses the native bridge, or the Java engine if selected by the
+	 * game properties or if the native library is not available.
 	 * @return The played Move
 	 * @see checkers.library.NativeCheckers
+	 * @see checkers.library.JavaCheckers
 	 */
 	public Move play()
 	{
 		Move move = null;		
 		try
 		{
-			Thread.sleep(500);
-			move = NativeCheckers.calculateMove(this);
-			Game.getInstance().isLegalMove(move);
+			if (isNativeEngine())
+				move = NativeCheckers.calculateMove(this);
+			else
+			{
+				if (_javaEngine == null)
+				{
+					_javaEngine = new JavaCheckers();
+					_javaEngine.setWeights(_weights);
+					_javaEngine.setStopped(_stopped);
+				}
+				move = _javaEngine.calculateMove(this);
+			}
+			getGame().isLegalMove(move);
 		}
 		catch (Exception ex)
 		{
@@ -56,6 +100,69 @@ public class CPUPlayer extends Player implements Serializable
 		return move;
 	}
 	
+	/**
+	 * Starts thinking on the opponent's turn, after a move of this Player.
+	 * Only the Java engine ponders, when the ponder game property is set.
+	 * @see checkers.library.JavaCheckers#ponder
+	 */
+	public void ponder()
+	{
+		String ponder = getGame().getGameProperty(Game.PONDER_PROPERTY);
+		if (isNativeEngine() || _javaEngine == null || ponder == null || !Boolean.valueOf(ponder.trim()).booleanValue())
+			return;
+		try
+		{
+			_javaEngine.ponder(this);
+		}
+		catch (Exception ex)
+		{
+			ex.printStackTrace();
+		}
+	}
+
+	/**
+	 * Stops thinking on the opponent's turn.
+	 */
+	public void stopPondering()
+	{
+		if (_javaEngine != null)
+			_javaEngine.stopPondering();
+	}
+
+	/**
+	 * Stops the search of the Java engine, which then plays the best move found so far.
+	 * The native engine can't be stopped, its move is waited for.
+	 * @param stopped true to stop, false to allow searching again
+	 */
+	public void setStopped(boolean stopped)
+	{
+		_stopped = stopped;
+		JavaCheckers engine = _javaEngine;
+		if (engine != null)
+			engine.setStopped(stopped);
+	}
+
+	/**
+	 * Checks which search engine should be used.
+	 * @return true iff the native engine is selected and available
+	 */
+	private boolean isNativeEngine()
+	{
+		return getGame().isNativeEngineUsed();
+	}
+
+	/**
+	 * Sets the evaluation weights of the Java engine.
+	 * The native engine always uses its own weights.
+	 * @param weights the weights, or null for the weights file of the board size
+	 */
+	public void setWeights(Weights weights)
+	{
+		_weights = weights;
+		if (_javaEngine != null)
+			_javaEngine.setWeights(weights);
+	}
+
 	/**
 	 * Returns the CPU Player's level.
 	 * @return level of Player
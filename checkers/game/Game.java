@@ -5,6 +5,7 @@
  *****************************************************************************/
 package checkers.game;
 import java.util.*;
+import java.util.concurrent.*;
 import checkers.library.NativeCheckers;
 import java.io.*;
 
@@ -12,16 +13,116 @@ import java.io.*;
 /**
  * The Game class.
  * The Game is responsible of the game control.
- * Implemented as a singleton, i.e., only one instance of this class may exist.
+ * The game of the UI is a singleton (see getInstance). More games can be created for
+ * headless play (see start and play): they don't use the native library, which holds
+ * the state of a single game, and don't record their results.
+ *
+ * A game owns no thread: it is driven by events. The moves are asked to the players
+ * (see Player.startMove), and the commands (Undo, Redo, Restart, stop) are queued.
+ * Each completed move or queued command schedules the processing of the game on a
+ * small executor shared by all the games, which plays the move and asks for the next
+ * one at once, or handles the commands. A command stops the move being computed
+ * (see Player.setStopped), which is then dropped.
  */
 public class Game implements Runnable,java.io.Serializable
 {
+	/**
+	 * Keeps saved games compatible with older versions of this class.
+	 */
+	private static final long serialVersionUID = 9069021625228026433L;
+
 	public static final String RESULTS_FILE = "data/results.dat";
 	
 	private static final String PROPERTIES_FILE = "checkers.properties";
 	
 	public static final String MAX_LEVEL_PROPERTY = "maxLevel";
+
+	/**
+	 * Search engine of machine players, "native" or "java"
+	 */
+	public static final String ENGINE_PROPERTY = "engine";
+
+	/**
+	 * Size of the java engine transposition table, in megabytes (0 for no table)
+	 */
+	public static final String HASH_SIZE_PROPERTY = "hashSize";
+
+	/**
+	 * Time budget of a java engine move, in milliseconds (0 for none)
+	 */
+	public static final String MOVE_TIME_PROPERTY = "moveTime";
+
+	/**
+	 * Nodes budget of a java engine move (0 for none)
+	 */
+	public static final String MOVE_NODES_PROPERTY = "moveNodes";
+
+	/**
+	 * Number of java engine search threads
+	 */
+	public static final String THREADS_PROPERTY = "threads";
+
+	/**
+	 * Makes the java engine search repeatable ("true" or "false")
+	 */
+	public static final String DETERMINISTIC_PROPERTY = "deterministic";
+
+	/**
+	 * File the finished games are appended to (none if missing or empty)
+	 */
+	public static final String ARCHIVE_PROPERTY = "gamesArchive";
+
+	/**
+	 * Lets the java engine think on the turn of a human opponent ("true" or "false")
+	 */
+	public static final String PONDER_PROPERTY = "ponder";
 	
+	/**
+	 * Number of threads processing the games.
+	 */
+	private static final int GAME_THREADS = 2;
+
+	/**
+	 * Threads computing the players' moves, shared by all the games.
+	 */
+	private static final ExecutorService _executor = Executors.newCachedThreadPool(new DaemonThreadFactory("Move"));
+
+	/**
+	 * Threads processing the games' moves and commands, shared by all the games.
+	 * Separate from the moves threads, so commands are handled while moves are computed.
+	 */
+	private static final ExecutorService _gameExecutor = Executors.newFixedThreadPool(GAME_THREADS,
+		new DaemonThreadFactory("Game"));
+
+	/**
+	 * Creates the daemon threads of the executors.
+	 */
+	private static class DaemonThreadFactory implements ThreadFactory
+	{
+		private String _name;
+
+		/**
+		 * Constructor.
+		 * @param name name of the threads
+		 */
+		DaemonThreadFactory(String name)
+		{
+			_name = name;
+		}
+
+		/**
+		 * Creates a thread.
+		 * @param task the task run by the thread
+		 * @return a daemon thread
+		 */
+		public Thread newThread(Runnable task)
+		{
+			Thread thread = new Thread(task, _name);
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
 	/**
 	 * The one and only instance of Game
 	 */
@@ -50,7 +151,7 @@ public class Game implements Runnable,java.io.Serializable
 	/**
 	 * Game display (UI system)
 	 */
-	private static Display _display;
+	private transient Display _display;
 
 	/**
 	 * Determines whose Player's turn to play.
@@ -58,45 +159,82 @@ public class Game implements Runnable,java.io.Serializable
 	private byte _turn;
 
 	/**
-	 * Indicator to stop the current game.
+	 * Determines whether online learning is active.
 	 */
-	private boolean _stop;
+	private boolean _onlineLearning;
 
 	/**
-	 * Determines whether online learning is active.
+	 * True from the start of a game until it is over or stopped.
 	 */
-	private boolean _onlineLearning;
+	private boolean _running;
 
 	/**
-	 * Game control thread.
+	 * Commands waiting to be handled: "Start", "Undo", "Redo", "Restart" or "Stop".
 	 */
-	private Thread _gameThread;
+	private transient LinkedList _commands = new LinkedList();
 
 	/**
-	 * Holds previous board for draw detection and Undo/Redo mechanism
+	 * True while the processing of the game is scheduled or running.
 	 */
-	private Vector _history;
+	private boolean _processing;
 
 	/**
-	 * Keeps location of current board within the history vector for Redo/Undo
+	 * The move asked to the player to move, or null.
 	 */
-	private int _historyLocation;
+	private transient MoveRequest _request;
 
 	/**
-	 * Indicator for updated fields for "run" thread exit
+	 * True if the move asked was stopped, since a command is waiting.
 	 */
-	private boolean _updated;
+	private boolean _requestStopped;
 
 	/**
-	 * Task to do while updating in background
+	 * Log of the moves played, for the Undo/Redo mechanism.
+	 * Moves are kept encoded (see Board.encodeMove), a few bytes each.
 	 */
-	private String _task;
+	private transient MoveList _history = new MoveList();
+
+	/**
+	 * Number of moves of the history leading to the current board,
+	 * the moves after it are the "Redo" information
+	 */
+	private int _historyLocation;
+
+	/**
+	 * Occurrences of the positions of the history, up to _historyLocation, for draw detection.
+	 */
+	private transient RepetitionTable _repetitions = new RepetitionTable();
 
 	/**
 	 * Size of undo for game (1 for Human Vs. CPU, 2 for Human Vs. Human)
 	 */
 	private int _undoSize;
 
+	/**
+	 * Guards the legal moves buffer, which the game thread and the UI may both use.
+	 */
+	private final transient Object _legalMovesLock = new Object();
+
+	/**
+	 * Generator of the legal moves.
+	 */
+	private transient MoveGenerator _generator;
+
+	/**
+	 * Legal moves of the position and player below, reused between checks.
+	 */
+	private transient MoveList _legalMoves;
+
+	/**
+	 * Position the legal moves were generated for.
+	 */
+	private transient BitBoard _legalMovesBoard;
+
+	/**
+	 * Player the legal moves were generated for.
+	 */
+	private transient byte _legalMovesColor;
+
 	/**
 	 * Indicates whether an opening book is used by machine players.
 	 */
@@ -108,33 +246,59 @@ public class Game implements Runnable,java.io.Serializable
 	private Properties _properties;
 
 	/**
-	 * Set the display system of the game.
+	 * Winner of the last game: a Player color, 0 for a draw, -1 if the game was stopped.
+	 */
+	private byte _winner;
+
+	/**
+	 * Set the display system of the UI game.
 	 * @param display game's display.
 	 */
 	public static void setDisplay(Display display)
 	{
-		_display = display;
+		getInstance()._display = display;
 	}
 
 	/**
-	 * Construct a new Game. 
+	 * Construct the Game of the UI.
 	 * The constructor has a private access, since only one instance of this class can exist.
 	 */
 	private Game()
 	{
-		_stop = false;
+		this(loadProperties(), null);
+	}
+
+	/**
+	 * Constructs a headless Game.
+	 * @param properties game properties
+	 * @param display game's display
+	 */
+	public Game(Properties properties, Display display)
+	{
 		_turn = Player.PLAYER_WHITE;
-		_updated = false;
-		_properties = new Properties();
+		_winner = -1;
+		_properties = properties;
+		_display = display;
+	}
+
+	/**
+	 * Reads the game properties file.
+	 * @return the game properties, empty if the file cannot be read
+	 */
+	public static Properties loadProperties()
+	{
+		Properties properties = new Properties();
 		try
 		{
 			FileInputStream fis = new FileInputStream(PROPERTIES_FILE);
-			_properties.load(fis);
+			properties.load(fis);
+			fis.close();
 		}
 		catch (IOException ioe)
 		{
 			System.err.println("Error reading game properties file: "+ioe.getMessage());
 		}
+		return properties;
 	}
 	
 	public String getGameProperty(String propertyName)
@@ -143,14 +307,11 @@ public class Game implements Runnable,java.io.Serializable
 	}
 
 	/**
-	 * Stops the game thread.
+	 * Stops the game. The move being computed is stopped and dropped.
 	 */
 	public void stopGame()
 	{
-		synchronized (this)
-		{
-			_stop = true;
-		}
+		post("Stop");
 	}
 
 	/**
@@ -160,33 +321,127 @@ public class Game implements Runnable,java.io.Serializable
 	 * @param boardSize size of board
 	 * @param rows number of starting rows per player
 	 */
-	public void startGame(Player white, Player black, int boardSize, int rows)
+	public synchronized void startGame(Player white, Player black, int boardSize, int rows)
 	{
-		_stop = false;
-		_updated = false;
+		_commands.clear(); // commands of the former game
 		_whitePlayer = white;
 		_blackPlayer = black;
+		white.setGame(this);
+		black.setGame(this);
 		_boardSize = boardSize;
-		NativeCheckers.setBoardSize(boardSize);
-		_board = new Board(boardSize, rows);
-		_history = new Vector();
+		if (isMainGame() && NativeCheckers.isLoaded())
+			NativeCheckers.setBoardSize(boardSize);
+		_board = new Board(boardSize, rows, white, black);
+		_history.clear();
 		_historyLocation = 0;
 		_turn = Player.PLAYER_WHITE;
-		_gameThread = new Thread(this);
-		_gameThread.start();
+		_running = true;
+		post("Start"); // the move of the former game is dropped
+	}
+
+	/**
+	 * Sets up a position without starting the game, so the rules of the
+	 * position can be queried (legal moves, compulsory captures), or the game
+	 * can be played from it by start or play.
+	 * Must not be called while a game is running.
+	 * @param white white Player
+	 * @param black black Player
+	 * @param board the position, whose pieces belong to the given players
+	 * @param turn color of the Player to move
+	 */
+	public synchronized void setPosition(Player white, Player black, Board board, byte turn)
+	{
+		_whitePlayer = white;
+		_blackPlayer = black;
+		white.setGame(this);
+		black.setGame(this);
+		_boardSize = board.getBitBoard().getSize();
+		_board = board;
+		_history.clear();
+		_historyLocation = 0;
+		_repetitions.clear();
+		_turn = turn;
+	}
+
+	/**
+	 * Starts the game set up by setPosition, without waiting for it: the game is played
+	 * on the executor threads, until it is over (see isRunning) or stopped by stopGame.
+	 */
+	public synchronized void start()
+	{
+		_commands.clear();
+		_running = true;
+		post("Start");
 	}
 
 	/**
-	 * Restarts game with updated field
+	 * Plays the game set up by setPosition, and waits until it is over or stopped by stopGame.
+	 * @return the winner: a Player color, 0 for a draw, or -1 if the game was stopped
 	 */
-	private void reStartGame()
+	public synchronized byte play()
 	{
-		if (! _stop)
+		start();
+		try
+		{
+			while (_running)
+				wait();
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
 			stopGame();
-		_stop = false;
-		_updated = true; // set update in game fields
-		_gameThread = new Thread(this);
-		_gameThread.start();
+		}
+		return _winner;
+	}
+
+	/**
+	 * Plays the game set up by setPosition in the calling thread. Implements the
+	 * run() method of Runnable.
+	 */
+	public void run()
+	{
+		play();
+	}
+
+	/**
+	 * Checks if the game is played.
+	 * @return true from the start of the game until it is over or stopped
+	 */
+	public synchronized boolean isRunning()
+	{
+		return _running;
+	}
+
+	/**
+	 * Returns the winner of the last game.
+	 * @return a Player color, 0 for a draw, or -1 if the game was stopped or is not over
+	 */
+	public byte getWinner()
+	{
+		return _winner;
+	}
+
+	/**
+	 * Checks if this is the game of the UI, the only one that uses the native
+	 * library, records its results and lets the UI act between moves.
+	 * @return true for the singleton game
+	 */
+	private boolean isMainGame()
+	{
+		return this == _singleton;
+	}
+
+	/**
+	 * Checks if machine players use the native search engine: the engine
+	 * property doesn't select the Java engine, and the native library is available
+	 * to this game.
+	 * @return true iff the native engine is used
+	 */
+	public boolean isNativeEngineUsed()
+	{
+		String engine = getGameProperty(ENGINE_PROPERTY);
+		return isMainGame() && NativeCheckers.isLoaded()
+			&& !CPUPlayer.ENGINE_JAVA.equalsIgnoreCase(engine == null ? null : engine.trim());
 	}
 
 	/**
@@ -237,7 +492,8 @@ public class Game implements Runnable,java.io.Serializable
 	public void setOnlineLearning(boolean learning)
 	{
 		_onlineLearning = learning;
-		NativeCheckers.setOnlineLearning(learning);
+		if (isMainGame() && NativeCheckers.isLoaded())
+			NativeCheckers.setOnlineLearning(learning);
 	}
 
 	/**
@@ -275,88 +531,69 @@ public class Game implements Runnable,java.io.Serializable
 
 	/**
 	 * Checks the legality of a complete or partial move.
+	 * The move is looked up in the legal moves of its player, as generated by the
+	 * MoveGenerator: a complete move must be one of them, a partial move must start one of them.
+	 * The opponent peons captured by the checked hops are added to the move.
 	 * @param move The move to check legality of.
 	 * @param partial if partial move allowed.
 	 * @return true iff move is legal.
 	 */
 	private boolean isLegalMove(Move move, boolean partial)
 	{
-	 	 if (move == null) return false;
-		 boolean kingMove = move.getPeon() instanceof King;
-		 Enumeration hops = move.getHops();
-		 Point start = move.getPeon().getPoint();
-		 Point source = move.getPeon().getPoint();
-		 Point target = null;
-		 for ( ; hops.hasMoreElements() ; source = target)
-		 {
-			target = (Point)hops.nextElement();
-			int rowMove = target.getRow() - source.getRow();
-			int colMove = target.getCol() - source.getCol();
-
-			if (_board.getPeonAt(target.getRow(),target.getCol()) != null)
-				return false; // must be empty..
-
-			int rowAdvance =   (move.getPeon().getPlayer().getColor() == Player.PLAYER_BLACK)
-								? -1 : 1;
-			if (( (rowMove == rowAdvance)||(kingMove && Math.abs(rowMove)==1))
-				&& (Math.abs(colMove) == 1) /*&& first*/)
-			{ // regular move -> good direction & one col & first (or king backwards)
-				return (!hops.hasMoreElements() && !isCompulsory(move.getPeon().getPlayer()));
-			}  // if regular move than no more moves and no compulsory...
-			else if (  (Math.abs(rowMove) == 2) && (Math.abs(colMove)==2)  // hitting
-					 && (( rowMove*rowAdvance > 0 ) || /*!first ||*/ kingMove))
-					 {
-						// (first & good direction) | !first || king
-  						Point hitPoint = new Point((target.getRow()+source.getRow())/2,
-						 						     (target.getCol()+source.getCol())/2);
-						Peon capturedPeon = _board.getPeonAt(hitPoint.getRow(),hitPoint.getCol());
-						if (capturedPeon == null)
-							return false;
-						if (capturedPeon.getPlayer().equals(move.getPeon().getPlayer()))
-							return false;
-						move.addCapturedPeon(capturedPeon);
-						//first = false;
-					 }
-			else return false;
-		}
-		if (move.getCapturedPeons().hasMoreElements() &&  !partial && target != null)
-		{
-			Peon peon = move.getPeon();
-			peon.move(target);
-			for (Enumeration captured = move.getCapturedPeons(); captured.hasMoreElements();)
+		if (move == null) return false;
+		Peon peon = move.getPeon();
+		MoveTables tables = MoveTables.getTables(_boardSize);
+		int from = tables.getSquare(peon.getRow(), peon.getCol());
+		int hopsCount = move.getNumberOfHops();
+		if (hopsCount == 0) return true;
+		int[] hops = new int[hopsCount];
+		int i = 0;
+		for (Enumeration e = move.getHops(); e.hasMoreElements(); i++)
+		{
+			Point hop = (Point) e.nextElement();
+			hops[i] = tables.getSquare(hop.getRow(), hop.getCol());
+			if (hops[i] < 0) return false;
+		}
+		synchronized (_legalMovesLock)
+		{
+			MoveList legalMoves = getLegalMoves(peon.getPlayer().getColor());
+			for (int m = 0; m < legalMoves.size(); m++)
 			{
-				Peon p = (Peon) captured.nextElement();
-				_board.setPeonAt(p.getPoint(), null);
+				int count = legalMoves.getNumberOfHops(m);
+				if (BitBoard.getFrom(legalMoves.getMove(m)) != from
+					|| (partial ? (count < hopsCount) : (count != hopsCount)))
+					continue;
+				for (i = 0; i < hopsCount && legalMoves.getHop(m, i) == hops[i]; i++);
+				if (i < hopsCount)
+					continue;
+				if (legalMoves.isCapture(m))
+					addCapturedPeons(move, tables, from, hops);
+				return true;
 			}
-			for (Enumeration possibleTargets = peon.getPossibleSimpleTargets(true);
-				possibleTargets.hasMoreElements();)
-				{
-					Point t = (Point)possibleTargets.nextElement();
-					Move mv = new Move(peon,t);
-					if (isLegalPartialMove(mv))
-					{
-						if (mv.getCapturedPeons().hasMoreElements())
-						{
-							peon.move(start);
-							for (Enumeration captured = move.getCapturedPeons(); captured.hasMoreElements();)
-							{
-								Peon p = (Peon) captured.nextElement();
-								_board.setPeonAt(p.getPoint(), p);
-							}
-
-							return false;
-						}
-					}
-				}
-			peon.move(start);
-			for (Enumeration captured = move.getCapturedPeons(); captured.hasMoreElements();)
+		}
+		return false;
+	}
+
+	/**
+	 * Adds to a move the opponent peons it captures, skipping those already added.
+	 * @param move the move, with jump hops only
+	 * @param tables tables of the board size
+	 * @param from source square of the move
+	 * @param hops squares of the hops
+	 */
+	private void addCapturedPeons(Move move, MoveTables tables, int from, int[] hops)
+	{
+		int source = from;
+		for (int i = 0; i < hops.length; i++)
+		{
+			if (i >= move.getNumberOfCapturedPeons())
 			{
-				Peon p = (Peon) captured.nextElement();
-				_board.setPeonAt(p.getPoint(), p);
+				Point s = tables.getPoint(source);
+				Point t = tables.getPoint(hops[i]);
+				move.addCapturedPeon(_board.getPeonAt((s.getRow()+t.getRow())/2, (s.getCol()+t.getCol())/2));
 			}
-
+			source = hops[i];
 		}
-		return true;
 	}
 
 	/**
@@ -364,21 +601,13 @@ public class Game implements Runnable,java.io.Serializable
 	 * @param player The player which might have compulsory moves
 	 * @return true iff player has compulsory moves
 	 */
-	private boolean isCompulsory(Player player)
+	public boolean isCompulsory(Player player)
 	{
-	  	for (Enumeration peons = player.getPeons();peons.hasMoreElements();)
-	  	{
-	  		Peon peon = (Peon) peons.nextElement();
-			for (Enumeration hitTargets = peon.getPossibleSimpleTargets(true);
-				hitTargets.hasMoreElements();)
-				{
-					Move move = new Move(peon,(Point)hitTargets.nextElement());
-					if (isLegalPartialMove(move))
-						if (move.getCapturedPeons().hasMoreElements())
-							return true;
-				}
-	  	}
-	  	return false;
+		synchronized (_legalMovesLock)
+		{
+			MoveList legalMoves = getLegalMoves(player.getColor());
+			return legalMoves.size() > 0 && legalMoves.isCapture(0);
+		}
 	}
 
 	/**
@@ -389,17 +618,61 @@ public class Game implements Runnable,java.io.Serializable
 	public Vector getLegalSimpleTargets(Peon peon)
 	{
 		Vector targets = new Vector();
-		for (Enumeration possibleTargets = peon.getPossibleSimpleTargets(false);
-			possibleTargets.hasMoreElements();)
+		MoveTables tables = MoveTables.getTables(_boardSize);
+		int from = tables.getSquare(peon.getRow(), peon.getCol());
+		synchronized (_legalMovesLock)
+		{
+			MoveList legalMoves = getLegalMoves(peon.getPlayer().getColor());
+			for (int m = 0; m < legalMoves.size(); m++)
 			{
-				Point target = (Point)possibleTargets.nextElement();
-				Move move = new Move(peon,target);
-				if (isLegalPartialMove(move))
+				if (BitBoard.getFrom(legalMoves.getMove(m)) != from)
+					continue;
+				Point target = tables.getPoint(legalMoves.getHop(m, 0));
+				if (!targets.contains(target))
 					targets.addElement(target);
 			}
+		}
 		return targets;
 	}
 
+	/**
+	 * Checks if a Player has any legal move in the current position.
+	 * @param color Player color
+	 * @return true iff the player can move
+	 */
+	public boolean hasLegalMoves(byte color)
+	{
+		synchronized (_legalMovesLock)
+		{
+			return getLegalMoves(color).size() > 0;
+		}
+	}
+
+	/**
+	 * Returns the legal moves of a Player in the current position.
+	 * The moves are generated once per position and player, into a reused buffer.
+	 * Must be called holding _legalMovesLock.
+	 * @param color Player color
+	 * @return legal moves, valid until the lock is released
+	 */
+	private MoveList getLegalMoves(byte color)
+	{
+		BitBoard board = _board.getBitBoard();
+		if (_generator == null)
+		{
+			_generator = new MoveGenerator();
+			_legalMoves = new MoveList();
+			_legalMovesBoard = new BitBoard(_boardSize);
+		}
+		else if (_legalMovesColor == color && _legalMovesBoard.getSize() == board.getSize()
+			&& _legalMovesBoard.equals(board))
+			return _legalMoves;
+		_generator.generate(board, color, _legalMoves);
+		_legalMovesBoard.copyFrom(board);
+		_legalMovesColor = color;
+		return _legalMoves;
+	}
+
 	/**
 	 * Returns the white Player.
 	 * @return white color Player
@@ -430,55 +703,59 @@ public class Game implements Runnable,java.io.Serializable
 
 
 	/**
-	 * Checks for a draw situation.
-	 * A draw is announced it the same board position appeared three times.
-	 * Also adds the current board to the history, updates _historyLocation to last (discards "Redo")
-	 * @return true if draw should be announced.
+	 * Returns the positions played so far, up to the current one.
+	 * The positions are rebuilt from the current board and the moves history.
+	 * Used by machine players for draw detection.
+	 * @return positions, oldest first
 	 */
-	private boolean checkDraw()
+	public synchronized BitBoard[] getPlayedPositions()
 	{
-		int count = 0;
-		for (int i = 0; i < _historyLocation; i++)
+		BitBoard[] positions = new BitBoard[_historyLocation + 1];
+		positions[_historyLocation] = (BitBoard) _board.getBitBoard().clone();
+		for (int i = _historyLocation - 1; i >= 0; i--)
 		{
-			if (_board.equals((Board)(_history.elementAt(i))))
-			{
-				count++;
-			}
+			positions[i] = (BitBoard) positions[i + 1].clone();
+			_history.unmakeMove(positions[i], i);
 		}
-		if (_historyLocation+1 < _history.size())
+		return positions;
+	}
+
+	/**
+	 * Makes a move on the board and adds it to the history.
+	 * Discards the "Redo" information.
+	 * @param move the Move to make
+	 */
+	private void makeMove(Move move)
+	{
+		if (_historyLocation < _history.size())
 		 // there is "Redo" information but played another move...
-			_history.setSize(_historyLocation+1);
+			_history.setSize(_historyLocation);
+		_board.encodeMove(move, _history);
 		_historyLocation++;
-		_history.addElement((Board)_board.clone());
-		return (count >= 2);
+		_board.makeMove(move);
 	}
 
 	/**
-	 * Updates action for game
-	 * Task may be: Redo/Undo/Restart
-	 * The task may be performed later, according to the game thread's state.
-	 * @param Task name of the task to perform.
+	 * Checks for a draw situation.
+	 * A draw is announced it the same board position appeared three times.
+	 * Positions are counted by their hash, so the check doesn't depend on the game length.
+	 * Also counts the current board, which must have just been played.
+	 * @return true if draw should be announced.
 	 */
-	public void update(String task)
+	private boolean checkDraw()
 	{
-		_updated = true; // set update in game fields
-		_task = task;
+		return (_repetitions.add(_board.getBitBoard().getHash()) > 2);
 	}
 
 	/**
-	 * Updates the game according to the task
+	 * Updates action for game
+	 * Task may be: Redo/Undo/Restart
+	 * The task is queued, and performed as soon as the move being computed is stopped.
+	 * @param Task name of the task to perform.
 	 */
-	private synchronized void update()
+	public void update(String task)
 	{
-
-		if (_task.equals("Redo"))
-			reDo();
-		else if (_task.equals("Undo"))
-			unDo();
-		else if (_task.equals("Restart"))
-			reStartGame();
-		_updated = false;
-		_display.update(isUndoAvailable(),isRedoAvailable());
+		post(task);
 	}
 
 	/**
@@ -488,10 +765,17 @@ public class Game implements Runnable,java.io.Serializable
 	{
 		if (isUndoAvailable()==true)
 		{
-			NativeCheckers.unDo(_undoSize);
-			_historyLocation-=_undoSize;
+			if (isMainGame() && NativeCheckers.isLoaded())
+				NativeCheckers.unDo(_undoSize);
+			for (int i = 0; i < _undoSize; i++)
+			{
+				_repetitions.remove(_board.getBitBoard().getHash());
+				_historyLocation--;
+				byte color = BitBoard.getColor(_history.getMove(_historyLocation));
+				_board.unmakeMove(_history, _historyLocation,
+					(color == Player.PLAYER_WHITE) ? _blackPlayer : _whitePlayer);
+			}
 			_turn = (_undoSize%2!=0) ? Player.reverse(_turn) : _turn ;
-			updateBoardToHistory();
 		}
 	}
 
@@ -502,29 +786,25 @@ public class Game implements Runnable,java.io.Serializable
 	{
 		if (isRedoAvailable()==true)
 		{
-			NativeCheckers.reDo(_undoSize);
-			_historyLocation+=_undoSize;
+			if (isMainGame() && NativeCheckers.isLoaded())
+				NativeCheckers.reDo(_undoSize);
+			for (int i = 0; i < _undoSize; i++)
+			{
+				_board.makeMove(_history, _historyLocation);
+				_historyLocation++;
+				_repetitions.add(_board.getBitBoard().getHash());
+			}
 			_turn = (_undoSize%2!=0) ? Player.reverse(_turn) : _turn ;
-			updateBoardToHistory();
 		}
 	}
 
-	/**
-	 * Update the board to the history status.
-	 */
-	private synchronized void updateBoardToHistory()
-	{
-		_board = (Board)((Board)_history.elementAt(_historyLocation)).clone();
-		_board.updatePeonsLocations();
-	}
-
 	/**
 	 * Checks if Redo can be performed.
 	 * @return true iff redo is available
 	 */
 	private synchronized boolean isRedoAvailable()
 	{
-		return (_historyLocation + _undoSize < _history.size());
+		return (_historyLocation + _undoSize <= _history.size());
 	}
 
 	/**
@@ -547,98 +827,265 @@ public class Game implements Runnable,java.io.Serializable
 
 
 	/**
-	 * Runs the game thread. Implements the run() method of Runnable.
-	 * This is the main control method, which allows each player to make its move
-	 * on its turn.
+	 * Queues a command, stops the move being computed and schedules the processing of the game.
+	 * @param command "Start", "Undo", "Redo", "Restart" or "Stop"
 	 */
-	public synchronized void run()
+	private synchronized void post(String command)
 	{
-		NativeCheckers.clearHistory();
-		_history.addElement(_board.clone());
-		_historyLocation = 0;
-		boolean draw = false;
-		byte winner = -1;
-		Player white = _whitePlayer;
-		Player black = _blackPlayer;
-		while (Thread.currentThread() == _gameThread)
-		{
-			try {
-				synchronized (this)
-				{
-					if (_stop || draw) break;
-					if (white.getNumberOfPeons() > 0 &&  black.getNumberOfPeons() > 0)
-					{
-						if (_turn == Player.PLAYER_WHITE)
-						{
-							_display.showMessage("White's turn");
-							if (!white.gotMoves())
-							{
-								winner = Player.PLAYER_BLACK;
-								break;
-							}
-							Move move = white.play();
-							if (_updated)
-							{
-								update();
-								continue;
-							}
-							if (move == null)
-							{
-								break;
-							}
-							if (_onlineLearning && (black instanceof CPUPlayer))
-								NativeCheckers.learn(Player.PLAYER_BLACK, move);
-							_display.showMove(move);
-							_board.makeMove(move);
-							draw = checkDraw();
-							_turn = Player.PLAYER_BLACK;
-						}
-						else
-						{
-							_display.showMessage("Black's turn");
-							if (!black.gotMoves())
-							{
-								winner = Player.PLAYER_WHITE;
-								break;
-							}
-							Move move = black.play();
-							if (_updated)
-							{
-								update();
-								continue;
-							}
-							if (move == null)
-							{
-								break;
-							}
-							if (_onlineLearning && (white instanceof CPUPlayer))
-								NativeCheckers.learn(Player.PLAYER_WHITE, move);
-							_display.showMove(move);
-							_board.makeMove(move);
-							draw = checkDraw();
-							_turn = Player.PLAYER_WHITE;
-						}
-					}
-					else
-					{
-						if (white.getNumberOfPeons() == 0)
-							winner = Player.PLAYER_BLACK;
-						else
-							winner = Player.PLAYER_WHITE;
-						break;
-					}
-					if (!_stop)
-						_display.update(isUndoAvailable(),isRedoAvailable());
-				}
-				wait(100); // allows other thread to stop the game
+		_commands.addLast(command);
+		if (_request != null && !_requestStopped)
+		{
+			_requestStopped = true;
+			_request.getPlayer().setStopped(true);
+		}
+		schedule();
+	}
 
+	/**
+	 * Called by a MoveRequest of this game when the move is given.
+	 */
+	synchronized void moveCompleted()
+	{
+		schedule();
+	}
+
+	/**
+	 * Schedules the processing of the game, unless it is already scheduled.
+	 * Must be called holding the game's monitor.
+	 */
+	private void schedule()
+	{
+		if (_processing)
+			return;
+		_processing = true;
+		_gameExecutor.execute(new Runnable()
+		{
+			public void run()
+			{
+				process();
 			}
-			catch (Exception ex)
+		});
+	}
+
+	/**
+	 * Runs a task on the threads computing the players' moves.
+	 * @param task the task
+	 */
+	static void execute(Runnable task)
+	{
+		_executor.execute(task);
+	}
+
+	/**
+	 * Processes the game: plays the moves given and handles the commands, until a
+	 * move is waited for, or the game is over and no command is waiting.
+	 */
+	private synchronized void process()
+	{
+		try
+		{
+			while (step());
+		}
+		catch (RuntimeException re)
+		{
+			re.printStackTrace();
+		}
+		finally
+		{
+			_processing = false;
+		}
+	}
+
+	/**
+	 * Processes one event of the game: the move given, which is dropped if a command
+	 * is waiting, or else the first command, or else asks the next move.
+	 * @return false if there is nothing to do until the move is given or a command is queued
+	 */
+	private boolean step()
+	{
+		if (_request != null)
+		{
+			if (!_request.isDone())
+				return false;
+			MoveRequest request = _request;
+			_request = null;
+			if (_requestStopped)
 			{
-				ex.printStackTrace();
+				_requestStopped = false;
+				request.getPlayer().setStopped(false);
 			}
+			if (_commands.isEmpty() && _running)
+				playMove(request.getPlayer(), request.getMove());
+			return true;
+		}
+		if (!_commands.isEmpty())
+		{
+			handle((String) _commands.removeFirst());
+			return true;
 		}
+		if (!_running)
+			return false;
+		requestMove();
+		return true;
+	}
 
+	/**
+	 * Handles a command.
+	 * @param command "Start", "Undo", "Redo", "Restart" or "Stop"
+	 */
+	private void handle(String command)
+	{
+		if (command.equals("Start") || command.equals("Restart"))
+		{
+			begin();
+			if (command.equals("Restart"))
+				_display.update(isUndoAvailable(),isRedoAvailable());
+		}
+		else if (_running)
+		{
+			stopPondering();
+			if (command.equals("Redo"))
+				reDo();
+			else if (command.equals("Undo"))
+				unDo();
+			else if (command.equals("Stop"))
+			{
+				endGame(-1);
+				return;
+			}
+			_display.update(isUndoAvailable(),isRedoAvailable());
+		}
+	}
+
+	/**
+	 * Begins a game from the current board.
+	 */
+	private void begin()
+	{
+		stopPondering();
+		if (isMainGame() && NativeCheckers.isLoaded())
+			NativeCheckers.clearHistory();
+		_history.clear();
+		_historyLocation = 0;
+		_repetitions.clear();
+		_repetitions.add(_board.getBitBoard().getHash());
+		_winner = -1;
+		_running = true;
+	}
+
+	/**
+	 * Asks the move of the player to move, or ends the game if the player can't move.
+	 */
+	private void requestMove()
+	{
+		Player white = _whitePlayer;
+		Player black = _blackPlayer;
+		if (white.getNumberOfPeons() == 0 || black.getNumberOfPeons() == 0)
+		{
+			endGame((white.getNumberOfPeons() == 0) ? Player.PLAYER_BLACK : Player.PLAYER_WHITE);
+			return;
+		}
+		Player player = (_turn == Player.PLAYER_WHITE) ? white : black;
+		_display.showMessage((_turn == Player.PLAYER_WHITE) ? "White's turn" : "Black's turn");
+		if (!player.gotMoves())
+		{
+			endGame(Player.reverse(_turn));
+			return;
+		}
+		_request = new MoveRequest(this, player);
+		player.startMove(_request);
+	}
+
+	/**
+	 * Plays the move given by a player.
+	 * @param player the player who moved
+	 * @param move the move, or null to stop the game
+	 */
+	private void playMove(Player player, Move move)
+	{
+		if (move == null)
+		{
+			endGame(-1);
+			return;
+		}
+		Player opponent = (player == _whitePlayer) ? _blackPlayer : _whitePlayer;
+		if (_onlineLearning && (opponent instanceof CPUPlayer) && isMainGame() && NativeCheckers.isLoaded())
+			NativeCheckers.learn(opponent.getColor(), move);
+		_display.showMove(move);
+		makeMove(move);
+		_turn = opponent.getColor();
+		if (checkDraw())
+		{
+			endGame(0);
+			return;
+		}
+		ponder(player, opponent);
+		_display.update(isUndoAvailable(),isRedoAvailable());
+	}
+
+	/**
+	 * Ends the game: announces and records the result, and wakes up the threads waiting in play.
+	 * @param winner a Player color, 0 for a draw, or -1 if the game was stopped
+	 */
+	private void endGame(int winner)
+	{
+		stopPondering();
+		_running = false;
+		_winner = (byte) winner;
+		switch (_winner)
+		{
+			case Player.PLAYER_BLACK:
+				_display.showMessage("Game Over, Black wins");
+				break;
+			case Player.PLAYER_WHITE:
+				_display.showMessage("Game Over, White wins");
+				break;
+			case 0:
+				_display.showMessage("Game Over, Draw");
+				break;
+		}
+		if (isMainGame())
+			recordResult(_winner);
+		if (_winner >= 0)
+			archiveGame(_winner);
+		if (isMainGame() && NativeCheckers.isLoaded())
+			NativeCheckers.clearHistory();
+		_history.clear();
+		_historyLocation = 0;
+		_repetitions.clear();
+		_display.update(isUndoAvailable(),isRedoAvailable());
+		notifyAll();
+	}
+
+	/**
+	 * Lets a CPU Player think on the turn of its human opponent.
+	 * @param player the Player who just moved
+	 * @param opponent the Player to move
+	 */
+	private void ponder(Player player, Player opponent)
+	{
+		if (player instanceof CPUPlayer && opponent instanceof HumanPlayer)
+			((CPUPlayer) player).ponder();
+	}
+
+	/**
+	 * Stops the thinking of the CPU Players on their opponent's turn.
+	 */
+	private void stopPondering()
+	{
+		if (_whitePlayer instanceof CPUPlayer)
+			((CPUPlayer) _whitePlayer).stopPondering();
+		if (_blackPlayer instanceof CPUPlayer)
+			((CPUPlayer) _blackPlayer).stopPondering();
+	}
+
+	/**
+	 * Adds the result of a game to the results file, which counts the victories
+	 * of each color and the draws.
+	 * @param winner the winner, a Player color, 0 for a draw or -1 for no result
+	 */
+	private void recordResult(byte winner)
+	{
 		int whiteVictories = 0;
 		int blackVictories = 0;
 		int draws = 0;
@@ -653,19 +1100,15 @@ public class Game implements Runnable,java.io.Serializable
 		catch (Exception ex)
 		{
 		}
-		if (draw) winner = 0;
 		switch (winner)
 		{
 			case Player.PLAYER_BLACK:
-				_display.showMessage("Game Over, Black wins");
 				++blackVictories;
 				break;
 			case Player.PLAYER_WHITE:
-				_display.showMessage("Game Over, White wins");
 				++whiteVictories;
 				break;
 			case 0:
-				_display.showMessage("Game Over, Draw");
 				++draws;
 				break;
 		}
@@ -680,10 +1123,27 @@ public class Game implements Runnable,java.io.Serializable
 		catch (Exception ex)
 		{
 		}
-		NativeCheckers.clearHistory();
-		_history.clear();
-		_historyLocation = 0;
-		_display.update(isUndoAvailable(),isRedoAvailable());
+	}
+
+	/**
+	 * Appends the game to the games archive, if one is set by the game properties.
+	 * @param winner the winner, a Player color or 0 for a draw
+	 */
+	private void archiveGame(byte winner)
+	{
+		String fileName = getGameProperty(ARCHIVE_PROPERTY);
+		if (fileName == null || fileName.trim().length() == 0 || _historyLocation == 0)
+			return;
+		try
+		{
+			BitBoard initialPosition = getPlayedPositions()[0];
+			byte firstColor = BitBoard.getColor(_history.getMove(0));
+			GameArchive.append(fileName.trim(), initialPosition, firstColor, winner, _history, _historyLocation);
+		}
+		catch (IOException ioe)
+		{
+			System.err.println("Error: unable to write games archive "+fileName+": "+ioe.getMessage());
+		}
 	}
 
 	/**
@@ -739,11 +1199,14 @@ public class Game implements Runnable,java.io.Serializable
 	{
 		_singleton._blackPlayer = _blackPlayer;
 		_singleton._whitePlayer = _whitePlayer;
+		_blackPlayer.setGame(_singleton);
+		_whitePlayer.setGame(_singleton);
 		_singleton._board = _board;
 		_singleton._turn = _turn;
 		_singleton._boardSize = _boardSize;
-		_singleton._history = new Vector();
+		_singleton._history.clear();
 		_singleton._historyLocation = 0;
+		_singleton._repetitions.clear();
 		return _singleton;
 	}
 
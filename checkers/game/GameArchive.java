@@ -0,0 +1,231 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.game;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.StringTokenizer;
+import java.util.Vector;
+
+/**
+ * The GameArchive class.
+ * Reads and writes the archive of played games, a text file with a line per game:
+ *
+ *   size first result blackPeons blackKings whitePeons whiteKings move...
+ *
+ * where size is the board dimension, first is the color of the player to move first
+ * (W or B), result is W or B for the winner or D for a draw, the masks (in hex) are
+ * the initial position, and each move is the squares it passes through, including its
+ * source square, separated by '-'. Lines starting with '#' are comments.
+ *
+ * Games are appended to the archive as they end, and the archive is read one game at
+ * a time, so it can grow without bounds.
+ */
+public class GameArchive
+{
+	/**
+	 * Lock of the archive files, games may end on several threads.
+	 */
+	private static final Object LOCK = new Object();
+
+	/**
+	 * The archive reader.
+	 */
+	private BufferedReader _reader;
+
+	/**
+	 * Number of the last line read.
+	 */
+	private int _line;
+
+	// the last game read
+	private BitBoard _initialPosition;
+	private byte _firstColor;
+	private byte _winner;
+	private Vector _moves;
+
+	/**
+	 * Opens an archive for reading.
+	 * @param fileName archive file name
+	 * @throws IOException if the archive cannot be opened
+	 */
+	public GameArchive(String fileName) throws IOException
+	{
+		_reader = new BufferedReader(new FileReader(fileName));
+		_moves = new Vector();
+	}
+
+	/**
+	 * Appends a game to an archive.
+	 * @param fileName archive file name
+	 * @param initialPosition the initial position
+	 * @param firstColor color of the player to move first
+	 * @param winner a Player color, or 0 for a draw
+	 * @param moves the moves played
+	 * @param count number of moves played
+	 * @throws IOException if the archive cannot be written
+	 */
+	public static void append(String fileName, BitBoard initialPosition, byte firstColor, byte winner,
+		MoveList moves, int count) throws IOException
+	{
+		StringBuffer line = new StringBuffer();
+		line.append(initialPosition.getSize()).append(' ').append(toChar(firstColor)).append(' ').append(toChar(winner));
+		line.append(' ').append(Long.toHexString(initialPosition.getBlackPeons()));
+		line.append(' ').append(Long.toHexString(initialPosition.getBlackKings()));
+		line.append(' ').append(Long.toHexString(initialPosition.getWhitePeons()));
+		line.append(' ').append(Long.toHexString(initialPosition.getWhiteKings()));
+		for (int i = 0; i < count; i++)
+		{
+			int[] squares = moves.getSquares(i);
+			line.append(' ').append(squares[0]);
+			for (int j = 1; j < squares.length; j++)
+				line.append('-').append(squares[j]);
+		}
+		line.append('\n');
+		synchronized (LOCK)
+		{
+			FileWriter writer = new FileWriter(fileName, true);
+			try
+			{
+				writer.write(line.toString());
+			}
+			finally
+			{
+				writer.close();
+			}
+		}
+	}
+
+	/**
+	 * @return the archive character of a color or result
+	 */
+	private static char toChar(byte color)
+	{
+		return (color == Player.PLAYER_WHITE) ? 'W' : (color == Player.PLAYER_BLACK) ? 'B' : 'D';
+	}
+
+	/**
+	 * @return the color or result of an archive character
+	 */
+	private byte toColor(String s) throws IOException
+	{
+		if (s.equals("W"))
+			return Player.PLAYER_WHITE;
+		if (s.equals("B"))
+			return Player.PLAYER_BLACK;
+		if (s.equals("D"))
+			return 0;
+		throw new IOException("invalid color " + s + " in line " + _line);
+	}
+
+	/**
+	 * Reads the next game of the archive.
+	 * @return true if a game was read, false at the end of the archive
+	 * @throws IOException if the archive cannot be read or the game line is invalid
+	 */
+	public boolean next() throws IOException
+	{
+		String line;
+		do
+		{
+			line = _reader.readLine();
+			if (line == null)
+				return false;
+			_line++;
+			line = line.trim();
+		}
+		while (line.length() == 0 || line.startsWith("#"));
+		StringTokenizer tokens = new StringTokenizer(line);
+		try
+		{
+			int size = Integer.parseInt(tokens.nextToken());
+			_firstColor = toColor(tokens.nextToken());
+			_winner = toColor(tokens.nextToken());
+			long blackPeons = Long.parseLong(tokens.nextToken(), 16);
+			long blackKings = Long.parseLong(tokens.nextToken(), 16);
+			long whitePeons = Long.parseLong(tokens.nextToken(), 16);
+			long whiteKings = Long.parseLong(tokens.nextToken(), 16);
+			_initialPosition = new BitBoard(size, blackPeons, blackKings, whitePeons, whiteKings);
+			_moves.removeAllElements();
+			while (tokens.hasMoreTokens())
+			{
+				StringTokenizer hops = new StringTokenizer(tokens.nextToken(), "-");
+				int[] squares = new int[hops.countTokens()];
+				for (int i = 0; i < squares.length; i++)
+					squares[i] = Integer.parseInt(hops.nextToken());
+				_moves.addElement(squares);
+			}
+		}
+		catch (RuntimeException re) // a missing token or an invalid number
+		{
+			throw new IOException("invalid game in line " + _line + ": " + re.getMessage());
+		}
+		if (_firstColor == 0)
+			throw new IOException("invalid first color in line " + _line);
+		return true;
+	}
+
+	/**
+	 * Closes the archive.
+	 * @throws IOException if the archive cannot be closed
+	 */
+	public void close() throws IOException
+	{
+		_reader.close();
+	}
+
+	/**
+	 * @return number of the line of the last game read
+	 */
+	public int getLine()
+	{
+		return _line;
+	}
+
+	/**
+	 * @return initial position of the last game read
+	 */
+	public BitBoard getInitialPosition()
+	{
+		return _initialPosition;
+	}
+
+	/**
+	 * @return color of the player to move first in the last game read
+	 */
+	public byte getFirstColor()
+	{
+		return _firstColor;
+	}
+
+	/**
+	 * @return winner of the last game read, a Player color, or 0 for a draw
+	 */
+	public byte getWinner()
+	{
+		return _winner;
+	}
+
+	/**
+	 * @return number of moves of the last game read
+	 */
+	public int getNumberOfMoves()
+	{
+		return _moves.size();
+	}
+
+	/**
+	 * Returns a move of the last game read.
+	 * @param index move index
+	 * @return squares the move passes through, including its source square
+	 */
+	public int[] getMove(int index)
+	{
+		return (int[]) _moves.elementAt(index);
+	}
+}
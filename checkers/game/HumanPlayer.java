@@ -13,7 +13,20 @@ import java.io.Serializable;
  */
 public class HumanPlayer extends Player implements Serializable
 {
-	private Move _nextMove;
+	/**
+	 * Keeps saved games compatible with older versions of this class.
+	 */
+	private static final long serialVersionUID = 7140660536544690877L;
+
+	/**
+	 * The move asked by the game, until the UI gives it.
+	 */
+	private transient MoveRequest _request;
+
+	/**
+	 * Set to give up waiting for the UI, see setStopped.
+	 */
+	private transient boolean _stopped;
 
 	/**
 	 * Constructor.
@@ -26,38 +39,64 @@ public class HumanPlayer extends Player implements Serializable
 	
 	/**
 	 * Returns the next move of this player.
-	 * Human player waits for notification from UI system before returning the move.
+	 * Human player waits for the UI system to give the move (see setNextMove).
 	 * @return the next move
 	 */
 	public Move play()
 	{
-		_nextMove = null;
-		synchronized (this) 
+		MoveRequest request = new MoveRequest(null, this);
+		startMove(request);
+		return request.waitFor();
+	}
+
+	/**
+	 * Waits for the UI system to give the move asked by the game.
+	 * The request is kept until then, so a move given before the request is ignored.
+	 * @param request the move asked
+	 */
+	void startMove(MoveRequest request)
+	{
+		synchronized (this)
 		{
-			try
-			{
-				wait();
-			}
-			catch (InterruptedException ie)
+			if (!_stopped)
 			{
+				_request = request;
+				return;
 			}
 		}
-		return _nextMove;
+		request.complete(null);
 	}
 	
-	
 	/**
 	 * Sets the next move for this player.
-	 * This method is called by the UI system.
-	 * @param move
+	 * This method is called by the UI system. The move is ignored if none was asked.
+	 * @param move the move, or null to give up
 	 */
 	public void setNextMove(Move move)
 	{
-		_nextMove = move;
+		MoveRequest request;
+		synchronized (this)
+		{
+			request = _request;
+			_request = null;
+		}
+		if (request != null)
+			request.complete(move);
+	}
+
+	/**
+	 * Stops waiting for the UI: the move asked is given up, and so are the next ones
+	 * until playing is allowed again.
+	 * @param stopped true to stop, false to allow playing again
+	 */
+	public void setStopped(boolean stopped)
+	{
 		synchronized (this)
 		{
-			notify();
+			_stopped = stopped;
 		}
+		if (stopped)
+			setNextMove(null);
 	}
 
 }
@@ -0,0 +1,186 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.game;
+
+/**
+ * The MoveGenerator class.
+ * Finds all the legal moves of a player on a BitBoard, following the rules
+ * of the native engine (ParamBoard::findLegalMoves):
+ * peons move and capture forward only, kings move and capture one square in any direction,
+ * capturing is compulsory and a capturing piece must go on capturing while it can.
+ * Captured pieces are removed only when the move ends, so they cannot be jumped
+ * twice and cannot be landed on.
+ * A MoveGenerator keeps scratch data, so each thread should use its own instance.
+ */
+public class MoveGenerator
+{
+	/**
+	 * Landing squares of the capture sequence being built.
+	 */
+	private int[] _hops;
+
+	/**
+	 * Board of the current generation.
+	 */
+	private BitBoard _board;
+
+	/**
+	 * Neighbour and jump tables of the current board size.
+	 */
+	private MoveTables _tables;
+
+	/**
+	 * Squares occupied when the generation started.
+	 */
+	private long _occupied;
+
+	/**
+	 * Opponent kings when the generation started.
+	 */
+	private long _opponentKings;
+
+	/**
+	 * Moving player color.
+	 */
+	private byte _color;
+
+	/**
+	 * Source square of the moving piece.
+	 */
+	private int _from;
+
+	/**
+	 * Is the moving piece a king.
+	 */
+	private boolean _king;
+
+	/**
+	 * List to fill.
+	 */
+	private MoveList _list;
+
+	/**
+	 * Constructs a move generator.
+	 */
+	public MoveGenerator()
+	{
+		_hops = new int[64];
+	}
+
+	/**
+	 * Fills a list with all the legal moves of a player.
+	 * @param board the position
+	 * @param color color of the moving player
+	 * @param list list to fill, its previous content is discarded
+	 * @return number of legal moves
+	 */
+	public int generate(BitBoard board, byte color, MoveList list)
+	{
+		list.clear();
+		_board = board;
+		_tables = MoveTables.getTables(board.getSize());
+		_list = list;
+		_color = color;
+		_occupied = board.getOccupied();
+		_opponentKings = board.getKings(Player.reverse(color));
+		long opponents = board.getPieces(Player.reverse(color));
+		long kings = board.getKings(color);
+		for (long pieces = board.getPieces(color); pieces != 0; pieces &= pieces - 1)
+		{
+			_from = Long.numberOfTrailingZeros(pieces);
+			_king = (kings & (1L << _from)) != 0;
+			addCaptures(_from, opponents, 0, 0, 0);
+		}
+		if (list.size() == 0)
+		{
+			for (long pieces = board.getPieces(color); pieces != 0; pieces &= pieces - 1)
+			{
+				_from = Long.numberOfTrailingZeros(pieces);
+				_king = (kings & (1L << _from)) != 0;
+				addSimpleMoves();
+			}
+		}
+		_board = null;
+		_tables = null;
+		_list = null;
+		return list.size();
+	}
+
+	/**
+	 * Checks if a player must capture.
+	 * @param board the position
+	 * @param color color of the moving player
+	 * @return true iff the player has a capture move
+	 */
+	public boolean hasCapture(BitBoard board, byte color)
+	{
+		long opponents = board.getPieces(Player.reverse(color));
+		long occupied = board.getOccupied();
+		long kings = board.getKings(color);
+		MoveTables tables = MoveTables.getTables(board.getSize());
+		for (long pieces = board.getPieces(color); pieces != 0; pieces &= pieces - 1)
+		{
+			int square = Long.numberOfTrailingZeros(pieces);
+			boolean king = (kings & (1L << square)) != 0;
+			int last = MoveTables.getLastDirection(color, king);
+			for (int dir = MoveTables.getFirstDirection(color, king); dir <= last; dir++)
+			{
+				int over = tables.getNeighbour(square, dir);
+				int land = tables.getJump(square, dir);
+				if (land >= 0 && (opponents & (1L << over)) != 0 && (occupied & (1L << land)) == 0)
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds the non capturing moves of the current piece.
+	 */
+	private void addSimpleMoves()
+	{
+		int last = MoveTables.getLastDirection(_color, _king);
+		for (int dir = MoveTables.getFirstDirection(_color, _king); dir <= last; dir++)
+		{
+			int to = _tables.getNeighbour(_from, dir);
+			if (to < 0 || (_occupied & (1L << to)) != 0) continue;
+			_hops[0] = to;
+			_list.add(BitBoard.encodeMove(_from, to, _color, _king, !_king && _board.isPromotionSquare(_color, to)),
+				0, 0, _hops, 1);
+		}
+	}
+
+	/**
+	 * Adds the capture sequences of the current piece, continuing from a square.
+	 * A sequence is added only when it cannot be continued.
+	 * @param square the square the piece has reached
+	 * @param opponents opponent pieces not yet captured
+	 * @param capturedPeons peons captured so far
+	 * @param capturedKings kings captured so far
+	 * @param hopsCount number of captures so far
+	 */
+	private void addCaptures(int square, long opponents, long capturedPeons, long capturedKings, int hopsCount)
+	{
+		boolean continued = false;
+		int last = MoveTables.getLastDirection(_color, _king);
+		for (int dir = MoveTables.getFirstDirection(_color, _king); dir <= last; dir++)
+		{
+			int land = _tables.getJump(square, dir);
+			if (land < 0 || (_occupied & (1L << land)) != 0) continue;
+			long over = 1L << _tables.getNeighbour(square, dir);
+			if ((opponents & over) == 0) continue;
+			continued = true;
+			_hops[hopsCount] = land;
+			if ((_opponentKings & over) != 0)
+				addCaptures(land, opponents & ~over, capturedPeons, capturedKings | over, hopsCount + 1);
+			else
+				addCaptures(land, opponents & ~over, capturedPeons | over, capturedKings, hopsCount + 1);
+		}
+		if (!continued && hopsCount > 0)
+			_list.add(BitBoard.encodeMove(_from, square, _color, _king, !_king && _board.isPromotionSquare(_color, square)),
+				capturedPeons, capturedKings, _hops, hopsCount);
+	}
+}
@@ -0,0 +1,293 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.game;
+
+/**
+ * The MoveList class.
+ * A reusable buffer of encoded moves, filled by the MoveGenerator.
+ * Each entry holds the encoded move (see BitBoard.encodeMove), the captured
+ * peons and kings masks, and the squares the move passes through.
+ * The buffer grows when needed and is never shrunk, so once warmed up,
+ * filling it creates no objects.
+ */
+public class MoveList
+{
+	/**
+	 * Initial number of moves the list can hold.
+	 */
+	private static final int INITIAL_CAPACITY = 32;
+
+	/**
+	 * Number of moves in the list.
+	 */
+	private int _size;
+
+	/**
+	 * Encoded moves.
+	 */
+	private int[] _moves;
+
+	/**
+	 * Captured peons of each move.
+	 */
+	private long[] _capturedPeons;
+
+	/**
+	 * Captured kings of each move.
+	 */
+	private long[] _capturedKings;
+
+	/**
+	 * Offset of each move's hops in the hops pool.
+	 */
+	private int[] _hopsStart;
+
+	/**
+	 * Number of hops of each move.
+	 */
+	private int[] _hopsCount;
+
+	/**
+	 * Hops pool, the squares on the way of all the moves.
+	 */
+	private byte[] _hops;
+
+	/**
+	 * Used part of the hops pool.
+	 */
+	private int _hopsEnd;
+
+	/**
+	 * Constructs an empty list.
+	 */
+	public MoveList()
+	{
+		_moves = new int[INITIAL_CAPACITY];
+		_capturedPeons = new long[INITIAL_CAPACITY];
+		_capturedKings = new long[INITIAL_CAPACITY];
+		_hopsStart = new int[INITIAL_CAPACITY];
+		_hopsCount = new int[INITIAL_CAPACITY];
+		_hops = new byte[INITIAL_CAPACITY * 2];
+	}
+
+	/**
+	 * Removes all moves from the list.
+	 */
+	public void clear()
+	{
+		_size = 0;
+		_hopsEnd = 0;
+	}
+
+	/**
+	 * Drops the moves at the end of the list.
+	 * The list must have been filled in order, without swapping moves.
+	 * @param size number of moves to keep, not more than the list size
+	 */
+	public void setSize(int size)
+	{
+		_size = size;
+		_hopsEnd = (size == 0) ? 0 : _hopsStart[size - 1] + _hopsCount[size - 1];
+	}
+
+	/**
+	 * Returns the number of moves in the list.
+	 * @return number of moves
+	 */
+	public int size()
+	{
+		return _size;
+	}
+
+	/**
+	 * Adds a move to the list.
+	 * @param move encoded move
+	 * @param capturedPeons opponent peons captured by the move
+	 * @param capturedKings opponent kings captured by the move
+	 * @param hops squares the move passes through, not including its source square
+	 * @param hopsCount number of hops
+	 */
+	public void add(int move, long capturedPeons, long capturedKings, int[] hops, int hopsCount)
+	{
+		if (_size == _moves.length)
+			grow();
+		if (_hopsEnd + hopsCount > _hops.length)
+		{
+			byte[] hopsPool = new byte[Math.max(_hops.length * 2, _hopsEnd + hopsCount)];
+			System.arraycopy(_hops, 0, hopsPool, 0, _hopsEnd);
+			_hops = hopsPool;
+		}
+		_moves[_size] = move;
+		_capturedPeons[_size] = capturedPeons;
+		_capturedKings[_size] = capturedKings;
+		_hopsStart[_size] = _hopsEnd;
+		_hopsCount[_size] = hopsCount;
+		for (int i = 0; i < hopsCount; i++)
+			_hops[_hopsEnd++] = (byte) hops[i];
+		_size++;
+	}
+
+	/**
+	 * Doubles the capacity of the list.
+	 */
+	private void grow()
+	{
+		int capacity = _moves.length * 2;
+		int[] moves = new int[capacity];
+		long[] capturedPeons = new long[capacity];
+		long[] capturedKings = new long[capacity];
+		int[] hopsStart = new int[capacity];
+		int[] hopsCount = new int[capacity];
+		System.arraycopy(_moves, 0, moves, 0, _size);
+		System.arraycopy(_capturedPeons, 0, capturedPeons, 0, _size);
+		System.arraycopy(_capturedKings, 0, capturedKings, 0, _size);
+		System.arraycopy(_hopsStart, 0, hopsStart, 0, _size);
+		System.arraycopy(_hopsCount, 0, hopsCount, 0, _size);
+		_moves = moves;
+		_capturedPeons = capturedPeons;
+		_capturedKings = capturedKings;
+		_hopsStart = hopsStart;
+		_hopsCount = hopsCount;
+	}
+
+	/**
+	 * @param index index of move in list
+	 * @return encoded move
+	 */
+	public int getMove(int index)
+	{
+		return _moves[index];
+	}
+
+	/**
+	 * @param index index of move in list
+	 * @return opponent peons captured by the move
+	 */
+	public long getCapturedPeons(int index)
+	{
+		return _capturedPeons[index];
+	}
+
+	/**
+	 * @param index index of move in list
+	 * @return opponent kings captured by the move
+	 */
+	public long getCapturedKings(int index)
+	{
+		return _capturedKings[index];
+	}
+
+	/**
+	 * @param index index of move in list
+	 * @return true iff the move captures
+	 */
+	public boolean isCapture(int index)
+	{
+		return (_capturedPeons[index] | _capturedKings[index]) != 0;
+	}
+
+	/**
+	 * @param index index of move in list
+	 * @return number of squares the move passes through, not including the source square
+	 */
+	public int getNumberOfHops(int index)
+	{
+		return _hopsCount[index];
+	}
+
+	/**
+	 * @param index index of move in list
+	 * @param hop index of hop within the move
+	 * @return square of hop
+	 */
+	public int getHop(int index, int hop)
+	{
+		return _hops[_hopsStart[index] + hop];
+	}
+
+	/**
+	 * Returns the squares the move passes through, including its source square.
+	 * This is the form returned by the native calculateMove.
+	 * @param index index of move in list
+	 * @return array of squares
+	 */
+	public int[] getSquares(int index)
+	{
+		int[] squares = new int[_hopsCount[index] + 1];
+		squares[0] = BitBoard.getFrom(_moves[index]);
+		for (int i = 0; i < _hopsCount[index]; i++)
+			squares[i + 1] = _hops[_hopsStart[index] + i];
+		return squares;
+	}
+
+	/**
+	 * Finds a move by the squares it passes through, as returned by getSquares.
+	 * @param squares squares of the move, including its source square
+	 * @return index of the move in list, or -1 if there is no such move
+	 */
+	public int indexOf(int[] squares)
+	{
+		for (int index = 0; index < _size; index++)
+		{
+			if (_hopsCount[index] + 1 != squares.length || BitBoard.getFrom(_moves[index]) != squares[0])
+				continue;
+			int hop = 0;
+			while (hop < _hopsCount[index] && _hops[_hopsStart[index] + hop] == squares[hop + 1])
+				hop++;
+			if (hop == _hopsCount[index])
+				return index;
+		}
+		return -1;
+	}
+
+	/**
+	 * Makes a move of the list on a board.
+	 * @param board board to update
+	 * @param index index of move in list
+	 */
+	public void makeMove(BitBoard board, int index)
+	{
+		board.makeMove(_moves[index], _capturedPeons[index], _capturedKings[index]);
+	}
+
+	/**
+	 * Takes back a move of the list from a board.
+	 * @param board board to update
+	 * @param index index of move in list
+	 */
+	public void unmakeMove(BitBoard board, int index)
+	{
+		board.unmakeMove(_moves[index], _capturedPeons[index], _capturedKings[index]);
+	}
+
+	/**
+	 * Keeps every step-th move, starting at a given index, and drops the others.
+	 * The kept moves stay in their order.
+	 * @param first index of the first kept move
+	 * @param step distance between kept moves
+	 */
+	public void retain(int first, int step)
+	{
+		int k = 0;
+		for (int i = first; i < _size; i += step)
+			swap(k++, i);
+		_size = k;
+	}
+
+	/**
+	 * Exchanges the places of two moves in the list.
+	 * @param i index of first move
+	 * @param j index of second move
+	 */
+	public void swap(int i, int j)
+	{
+		int t = _moves[i]; _moves[i] = _moves[j]; _moves[j] = t;
+		long l = _capturedPeons[i]; _capturedPeons[i] = _capturedPeons[j]; _capturedPeons[j] = l;
+		l = _capturedKings[i]; _capturedKings[i] = _capturedKings[j]; _capturedKings[j] = l;
+		t = _hopsStart[i]; _hopsStart[i] = _hopsStart[j]; _hopsStart[j] = t;
+		t = _hopsCount[i]; _hopsCount[i] = _hopsCount[j]; _hopsCount[j] = t;
+	}
+}
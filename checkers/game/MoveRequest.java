@@ -0,0 +1,109 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.game;
+
+/**
+ * The MoveRequest class.
+ * A move asked by the game to a player (see Player.startMove). The player completes
+ * the request once, from any thread, and the game is then told to go on: no thread
+ * waits for the move, unless waitFor is called.
+ */
+class MoveRequest
+{
+	/**
+	 * The game told of the move, or null.
+	 */
+	private Game _game;
+
+	/**
+	 * The player to move.
+	 */
+	private Player _player;
+
+	/**
+	 * Set once the request is completed.
+	 */
+	private boolean _done;
+
+	/**
+	 * The move played, or null if the player gave up or was stopped.
+	 */
+	private Move _move;
+
+	/**
+	 * Constructor.
+	 * @param game the game told of the move, or null
+	 * @param player the player to move
+	 */
+	MoveRequest(Game game, Player player)
+	{
+		_game = game;
+		_player = player;
+	}
+
+	/**
+	 * Completes the request, and tells the game. Later completions are ignored.
+	 * @param move the move played, or null for no move
+	 */
+	void complete(Move move)
+	{
+		synchronized (this)
+		{
+			if (_done)
+				return;
+			_move = move;
+			_done = true;
+			notifyAll();
+		}
+		if (_game != null)
+			_game.moveCompleted();
+	}
+
+	/**
+	 * Checks if the request is completed.
+	 * @return true iff the move was given
+	 */
+	synchronized boolean isDone()
+	{
+		return _done;
+	}
+
+	/**
+	 * Returns the move played.
+	 * @return the move, or null if none was played or the request is not completed
+	 */
+	synchronized Move getMove()
+	{
+		return _move;
+	}
+
+	/**
+	 * Returns the player to move.
+	 * @return Player of the request
+	 */
+	Player getPlayer()
+	{
+		return _player;
+	}
+
+	/**
+	 * Waits for the request to be completed.
+	 * @return the move played, or null
+	 */
+	synchronized Move waitFor()
+	{
+		try
+		{
+			while (!_done)
+				wait();
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+		}
+		return _move;
+	}
+}
@@ -0,0 +1,240 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.game;
+
+import java.util.Enumeration;
+import java.util.Vector;
+
+/**
+ * The MoveTables class.
+ * Precomputed neighbour and jump tables of a board size, indexed by the playable
+ * squares numbering of BitBoard (and of the native code): 18, 32 or 50 squares.
+ * The tables of the board sizes the game offers (6, 8 and 10) are built once, when
+ * the class is loaded, so looking up targets takes no computation and no allocation.
+ */
+public class MoveTables
+{
+	/**
+	 * Number of diagonal directions.
+	 */
+	public static final int DIRECTIONS = 4;
+
+	/**
+	 * Row and column steps of the four diagonal directions.
+	 * The first two directions are forward for white, the last two are forward for black.
+	 */
+	private static final int[] ROW_STEP = {1, 1, -1, -1};
+	private static final int[] COL_STEP = {-1, 1, -1, 1};
+
+	/**
+	 * Board sizes whose tables are built in advance.
+	 */
+	private static final int[] SIZES = {6, 8, 10};
+
+	/**
+	 * Tables by board size.
+	 */
+	private static final MoveTables[] TABLES = new MoveTables[SIZES[SIZES.length - 1] + 1];
+
+	static
+	{
+		for (int i = 0; i < SIZES.length; i++)
+			TABLES[SIZES[i]] = new MoveTables(SIZES[i]);
+	}
+
+	/**
+	 * Kinds of pieces in the targets table.
+	 */
+	private static final int WHITE_PEON = 0;
+	private static final int BLACK_PEON = 1;
+	private static final int KING = 2;
+
+	/**
+	 * Board dimension.
+	 */
+	private int _size;
+
+	/**
+	 * Adjacent squares, by square and direction, -1 when off the board.
+	 */
+	private int[][] _neighbours;
+
+	/**
+	 * Landing squares of jumps, by square and direction, -1 when off the board.
+	 */
+	private int[][] _jumps;
+
+	/**
+	 * Points of the squares.
+	 */
+	private Point[] _points;
+
+	/**
+	 * Possible targets (as Points), by piece kind, hit only or not, and square.
+	 */
+	private Vector[][][] _targets;
+
+	/**
+	 * Returns the tables of a board size.
+	 * @param size board dimension
+	 * @return tables of the board size
+	 */
+	public static MoveTables getTables(int size)
+	{
+		if (size < TABLES.length && TABLES[size] != null)
+			return TABLES[size];
+		return new MoveTables(size); // not offered by the game, build on demand
+	}
+
+	/**
+	 * Builds the tables of a board size.
+	 * @param size board dimension
+	 */
+	private MoveTables(int size)
+	{
+		_size = size;
+		int half = size / 2;
+		int squares = size * half;
+		_neighbours = new int[squares][DIRECTIONS];
+		_jumps = new int[squares][DIRECTIONS];
+		_points = new Point[squares];
+		for (int square = 0; square < squares; square++)
+		{
+			int row = square / half;
+			int col = (square % half) * 2 + ((row % 2 == 0) ? 1 : 0);
+			_points[square] = new Point(row, col);
+			for (int dir = 0; dir < DIRECTIONS; dir++)
+			{
+				_neighbours[square][dir] = getSquare(row + ROW_STEP[dir], col + COL_STEP[dir]);
+				_jumps[square][dir] = getSquare(row + 2 * ROW_STEP[dir], col + 2 * COL_STEP[dir]);
+			}
+		}
+		_targets = new Vector[3][2][squares];
+		for (int kind = WHITE_PEON; kind <= KING; kind++)
+			for (int hitOnly = 0; hitOnly < 2; hitOnly++)
+				for (int square = 0; square < squares; square++)
+				{
+					Vector targets = new Vector(2 * DIRECTIONS);
+					for (int dir = getFirstDirection(kind); dir <= getLastDirection(kind); dir++)
+					{
+						if (hitOnly == 0 && _neighbours[square][dir] >= 0)
+							targets.addElement(_points[_neighbours[square][dir]]);
+						if (_jumps[square][dir] >= 0)
+							targets.addElement(_points[_jumps[square][dir]]);
+					}
+					_targets[kind][hitOnly][square] = targets;
+				}
+	}
+
+	/**
+	 * Returns the board dimension of the tables.
+	 * @return number of rows or columns
+	 */
+	public int getSize()
+	{
+		return _size;
+	}
+
+	/**
+	 * Returns the square number of a row and column.
+	 * @param row the row
+	 * @param col the column
+	 * @return square number, or -1 if the position is off the board or not playable
+	 */
+	public int getSquare(int row, int col)
+	{
+		if (row < 0 || row >= _size || col < 0 || col >= _size || (row + col) % 2 == 0)
+			return -1;
+		return row * (_size / 2) + col / 2;
+	}
+
+	/**
+	 * Returns the adjacent square along a direction.
+	 * @param square square number
+	 * @param dir direction index
+	 * @return the adjacent square, or -1 if it is off the board
+	 */
+	public int getNeighbour(int square, int dir)
+	{
+		return _neighbours[square][dir];
+	}
+
+	/**
+	 * Returns the landing square of a jump along a direction.
+	 * @param square square number
+	 * @param dir direction index
+	 * @return the landing square, or -1 if it is off the board
+	 */
+	public int getJump(int square, int dir)
+	{
+		return _jumps[square][dir];
+	}
+
+	/**
+	 * Returns the point of a square.
+	 * Points are immutable, so the same instance is shared by all the callers.
+	 * @param square square number
+	 * @return Point of the square
+	 */
+	public Point getPoint(int square)
+	{
+		return _points[square];
+	}
+
+	/**
+	 * Returns the possible targets of a piece: the adjacent squares and the jump
+	 * landing squares along the directions it may move in, that are on the board.
+	 * Targets don't have to be legal.
+	 * @param square square of the piece
+	 * @param color Player color
+	 * @param king true for a king
+	 * @param hitOnly true for jump targets only
+	 * @return Enumeration of Points
+	 */
+	public Enumeration getTargets(int square, byte color, boolean king, boolean hitOnly)
+	{
+		int kind = king ? KING : (color == Player.PLAYER_BLACK) ? BLACK_PEON : WHITE_PEON;
+		return _targets[kind][hitOnly ? 1 : 0][square].elements();
+	}
+
+	/**
+	 * Returns the first direction a piece may move in.
+	 * @param color Player color
+	 * @param king true for a king
+	 * @return direction index
+	 */
+	public static int getFirstDirection(byte color, boolean king)
+	{
+		return (king || color == Player.PLAYER_WHITE) ? 0 : 2;
+	}
+
+	/**
+	 * Returns the last direction a piece may move in.
+	 * @param color Player color
+	 * @param king true for a king
+	 * @return direction index
+	 */
+	public static int getLastDirection(byte color, boolean king)
+	{
+		return (king || color == Player.PLAYER_BLACK) ? 3 : 1;
+	}
+
+	/**
+	 * @return first direction of a piece kind
+	 */
+	private static int getFirstDirection(int kind)
+	{
+		return (kind == BLACK_PEON) ? 2 : 0;
+	}
+
+	/**
+	 * @return last direction of a piece kind
+	 */
+	private static int getLastDirection(int kind)
+	{
+		return (kind == WHITE_PEON) ? 1 : 3;
+	}
+}
@@ -94,21 +94,9 @@ public class Peon implements Serializable
 	 */
 	public Enumeration getPossibleSimpleTargets(boolean hitOnly)
 	{
-		Vector targets = new Vector();
-		int rowAdd = (_player.getColor() == Player.PLAYER_BLACK) ? -1 : 1;
-		for (int row = _point.getRow()+rowAdd;row != _point.getRow()+rowAdd*3;row+=rowAdd)
-		{
-			int rowDistance = Math.abs(row - _point.getRow());
-			if (hitOnly && rowDistance!=2)
-				continue;
-			for (int col = _point.getCol()-rowDistance;col <= _point.getCol()+rowDistance;col+=2)
-			{
-				if (row>=0 && row < Game.getInstance().getBoardSize() && col>=0 && col<Game.getInstance().getBoardSize() )
-				 // legal boundaries
-					targets.addElement(new Point(row,col));					
-			}
-		}
-		return targets.elements();		 
+		MoveTables tables = MoveTables.getTables(_player.getGame().getBoardSize());
+		return tables.getTargets(tables.getSquare(_point.getRow(), _point.getCol()),
+			_player.getColor(), false, hitOnly);
 	}	
 	
 
@@ -14,6 +14,11 @@ import java.util.*;
  */
 public abstract class Player implements java.io.Serializable
 {
+	/**
+	 * Keeps saved games compatible with older versions of this class.
+	 */
+	private static final long serialVersionUID = 7861626949542282809L;
+
 	/**
 	 * White Player mark
 	 */
@@ -32,6 +37,11 @@ public abstract class Player implements java.io.Serializable
 	 * Peons collection of the Player
 	 */
 	protected Vector _peons;
+
+	/**
+	 * The Game this Player plays in.
+	 */
+	private transient Game _game;
 	
 	/**
 	 * Creates a new Player with the given color.
@@ -52,6 +62,24 @@ public abstract class Player implements java.io.Serializable
 		return _color;
 	}
 	
+	/**
+	 * Returns the Game this Player plays in.
+	 * @return the Game, or null if the Player has not joined a game yet
+	 */
+	public Game getGame()
+	{
+		return _game;
+	}
+
+	/**
+	 * Sets the Game this Player plays in, called by the Game.
+	 * @param game the Game
+	 */
+	void setGame(Game game)
+	{
+		_game = game;
+	}
+
 	/**
 	 * Adds a Peon to Player 's collection
 	 * @param p The Peon to add
@@ -94,14 +122,7 @@ public abstract class Player implements java.io.Serializable
 	 */
 	public boolean gotMoves()
 	{
-		int sz = _peons.size();
-		for (int i=0; i < sz; i++)
-		{
-			Peon p = (Peon) _peons.elementAt(i);
-			if (Game.getInstance().getLegalSimpleTargets(p).size() > 0)
-				return true;		
-		}
-		return false;
+		return _game.hasLegalMoves(_color);
 	}		
 	
 	
@@ -121,4 +142,39 @@ public abstract class Player implements java.io.Serializable
 	 */
 	public abstract Move play();
 
+	/**
+	 * Stops the move being played by another thread, so that play returns as soon as
+	 * possible, and the moves played after it, until playing is allowed again.
+	 * This implementation does nothing, the move is then waited for.
+	 * @param stopped true to stop, false to allow playing again
+	 */
+	public void setStopped(boolean stopped)
+	{
+	}
+
+	/**
+	 * Starts playing the move asked by the game, without waiting for it.
+	 * This implementation plays on the game's executor, and completes the request
+	 * with the move played.
+	 * @param request the move asked
+	 */
+	void startMove(final MoveRequest request)
+	{
+		Game.execute(new Runnable()
+		{
+			public void run()
+			{
+				Move move = null;
+				try
+				{
+					move = play();
+				}
+				finally
+				{
+					request.complete(move);
+				}
+			}
+		});
+	}
+
 }
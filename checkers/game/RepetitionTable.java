@@ -0,0 +1,79 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.game;
+
+import java.util.Hashtable;
+
+/**
+ * The RepetitionTable class.
+ * Counts the occurrences of the positions of a game, keyed by their Zobrist hash
+ * (see BitBoard.getHash), for the detection of repeated positions.
+ * Positions are added as they are played and removed when they are undone,
+ * so a check costs one lookup whatever the length of the game.
+ */
+public class RepetitionTable
+{
+	/**
+	 * Occurrences counters (int[1]) by position hash (Long).
+	 */
+	private Hashtable _counts;
+
+	/**
+	 * Constructs an empty table.
+	 */
+	public RepetitionTable()
+	{
+		_counts = new Hashtable();
+	}
+
+	/**
+	 * Adds an occurrence of a position.
+	 * @param hash hash of the position
+	 * @return number of occurrences of the position, including this one
+	 */
+	public int add(long hash)
+	{
+		Long key = new Long(hash);
+		int[] count = (int[]) _counts.get(key);
+		if (count == null)
+		{
+			count = new int[1];
+			_counts.put(key, count);
+		}
+		return ++count[0];
+	}
+
+	/**
+	 * Removes an occurrence of a position.
+	 * @param hash hash of the position
+	 */
+	public void remove(long hash)
+	{
+		Long key = new Long(hash);
+		int[] count = (int[]) _counts.get(key);
+		if (count != null && --count[0] == 0)
+			_counts.remove(key);
+	}
+
+	/**
+	 * Returns the number of occurrences of a position.
+	 * @param hash hash of the position
+	 * @return occurrences count
+	 */
+	public int getCount(long hash)
+	{
+		int[] count = (int[]) _counts.get(new Long(hash));
+		return (count == null) ? 0 : count[0];
+	}
+
+	/**
+	 * Removes all the positions.
+	 */
+	public void clear()
+	{
+		_counts.clear();
+	}
+}
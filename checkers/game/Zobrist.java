@@ -0,0 +1,97 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.game;
+
+import java.util.Random;
+
+/**
+ * The Zobrist class.
+ * Random keys used to hash a position into 64 bits: the hash of a position is
+ * the exclusive or of the keys of its pieces, so it is updated incrementally
+ * when a move is made or unmade.
+ * The keys are generated from a fixed seed, so hashes are the same in every run.
+ */
+public class Zobrist
+{
+	/**
+	 * Seed of the keys.
+	 */
+	private static final long SEED = 0x44616d4b61L;
+
+	/**
+	 * Maximal number of squares (bits in a mask).
+	 */
+	private static final int SQUARES = 64;
+
+	/**
+	 * Keys of pieces, by kind (black peon, black king, white peon, white king) and square.
+	 */
+	private static final long[][] PIECES = new long[4][SQUARES];
+
+	/**
+	 * Key of black to move, used by the search.
+	 */
+	public static final long BLACK_TO_MOVE;
+
+	static
+	{
+		Random random = new Random(SEED);
+		for (int kind = 0; kind < PIECES.length; kind++)
+			for (int square = 0; square < SQUARES; square++)
+				PIECES[kind][square] = random.nextLong();
+		BLACK_TO_MOVE = random.nextLong();
+	}
+
+	/**
+	 * Returns the key of a piece.
+	 * @param color Player color
+	 * @param king true for a king
+	 * @param square square number
+	 * @return key of piece
+	 */
+	public static long getKey(byte color, boolean king, int square)
+	{
+		return PIECES[kind(color, king)][square];
+	}
+
+	/**
+	 * Returns the combined key of a set of pieces of the same kind.
+	 * @param color Player color
+	 * @param king true for kings
+	 * @param mask squares of the pieces
+	 * @return exclusive or of the pieces keys
+	 */
+	public static long getKey(byte color, boolean king, long mask)
+	{
+		long[] keys = PIECES[kind(color, king)];
+		long key = 0;
+		for (; mask != 0; mask &= mask - 1)
+			key ^= keys[Long.numberOfTrailingZeros(mask)];
+		return key;
+	}
+
+	/**
+	 * Computes the hash of a position from scratch.
+	 * @param blackPeons black peons mask
+	 * @param blackKings black kings mask
+	 * @param whitePeons white peons mask
+	 * @param whiteKings white kings mask
+	 * @return position hash
+	 */
+	public static long hash(long blackPeons, long blackKings, long whitePeons, long whiteKings)
+	{
+		return getKey(Player.PLAYER_BLACK, false, blackPeons) ^ getKey(Player.PLAYER_BLACK, true, blackKings)
+			^ getKey(Player.PLAYER_WHITE, false, whitePeons) ^ getKey(Player.PLAYER_WHITE, true, whiteKings);
+	}
+
+	/**
+	 * @return index of a piece kind in the keys table
+	 */
+	private static int kind(byte color, boolean king)
+	{
+		return ((color == Player.PLAYER_BLACK) ? 0 : 2) + (king ? 1 : 0);
+	}
+}
@@ -0,0 +1,337 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+
+package checkers.library;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.Future;
+
+import checkers.engine.EndgameTable;
+import checkers.engine.OpeningBook;
+import checkers.engine.ParallelSearch;
+import checkers.engine.StatisticsBook;
+import checkers.engine.TranspositionTable;
+import checkers.engine.Weights;
+import checkers.game.*;
+
+
+/**
+ * Bridge between the Java search engine and the game.
+ * Offers the same services as NativeCheckers, without the native library.
+ * Each CPU Player has its own bridge, so games can be played in parallel and
+ * the players of a game can use different weights.
+ *
+ * While a human opponent thinks, the bridge may ponder: it predicts the opponent's
+ * move, and searches its answer to it in the background (see ponder). When the
+ * predicted move is played, the answer is ready, or is completed within the move's
+ * budget. Otherwise the background search is stopped, and its work is still found in
+ * the transposition table by the search of the actual position.
+ */
+public class JavaCheckers
+{
+	/**
+	 * The search for the current board size, built on the first move.
+	 */
+	private volatile ParallelSearch _engine;
+
+	/**
+	 * Set by another thread to stop the searches, see setStopped.
+	 */
+	private volatile boolean _stopped;
+
+	/**
+	 * Evaluation weights, or null for the weights file of the board size.
+	 */
+	private Weights _weights;
+
+	/**
+	 * Random generator of the statistics book moves.
+	 */
+	private Random _random = new Random();
+
+	/**
+	 * Level of the prediction search of the opponent's move, when the principal variation has none.
+	 */
+	private static final int PREDICTION_LEVEL = 3;
+
+	/**
+	 * Squares of the last move played by calculateMove.
+	 */
+	private int[] _lastMove;
+
+	/**
+	 * The background search, or null when not pondering.
+	 */
+	private Ponder _ponder;
+
+	/**
+	 * Searches the answer to a predicted move in the background, on a search thread.
+	 */
+	private static class Ponder implements Runnable
+	{
+		private ParallelSearch _search;
+		private BitBoard _board;
+		private byte _color;
+		private int _level;
+		private Future _task;
+
+		/**
+		 * The answer found, set when the search is over.
+		 */
+		private volatile int[] _move;
+
+		/**
+		 * Constructs and starts a background search.
+		 * @param search the search, with its history and limits set
+		 * @param board position after the predicted move
+		 * @param color color of the answering player
+		 * @param level player's level
+		 */
+		Ponder(ParallelSearch search, BitBoard board, byte color, int level)
+		{
+			_search = search;
+			_board = board;
+			_color = color;
+			_level = level;
+			_task = ParallelSearch.submit(this);
+		}
+
+		/**
+		 * Searches the answer.
+		 */
+		public void run()
+		{
+			_move = _search.calculateMove(_board, _color, _level);
+		}
+
+		/**
+		 * Waits for the search to be over.
+		 * @return the answer found
+		 */
+		int[] join()
+		{
+			ParallelSearch.join(_task);
+			return _move;
+		}
+	}
+
+	/**
+	 * Sets the evaluation weights.
+	 * @param weights the weights, or null for the weights file of the board size
+	 */
+	public synchronized void setWeights(Weights weights)
+	{
+		stopPondering();
+		_weights = weights;
+		_engine = null;
+	}
+
+	/**
+	 * Returns the evaluation weights.
+	 * @return the weights set by setWeights, or null
+	 */
+	public Weights getWeights()
+	{
+		return _weights;
+	}
+
+	/**
+	 * Sets board size, and reads the weights for this board size unless weights were set.
+	 * The endgame table of the board size is used if its file exists.
+	 * @param game the Game whose properties configure the search
+	 * @param size new board size
+	 */
+	private void setBoardSize(Game game, int size)
+	{
+		Weights weights = _weights;
+		if (weights == null)
+		{
+			try
+			{
+				weights = Weights.load(size);
+			}
+			catch (IOException ioe)
+			{
+				System.err.println("Error: unable to read weights file "+Weights.getFileName(size)+": "+ioe.getMessage());
+				weights = new Weights();
+			}
+		}
+		int megabytes = (int) getNumberProperty(game, Game.HASH_SIZE_PROPERTY, TranspositionTable.DEFAULT_SIZE);
+		int threads = (int) getNumberProperty(game, Game.THREADS_PROPERTY, 1);
+		_engine = new ParallelSearch(size, weights, threads, Math.max(0, megabytes));
+		_engine.setStopped(_stopped);
+		String deterministic = game.getGameProperty(Game.DETERMINISTIC_PROPERTY);
+		_engine.setDeterministic(deterministic != null && Boolean.valueOf(deterministic.trim()).booleanValue());
+		_engine.setEndgameTable(EndgameTable.getTable(size));
+	}
+
+	/**
+	 * Stops the search running in another thread, and the following ones until allowed again.
+	 * A stopped search plays the best move found so far. Not synchronized, since the
+	 * searching thread holds the lock.
+	 * @param stopped true to stop, false to allow searching again
+	 */
+	public void setStopped(boolean stopped)
+	{
+		_stopped = stopped;
+		ParallelSearch engine = _engine;
+		if (engine != null)
+			engine.setStopped(stopped);
+	}
+
+	/**
+	 * Reads a numeric game property.
+	 * @param game the Game
+	 * @param name property name
+	 * @param defaultValue value used when the property is missing or invalid
+	 * @return property value
+	 */
+	private static long getNumberProperty(Game game, String name, long defaultValue)
+	{
+		String property = game.getGameProperty(name);
+		if (property == null)
+			return defaultValue;
+		try
+		{
+			return Long.parseLong(property.trim());
+		}
+		catch (NumberFormatException nfe)
+		{
+			System.err.println("Error: invalid "+name+" property: "+property);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Finds the best move for the given player.
+	 * @param player The CPU Player.
+	 * @return The selected Move
+	 */
+	public synchronized Move calculateMove(CPUPlayer player)
+	{
+		Game game = player.getGame();
+		Board b = game.getBoard();
+		int pondered[] = finishPondering(b.getBitBoard(), player.getColor());
+		if (_engine == null || _engine.getSize() != game.getBoardSize())
+			setBoardSize(game, game.getBoardSize());
+		BitBoard boards[] = game.getPlayedPositions();
+		_engine.setGameHistory(boards, boards.length);
+		_engine.setLimits(getNumberProperty(game, Game.MOVE_TIME_PROPERTY, 0), getNumberProperty(game, Game.MOVE_NODES_PROPERTY, 0));
+		int a[] = game.isOpeningBookUsed() ? getBookMove(b.getBitBoard(), player) : null;
+		if (a == null)
+			a = (pondered != null) ? pondered : _engine.calculateMove(b.getBitBoard(), player.getColor(), player.getLevel());
+		_lastMove = a;
+		return NativeCheckers.decodeMove(b, a);
+	}
+
+	/**
+	 * Starts pondering, on the opponent's turn following a move of the given player.
+	 * The opponent's move is predicted by the principal variation of the last search,
+	 * or else by a short search. The answer to it is then searched in the background,
+	 * with the budget of a move.
+	 * @param player The CPU Player, who just moved.
+	 */
+	public synchronized void ponder(CPUPlayer player)
+	{
+		stopPondering();
+		Game game = player.getGame();
+		if (_engine == null || _engine.getSize() != game.getBoardSize() || player.getLevel() == 0 || _lastMove == null)
+			return;
+		BitBoard board = (BitBoard) game.getBoard().getBitBoard().clone();
+		byte opponent = Player.reverse(player.getColor());
+		MoveList moves = new MoveList();
+		if (new MoveGenerator().generate(board, opponent, moves) == 0)
+			return;
+		BitBoard boards[] = game.getPlayedPositions();
+		int index = -1;
+		int[] pv = _engine.getEngine().getPrincipalVariation();
+		if (pv.length >= 2 && pv[0] == TranspositionTable.packMove(_lastMove[0], _lastMove[_lastMove.length - 1]))
+			for (int i = 0; i < moves.size() && index < 0; i++)
+				if (TranspositionTable.packMove(BitBoard.getFrom(moves.getMove(i)), BitBoard.getTo(moves.getMove(i))) == pv[1])
+					index = i;
+		if (index < 0)
+		{
+			_engine.setGameHistory(boards, boards.length);
+			_engine.setLimits(0, 0);
+			index = moves.indexOf(_engine.calculateMove(board, opponent, PREDICTION_LEVEL));
+			if (index < 0)
+				return;
+		}
+		moves.makeMove(board, index);
+		BitBoard history[] = new BitBoard[boards.length + 1];
+		System.arraycopy(boards, 0, history, 0, boards.length);
+		history[boards.length] = board;
+		_engine.setGameHistory(history, history.length);
+		_engine.setLimits(getNumberProperty(game, Game.MOVE_TIME_PROPERTY, 0), getNumberProperty(game, Game.MOVE_NODES_PROPERTY, 0));
+		_ponder = new Ponder(_engine, board, player.getColor(), player.getLevel());
+	}
+
+	/**
+	 * Stops pondering, if the bridge ponders.
+	 */
+	public synchronized void stopPondering()
+	{
+		finishPondering(null, (byte) 0);
+	}
+
+	/**
+	 * Ends pondering. If the position is the one pondered, the background search is
+	 * waited for, otherwise it is stopped.
+	 * @param board the current position, or null to stop pondering
+	 * @param color color of the player to move
+	 * @return the answer found if the position is the one pondered, or null
+	 */
+	private int[] finishPondering(BitBoard board, byte color)
+	{
+		if (_ponder == null)
+			return null;
+		boolean hit = board != null && color == _ponder._color && board.equals(_ponder._board);
+		if (!hit)
+			_engine.setStopped(true);
+		int[] move = _ponder.join();
+		_engine.setStopped(_stopped);
+		_ponder = null;
+		return hit ? move : null;
+	}
+
+	/**
+	 * Finds the opening book move for the given player, in the opening stage only.
+	 * A move of the statistics book is selected at random, weighted by its results
+	 * (the best one if the search is deterministic). Otherwise the opening book move is
+	 * played as by the native Player::playByBook, if the player's level is not above the book level.
+	 * @param board the current board
+	 * @param player The CPU Player.
+	 * @return squares of the book move, or null if there is no legal book move
+	 */
+	private int[] getBookMove(BitBoard board, CPUPlayer player)
+	{
+		if (player.getLevel() == 0 || _engine.getEngine().getEvaluator().getStage(board) != Weights.STAGES - 1)
+			return null;
+		MoveList moves = new MoveList();
+		new MoveGenerator().generate(board, player.getColor(), moves);
+		StatisticsBook statistics = StatisticsBook.getBook(_engine.getSize());
+		if (statistics != null)
+		{
+			StatisticsBook.Entry[] entries = statistics.getEntries(board, player.getColor());
+			Vector legal = new Vector();
+			for (int i = 0; i < entries.length; i++)
+				if (moves.indexOf(entries[i].getSquares()) >= 0)
+					legal.addElement(entries[i]);
+			entries = new StatisticsBook.Entry[legal.size()];
+			legal.copyInto(entries);
+			StatisticsBook.Entry entry = StatisticsBook.select(entries, _engine.isDeterministic() ? null : _random);
+			if (entry != null)
+				return entry.getSquares();
+		}
+		OpeningBook book = OpeningBook.getBook(_engine.getSize());
+		if (book == null || player.getLevel() > book.getLevel())
+			return null;
+		int[] squares = book.getMove(board, player.getColor());
+		return (squares != null && moves.indexOf(squares) >= 0) ? squares : null;
+	}
+}
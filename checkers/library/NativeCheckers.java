@@ -17,6 +17,11 @@ public class NativeCheckers
 {
 	
 	private static final String NATIVE_LIBRARY_NANE = "checkers";
+
+	/**
+	 * Indicates whether the native library was loaded.
+	 */
+	private static boolean _loaded;
 	
 	/**
 	 * Native call. Sets board size.
@@ -73,7 +78,25 @@ public class NativeCheckers
 	
 	static 
 	{
-		System.loadLibrary(NATIVE_LIBRARY_NANE);
+		try
+		{
+			System.loadLibrary(NATIVE_LIBRARY_NANE);
+			_loaded = true;
+		}
+		catch (UnsatisfiedLinkError ule)
+		{
+			System.err.println("Native library not loaded, using Java engine: "+ule.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the status of the native library.
+	 * Native calls may be used only when the library is loaded.
+	 * @return true iff the native library is loaded
+	 */
+	public static boolean isLoaded()
+	{
+		return _loaded;
 	}
 
 	/**
@@ -84,18 +107,31 @@ public class NativeCheckers
 	 */	
 	public static Move calculateMove(CPUPlayer player)
 	{
-		Board b = Game.getInstance().getBoard();
-		boolean addBoard = (Game.getInstance().getBlack() instanceof CPUPlayer ^
-				Game.getInstance().getWhite() instanceof CPUPlayer);
+		Game game = player.getGame();
+		Board b = game.getBoard();
+		boolean addBoard = (game.getBlack() instanceof CPUPlayer ^
+				game.getWhite() instanceof CPUPlayer);
 		long state[] = b.encode();
 		int a[] = calculateMove(player.getColor(), player.getLevel(), 
-				state[0], state[1], state[2], state[3],addBoard, Game.getInstance().isOpeningBookUsed());
+				state[0], state[1], state[2], state[3],addBoard, game.isOpeningBookUsed());
+		return decodeMove(b, a);
+	}
+
+	/**
+	 * Creates a Move, given its representation at the native code.
+	 * @param b The board on which the move is played
+	 * @param a array of squares, which the move passes through
+	 * @return The Move, or null if a is null
+	 */
+	public static Move decodeMove(Board b, int a[])
+	{
 		if (a == null) return null;
-		Peon p = b.getPeonAt(decode(a[0]));
+		MoveTables tables = MoveTables.getTables(b.getBitBoard().getSize());
+		Peon p = b.getPeonAt(tables.getPoint(a[0]));
 		Move move = new Move(p);
 		for (int i=1; i<a.length; i++)
 		{
-			move.addPoint(decode(a[i]));
+			move.addPoint(tables.getPoint(a[i]));
 		}
 		return move;			
 	}
@@ -110,44 +146,31 @@ public class NativeCheckers
 		int hops[] = new int[move.getNumberOfHops()+1];
 		int hits[] = new int[move.getNumberOfCapturedPeons()];
 		int i = 1;
-		hops[0] = encode(move.getPeon().getPoint());
+		int size = move.getPeon().getPlayer().getGame().getBoardSize();
+		hops[0] = encode(move.getPeon().getPoint(), size);
 		for (Enumeration en = move.getHops(); en.hasMoreElements(); i++)
 		{
 			Point p = (Point) en.nextElement();
-			hops[i] = encode(p);
+			hops[i] = encode(p, size);
 		}
 		i = 0;
 		for (Enumeration en = move.getCapturedPeons(); en.hasMoreElements(); i++)
 		{
 			Peon p = (Peon) en.nextElement();			
-			hits[i] = encode(p.getPoint());
+			hits[i] = encode(p.getPoint(), size);
 		}
 		learn(color, hops, hits);
 	}
 
-	/**
-	 * Creates a Point, given its representation at the native code.
-	 * The native representation is the location of a bit that stands for the point
-	 * in a bitset.
-	 * @param num native point representation.
-	 * @return new Point object.
-	 */	
-	private static Point decode(int num)
-	{
-		int row = num / (Game.getInstance().getBoardSize() / 2);
-		int col = (num % (Game.getInstance().getBoardSize() / 2)) * 2;
-		if ((row + col) % 2 == 0) col++;
-		return new Point(row, col);
-	}
-
 	/**
 	 * Encodes a Point to its native code representation.
 	 * @param p the Point to encode.
+	 * @param size dimension of the board
 	 * @return position of the Point in a bitset board representation.
 	 */	
-	private static int encode(Point p)
+	private static int encode(Point p, int size)
 	{
-		return p.getRow() * (Game.getInstance().getBoardSize() / 2) + p.getCol() / 2;
+		return p.getRow() * (size / 2) + p.getCol() / 2;
 	}
 }
 
@@ -0,0 +1,598 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.tools;
+
+import java.io.IOException;
+
+import checkers.engine.SearchEngine;
+import checkers.engine.TranspositionTable;
+import checkers.engine.Weights;
+import checkers.game.BitBoard;
+import checkers.game.Board;
+import checkers.game.Game;
+import checkers.game.HumanPlayer;
+import checkers.game.Move;
+import checkers.game.MoveGenerator;
+import checkers.game.MoveList;
+import checkers.game.MoveTables;
+import checkers.game.Player;
+
+/**
+ * The Benchmark class.
+ * Console tool that measures the hot paths of the game and of the Java engine:
+ * Board.makeMove, clone, equals and encode, Game.isLegalMove and isCompulsory,
+ * Player.gotMoves, Evaluator.evaluate and a full SearchEngine search.
+ *
+ * Each benchmark runs on a set of test positions of a board size and game stage
+ * (opening, middle game or end-game, by the number of pieces left), reached by
+ * random play from the starting position with fixed seeds, so runs are comparable.
+ * A benchmark is warmed up, then measured in several timed iterations; the mean
+ * time per operation and its standard deviation over the iterations are reported.
+ * The results of the operations are accumulated, so the JIT can't drop them.
+ *
+ * The legality queries of Game are answered from a per-position cache, so these
+ * benchmarks cycle through the positions and measure the first query of a position.
+ *
+ * Usage: java checkers.tools.Benchmark [-size n] [-stage name] [-level n] [-time ms]
+ *        [-iterations n] [benchmark ...]
+ */
+public class Benchmark
+{
+	/**
+	 * Names of the game stages.
+	 */
+	public static final String[] STAGES = {"opening", "middle", "end"};
+
+	/**
+	 * Number of test positions per board size and stage.
+	 */
+	private static final int POSITIONS = 16;
+
+	/**
+	 * Most random games played to find the test positions.
+	 */
+	private static final int MAX_SEEDS = 20000;
+
+	/**
+	 * Passes over the positions per timed round, for operations that need no preparation.
+	 */
+	private static final int REPEAT = 16;
+
+	/**
+	 * Default search level.
+	 */
+	private static final int DEFAULT_LEVEL = 5;
+
+	/**
+	 * Default duration of an iteration, in milliseconds.
+	 */
+	private static final int DEFAULT_TIME = 500;
+
+	/**
+	 * Default number of measured iterations.
+	 */
+	private static final int DEFAULT_ITERATIONS = 5;
+
+	/**
+	 * Number of warm-up iterations.
+	 */
+	private static final int WARMUP_ITERATIONS = 2;
+
+	/**
+	 * Accumulated results of the operations.
+	 */
+	private static long _sink;
+
+	/**
+	 * Board dimension.
+	 */
+	private int _size;
+
+	/**
+	 * Test positions.
+	 */
+	private BitBoard[] _bits;
+
+	/**
+	 * Players to move in the test positions.
+	 */
+	private byte[] _colors;
+
+	/**
+	 * Players owning the pieces of the test boards.
+	 */
+	private Player _white;
+	private Player _black;
+
+	/**
+	 * Test boards, and a copy of each one.
+	 */
+	private Board[] _boards;
+	private Board[] _copies;
+
+	/**
+	 * A legal move of each test board.
+	 */
+	private Move[] _moves;
+
+	/**
+	 * Index of the chosen legal move of each test position.
+	 */
+	private int[] _moveIndexes;
+
+	/**
+	 * Search engine of the board size.
+	 */
+	private SearchEngine _engine;
+
+	/**
+	 * Search level.
+	 */
+	private int _level;
+
+	/**
+	 * Duration of an iteration, in milliseconds.
+	 */
+	private int _time;
+
+	/**
+	 * Number of measured iterations.
+	 */
+	private int _iterations;
+
+	/**
+	 * Constructs a benchmark of a board size and stage.
+	 * @param size board dimension
+	 * @param bits test positions
+	 * @param colors players to move
+	 * @param engine search engine of the board size
+	 * @param level search level
+	 * @param time duration of an iteration, in milliseconds
+	 * @param iterations number of measured iterations
+	 */
+	public Benchmark(int size, BitBoard[] bits, byte[] colors, SearchEngine engine, int level, int time, int iterations)
+	{
+		_size = size;
+		_bits = bits;
+		_colors = colors;
+		_engine = engine;
+		_level = level;
+		_time = time;
+		_iterations = iterations;
+		_white = new HumanPlayer(Player.PLAYER_WHITE);
+		_black = new HumanPlayer(Player.PLAYER_BLACK);
+		_boards = new Board[bits.length];
+		_copies = new Board[bits.length];
+		_moves = new Move[bits.length];
+		_moveIndexes = new int[bits.length];
+		MoveGenerator generator = new MoveGenerator();
+		MoveList moves = new MoveList();
+		for (int i = 0; i < bits.length; i++)
+		{
+			_boards[i] = new Board(bits[i], _white, _black);
+			_copies[i] = (Board) _boards[i].clone();
+			int count = generator.generate(bits[i], colors[i], moves);
+			_moveIndexes[i] = (i * 7) % count;
+			_moves[i] = toMove(_boards[i], moves, _moveIndexes[i]);
+		}
+	}
+
+	/**
+	 * Returns the operations to measure.
+	 * @return the benchmarks
+	 */
+	public Operation[] getOperations()
+	{
+		final Game game = Game.getInstance();
+		return new Operation[] {
+			new Operation("Board.makeMove", 1)
+			{
+				private Board[] _fresh = new Board[_bits.length];
+				private Move[] _freshMoves = new Move[_bits.length];
+
+				void prepare()
+				{
+					MoveGenerator generator = new MoveGenerator();
+					MoveList moves = new MoveList();
+					for (int i = 0; i < _bits.length; i++)
+					{
+						_fresh[i] = new Board(_bits[i], new HumanPlayer(Player.PLAYER_WHITE), new HumanPlayer(Player.PLAYER_BLACK));
+						generator.generate(_bits[i], _colors[i], moves);
+						_freshMoves[i] = toMove(_fresh[i], moves, _moveIndexes[i]);
+					}
+				}
+
+				long run(int i)
+				{
+					return _fresh[i].makeMove(_freshMoves[i]) ? 1 : 0;
+				}
+			},
+			new Operation("Board.clone", REPEAT)
+			{
+				long run(int i)
+				{
+					return ((Board) _boards[i].clone()).getBitBoard().getHash();
+				}
+			},
+			new Operation("Board.equals", REPEAT)
+			{
+				long run(int i)
+				{
+					return _boards[i].equals(_copies[i]) ? 1 : 0;
+				}
+			},
+			new Operation("Board.encode", REPEAT)
+			{
+				long run(int i)
+				{
+					return _boards[i].encode()[0];
+				}
+			},
+			new Operation("Game.isLegalMove", REPEAT)
+			{
+				long run(int i)
+				{
+					game.setPosition(_white, _black, _boards[i], _colors[i]);
+					return game.isLegalMove(_moves[i]) ? 1 : 0;
+				}
+			},
+			new Operation("Game.isCompulsory", REPEAT)
+			{
+				long run(int i)
+				{
+					game.setPosition(_white, _black, _boards[i], _colors[i]);
+					return game.isCompulsory(getPlayer(_colors[i])) ? 1 : 0;
+				}
+			},
+			new Operation("Player.gotMoves", REPEAT)
+			{
+				long run(int i)
+				{
+					game.setPosition(_white, _black, _boards[i], _colors[i]);
+					return getPlayer(_colors[i]).gotMoves() ? 1 : 0;
+				}
+			},
+			new Operation("Evaluator.evaluate", REPEAT)
+			{
+				long run(int i)
+				{
+					return _engine.getEvaluator().evaluate(_bits[i], _colors[i]);
+				}
+			},
+			new Operation("SearchEngine.calculateMove", 1)
+			{
+				void prepare()
+				{
+					if (_engine.getTranspositionTable() != null)
+						_engine.getTranspositionTable().clear();
+					_engine.setRandomSeed(1);
+				}
+
+				long run(int i)
+				{
+					_engine.calculateMove(_bits[i], _colors[i], _level);
+					return _engine.getNodes();
+				}
+			},
+		};
+	}
+
+	/**
+	 * Measures an operation.
+	 * @param operation the operation
+	 * @return mean and standard deviation of the time per operation, in nanoseconds
+	 */
+	public double[] measure(Operation operation)
+	{
+		for (int i = 0; i < WARMUP_ITERATIONS; i++)
+			runIteration(operation);
+		double[] times = new double[_iterations];
+		double sum = 0;
+		for (int i = 0; i < _iterations; i++)
+		{
+			times[i] = runIteration(operation);
+			sum += times[i];
+		}
+		double mean = sum / _iterations;
+		double squares = 0;
+		for (int i = 0; i < _iterations; i++)
+			squares += (times[i] - mean) * (times[i] - mean);
+		double deviation = (_iterations > 1) ? Math.sqrt(squares / (_iterations - 1)) : 0;
+		return new double[] {mean, deviation};
+	}
+
+	/**
+	 * Runs rounds of an operation for the duration of an iteration.
+	 * Only the operations are timed, not their preparation.
+	 * @param operation the operation
+	 * @return mean time per operation, in nanoseconds
+	 */
+	private double runIteration(Operation operation)
+	{
+		long timed = 0;
+		long count = 0;
+		long sink = 0;
+		long end = System.currentTimeMillis() + _time;
+		do
+		{
+			operation.prepare();
+			long start = System.nanoTime();
+			for (int pass = 0; pass < operation._repeat; pass++)
+				for (int i = 0; i < _bits.length; i++)
+					sink += operation.run(i);
+			timed += System.nanoTime() - start;
+			count += operation._repeat * _bits.length;
+		}
+		while (System.currentTimeMillis() < end);
+		_sink += sink;
+		return (double) timed / count;
+	}
+
+	/**
+	 * @return the test Player of a color
+	 */
+	private Player getPlayer(byte color)
+	{
+		return (color == Player.PLAYER_WHITE) ? _white : _black;
+	}
+
+	/**
+	 * Converts a generated move to a Move of the pieces of a board.
+	 * @param board the board
+	 * @param moves generated moves of the board position
+	 * @param index index of the move
+	 * @return Move of the board pieces, with its captured peons
+	 */
+	private Move toMove(Board board, MoveList moves, int index)
+	{
+		MoveTables tables = MoveTables.getTables(_size);
+		Move move = new Move(board.getPeonAt(tables.getPoint(BitBoard.getFrom(moves.getMove(index)))));
+		for (int hop = 0; hop < moves.getNumberOfHops(index); hop++)
+			move.addPoint(tables.getPoint(moves.getHop(index, hop)));
+		long captured = moves.getCapturedPeons(index) | moves.getCapturedKings(index);
+		for (int square = 0; captured != 0; square++, captured >>>= 1)
+			if ((captured & 1) != 0)
+				move.addCapturedPeon(board.getPeonAt(tables.getPoint(square)));
+		return move;
+	}
+
+	/**
+	 * Finds test positions of a board size and stage, by random play from the starting position.
+	 * A position belongs to the opening while more than two thirds of the pieces are
+	 * left, and to the end-game when a third or less are left.
+	 * @param size board dimension
+	 * @param stage index of the stage in STAGES
+	 * @param colors where the players to move are stored, of the positions length
+	 * @return the positions, fewer than requested if random play didn't reach enough
+	 */
+	public static BitBoard[] getPositions(int size, int stage, byte[] colors)
+	{
+		MoveGenerator generator = new MoveGenerator();
+		MoveList moves = new MoveList();
+		int pieces = Positions.getStartPosition(size).getNumberOfPieces();
+		int maxPlies = 6 * pieces;
+		BitBoard[] found = new BitBoard[colors.length];
+		int count = 0;
+		for (int seed = 1; seed <= MAX_SEEDS && count < found.length; seed++)
+		{
+			int plies = 2 + seed % maxPlies;
+			BitBoard board = Positions.getRandomPosition(size, plies, seed);
+			byte color = Positions.getColorToMove(plies);
+			int left = board.getNumberOfPieces();
+			int positionStage = (3 * left > 2 * pieces) ? 0 : (3 * left > pieces) ? 1 : 2;
+			if (positionStage != stage || board.getPieces(Player.PLAYER_WHITE) == 0
+				|| board.getPieces(Player.PLAYER_BLACK) == 0 || generator.generate(board, color, moves) == 0)
+				continue;
+			found[count] = board;
+			colors[count] = color;
+			count++;
+		}
+		BitBoard[] positions = new BitBoard[count];
+		System.arraycopy(found, 0, positions, 0, count);
+		return positions;
+	}
+
+	/**
+	 * Main method.
+	 * @param args options, and names (or name prefixes) of the benchmarks to run
+	 */
+	public static void main(String[] args)
+	{
+		System.out.println("Dam Ka! Benchmark\n");
+		int[] sizes = Positions.SIZES;
+		int firstStage = 0;
+		int lastStage = STAGES.length - 1;
+		int level = DEFAULT_LEVEL;
+		int time = DEFAULT_TIME;
+		int iterations = DEFAULT_ITERATIONS;
+		String[] names = new String[args.length];
+		int namesCount = 0;
+		try
+		{
+			for (int i = 0; i < args.length; i++)
+			{
+				if (args[i].equals("-size") && i + 1 < args.length)
+					sizes = new int[] {Integer.parseInt(args[++i])};
+				else if (args[i].equals("-stage") && i + 1 < args.length)
+				{
+					firstStage = lastStage = indexOf(STAGES, args[++i]);
+					if (firstStage < 0)
+					{
+						displayHelp();
+						return;
+					}
+				}
+				else if (args[i].equals("-level") && i + 1 < args.length)
+					level = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-time") && i + 1 < args.length)
+					time = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-iterations") && i + 1 < args.length)
+					iterations = Math.max(1, Integer.parseInt(args[++i]));
+				else if (args[i].startsWith("-"))
+				{
+					displayHelp();
+					return;
+				}
+				else
+					names[namesCount++] = args[i];
+			}
+		}
+		catch (NumberFormatException nfe)
+		{
+			displayHelp();
+			return;
+		}
+		System.out.println("search level " + level + ", " + iterations + " iterations of " + time + " ms\n");
+		System.out.println("benchmark\t\t\tsize\tstage\t\tns/op\t\t+-sd\t\tops/sec");
+		for (int s = 0; s < sizes.length; s++)
+		{
+			int size = sizes[s];
+			Weights weights;
+			try
+			{
+				weights = Weights.load(size);
+			}
+			catch (IOException ioe)
+			{
+				System.err.println("Error: unable to read weights file "+Weights.getFileName(size)+": "+ioe.getMessage());
+				weights = new Weights();
+			}
+			SearchEngine engine = new SearchEngine(size, weights);
+			engine.setTranspositionTable(new TranspositionTable(TranspositionTable.DEFAULT_SIZE));
+			for (int stage = firstStage; stage <= lastStage; stage++)
+			{
+				byte[] colors = new byte[POSITIONS];
+				BitBoard[] positions = getPositions(size, stage, colors);
+				if (positions.length == 0)
+				{
+					System.out.println("no " + STAGES[stage] + " positions found for a " + size + "x" + size + " board");
+					continue;
+				}
+				Benchmark benchmark = new Benchmark(size, positions, colors, engine, level, time, iterations);
+				Operation[] operations = benchmark.getOperations();
+				for (int i = 0; i < operations.length; i++)
+				{
+					if (!isSelected(operations[i]._name, names, namesCount))
+						continue;
+					double[] result = benchmark.measure(operations[i]);
+					System.out.println(pad(operations[i]._name, 32) + size + "\t" + pad(STAGES[stage], 16)
+						+ pad(format(result[0]), 16) + pad(format(result[1]), 16) + Math.round(1e9 / result[0]));
+				}
+			}
+		}
+		if (_sink == 42) // consumes the results
+			System.out.println();
+	}
+
+	/**
+	 * @return true if a benchmark is selected by the names given, or if none are given
+	 */
+	private static boolean isSelected(String name, String[] names, int count)
+	{
+		if (count == 0)
+			return true;
+		for (int i = 0; i < count; i++)
+			if (name.startsWith(names[i]))
+				return true;
+		return false;
+	}
+
+	/**
+	 * @return index of a string in an array, or -1
+	 */
+	private static int indexOf(String[] strings, String string)
+	{
+		for (int i = 0; i < strings.length; i++)
+			if (strings[i].equals(string))
+				return i;
+		return -1;
+	}
+
+	/**
+	 * @return a number with one decimal digit
+	 */
+	private static String format(double value)
+	{
+		return String.valueOf(Math.round(value * 10) / 10.0);
+	}
+
+	/**
+	 * @return a string padded with spaces to a column width
+	 */
+	private static String pad(String string, int width)
+	{
+		StringBuffer buffer = new StringBuffer(string);
+		do
+			buffer.append(' ');
+		while (buffer.length() < width);
+		return buffer.toString();
+	}
+
+	/**
+	 * Displays usage information.
+	 */
+	private static void displayHelp()
+	{
+		System.out.println("Usage: java checkers.tools.Benchmark [-size n] [-stage name] [-level n] [-time ms] [-iterations n] [benchmark ...]");
+		System.out.println("  -size        board size: 6, 8 or 10 (default: all)");
+		System.out.println("  -stage       opening, middle or end (default: all)");
+		System.out.println("  -level       search level (default " + DEFAULT_LEVEL + ")");
+		System.out.println("  -time        duration of an iteration in ms (default " + DEFAULT_TIME + ")");
+		System.out.println("  -iterations  number of measured iterations (default " + DEFAULT_ITERATIONS + ")");
+		System.out.println("  benchmark    names or name prefixes of the benchmarks to run (default: all),");
+		System.out.println("               e.g. Board or Game.isLegalMove");
+	}
+
+	/**
+	 * A measured operation.
+	 */
+	public abstract static class Operation
+	{
+		/**
+		 * Name of the benchmark.
+		 */
+		private String _name;
+
+		/**
+		 * Passes over the test positions after each preparation.
+		 */
+		private int _repeat;
+
+		/**
+		 * Constructs an operation.
+		 * @param name name of the benchmark
+		 * @param repeat passes over the test positions after each preparation
+		 */
+		Operation(String name, int repeat)
+		{
+			_name = name;
+			_repeat = repeat;
+		}
+
+		/**
+		 * Returns the name of the benchmark.
+		 * @return name
+		 */
+		public String getName()
+		{
+			return _name;
+		}
+
+		/**
+		 * Prepares a round of operations, not timed.
+		 */
+		void prepare()
+		{
+		}
+
+		/**
+		 * Runs the operation on a test position.
+		 * @param i index of the position
+		 * @return a result of the operation
+		 */
+		abstract long run(int i);
+	}
+}
@@ -0,0 +1,215 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.tools;
+
+import java.io.File;
+import java.io.IOException;
+
+import checkers.engine.Evaluator;
+import checkers.engine.StatisticsBook;
+import checkers.engine.Weights;
+import checkers.game.BitBoard;
+import checkers.game.GameArchive;
+import checkers.game.MoveGenerator;
+import checkers.game.MoveList;
+import checkers.game.Player;
+
+/**
+ * The BookBuilder class.
+ * Console tool that builds the statistics opening book of a board size from games
+ * archives (see the gamesArchive game property).
+ * The archives are read one game at a time. Every move of the opening stage, up to
+ * a number of moves, is counted in the book with the result of its player.
+ * Games of other board sizes are skipped, and so are the moves following an illegal move.
+ *
+ * Usage: java checkers.tools.BookBuilder [-size n] [-plies n] [-add] [-out file] archive...
+ */
+public class BookBuilder
+{
+	/**
+	 * The book being built.
+	 */
+	private StatisticsBook _book;
+
+	/**
+	 * Board dimension.
+	 */
+	private int _size;
+
+	/**
+	 * Most moves of a game counted in the book.
+	 */
+	private int _plies;
+
+	/**
+	 * Evaluator of the game stages.
+	 */
+	private Evaluator _evaluator;
+
+	/**
+	 * Number of games and moves counted.
+	 */
+	private int _games;
+	private int _moves;
+
+	/**
+	 * Number of games skipped, and games with an illegal move.
+	 */
+	private int _skipped;
+	private int _illegal;
+
+	/**
+	 * Constructs a builder.
+	 * @param book the book to build
+	 * @param size board dimension
+	 * @param plies most moves of a game counted in the book
+	 */
+	public BookBuilder(StatisticsBook book, int size, int plies)
+	{
+		_book = book;
+		_size = size;
+		_plies = plies;
+		_evaluator = new Evaluator(size, new Weights());
+	}
+
+	/**
+	 * Counts the games of an archive in the book.
+	 * @param fileName archive file name
+	 * @throws IOException if the archive cannot be read
+	 */
+	public void addArchive(String fileName) throws IOException
+	{
+		GameArchive archive = new GameArchive(fileName);
+		try
+		{
+			while (archive.next())
+				addGame(archive);
+		}
+		finally
+		{
+			archive.close();
+		}
+	}
+
+	/**
+	 * Counts the opening moves of the last game read from an archive.
+	 */
+	private void addGame(GameArchive archive)
+	{
+		BitBoard board = (BitBoard) archive.getInitialPosition().clone();
+		if (board.getSize() != _size)
+		{
+			_skipped++;
+			return;
+		}
+		_games++;
+		MoveGenerator generator = new MoveGenerator();
+		MoveList list = new MoveList();
+		byte color = archive.getFirstColor();
+		int moves = Math.min(_plies, archive.getNumberOfMoves());
+		for (int i = 0; i < moves && _evaluator.getStage(board) == Weights.STAGES - 1; i++)
+		{
+			int[] squares = archive.getMove(i);
+			generator.generate(board, color, list);
+			int index = list.indexOf(squares);
+			if (index < 0)
+			{
+				_illegal++;
+				System.out.println("Illegal move " + (i + 1) + " in line " + archive.getLine() + ", game skipped from it");
+				return;
+			}
+			int result = (archive.getWinner() == 0) ? 0 : (archive.getWinner() == color) ? 1 : -1;
+			_book.addGame(board, color, squares, result);
+			_moves++;
+			list.makeMove(board, index);
+			color = Player.reverse(color);
+		}
+	}
+
+	/**
+	 * Main method.
+	 * @param args see displayHelp
+	 */
+	public static void main(String[] args)
+	{
+		System.out.println("Dam Ka! Book Builder\n");
+		int size = 8;
+		int plies = 20;
+		boolean add = false;
+		String fileName = null;
+		int i = 0;
+		try
+		{
+			for (; i < args.length && args[i].startsWith("-"); i++)
+			{
+				if (args[i].equals("-size") && i + 1 < args.length)
+					size = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-plies") && i + 1 < args.length)
+					plies = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-add"))
+					add = true;
+				else if (args[i].equals("-out") && i + 1 < args.length)
+					fileName = args[++i];
+				else
+				{
+					displayHelp();
+					return;
+				}
+			}
+		}
+		catch (NumberFormatException nfe)
+		{
+			displayHelp();
+			return;
+		}
+		if (i == args.length)
+		{
+			displayHelp();
+			return;
+		}
+		if (fileName == null)
+			fileName = StatisticsBook.getFileName(size);
+		try
+		{
+			for (int j = i; j < args.length; j++)
+				if (!new File(args[j]).exists())
+					throw new IOException("archive " + args[j] + " not found");
+			if (!add && new File(fileName).exists() && !new File(fileName).delete())
+				throw new IOException("unable to replace " + fileName);
+			StatisticsBook book = new StatisticsBook(fileName, size);
+			BookBuilder builder = new BookBuilder(book, size, plies);
+			long start = System.currentTimeMillis();
+			for (int j = i; j < args.length; j++)
+			{
+				builder.addArchive(args[j]);
+				System.out.println(args[j] + ": " + builder._games + " games, " + builder._moves + " moves counted");
+			}
+			book.save();
+			long time = Math.max(1, System.currentTimeMillis() - start);
+			System.out.println(fileName + ": " + book.getNumberOfPositions() + " positions, "
+				+ book.getNumberOfRecords() + " moves");
+			System.out.println(builder._skipped + " games of other board sizes skipped, " + builder._illegal
+				+ " games with an illegal move, " + (builder._games * 1000L / time) + " games/sec");
+		}
+		catch (IOException ioe)
+		{
+			System.err.println("Error: " + ioe.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Displays usage information.
+	 */
+	private static void displayHelp()
+	{
+		System.out.println("Usage: java checkers.tools.BookBuilder [-size n] [-plies n] [-add] [-out file] archive...");
+		System.out.println("  -size   board size: 6, 8 or 10 (default 8)");
+		System.out.println("  -plies  most moves of a game counted in the book (default 20)");
+		System.out.println("  -add    adds the games to the book, instead of building it anew");
+		System.out.println("  -out    book file (default: the statistics book of the board size)");
+	}
+}
@@ -0,0 +1,145 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.tools;
+
+import java.io.File;
+import java.io.IOException;
+
+import checkers.engine.OpeningBook;
+
+/**
+ * The BookTool class.
+ * Console tool that shows, compacts and merges opening book files.
+ * The native book appends a record for every position it learns, so a book file may
+ * hold several records of a position, of which only the first is used. Compacting a
+ * book writes it without the later records. Merging books writes the records of all
+ * of them, the first book first, without the records of positions of earlier books.
+ *
+ * Usage: java checkers.tools.BookTool [-size n] -info file...
+ *        java checkers.tools.BookTool [-size n] -compact in out
+ *        java checkers.tools.BookTool [-size n] [-level n] -merge out in...
+ */
+public class BookTool
+{
+	/**
+	 * Prints the contents summary of a book.
+	 * @param fileName book file name
+	 * @param size board dimension
+	 * @throws IOException if the book cannot be read
+	 */
+	private static void info(String fileName, int size) throws IOException
+	{
+		long start = System.currentTimeMillis();
+		OpeningBook book = new OpeningBook(fileName, size, 0);
+		long time = System.currentTimeMillis() - start;
+		System.out.println(fileName + ": level " + book.getLevel() + ", " + book.getNumberOfRecords() + " records, "
+			+ book.getNumberOfPositions() + " positions, "
+			+ (book.getNumberOfRecords() - book.getNumberOfPositions()) + " duplicates, indexed in " + time + " ms");
+	}
+
+	/**
+	 * Writes books into a new book, without duplicates.
+	 * @param outName new book file name
+	 * @param inNames book file names, in order of precedence
+	 * @param size board dimension
+	 * @param level level of the new book, or -1 for the lowest level of the books
+	 * @throws IOException if a book cannot be read or written
+	 */
+	private static void merge(String outName, String[] inNames, int size, int level) throws IOException
+	{
+		File out = new File(outName).getCanonicalFile();
+		for (int i = 0; i < inNames.length; i++)
+		{
+			if (new File(inNames[i]).getCanonicalFile().equals(out))
+				throw new IOException("the new book " + outName + " is also read");
+			if (!new File(inNames[i]).exists())
+				throw new IOException("book file " + inNames[i] + " not found");
+		}
+		OpeningBook book = new OpeningBook(inNames[0], size, 0);
+		int lowest = book.getLevel();
+		for (int i = 1; i < inNames.length; i++)
+		{
+			OpeningBook other = new OpeningBook(inNames[i], size, 0);
+			int added = book.merge(other);
+			System.out.println(inNames[i] + ": " + added + " of " + other.getNumberOfRecords() + " records added");
+			lowest = Math.min(lowest, other.getLevel());
+		}
+		book.setLevel((level < 0) ? lowest : level);
+		int records = book.getNumberOfRecords();
+		int written = book.write(outName);
+		System.out.println(outName + ": level " + book.getLevel() + ", " + written + " records written, "
+			+ (records - written) + " duplicates removed");
+	}
+
+	/**
+	 * Main method.
+	 * @param args see displayHelp
+	 */
+	public static void main(String[] args)
+	{
+		System.out.println("Dam Ka! Book Tool\n");
+		int size = 8;
+		int level = -1;
+		int i = 0;
+		try
+		{
+			for (; i < args.length - 1; i++)
+			{
+				if (args[i].equals("-size"))
+					size = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-level"))
+					level = Integer.parseInt(args[++i]);
+				else
+					break;
+			}
+		}
+		catch (NumberFormatException nfe)
+		{
+			displayHelp();
+			return;
+		}
+		int files = args.length - i - 1;
+		try
+		{
+			if (files >= 1 && args[i].equals("-info"))
+			{
+				for (int j = i + 1; j < args.length; j++)
+					info(args[j], size);
+			}
+			else if (files == 2 && args[i].equals("-compact"))
+				merge(args[i + 2], new String[] {args[i + 1]}, size, level);
+			else if (files >= 2 && args[i].equals("-merge"))
+			{
+				String[] inNames = new String[files - 1];
+				System.arraycopy(args, i + 2, inNames, 0, inNames.length);
+				merge(args[i + 1], inNames, size, level);
+			}
+			else
+				displayHelp();
+		}
+		catch (IOException ioe)
+		{
+			System.err.println("Error: " + ioe.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Displays usage information.
+	 */
+	private static void displayHelp()
+	{
+		System.out.println("Usage: java checkers.tools.BookTool [-size n] -info file...");
+		System.out.println("       java checkers.tools.BookTool [-size n] -compact in out");
+		System.out.println("       java checkers.tools.BookTool [-size n] [-level n] -merge out in...");
+		System.out.println("  -size     board size of the books: 6, 8 or 10 (default 8)");
+		System.out.println("  -level    level of the new book (default: the lowest level of the books)");
+		System.out.println("  -info     shows the level, records and duplicates of books");
+		System.out.println("  -compact  writes a book without the records of positions already in it");
+		System.out.println("  -merge    writes the records of books, the first books first, without");
+		System.out.println("            the records of positions already written");
+	}
+}
@@ -0,0 +1,221 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.tools;
+
+import java.io.IOException;
+import java.util.Random;
+
+import checkers.engine.SearchEngine;
+import checkers.engine.TranspositionTable;
+import checkers.engine.Weights;
+import checkers.game.BitBoard;
+import checkers.game.MoveGenerator;
+import checkers.game.MoveList;
+import checkers.game.Player;
+
+/**
+ * The DrawCheck class.
+ * Console tool that checks that the Java engine, when ahead, avoids the draws by
+ * repetition as long as it can keep most of its advantage.
+ * Random 8x8 endgames are set up with White ahead, and with a history in which White
+ * and Black moved a king back and forth twice, so one king move of White repeats a
+ * position for the third time. The positions kept are those in which White's best
+ * move, searched without the history, is another move, whose value is between half
+ * the evaluation of the position and the evaluation itself. With the history, White
+ * must still not play the repetition, with and without a transposition table.
+ *
+ * Usage: java checkers.tools.DrawCheck [level] [positions]
+ */
+public class DrawCheck
+{
+	/**
+	 * Board dimension.
+	 */
+	private static final int SIZE = 8;
+
+	/**
+	 * Most random positions tried.
+	 */
+	private static final int MAX_TRIES = 100000;
+
+	/**
+	 * Main method.
+	 * @param args see displayHelp
+	 */
+	public static void main(String[] args)
+	{
+		System.out.println("Dam Ka! Draw Check\n");
+		int level = 5;
+		int positions = 20;
+		try
+		{
+			if (args.length > 0)
+				level = Integer.parseInt(args[0]);
+			if (args.length > 1)
+				positions = Integer.parseInt(args[1]);
+		}
+		catch (NumberFormatException nfe)
+		{
+			displayHelp();
+			return;
+		}
+		Weights weights;
+		try
+		{
+			weights = Weights.load(SIZE);
+		}
+		catch (IOException ioe)
+		{
+			System.err.println("Error: unable to read weights file "+Weights.getFileName(SIZE)+": "+ioe.getMessage());
+			weights = new Weights();
+		}
+		Random random = new Random(1);
+		int found = 0;
+		int[] repeated = new int[2];
+		int tries = 0;
+		for (; tries < MAX_TRIES && found < positions; tries++)
+		{
+			BitBoard[] history = getHistory(random);
+			if (history == null)
+				continue;
+			BitBoard board = history[history.length - 1];
+			int[] repetition = getMove(board, history[0]);
+			SearchEngine engine = new SearchEngine(SIZE, weights);
+			engine.setRandomSeed(0);
+			int evaluation = engine.getEvaluator().evaluate(board, Player.PLAYER_WHITE);
+			int[] best = engine.calculateMove(board, Player.PLAYER_WHITE, level);
+			int value = engine.getValue();
+			if (evaluation <= 0 || isSameMove(best, repetition) || value < evaluation / 2 || value >= evaluation)
+				continue;
+			found++;
+			for (int table = 0; table < 2; table++)
+			{
+				engine = new SearchEngine(SIZE, weights);
+				if (table == 1)
+					engine.setTranspositionTable(new TranspositionTable(1));
+				engine.setRandomSeed(found);
+				engine.setGameHistory(history, history.length);
+				int[] move = engine.calculateMove(board, Player.PLAYER_WHITE, level);
+				if (isSameMove(move, repetition))
+				{
+					repeated[table]++;
+					System.out.println("Repetition played" + ((table == 1) ? " with a table" : "")
+						+ ", evaluation " + evaluation + ", best other move " + value + ":");
+					System.out.println(Positions.toString(board));
+				}
+			}
+		}
+		System.out.println(found + " positions found in " + tries + " random positions, level " + level);
+		System.out.println("repetitions played: " + repeated[0] + ", with a table: " + repeated[1]);
+		if (repeated[0] + repeated[1] > 0)
+			System.exit(1);
+	}
+
+	/**
+	 * Sets up a random endgame, White with two kings and two peons, Black with a king
+	 * and a peon, and the history of the king moves repeated before it.
+	 * @param random random generator
+	 * @return the played positions, the current one last, or null if the position does not fit
+	 */
+	private static BitBoard[] getHistory(Random random)
+	{
+		BitBoard board = new BitBoard(SIZE);
+		int squares = board.getNumberOfSquares();
+		byte[] colors = {Player.PLAYER_WHITE, Player.PLAYER_WHITE, Player.PLAYER_WHITE, Player.PLAYER_WHITE,
+			Player.PLAYER_BLACK, Player.PLAYER_BLACK};
+		boolean[] kings = {true, true, false, false, true, false};
+		for (int i = 0; i < colors.length; i++)
+		{
+			int square = random.nextInt(squares);
+			if ((board.getOccupied() & (1L << square)) != 0
+				|| (!kings[i] && (board.isPromotionSquare(colors[i], square)
+					|| board.isPromotionSquare(Player.reverse(colors[i]), square))))
+				return null;
+			board.setPiece(square, colors[i], kings[i]);
+		}
+		// the cycle: a king move of each side, then both taken back
+		BitBoard[] cycle = new BitBoard[5];
+		int[][] moves = new int[4][];
+		cycle[0] = board;
+		byte color = Player.PLAYER_WHITE;
+		MoveGenerator generator = new MoveGenerator();
+		MoveList list = new MoveList();
+		for (int i = 0; i < 4; i++)
+		{
+			if (generator.hasCapture(cycle[i], color) || generator.hasCapture(cycle[i], Player.reverse(color)))
+				return null;
+			generator.generate(cycle[i], color, list);
+			moves[i] = (i < 2) ? getKingMove(cycle[i], color, list, random)
+				: new int[] {moves[i - 2][1], moves[i - 2][0]};
+			int index = (moves[i] == null) ? -1 : list.indexOf(moves[i]);
+			if (index < 0)
+				return null;
+			cycle[i + 1] = (BitBoard) cycle[i].clone();
+			list.makeMove(cycle[i + 1], index);
+			color = Player.reverse(color);
+		}
+		if (!cycle[4].equals(board))
+			return null;
+		return new BitBoard[] {cycle[1], cycle[2], cycle[3], cycle[0], cycle[1], cycle[2], cycle[3], cycle[0]};
+	}
+
+	/**
+	 * Returns a random king move of a player.
+	 * @param board the position
+	 * @param color Player color
+	 * @param list the player's moves
+	 * @param random random generator
+	 * @return squares of the move, or null if the player's kings cannot move
+	 */
+	private static int[] getKingMove(BitBoard board, byte color, MoveList list, Random random)
+	{
+		int count = 0;
+		int[] chosen = null;
+		for (int i = 0; i < list.size(); i++)
+			if ((board.getKings(color) & (1L << BitBoard.getFrom(list.getMove(i)))) != 0
+				&& random.nextInt(++count) == 0)
+				chosen = list.getSquares(i);
+		return chosen;
+	}
+
+	/**
+	 * Returns the move of White from a position to the next one.
+	 * @param board the position
+	 * @param next the position after the move
+	 * @return squares of the move
+	 */
+	private static int[] getMove(BitBoard board, BitBoard next)
+	{
+		MoveList list = new MoveList();
+		int count = new MoveGenerator().generate(board, Player.PLAYER_WHITE, list);
+		for (int i = 0; i < count; i++)
+		{
+			BitBoard after = (BitBoard) board.clone();
+			list.makeMove(after, i);
+			if (after.equals(next))
+				return list.getSquares(i);
+		}
+		return null;
+	}
+
+	/**
+	 * @return true iff two moves have the same source and destination
+	 */
+	private static boolean isSameMove(int[] a, int[] b)
+	{
+		return a != null && b != null && a[0] == b[0] && a[a.length - 1] == b[b.length - 1];
+	}
+
+	/**
+	 * Displays usage information.
+	 */
+	private static void displayHelp()
+	{
+		System.out.println("Usage: java checkers.tools.DrawCheck [level] [positions]");
+		System.out.println("  level      search level (default 5)");
+		System.out.println("  positions  number of positions checked (default 20)");
+	}
+}
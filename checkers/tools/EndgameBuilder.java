@@ -0,0 +1,506 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.tools;
+
+import java.io.IOException;
+import java.util.Random;
+
+import checkers.engine.EndgameTable;
+import checkers.game.BitBoard;
+import checkers.game.MoveGenerator;
+import checkers.game.MoveList;
+import checkers.game.MoveTables;
+import checkers.game.Player;
+
+/**
+ * The EndgameBuilder class.
+ * Console tool that builds the endgame table of a board size (see EndgameTable) by
+ * retrograde analysis.
+ *
+ * The materials are solved from the fewest pieces up, and for the same number of
+ * pieces from the fewest peons up, since captures and promotions always lead to a
+ * material solved before. A material is solved together with its swapped material,
+ * which its positions lead to by simple moves (the player to move changes).
+ * Every position of the two materials is first generated forward once: positions
+ * without moves are lost, and the results of the moves to solved materials are
+ * gathered. Then the positions are resolved by increasing distance to the end: a
+ * position is won as soon as one of its moves leads to a lost position, and lost when
+ * all its moves lead to won positions. Each resolved position updates the positions
+ * that lead to it, found by taking back simple moves. Positions left are draws.
+ *
+ * Usage: java checkers.tools.EndgameBuilder [-size n] [-pieces n] [-verify n] [-out file]
+ */
+public class EndgameBuilder
+{
+	/**
+	 * Flags of the positions being solved.
+	 */
+	private static final byte INVALID = 1;
+	private static final byte RESOLVED = 2;
+	private static final byte DRAW_MOVE = 4;
+
+	/**
+	 * The table, for its indices.
+	 */
+	private EndgameTable _table;
+
+	/**
+	 * Board dimension.
+	 */
+	private int _size;
+
+	/**
+	 * Neighbour and jump tables of the board size.
+	 */
+	private MoveTables _moveTables;
+
+	/**
+	 * Move generator and list.
+	 */
+	private MoveGenerator _generator;
+	private MoveList _moves;
+
+	/**
+	 * Values of the positions, by material, as stored in the table file.
+	 */
+	private byte[][] _values;
+
+	/**
+	 * Materials being solved.
+	 */
+	private int[] _group;
+
+	/**
+	 * Positions being solved, by group slot: moves to unresolved positions of the group,
+	 * longest loss, shortest win plus one (0 for none), and flags.
+	 */
+	private byte[][] _counts;
+	private byte[][] _losses;
+	private byte[][] _wins;
+	private byte[][] _flags;
+
+	/**
+	 * Positions to resolve, by distance: index << 2 | slot << 1 | 1 for a win.
+	 */
+	private IntList[] _buckets;
+
+	/**
+	 * Numbers of positions, won, lost and drawn.
+	 */
+	private long _positions;
+	private long _won;
+	private long _lost;
+
+	/**
+	 * A growable list of ints.
+	 */
+	private static class IntList
+	{
+		private int[] _items = new int[16];
+		private int _size;
+
+		private void add(int item)
+		{
+			if (_size == _items.length)
+			{
+				int[] items = new int[_size * 2];
+				System.arraycopy(_items, 0, items, 0, _size);
+				_items = items;
+			}
+			_items[_size++] = item;
+		}
+	}
+
+	/**
+	 * Constructs a builder.
+	 * @param size board dimension
+	 * @param maxPieces most pieces of a position
+	 */
+	public EndgameBuilder(int size, int maxPieces)
+	{
+		_table = new EndgameTable(size, maxPieces);
+		_size = size;
+		_moveTables = MoveTables.getTables(size);
+		_generator = new MoveGenerator();
+		_moves = new MoveList();
+		_values = new byte[_table.getNumberOfMaterials()][];
+	}
+
+	/**
+	 * Solves all the materials.
+	 */
+	public void build()
+	{
+		int max = _table.getMaxPieces();
+		for (int pieces = 2; pieces <= max; pieces++)
+			for (int peons = 0; peons <= pieces; peons++)
+				for (int whitePeons = 0; whitePeons <= peons; whitePeons++)
+					for (int whiteKings = 0; whiteKings <= pieces - peons; whiteKings++)
+					{
+						int material = _table.getMaterial(whitePeons, whiteKings, peons - whitePeons, pieces - peons - whiteKings);
+						if (material < 0 || _values[material] != null)
+							continue;
+						int swapped = _table.getSwappedMaterial(material);
+						long start = System.currentTimeMillis();
+						long won = _won, lost = _lost, positions = _positions;
+						solve((swapped == material) ? new int[] {material} : new int[] {material, swapped});
+						System.out.println(getName(material) + ((swapped == material) ? "" : " and " + getName(swapped)) + ": "
+							+ (_positions - positions) + " positions, " + (_won - won) + " won, " + (_lost - lost) + " lost, "
+							+ (System.currentTimeMillis() - start) + " ms");
+					}
+	}
+
+	/**
+	 * @return name of a material, as white peons, kings against black peons, kings
+	 */
+	private String getName(int material)
+	{
+		int[] pieces = _table.getPieces(material);
+		return pieces[0] + "p" + pieces[1] + "k-" + pieces[2] + "p" + pieces[3] + "k";
+	}
+
+	/**
+	 * Solves materials that lead to each other by simple moves.
+	 * @param group the materials
+	 */
+	private void solve(int[] group)
+	{
+		_group = group;
+		_counts = new byte[group.length][];
+		_losses = new byte[group.length][];
+		_wins = new byte[group.length][];
+		_flags = new byte[group.length][];
+		_buckets = new IntList[EndgameTable.MAX_DISTANCE + 1];
+		for (int d = 0; d < _buckets.length; d++)
+			_buckets[d] = new IntList();
+		for (int slot = 0; slot < group.length; slot++)
+		{
+			int size = _table.getTableSize(group[slot]);
+			_values[group[slot]] = new byte[size];
+			_counts[slot] = new byte[size];
+			_losses[slot] = new byte[size];
+			_wins[slot] = new byte[size];
+			_flags[slot] = new byte[size];
+		}
+		for (int slot = 0; slot < group.length; slot++)
+			for (int index = 0; index < _values[group[slot]].length; index++)
+				generate(slot, index);
+		for (int d = 0; d < _buckets.length; d++)
+		{
+			IntList bucket = _buckets[d];
+			for (int i = 0; i < bucket._size; i++) // the bucket may grow meanwhile
+			{
+				int entry = bucket._items[i];
+				int slot = (entry >>> 1) & 1;
+				int index = entry >>> 2;
+				if ((_flags[slot][index] & RESOLVED) != 0)
+					continue;
+				_flags[slot][index] |= RESOLVED;
+				_values[group[slot]][index] = (byte) (d + 1);
+				if ((entry & 1) != 0)
+					_won++;
+				else
+					_lost++;
+				updatePredecessors(slot, index, (entry & 1) != 0, d);
+			}
+			_buckets[d] = null;
+		}
+		_counts = _losses = _wins = _flags = null;
+	}
+
+	/**
+	 * Generates the moves of a position, and gathers the results of the moves to solved materials.
+	 */
+	private void generate(int slot, int index)
+	{
+		long[] position = _table.getPosition(_group[slot], index);
+		if (position == null)
+		{
+			_flags[slot][index] = INVALID;
+			return;
+		}
+		_positions++;
+		BitBoard board = new BitBoard(_size, position[2], position[3], position[0], position[1]);
+		int count = _generator.generate(board, Player.PLAYER_WHITE, _moves);
+		int pending = 0;
+		int loss = 0;
+		int win = 0; // shortest win plus one
+		for (int i = 0; i < count; i++)
+		{
+			_moves.makeMove(board, i);
+			int entry = getEntry(board);
+			_moves.unmakeMove(board, i);
+			if (entry < 0)
+				pending++;
+			else if (entry == EndgameTable.DRAW)
+				_flags[slot][index] |= DRAW_MOVE;
+			else if (EndgameTable.isWin(entry))
+				loss = Math.max(loss, EndgameTable.getDistance(entry) + 1);
+			else if (win == 0 || EndgameTable.getDistance(entry) + 2 < win)
+				win = EndgameTable.getDistance(entry) + 2;
+		}
+		_counts[slot][index] = (byte) pending;
+		_losses[slot][index] = (byte) loss;
+		_wins[slot][index] = (byte) win;
+		if (win > 0)
+			push(win - 1, slot, index, true);
+		else if (pending == 0 && (_flags[slot][index] & DRAW_MOVE) == 0)
+			push(loss, slot, index, false);
+	}
+
+	/**
+	 * Returns the value of the position reached by a white move, from the point of view of black.
+	 * @return the table entry, or -1 for a position of the group being solved
+	 */
+	private int getEntry(BitBoard board)
+	{
+		long whitePeons = _table.mirror(board.getBlackPeons());
+		long whiteKings = _table.mirror(board.getBlackKings());
+		long blackPeons = _table.mirror(board.getWhitePeons());
+		long blackKings = _table.mirror(board.getWhiteKings());
+		if ((whitePeons | whiteKings) == 0)
+			return 1; // no pieces, lost
+		int material = _table.getMaterial(whitePeons, whiteKings, blackPeons, blackKings);
+		for (int slot = 0; slot < _group.length; slot++)
+			if (_group[slot] == material)
+				return -1;
+		return _values[material][_table.getIndex(material, whitePeons, whiteKings, blackPeons, blackKings)] & 0xff;
+	}
+
+	/**
+	 * Adds a position to resolve.
+	 */
+	private void push(int distance, int slot, int index, boolean win)
+	{
+		if (distance > EndgameTable.MAX_DISTANCE)
+			throw new IllegalStateException("Distance to the end beyond " + EndgameTable.MAX_DISTANCE + " plies");
+		_buckets[distance].add((index << 2) | (slot << 1) | (win ? 1 : 0));
+	}
+
+	/**
+	 * Updates the positions of the group that lead to a resolved position by a simple move.
+	 * The resolved position has white to move, so it was reached by a black move, which
+	 * is taken back as a white move on the board turned around.
+	 * @param slot group slot of the resolved position
+	 * @param index index of the resolved position
+	 * @param win true if the player to move wins the resolved position
+	 * @param distance plies to the end of the resolved position
+	 */
+	private void updatePredecessors(int slot, int index, boolean win, int distance)
+	{
+		long[] position = _table.getPosition(_group[slot], index);
+		long whitePeons = _table.mirror(position[2]);
+		long whiteKings = _table.mirror(position[3]);
+		long blackPeons = _table.mirror(position[0]);
+		long blackKings = _table.mirror(position[1]);
+		long occupied = whitePeons | whiteKings | blackPeons | blackKings;
+		int material = _table.getMaterial(whitePeons, whiteKings, blackPeons, blackKings);
+		int predecessorSlot = (_group[0] == material) ? 0 : 1;
+		for (long pieces = whitePeons | whiteKings; pieces != 0; pieces &= pieces - 1)
+		{
+			int to = Long.numberOfTrailingZeros(pieces);
+			boolean king = (whiteKings & (1L << to)) != 0;
+			// a white peon came from behind, along the forward directions of black
+			int last = MoveTables.getLastDirection(Player.PLAYER_BLACK, king);
+			for (int dir = MoveTables.getFirstDirection(Player.PLAYER_BLACK, king); dir <= last; dir++)
+			{
+				int from = _moveTables.getNeighbour(to, dir);
+				if (from < 0 || (occupied & (1L << from)) != 0)
+					continue;
+				long move = (1L << from) | (1L << to);
+				long peons = king ? whitePeons : whitePeons ^ move;
+				long kings = king ? whiteKings ^ move : whiteKings;
+				if (hasCapture(peons, kings, blackPeons | blackKings))
+					continue; // the simple move was not allowed
+				int predecessor = _table.getIndex(material, peons, kings, blackPeons, blackKings);
+				update(predecessorSlot, predecessor, !win, distance + 1);
+			}
+		}
+	}
+
+	/**
+	 * Updates a position with the result of one of its moves.
+	 * @param slot group slot of the position
+	 * @param index index of the position
+	 * @param win true if the move wins
+	 * @param distance plies to the end through the move
+	 */
+	private void update(int slot, int index, boolean win, int distance)
+	{
+		if ((_flags[slot][index] & RESOLVED) != 0)
+			return;
+		if (win)
+		{
+			int shortest = _wins[slot][index] & 0xff;
+			if (shortest == 0 || distance + 1 < shortest)
+			{
+				_wins[slot][index] = (byte) (distance + 1);
+				push(distance, slot, index, true);
+			}
+			return;
+		}
+		_losses[slot][index] = (byte) Math.max(_losses[slot][index] & 0xff, distance);
+		if (--_counts[slot][index] == 0 && _wins[slot][index] == 0 && (_flags[slot][index] & DRAW_MOVE) == 0)
+			push(_losses[slot][index] & 0xff, slot, index, false);
+	}
+
+	/**
+	 * Checks if white must capture.
+	 * @param peons white peons
+	 * @param kings white kings
+	 * @param opponents black pieces
+	 * @return true iff white has a capture move
+	 */
+	private boolean hasCapture(long peons, long kings, long opponents)
+	{
+		long occupied = peons | kings | opponents;
+		for (long pieces = peons | kings; pieces != 0; pieces &= pieces - 1)
+		{
+			int square = Long.numberOfTrailingZeros(pieces);
+			boolean king = (kings & (1L << square)) != 0;
+			int last = MoveTables.getLastDirection(Player.PLAYER_WHITE, king);
+			for (int dir = MoveTables.getFirstDirection(Player.PLAYER_WHITE, king); dir <= last; dir++)
+			{
+				int land = _moveTables.getJump(square, dir);
+				if (land >= 0 && (opponents & (1L << _moveTables.getNeighbour(square, dir))) != 0
+					&& (occupied & (1L << land)) == 0)
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks random positions against their moves: a won position must have a move
+	 * to a position lost one ply sooner and none to a position lost sooner, a lost
+	 * position must have only moves to won positions, the longest one ply later, and a
+	 * drawn position must have a move to a drawn position and none to a lost one.
+	 * @param samples number of positions to check
+	 * @param random random generator
+	 * @return number of failed positions
+	 */
+	public int verify(int samples, Random random)
+	{
+		int failures = 0;
+		int[] materials = new int[_values.length];
+		int n = 0;
+		for (int m = 0; m < _values.length; m++)
+			if (_values[m] != null)
+				materials[n++] = m;
+		_group = new int[0];
+		for (int sample = 0; sample < samples; sample++)
+		{
+			int material = materials[random.nextInt(n)];
+			int index = random.nextInt(_values[material].length);
+			long[] position = _table.getPosition(material, index);
+			if (position == null)
+				continue;
+			int value = _values[material][index] & 0xff;
+			BitBoard board = new BitBoard(_size, position[2], position[3], position[0], position[1]);
+			int count = _generator.generate(board, Player.PLAYER_WHITE, _moves);
+			int shortestWin = Integer.MAX_VALUE;
+			int longestLoss = -1;
+			boolean draw = false;
+			for (int i = 0; i < count; i++)
+			{
+				_moves.makeMove(board, i);
+				int entry = getEntry(board);
+				_moves.unmakeMove(board, i);
+				if (entry == EndgameTable.DRAW)
+					draw = true;
+				else if (EndgameTable.isWin(entry))
+					longestLoss = Math.max(longestLoss, EndgameTable.getDistance(entry) + 1);
+				else
+					shortestWin = Math.min(shortestWin, EndgameTable.getDistance(entry) + 1);
+			}
+			int expected = (shortestWin < Integer.MAX_VALUE) ? shortestWin + 1
+				: draw ? EndgameTable.DRAW : Math.max(0, longestLoss) + 1;
+			if (value != expected)
+			{
+				if (failures++ < 10)
+					System.out.println("FAILED: " + getName(material) + " index " + index + ": " + value
+						+ " instead of " + expected + "\n" + Positions.toString(board));
+			}
+		}
+		return failures;
+	}
+
+	/**
+	 * Main method.
+	 * @param args see displayHelp
+	 */
+	public static void main(String[] args)
+	{
+		System.out.println("Dam Ka! Endgame Builder\n");
+		int size = 8;
+		int pieces = 4;
+		int samples = 100000;
+		String fileName = null;
+		try
+		{
+			for (int i = 0; i < args.length; i++)
+			{
+				if (args[i].equals("-size") && i + 1 < args.length)
+					size = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-pieces") && i + 1 < args.length)
+					pieces = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-verify") && i + 1 < args.length)
+					samples = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-out") && i + 1 < args.length)
+					fileName = args[++i];
+				else
+				{
+					displayHelp();
+					return;
+				}
+			}
+		}
+		catch (NumberFormatException nfe)
+		{
+			displayHelp();
+			return;
+		}
+		if (size != 6 && size != 8 && size != 10 || pieces < 2)
+		{
+			displayHelp();
+			return;
+		}
+		if (fileName == null)
+			fileName = EndgameTable.getFileName(size);
+		EndgameBuilder builder = new EndgameBuilder(size, pieces);
+		long start = System.currentTimeMillis();
+		builder.build();
+		System.out.println("\n" + builder._positions + " positions, " + builder._won + " won, " + builder._lost
+			+ " lost, " + (builder._positions - builder._won - builder._lost) + " drawn, "
+			+ ((System.currentTimeMillis() - start) / 1000) + " s");
+		int failures = builder.verify(samples, new Random(1));
+		System.out.println(samples + " positions verified, " + ((failures == 0) ? "ok" : failures + " FAILED"));
+		if (failures > 0)
+			System.exit(1);
+		try
+		{
+			builder._table.write(fileName, builder._values);
+			System.out.println(fileName + " written");
+		}
+		catch (IOException ioe)
+		{
+			System.err.println("Error: " + ioe.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Displays usage information.
+	 */
+	private static void displayHelp()
+	{
+		System.out.println("Usage: java checkers.tools.EndgameBuilder [-size n] [-pieces n] [-verify n] [-out file]");
+		System.out.println("  -size    board size: 6, 8 or 10 (default 8)");
+		System.out.println("  -pieces  most pieces of the positions, at least 2 (default 4)");
+		System.out.println("  -verify  random positions checked against their moves (default 100000)");
+		System.out.println("  -out     table file (default: the endgame table of the board size)");
+	}
+}
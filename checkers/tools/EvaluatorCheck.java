@@ -0,0 +1,236 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.tools;
+
+import java.io.IOException;
+import java.util.Random;
+
+import checkers.engine.Evaluator;
+import checkers.engine.IncrementalEvaluator;
+import checkers.engine.Weights;
+import checkers.game.BitBoard;
+import checkers.game.MoveGenerator;
+import checkers.game.MoveList;
+import checkers.game.Player;
+
+/**
+ * The EvaluatorCheck class.
+ * Console tool that checks the IncrementalEvaluator and the lazy evaluation against
+ * the full Evaluator.
+ * It plays random games, reporting every move to the incremental evaluator, then
+ * takes all the moves back. At every position on the way, both evaluators must give
+ * the same value of every parameter, for both players.
+ * All the parameters are evaluated (learning mode), with all the weights maximal.
+ * The lazy evaluation is checked with the weights file of the board size, for random
+ * windows around, below and above the full value: it must be exact inside the window,
+ * and a bound of the full value outside it.
+ *
+ * Usage: java checkers.tools.EvaluatorCheck [games] [seed]
+ */
+public class EvaluatorCheck
+{
+	/**
+	 * Most moves of a game.
+	 */
+	private static final int MAX_MOVES = 300;
+
+	/**
+	 * The evaluators.
+	 */
+	private Evaluator _full;
+	private IncrementalEvaluator _incremental;
+	private IncrementalEvaluator _lazy;
+
+	/**
+	 * Parameters values of the evaluators.
+	 */
+	private int[] _fullValues;
+	private int[] _incrementalValues;
+
+	/**
+	 * Random windows generator.
+	 */
+	private Random _random;
+
+	/**
+	 * Number of positions checked.
+	 */
+	private long _positions;
+
+	/**
+	 * Number of positions that failed.
+	 */
+	private long _failures;
+
+	/**
+	 * Constructs a checker for a board size.
+	 * @param size board dimension
+	 * @param lazyWeights weights of the lazy evaluation
+	 */
+	public EvaluatorCheck(int size, Weights lazyWeights)
+	{
+		Weights weights = new Weights();
+		_full = new Evaluator(size, weights);
+		_incremental = new IncrementalEvaluator(size, weights);
+		_full.setLearning(true);
+		_incremental.setLearning(true);
+		_fullValues = new int[Weights.PARAMS_NUM];
+		_incrementalValues = new int[Weights.PARAMS_NUM];
+		_lazy = new IncrementalEvaluator(size, lazyWeights);
+		_random = new Random(size);
+	}
+
+	/**
+	 * Plays a random game and takes it back, checking every position.
+	 * @param size board dimension
+	 * @param random random moves generator
+	 */
+	public void checkGame(int size, Random random)
+	{
+		MoveGenerator generator = new MoveGenerator();
+		MoveList[] played = new MoveList[MAX_MOVES];
+		int[] indices = new int[MAX_MOVES];
+		BitBoard board = Positions.getStartPosition(size);
+		_incremental.reset(board);
+		_lazy.reset(board);
+		check(board);
+		byte color = Player.PLAYER_WHITE;
+		int moves = 0;
+		while (moves < MAX_MOVES)
+		{
+			MoveList list = new MoveList();
+			int count = generator.generate(board, color, list);
+			if (count == 0)
+				break;
+			int index = random.nextInt(count);
+			list.makeMove(board, index);
+			_incremental.makeMove(list.getMove(index), list.getCapturedPeons(index), list.getCapturedKings(index));
+			_lazy.makeMove(list.getMove(index), list.getCapturedPeons(index), list.getCapturedKings(index));
+			played[moves] = list;
+			indices[moves++] = index;
+			check(board);
+			color = Player.reverse(color);
+		}
+		while (moves > 0)
+		{
+			MoveList list = played[--moves];
+			int index = indices[moves];
+			list.unmakeMove(board, index);
+			_incremental.unmakeMove(list.getMove(index), list.getCapturedPeons(index), list.getCapturedKings(index));
+			_lazy.unmakeMove(list.getMove(index), list.getCapturedPeons(index), list.getCapturedKings(index));
+			check(board);
+		}
+	}
+
+	/**
+	 * Compares the evaluators on a position, for both players.
+	 */
+	private void check(BitBoard board)
+	{
+		_positions++;
+		for (byte color = Player.PLAYER_WHITE; color <= Player.PLAYER_BLACK; color++)
+		{
+			int full = _full.evaluate(board, color, _fullValues);
+			int incremental = _incremental.evaluate(board, color, _incrementalValues);
+			for (int param = 0; param < Weights.PARAMS_NUM; param++)
+			{
+				if (_fullValues[param] != _incrementalValues[param])
+				{
+					if (_failures++ < 10)
+						System.out.println("FAILED: " + Evaluator.PARAMETERS_NAMES[param] + " for "
+							+ ((color == Player.PLAYER_WHITE) ? "white" : "black") + ": " + _incrementalValues[param]
+							+ " instead of " + _fullValues[param] + "\n" + Positions.toString(board));
+					return;
+				}
+			}
+			if (full != incremental)
+			{
+				_failures++;
+				return;
+			}
+			if (!checkLazy(board, color))
+				return;
+		}
+	}
+
+	/**
+	 * Checks lazy evaluations of a position, for windows around, below and above its value.
+	 * @return true iff the lazy evaluations are right
+	 */
+	private boolean checkLazy(BitBoard board, byte color)
+	{
+		int full = _lazy.evaluate(board, color);
+		int margin = 1 + _random.nextInt(1 << (1 + _random.nextInt(24)));
+		int[][] windows = {{full - margin, full + margin}, {full + margin, full + 2 * margin},
+			{full - 2 * margin, full - margin}};
+		for (int i = 0; i < windows.length; i++)
+		{
+			int lower = windows[i][0], upper = windows[i][1];
+			int lazy = _lazy.evaluate(board, color, lower, upper);
+			boolean ok = (lazy > lower && lazy < upper) ? lazy == full
+				: (lazy <= lower) ? full <= lazy : full >= lazy;
+			if (!ok)
+			{
+				if (_failures++ < 10)
+					System.out.println("FAILED: lazy evaluation for " + ((color == Player.PLAYER_WHITE) ? "white" : "black")
+						+ " in (" + lower + ", " + upper + "): " + lazy + ", full value " + full + "\n"
+						+ Positions.toString(board));
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Main method.
+	 * @param args [games] [seed]
+	 */
+	public static void main(String[] args)
+	{
+		System.out.println("Dam Ka! Evaluator Check\n");
+		int games = 200;
+		long seed = 1;
+		try
+		{
+			if (args.length > 0)
+				games = Integer.parseInt(args[0]);
+			if (args.length > 1)
+				seed = Long.parseLong(args[1]);
+		}
+		catch (NumberFormatException nfe)
+		{
+			System.out.println("Usage: java checkers.tools.EvaluatorCheck [games] [seed]");
+			System.out.println("  games  random games per board size (default 200)");
+			System.out.println("  seed   random seed (default 1)");
+			return;
+		}
+		boolean ok = true;
+		for (int s = 0; s < Positions.SIZES.length; s++)
+		{
+			int size = Positions.SIZES[s];
+			EvaluatorCheck check;
+			try
+			{
+				check = new EvaluatorCheck(size, Weights.load(size));
+			}
+			catch (IOException ioe)
+			{
+				System.err.println("Error: " + ioe.getMessage());
+				System.exit(1);
+				return;
+			}
+			Random random = new Random(seed);
+			for (int game = 0; game < games; game++)
+				check.checkGame(size, random);
+			System.out.println(size + "x" + size + ": " + check._positions + " positions, "
+				+ ((check._failures == 0) ? "ok" : check._failures + " FAILED") + ", lazy evaluations cut short "
+				+ check._lazy.getLazyCutoffs() + " of " + check._lazy.getLazyEvaluations());
+			ok &= check._failures == 0;
+		}
+		if (!ok)
+			System.exit(1);
+	}
+}
@@ -0,0 +1,727 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.tools;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Hashtable;
+import java.util.Properties;
+
+import checkers.engine.Weights;
+import checkers.game.BitBoard;
+import checkers.game.Board;
+import checkers.game.CPUPlayer;
+import checkers.game.Display;
+import checkers.game.Game;
+import checkers.game.Move;
+import checkers.game.MoveGenerator;
+import checkers.game.MoveList;
+import checkers.game.Player;
+
+/**
+ * The Match class.
+ * Console tool that plays a match between two engine configurations (level and
+ * weights) and reports the score with statistics, so tuning decisions rest on numbers.
+ *
+ * The games start from a set of balanced openings: distinct positions reached by a
+ * few random moves, with equal material and no capture pending. Each opening is
+ * played twice, each configuration having white once, so neither side profits from
+ * a lucky opening. The games are played in parallel in headless Games, with the Java
+ * engine. Games that reach the moves limit are scored as draws.
+ *
+ * The report gives the wins, draws and losses of the first configuration, the Elo
+ * difference with its 95% confidence interval, and, when a sequential probability
+ * ratio test (SPRT) is requested, its log-likelihood ratio: the match stops as soon
+ * as the test accepts one of the hypotheses "the difference is elo0" and
+ * "the difference is elo1".
+ *
+ * Usage: java checkers.tools.Match [-games n] [-size n] [-levels first second]
+ *        [-weights first second] [-threads n] [-hash mb] [-maxMoves n] [-plies n]
+ *        [-book] [-archive file] [-sprt elo0 elo1] [-alpha a] [-beta b] [-out file]
+ */
+public class Match
+{
+	/**
+	 * Two sided 95% quantile of the normal distribution.
+	 */
+	private static final double Z95 = 1.959964;
+
+	/**
+	 * Number of games between progress reports.
+	 */
+	private static final int REPORT_INTERVAL = 20;
+
+	/**
+	 * Game properties of the headless games.
+	 */
+	private Properties _properties;
+
+	/**
+	 * Board dimension.
+	 */
+	private int _size;
+
+	/**
+	 * The two configurations.
+	 */
+	private Configuration _first;
+	private Configuration _second;
+
+	/**
+	 * Balanced openings, and the players to move in them.
+	 */
+	private BitBoard[] _openings;
+	private byte[] _openingColors;
+
+	/**
+	 * Moves limit of a game.
+	 */
+	private int _maxMoves;
+
+	/**
+	 * True when the players use the opening book of the board size.
+	 */
+	private boolean _openingBook;
+
+	/**
+	 * Most games to play.
+	 */
+	private int _games;
+
+	/**
+	 * Number of games handed to the workers so far.
+	 */
+	private int _started;
+
+	/**
+	 * Results of the first configuration.
+	 */
+	private int _wins;
+	private int _draws;
+	private int _losses;
+
+	/**
+	 * True when the SPRT is run.
+	 */
+	private boolean _sprt;
+
+	/**
+	 * Elo differences of the SPRT hypotheses.
+	 */
+	private double _elo0;
+	private double _elo1;
+
+	/**
+	 * Bounds of the log-likelihood ratio.
+	 */
+	private double _lowerBound;
+	private double _upperBound;
+
+	/**
+	 * SPRT decision: 0 while undecided, -1 when H0 is accepted, 1 when H1 is accepted.
+	 */
+	private int _decision;
+
+	/**
+	 * Writer of the games results, or null.
+	 */
+	private PrintWriter _writer;
+
+	/**
+	 * A configuration of the engine.
+	 */
+	public static class Configuration
+	{
+		/**
+		 * Search level.
+		 */
+		private int _level;
+
+		/**
+		 * Evaluation weights, or null for the weights file of the board size.
+		 */
+		private Weights _weights;
+
+		/**
+		 * Description, for the reports.
+		 */
+		private String _description;
+
+		/**
+		 * Constructs a configuration.
+		 * @param level search level
+		 * @param weights evaluation weights, or null for the weights file of the board size
+		 * @param description description of the configuration
+		 */
+		public Configuration(int level, Weights weights, String description)
+		{
+			_level = level;
+			_weights = weights;
+			_description = description;
+		}
+
+		/**
+		 * Creates a CPU Player of this configuration.
+		 * @param color Player color
+		 * @return new Player
+		 */
+		public CPUPlayer createPlayer(byte color)
+		{
+			CPUPlayer player = new CPUPlayer(color, _level);
+			player.setWeights(_weights);
+			return player;
+		}
+
+		/**
+		 * @return description of the configuration
+		 */
+		public String toString()
+		{
+			return _description;
+		}
+	}
+
+	/**
+	 * Constructs a match.
+	 * @param properties game properties of the headless games
+	 * @param size board dimension
+	 * @param first first configuration, whose results are reported
+	 * @param second second configuration
+	 * @param openings balanced openings
+	 * @param openingColors players to move in the openings
+	 * @param maxMoves moves limit of a game
+	 */
+	public Match(Properties properties, int size, Configuration first, Configuration second,
+		BitBoard[] openings, byte[] openingColors, int maxMoves)
+	{
+		_properties = properties;
+		_size = size;
+		_first = first;
+		_second = second;
+		_openings = openings;
+		_openingColors = openingColors;
+		_maxMoves = maxMoves;
+	}
+
+	/**
+	 * Enables or disables the opening book of the board size, for both configurations.
+	 * @param use true to play the book moves
+	 */
+	public void setOpeningBookUsed(boolean use)
+	{
+		_openingBook = use;
+	}
+
+	/**
+	 * Requests a sequential probability ratio test.
+	 * @param elo0 Elo difference of the null hypothesis
+	 * @param elo1 Elo difference of the alternative hypothesis
+	 * @param alpha probability of accepting H1 when H0 is true
+	 * @param beta probability of accepting H0 when H1 is true
+	 */
+	public void setSprt(double elo0, double elo1, double alpha, double beta)
+	{
+		_sprt = true;
+		_elo0 = elo0;
+		_elo1 = elo1;
+		_lowerBound = Math.log(beta / (1 - alpha));
+		_upperBound = Math.log((1 - beta) / alpha);
+	}
+
+	/**
+	 * Plays the match on worker threads, and waits for it to finish.
+	 * @param games most games to play, rounded up to pairs
+	 * @param threads number of worker threads
+	 * @param writer where the result of each game is written, or null
+	 */
+	public void run(int games, int threads, PrintWriter writer)
+	{
+		_games = (games + 1) / 2 * 2;
+		_started = 0;
+		_wins = _draws = _losses = 0;
+		_decision = 0;
+		_writer = writer;
+		if (_writer != null)
+			_writer.println("# game\topening\tfirst plays\tresult\tmoves");
+		Thread[] workers = new Thread[Math.max(1, Math.min(threads, _games))];
+		for (int i = 0; i < workers.length; i++)
+		{
+			workers[i] = new Thread(new Worker(), "Match " + i);
+			workers[i].start();
+		}
+		for (int i = 0; i < workers.length; i++)
+		{
+			try
+			{
+				workers[i].join();
+			}
+			catch (InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (_writer != null)
+			_writer.flush();
+	}
+
+	/**
+	 * Hands the next game to a worker.
+	 * @return index of the game, or -1 if the match is over
+	 */
+	private synchronized int nextGame()
+	{
+		return (_decision == 0 && _started < _games) ? _started++ : -1;
+	}
+
+	/**
+	 * Records the result of a game.
+	 * @param game index of the game
+	 * @param firstColor color of the first configuration
+	 * @param winner the winner, 0 for a draw, -1 if the game was stopped at the moves limit
+	 * @param moves number of moves of the game
+	 */
+	private synchronized void record(int game, byte firstColor, byte winner, int moves)
+	{
+		String result;
+		if (winner <= 0)
+		{
+			_draws++;
+			result = "draw";
+		}
+		else if (winner == firstColor)
+		{
+			_wins++;
+			result = "win";
+		}
+		else
+		{
+			_losses++;
+			result = "loss";
+		}
+		if (_writer != null)
+			_writer.println(game + "\t" + getOpening(game) + "\t"
+				+ ((firstColor == Player.PLAYER_WHITE) ? "white" : "black") + "\t" + result + "\t" + moves);
+		if (_sprt && _decision == 0)
+		{
+			double llr = getLogLikelihoodRatio(_wins, _draws, _losses, _elo0, _elo1);
+			if (llr >= _upperBound)
+				_decision = 1;
+			else if (llr <= _lowerBound)
+				_decision = -1;
+		}
+		int played = _wins + _draws + _losses;
+		if (played % REPORT_INTERVAL == 0 || _decision != 0 || played == _games)
+			System.out.println(getReport());
+	}
+
+	/**
+	 * @return index of the opening of a game
+	 */
+	private int getOpening(int game)
+	{
+		return (game / 2) % _openings.length;
+	}
+
+	/**
+	 * Returns the current results of the first configuration, as a line of text.
+	 * @return report line
+	 */
+	public synchronized String getReport()
+	{
+		int games = _wins + _draws + _losses;
+		StringBuffer buffer = new StringBuffer();
+		buffer.append("games ").append(games).append(": +").append(_wins).append(" =").append(_draws)
+			.append(" -").append(_losses);
+		if (games > 0)
+		{
+			buffer.append(", score ").append(format(getScore(_wins, _draws, _losses) * 100)).append("%");
+			buffer.append(", Elo ").append(format(getElo(getScore(_wins, _draws, _losses))));
+			buffer.append(" +- ").append(format(getEloError(_wins, _draws, _losses)));
+		}
+		if (_sprt)
+		{
+			buffer.append(", LLR ").append(format(getLogLikelihoodRatio(_wins, _draws, _losses, _elo0, _elo1)))
+				.append(" [").append(format(_lowerBound)).append(", ").append(format(_upperBound)).append("]");
+			if (_decision > 0)
+				buffer.append(" H1 accepted");
+			else if (_decision < 0)
+				buffer.append(" H0 accepted");
+		}
+		return buffer.toString();
+	}
+
+	/**
+	 * Returns the SPRT decision.
+	 * @return 0 while undecided, -1 when H0 was accepted, 1 when H1 was accepted
+	 */
+	public int getDecision()
+	{
+		return _decision;
+	}
+
+	/**
+	 * Returns the score of a player: wins plus half the draws, per game.
+	 * @param wins number of wins
+	 * @param draws number of draws
+	 * @param losses number of losses
+	 * @return score between 0 and 1
+	 */
+	public static double getScore(int wins, int draws, int losses)
+	{
+		return (wins + draws / 2.0) / (wins + draws + losses);
+	}
+
+	/**
+	 * Returns the Elo difference that gives an expected score.
+	 * @param score expected score, between 0 and 1
+	 * @return Elo difference, infinite for a score of 0 or 1
+	 */
+	public static double getElo(double score)
+	{
+		if (score <= 0)
+			return Double.NEGATIVE_INFINITY;
+		if (score >= 1)
+			return Double.POSITIVE_INFINITY;
+		return -400 * Math.log(1 / score - 1) / Math.log(10);
+	}
+
+	/**
+	 * Returns the expected score of an Elo difference.
+	 * @param elo Elo difference
+	 * @return expected score, between 0 and 1
+	 */
+	public static double getExpectedScore(double elo)
+	{
+		return 1 / (1 + Math.pow(10, -elo / 400));
+	}
+
+	/**
+	 * Returns the variance of the score of a single game.
+	 */
+	private static double getVariance(int wins, int draws, int losses)
+	{
+		int games = wins + draws + losses;
+		double score = getScore(wins, draws, losses);
+		return (wins * (1 - score) * (1 - score) + draws * (0.5 - score) * (0.5 - score)
+			+ losses * score * score) / games;
+	}
+
+	/**
+	 * Returns the half width of the 95% confidence interval of the Elo difference.
+	 * @param wins number of wins
+	 * @param draws number of draws
+	 * @param losses number of losses
+	 * @return Elo error margin
+	 */
+	public static double getEloError(int wins, int draws, int losses)
+	{
+		int games = wins + draws + losses;
+		double score = getScore(wins, draws, losses);
+		double error = Z95 * Math.sqrt(getVariance(wins, draws, losses) / games);
+		return (getElo(Math.min(1, score + error)) - getElo(Math.max(0, score - error))) / 2;
+	}
+
+	/**
+	 * Returns the log-likelihood ratio of the hypotheses "the Elo difference is elo1"
+	 * and "the Elo difference is elo0", with the normal approximation of the score.
+	 * @param wins number of wins
+	 * @param draws number of draws
+	 * @param losses number of losses
+	 * @param elo0 Elo difference of the null hypothesis
+	 * @param elo1 Elo difference of the alternative hypothesis
+	 * @return log-likelihood ratio, positive values favour H1
+	 */
+	public static double getLogLikelihoodRatio(int wins, int draws, int losses, double elo0, double elo1)
+	{
+		int games = wins + draws + losses;
+		if (games == 0)
+			return 0;
+		double variance = getVariance(wins, draws, losses);
+		if (variance == 0)
+			return 0;
+		double score = getScore(wins, draws, losses);
+		double score0 = getExpectedScore(elo0);
+		double score1 = getExpectedScore(elo1);
+		return games * (score1 - score0) * (2 * score - score0 - score1) / (2 * variance);
+	}
+
+	/**
+	 * Plays games in its own headless Game until the match is over.
+	 */
+	private class Worker implements Runnable, Display
+	{
+		/**
+		 * The game of this worker.
+		 */
+		private Game _game;
+
+		/**
+		 * Moves shown in the current game.
+		 */
+		private int _shownMoves;
+
+		/**
+		 * Plays the games.
+		 */
+		public void run()
+		{
+			_game = new Game(_properties, this);
+			_game.setOpeningBookUsed(_openingBook);
+			for (int index = nextGame(); index >= 0; index = nextGame())
+			{
+				byte firstColor = (index % 2 == 0) ? Player.PLAYER_WHITE : Player.PLAYER_BLACK;
+				Configuration white = (firstColor == Player.PLAYER_WHITE) ? _first : _second;
+				Configuration black = (firstColor == Player.PLAYER_WHITE) ? _second : _first;
+				CPUPlayer whitePlayer = white.createPlayer(Player.PLAYER_WHITE);
+				CPUPlayer blackPlayer = black.createPlayer(Player.PLAYER_BLACK);
+				int opening = getOpening(index);
+				Board board = new Board(_openings[opening], whitePlayer, blackPlayer);
+				_game.setPosition(whitePlayer, blackPlayer, board, _openingColors[opening]);
+				_shownMoves = 0;
+				byte winner = _game.play();
+				record(index, firstColor, winner, _shownMoves);
+			}
+		}
+
+		/**
+		 * Stops the game when it reaches the moves limit.
+		 * @param move the played Move
+		 */
+		public void showMove(Move move)
+		{
+			if (++_shownMoves >= _maxMoves)
+				_game.stopGame();
+		}
+
+		/**
+		 * Ignores the updates.
+		 * @param undo is Undo available
+		 * @param redo is Redo available
+		 */
+		public void update(boolean undo, boolean redo)
+		{
+		}
+
+		/**
+		 * Ignores the messages.
+		 * @param message the message
+		 */
+		public void showMessage(String message)
+		{
+		}
+	}
+
+	/**
+	 * Finds balanced openings: distinct positions reached by random moves from the
+	 * starting position, with equal material and no capture for the player to move.
+	 * @param size board dimension
+	 * @param plies number of random moves
+	 * @param colors where the players to move are stored, of the openings length
+	 * @param seed random seed
+	 * @return the openings, fewer than requested if not enough distinct ones were found
+	 */
+	public static BitBoard[] getOpenings(int size, int plies, byte[] colors, long seed)
+	{
+		MoveGenerator generator = new MoveGenerator();
+		MoveList moves = new MoveList();
+		Hashtable found = new Hashtable();
+		BitBoard[] openings = new BitBoard[colors.length];
+		byte color = Positions.getColorToMove(plies);
+		int count = 0;
+		for (int attempt = 0; attempt < 100 * colors.length && count < openings.length; attempt++)
+		{
+			BitBoard board = Positions.getRandomPosition(size, plies, seed + attempt);
+			Long key = new Long(board.getHash());
+			if (Long.bitCount(board.getPieces(Player.PLAYER_WHITE)) != Long.bitCount(board.getPieces(Player.PLAYER_BLACK))
+				|| found.containsKey(key) || generator.generate(board, color, moves) == 0 || moves.isCapture(0))
+				continue;
+			found.put(key, board);
+			openings[count] = board;
+			colors[count] = color;
+			count++;
+		}
+		BitBoard[] result = new BitBoard[count];
+		System.arraycopy(openings, 0, result, 0, count);
+		return result;
+	}
+
+	/**
+	 * @return a number with one decimal digit
+	 */
+	private static String format(double value)
+	{
+		if (Double.isInfinite(value))
+			return (value > 0) ? "inf" : "-inf";
+		return String.valueOf(Math.round(value * 10) / 10.0);
+	}
+
+	/**
+	 * Loads weights, "-" standing for the weights file of the board size.
+	 */
+	private static Weights loadWeights(String fileName) throws IOException
+	{
+		return (fileName == null || fileName.equals("-")) ? null : Weights.load(fileName);
+	}
+
+	/**
+	 * Main method.
+	 * @param args options
+	 */
+	public static void main(String[] args)
+	{
+		System.out.println("Dam Ka! Match\n");
+		int games = 200;
+		int size = 8;
+		int firstLevel = 3;
+		int secondLevel = 3;
+		String firstWeights = null;
+		String secondWeights = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int hash = -1;
+		int maxMoves = 300;
+		int plies = 4;
+		boolean book = false;
+		String archive = null;
+		boolean sprt = false;
+		double elo0 = 0;
+		double elo1 = 10;
+		double alpha = 0.05;
+		double beta = 0.05;
+		String fileName = null;
+		try
+		{
+			for (int i = 0; i < args.length; i++)
+			{
+				if (args[i].equals("-games") && i + 1 < args.length)
+					games = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-size") && i + 1 < args.length)
+					size = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-levels") && i + 2 < args.length)
+				{
+					firstLevel = Integer.parseInt(args[++i]);
+					secondLevel = Integer.parseInt(args[++i]);
+				}
+				else if (args[i].equals("-weights") && i + 2 < args.length)
+				{
+					firstWeights = args[++i];
+					secondWeights = args[++i];
+				}
+				else if (args[i].equals("-threads") && i + 1 < args.length)
+					threads = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-hash") && i + 1 < args.length)
+					hash = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-maxMoves") && i + 1 < args.length)
+					maxMoves = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-plies") && i + 1 < args.length)
+					plies = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-book"))
+					book = true;
+				else if (args[i].equals("-archive") && i + 1 < args.length)
+					archive = args[++i];
+				else if (args[i].equals("-sprt") && i + 2 < args.length)
+				{
+					sprt = true;
+					elo0 = Double.parseDouble(args[++i]);
+					elo1 = Double.parseDouble(args[++i]);
+				}
+				else if (args[i].equals("-alpha") && i + 1 < args.length)
+					alpha = Double.parseDouble(args[++i]);
+				else if (args[i].equals("-beta") && i + 1 < args.length)
+					beta = Double.parseDouble(args[++i]);
+				else if (args[i].equals("-out") && i + 1 < args.length)
+					fileName = args[++i];
+				else
+				{
+					displayHelp();
+					return;
+				}
+			}
+		}
+		catch (NumberFormatException nfe)
+		{
+			displayHelp();
+			return;
+		}
+		Properties properties = Game.loadProperties();
+		properties.setProperty(Game.ENGINE_PROPERTY, CPUPlayer.ENGINE_JAVA);
+		properties.setProperty(Game.THREADS_PROPERTY, "1"); // the games run in parallel instead
+		if (hash >= 0)
+			properties.setProperty(Game.HASH_SIZE_PROPERTY, String.valueOf(hash));
+		if (archive != null)
+			properties.setProperty(Game.ARCHIVE_PROPERTY, archive);
+		Configuration first;
+		Configuration second;
+		PrintWriter writer = null;
+		try
+		{
+			first = new Configuration(firstLevel, loadWeights(firstWeights), "level " + firstLevel + ", weights "
+				+ ((firstWeights == null) ? Weights.getFileName(size) : firstWeights));
+			second = new Configuration(secondLevel, loadWeights(secondWeights), "level " + secondLevel + ", weights "
+				+ ((secondWeights == null) ? Weights.getFileName(size) : secondWeights));
+			if (fileName != null)
+				writer = new PrintWriter(new FileWriter(fileName));
+		}
+		catch (IOException ioe)
+		{
+			System.err.println("Error: " + ioe.getMessage());
+			return;
+		}
+		byte[] colors = new byte[(games + 1) / 2];
+		BitBoard[] openings = getOpenings(size, plies, colors, 1);
+		if (openings.length == 0)
+		{
+			System.out.println("No balanced openings found");
+			return;
+		}
+		System.out.println("first:  " + first);
+		System.out.println("second: " + second);
+		System.out.println(size + "x" + size + " board, " + openings.length + " openings of " + plies
+			+ " moves, up to " + games + " games, " + threads + " threads" + (book ? ", opening book" : ""));
+		if (sprt)
+			System.out.println("SPRT elo0 " + elo0 + ", elo1 " + elo1 + ", alpha " + alpha + ", beta " + beta);
+		System.out.println();
+		Match match = new Match(properties, size, first, second, openings, colors, maxMoves);
+		match.setOpeningBookUsed(book);
+		if (sprt)
+			match.setSprt(elo0, elo1, alpha, beta);
+		long start = System.currentTimeMillis();
+		match.run(games, threads, writer);
+		long time = Math.max(1, System.currentTimeMillis() - start);
+		if (writer != null)
+			writer.close();
+		System.out.println("\n" + match.getReport());
+		System.out.println("time " + (time / 1000) + " s");
+	}
+
+	/**
+	 * Displays usage information.
+	 */
+	private static void displayHelp()
+	{
+		System.out.println("Usage: java checkers.tools.Match [-games n] [-size n] [-levels first second]");
+		System.out.println("       [-weights first second] [-threads n] [-hash mb] [-maxMoves n] [-plies n]");
+		System.out.println("       [-book] [-archive file] [-sprt elo0 elo1] [-alpha a] [-beta b] [-out file]");
+		System.out.println("  -games     most games to play, each opening is played twice (default 200)");
+		System.out.println("  -size      board size: 6, 8 or 10 (default 8)");
+		System.out.println("  -levels    levels of the first and second configurations (default 3 3)");
+		System.out.println("  -weights   weights files of the configurations, - for the weights file");
+		System.out.println("             of the board size (default - -)");
+		System.out.println("  -threads   number of games played at a time (default: number of processors)");
+		System.out.println("  -hash      transposition table size of each player, in megabytes");
+		System.out.println("             (default: the hashSize game property)");
+		System.out.println("  -maxMoves  moves after which a game is scored as a draw (default 300)");
+		System.out.println("  -plies     random moves of the openings (default 4)");
+		System.out.println("  -book      plays the moves of the opening books of the board size");
+		System.out.println("  -archive   file the finished games are appended to (default: the");
+		System.out.println("             gamesArchive game property)");
+		System.out.println("  -sprt      runs a SPRT of H0: Elo difference elo0 against H1: elo1,");
+		System.out.println("             and stops the match on a decision");
+		System.out.println("  -alpha     SPRT false positive rate (default 0.05)");
+		System.out.println("  -beta      SPRT false negative rate (default 0.05)");
+		System.out.println("  -out       file of the games results (default: none)");
+	}
+}
@@ -0,0 +1,121 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.tools;
+
+import java.io.IOException;
+
+import checkers.engine.ParallelSearch;
+import checkers.engine.TranspositionTable;
+import checkers.engine.Weights;
+import checkers.game.BitBoard;
+
+/**
+ * The ParallelBenchmark class.
+ * Console tool that reports the speedup of the parallel search: for each number of
+ * threads, the time to complete a fixed depth over a set of positions, the nodes
+ * searched and the nodes per second.
+ *
+ * Usage: java checkers.tools.ParallelBenchmark [size] [level] [max threads] [positions] [-d]
+ */
+public class ParallelBenchmark
+{
+	/**
+	 * Number of random moves played to reach each test position.
+	 */
+	private static final int RANDOM_PLIES = 10;
+
+	/**
+	 * Main method.
+	 * @param args board size, level, maximal threads count, number of positions,
+	 * and -d for deterministic mode
+	 */
+	public static void main(String[] args)
+	{
+		System.out.println("Dam Ka! Parallel Search Benchmark\n");
+		int size = 8;
+		int level = 9;
+		int maxThreads = Runtime.getRuntime().availableProcessors();
+		int positions = 8;
+		boolean deterministic = false;
+		try
+		{
+			int arg = 0;
+			for (int i = 0; i < args.length; i++)
+			{
+				if (args[i].equals("-d"))
+					deterministic = true;
+				else if (args[i].equals("-h"))
+				{
+					displayHelp();
+					return;
+				}
+				else if (arg == 0) { size = Integer.parseInt(args[i]); arg++; }
+				else if (arg == 1) { level = Integer.parseInt(args[i]); arg++; }
+				else if (arg == 2) { maxThreads = Integer.parseInt(args[i]); arg++; }
+				else if (arg == 3) { positions = Integer.parseInt(args[i]); arg++; }
+			}
+		}
+		catch (NumberFormatException nfe)
+		{
+			displayHelp();
+			return;
+		}
+		Weights weights;
+		try
+		{
+			weights = Weights.load(size);
+		}
+		catch (IOException ioe)
+		{
+			System.err.println("Error: unable to read weights file "+Weights.getFileName(size)+": "+ioe.getMessage());
+			weights = new Weights();
+		}
+		BitBoard boards[] = new BitBoard[positions];
+		for (int i = 0; i < positions; i++)
+			boards[i] = (i == 0) ? Positions.getStartPosition(size) : Positions.getRandomPosition(size, RANDOM_PLIES, i);
+
+		System.out.println(size+"x"+size+" board, level "+level+", "+positions+" positions"
+			+(deterministic ? ", deterministic mode" : ""));
+		ParallelSearch warmUp = new ParallelSearch(size, weights, 1, TranspositionTable.DEFAULT_SIZE);
+		for (int i = 0; i < positions; i++)
+			warmUp.calculateMove(boards[i], Positions.getColorToMove((i == 0) ? 0 : RANDOM_PLIES), level);
+		System.out.println("threads\ttime(ms)\tnodes\tnodes/sec\tspeedup");
+		double baseTime = 0;
+		for (int threads = 1; threads <= maxThreads; threads *= 2)
+		{
+			ParallelSearch search = new ParallelSearch(size, weights, threads, TranspositionTable.DEFAULT_SIZE);
+			search.setDeterministic(deterministic);
+			long nodes = 0;
+			long start = System.currentTimeMillis();
+			for (int i = 0; i < positions; i++)
+			{
+				search.setGameHistory(boards, 0);
+				search.calculateMove(boards[i], Positions.getColorToMove((i == 0) ? 0 : RANDOM_PLIES), level);
+				nodes += search.getNodes();
+			}
+			long time = Math.max(1, System.currentTimeMillis() - start);
+			if (threads == 1)
+				baseTime = time;
+			System.out.println(threads+"\t"+time+"\t\t"+nodes+"\t"+(nodes * 1000 / time)+"\t\t"
+				+((int) (baseTime * 100 / time)) / 100.0);
+			if (threads < maxThreads && threads * 2 > maxThreads)
+				threads = maxThreads / 2;
+		}
+	}
+
+	/**
+	 * Displays usage information.
+	 */
+	private static void displayHelp()
+	{
+		System.out.println("Usage: java checkers.tools.ParallelBenchmark [size] [level] [max threads] [positions] [-d]");
+		System.out.println("  size         board size: 6, 8 or 10 (default 8)");
+		System.out.println("  level        search level (default 9)");
+		System.out.println("  max threads  largest number of threads (default: number of processors)");
+		System.out.println("  positions    number of test positions (default 8)");
+		System.out.println("  -d           deterministic mode");
+	}
+}
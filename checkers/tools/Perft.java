@@ -0,0 +1,302 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.tools;
+
+import checkers.game.BitBoard;
+import checkers.game.MoveGenerator;
+import checkers.game.MoveList;
+import checkers.game.Player;
+
+/**
+ * The Perft class.
+ * Console tool that counts the leaf nodes of the legal moves tree to a given depth
+ * ("perft"), to check and measure the move generator.
+ *
+ * The reference counts below were produced by the native move generator
+ * (ParamBoard::findLegalMoves and ParamBoard::makeMove), so the verification
+ * checks that the Java generator plays by the same rules.
+ * Positions are given by their encoded masks (see Board.encode).
+ *
+ * Usage:
+ *   java checkers.tools.Perft -verify
+ *   java checkers.tools.Perft [-divide] size depth [position]
+ */
+public class Perft
+{
+	/**
+	 * Reference positions: board size, black peons, black kings, white peons,
+	 * white kings and player to move.
+	 */
+	private static final long[][] POSITIONS = {
+		{6, 258048L, 0, 63L, 0, Player.PLAYER_WHITE},
+		{6, 32L, 1L, 8L, 8192L, Player.PLAYER_WHITE},
+		{6, 136L, 0, 5L, 24576L, Player.PLAYER_BLACK},
+		{8, 4293918720L, 0, 4095L, 0, Player.PLAYER_WHITE},
+		{8, 4173336576L, 0, 35119L, 0, Player.PLAYER_WHITE},
+		{8, 2426404880L, 8L, 17442L, 1048576L, Player.PLAYER_WHITE},
+		{8, 306196480L, 1L, 264196L, 0, Player.PLAYER_BLACK},
+		{10, 1125898833100800L, 0, 1048575L, 0, Player.PLAYER_WHITE},
+		{10, 1116477956571136L, 0, 1390591L, 0, Player.PLAYER_WHITE},
+		{10, 593431873192192L, 0, 1075413L, 0, Player.PLAYER_BLACK},
+	};
+
+	/**
+	 * Reference counts of the positions, from depth 1.
+	 */
+	private static final long[][] COUNTS = {
+		{5, 25, 106, 369, 1271, 4104, 12495, 37474, 104013, 290032, 808158},
+		{5, 16, 72, 221, 869, 3000, 10910, 43147, 152895},
+		{2, 2, 1, 9, 18, 118, 270, 1541, 3636},
+		{7, 49, 302, 1469, 7361, 36768, 179740, 845931, 3963680},
+		{9, 73, 485, 3109, 20042, 121087, 735846, 4256850},
+		{8, 47, 219, 1226, 5915, 30651, 154198, 782760},
+		{1, 1, 8, 29, 187, 682, 4452, 15773},
+		{9, 81, 658, 4265, 26875, 164406, 1016158, 6164343},
+		{10, 107, 906, 9807, 85623, 894927, 7923725},
+		{12, 133, 1588, 14962, 168002, 1577954, 16899926},
+	};
+
+	/**
+	 * Move generator.
+	 */
+	private MoveGenerator _generator;
+
+	/**
+	 * Move lists, one per remaining depth.
+	 */
+	private MoveList[] _lists;
+
+	/**
+	 * Constructs a perft counter.
+	 */
+	public Perft()
+	{
+		_generator = new MoveGenerator();
+		_lists = new MoveList[0];
+	}
+
+	/**
+	 * Counts the leaves of the legal moves tree.
+	 * @param board the position, restored when the count returns
+	 * @param color color of the player to move
+	 * @param depth depth of the tree, in plies
+	 * @return number of leaves
+	 */
+	public long perft(BitBoard board, byte color, int depth)
+	{
+		ensureLists(depth);
+		return count(board, color, depth);
+	}
+
+	/**
+	 * Prints the count of each root move, then the total.
+	 * @param board the position
+	 * @param color color of the player to move
+	 * @param depth depth of the tree, in plies
+	 * @return number of leaves
+	 */
+	public long divide(BitBoard board, byte color, int depth)
+	{
+		ensureLists(depth);
+		MoveList moves = new MoveList();
+		int count = _generator.generate(board, color, moves);
+		long total = 0;
+		for (int i = 0; i < count; i++)
+		{
+			moves.makeMove(board, i);
+			long nodes = (depth <= 1) ? 1 : count(board, Player.reverse(color), depth - 1);
+			moves.unmakeMove(board, i);
+			System.out.println(toString(moves, i) + "\t" + nodes);
+			total += nodes;
+		}
+		System.out.println("moves " + count + ", nodes " + total);
+		return total;
+	}
+
+	/**
+	 * Counts the leaves of the legal moves tree, moves at depth 1 are counted without being made.
+	 */
+	private long count(BitBoard board, byte color, int depth)
+	{
+		if (depth == 0)
+			return 1;
+		MoveList moves = _lists[depth];
+		int count = _generator.generate(board, color, moves);
+		if (depth == 1)
+			return count;
+		long nodes = 0;
+		byte opponent = Player.reverse(color);
+		for (int i = 0; i < count; i++)
+		{
+			moves.makeMove(board, i);
+			nodes += count(board, opponent, depth - 1);
+			moves.unmakeMove(board, i);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Makes sure there is a move list for each depth.
+	 */
+	private void ensureLists(int depth)
+	{
+		if (_lists.length > depth)
+			return;
+		MoveList[] lists = new MoveList[depth + 1];
+		System.arraycopy(_lists, 0, lists, 0, _lists.length);
+		for (int i = _lists.length; i <= depth; i++)
+			lists[i] = new MoveList();
+		_lists = lists;
+	}
+
+	/**
+	 * Returns a move as text: the squares it passes through, separated by '-'
+	 * for a simple move and by 'x' for captures.
+	 * @param moves move list
+	 * @param index index of the move
+	 * @return move text
+	 */
+	public static String toString(MoveList moves, int index)
+	{
+		StringBuffer buffer = new StringBuffer();
+		buffer.append(BitBoard.getFrom(moves.getMove(index)));
+		for (int hop = 0; hop < moves.getNumberOfHops(index); hop++)
+			buffer.append(moves.isCapture(index) ? 'x' : '-').append(moves.getHop(index, hop));
+		return buffer.toString();
+	}
+
+	/**
+	 * Returns a reference position.
+	 * @param position index of the position
+	 * @return new board of the position
+	 */
+	public static BitBoard getPosition(int position)
+	{
+		long[] p = POSITIONS[position];
+		return new BitBoard((int) p[0], p[1], p[2], p[3], p[4]);
+	}
+
+	/**
+	 * Returns the player to move in a reference position.
+	 * @param position index of the position
+	 * @return color of the player to move
+	 */
+	public static byte getColor(int position)
+	{
+		return (byte) POSITIONS[position][5];
+	}
+
+	/**
+	 * Checks the counts of all the reference positions.
+	 * @return true iff all the counts match
+	 */
+	public boolean verify()
+	{
+		boolean ok = true;
+		long totalNodes = 0;
+		long start = System.currentTimeMillis();
+		for (int position = 0; position < POSITIONS.length; position++)
+		{
+			BitBoard board = getPosition(position);
+			boolean positionOk = true;
+			for (int depth = 1; depth <= COUNTS[position].length; depth++)
+			{
+				long nodes = perft(board, getColor(position), depth);
+				totalNodes += nodes;
+				if (nodes != COUNTS[position][depth - 1])
+				{
+					System.out.println("FAILED: position " + position + " depth " + depth
+						+ ": " + nodes + " instead of " + COUNTS[position][depth - 1]);
+					positionOk = ok = false;
+				}
+			}
+			System.out.println("position " + position + " (" + board.getSize() + "x" + board.getSize()
+				+ ") to depth " + COUNTS[position].length + ": " + (positionOk ? "ok" : "FAILED"));
+		}
+		long time = Math.max(1, System.currentTimeMillis() - start);
+		System.out.println(totalNodes + " nodes in " + time + " ms, " + (totalNodes * 1000 / time) + " nodes/sec");
+		return ok;
+	}
+
+	/**
+	 * Main method.
+	 * @param args -verify, or [-divide] size depth [position]
+	 */
+	public static void main(String[] args)
+	{
+		System.out.println("Dam Ka! Perft\n");
+		Perft perft = new Perft();
+		if (args.length == 1 && args[0].equals("-verify"))
+		{
+			if (!perft.verify())
+				System.exit(1);
+			return;
+		}
+		boolean divide = args.length > 0 && args[0].equals("-divide");
+		int arg = divide ? 1 : 0;
+		if (args.length - arg < 2)
+		{
+			displayHelp();
+			return;
+		}
+		int size, depth, position = -1;
+		try
+		{
+			size = Integer.parseInt(args[arg]);
+			depth = Integer.parseInt(args[arg + 1]);
+			if (args.length - arg > 2)
+				position = Integer.parseInt(args[arg + 2]);
+		}
+		catch (NumberFormatException nfe)
+		{
+			displayHelp();
+			return;
+		}
+		BitBoard board = Positions.getStartPosition(size);
+		byte color = Player.PLAYER_WHITE;
+		if (position >= 0)
+		{
+			if (position >= POSITIONS.length || POSITIONS[position][0] != size)
+			{
+				System.out.println("No test position " + position + " for a " + size + "x" + size + " board");
+				return;
+			}
+			board = getPosition(position);
+			color = getColor(position);
+		}
+		System.out.println(Positions.toString(board));
+		if (divide)
+		{
+			perft.divide(board, color, depth);
+			return;
+		}
+		for (int d = 1; d <= depth; d++)
+		{
+			long start = System.currentTimeMillis();
+			long nodes = perft.perft(board, color, d);
+			long time = System.currentTimeMillis() - start;
+			System.out.println("depth " + d + "\t" + nodes + " nodes\t" + time + " ms\t"
+				+ (nodes * 1000 / Math.max(1, time)) + " nodes/sec");
+		}
+	}
+
+	/**
+	 * Displays usage information.
+	 */
+	private static void displayHelp()
+	{
+		System.out.println("Usage: java checkers.tools.Perft -verify");
+		System.out.println("       java checkers.tools.Perft [-divide] size depth [position]");
+		System.out.println("  -verify   checks the counts of the reference positions");
+		System.out.println("  -divide   prints the count of each move of the position");
+		System.out.println("  size      board size: 6, 8 or 10");
+		System.out.println("  depth     depth of the count, in plies");
+		System.out.println("  position  index of a reference position of this board size (default: starting position)");
+		for (int i = 0; i < POSITIONS.length; i++)
+			System.out.println("            " + i + ": " + POSITIONS[i][0] + "x" + POSITIONS[i][0]
+				+ ((POSITIONS[i][5] == Player.PLAYER_WHITE) ? ", white" : ", black") + " to move");
+	}
+}
@@ -0,0 +1,115 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.tools;
+
+import java.util.Random;
+
+import checkers.game.BitBoard;
+import checkers.game.MoveGenerator;
+import checkers.game.MoveList;
+import checkers.game.Player;
+
+/**
+ * The Positions class.
+ * Builds the positions used by the console tools: the starting position of
+ * each board size, and positions reached from it by random games with a fixed seed,
+ * so that every run of a tool works on the same positions.
+ */
+public class Positions
+{
+	/**
+	 * The supported board sizes.
+	 */
+	public static final int[] SIZES = {6, 8, 10};
+
+	/**
+	 * Returns the number of starting rows of each player for a board size:
+	 * the most rows the game rules allow, leaving two empty rows in the middle.
+	 * @param size board dimension
+	 * @return rows of peons of each player
+	 */
+	public static int getStartRows(int size)
+	{
+		return (size - 2) / 2;
+	}
+
+	/**
+	 * Returns the starting position of a board size.
+	 * @param size board dimension
+	 * @return new board at the starting position
+	 */
+	public static BitBoard getStartPosition(int size)
+	{
+		return new BitBoard(size, getStartRows(size));
+	}
+
+	/**
+	 * Plays random moves from the starting position.
+	 * White moves first. The game stops earlier if the player to move has no moves.
+	 * @param size board dimension
+	 * @param plies number of moves to play
+	 * @param seed random seed
+	 * @return the reached position, with black to move when plies is odd
+	 */
+	public static BitBoard getRandomPosition(int size, int plies, long seed)
+	{
+		Random random = new Random(seed);
+		MoveGenerator generator = new MoveGenerator();
+		MoveList moves = new MoveList();
+		BitBoard board = getStartPosition(size);
+		byte color = Player.PLAYER_WHITE;
+		for (int i = 0; i < plies; i++)
+		{
+			int count = generator.generate(board, color, moves);
+			if (count == 0)
+				break;
+			moves.makeMove(board, random.nextInt(count));
+			color = Player.reverse(color);
+		}
+		return board;
+	}
+
+	/**
+	 * Returns the color to move after a number of moves from the starting position.
+	 * @param plies number of moves played
+	 * @return color of the player to move
+	 */
+	public static byte getColorToMove(int plies)
+	{
+		return (plies % 2 == 0) ? Player.PLAYER_WHITE : Player.PLAYER_BLACK;
+	}
+
+	/**
+	 * Returns a text drawing of a position, white at the bottom.
+	 * w and b are peons, W and B are kings.
+	 * @param board the position
+	 * @return board drawing, one line per row
+	 */
+	public static String toString(BitBoard board)
+	{
+		StringBuffer buffer = new StringBuffer();
+		int size = board.getSize();
+		for (int row = size - 1; row >= 0; row--)
+		{
+			for (int col = 0; col < size; col++)
+			{
+				char c = ' ';
+				if ((row + col) % 2 == 1)
+				{
+					long bit = 1L << board.getSquare(row, col);
+					c = '.';
+					if ((board.getWhitePeons() & bit) != 0) c = 'w';
+					else if ((board.getWhiteKings() & bit) != 0) c = 'W';
+					else if ((board.getBlackPeons() & bit) != 0) c = 'b';
+					else if ((board.getBlackKings() & bit) != 0) c = 'B';
+				}
+				buffer.append(c);
+			}
+			buffer.append('\n');
+		}
+		return buffer.toString();
+	}
+}
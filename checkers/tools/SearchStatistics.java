@@ -0,0 +1,161 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.tools;
+
+import java.io.IOException;
+
+import checkers.engine.SearchEngine;
+import checkers.engine.TranspositionTable;
+import checkers.engine.Weights;
+import checkers.game.BitBoard;
+
+/**
+ * The SearchStatistics class.
+ * Console tool that compares the search settings of the Java engine: each setting
+ * searches the same positions to the same level, and the time, the nodes searched,
+ * the move ordering (share of the beta cutoffs given by the first move searched) and
+ * the re-searches (share of the null window searches, and of the iterations started
+ * with an aspiration window, that were searched again) are reported.
+ * Each setting adds one feature to the previous one.
+ *
+ * Usage: java checkers.tools.SearchStatistics [-size n] [-level n] [-positions n]
+ */
+public class SearchStatistics
+{
+	/**
+	 * Number of random moves played to reach each test position.
+	 */
+	private static final int RANDOM_PLIES = 10;
+
+	/**
+	 * Names of the compared settings.
+	 */
+	private static final String[] SETTINGS = {"replies ordering", "heuristic ordering", "quiescence search",
+		"principal variation", "aspiration windows"};
+
+	/**
+	 * Applies a setting to an engine.
+	 * @param engine the engine
+	 * @param setting index of the setting
+	 */
+	private static void apply(SearchEngine engine, int setting)
+	{
+		engine.setHeuristicOrdering(setting >= 1);
+		engine.setQuiescence(setting >= 2);
+		engine.setPrincipalVariationSearch(setting >= 3);
+		engine.setAspirationWindow((setting >= 4) ? SearchEngine.DEFAULT_ASPIRATION_WINDOW : 0);
+	}
+
+	/**
+	 * Main method.
+	 * @param args see displayHelp
+	 */
+	public static void main(String[] args)
+	{
+		System.out.println("Dam Ka! Search Statistics\n");
+		int size = 8;
+		int level = 9;
+		int positions = 16;
+		try
+		{
+			for (int i = 0; i < args.length; i++)
+			{
+				if (args[i].equals("-size") && i + 1 < args.length)
+					size = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-level") && i + 1 < args.length)
+					level = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-positions") && i + 1 < args.length)
+					positions = Integer.parseInt(args[++i]);
+				else
+				{
+					displayHelp();
+					return;
+				}
+			}
+		}
+		catch (NumberFormatException nfe)
+		{
+			displayHelp();
+			return;
+		}
+		Weights weights;
+		try
+		{
+			weights = Weights.load(size);
+		}
+		catch (IOException ioe)
+		{
+			System.err.println("Error: unable to read weights file "+Weights.getFileName(size)+": "+ioe.getMessage());
+			weights = new Weights();
+		}
+		BitBoard boards[] = new BitBoard[positions];
+		for (int i = 0; i < positions; i++)
+			boards[i] = (i == 0) ? Positions.getStartPosition(size) : Positions.getRandomPosition(size, RANDOM_PLIES, i);
+
+		System.out.println(size+"x"+size+" board, level "+level+", "+positions+" positions");
+		System.out.println("setting\t\t\ttime(ms)\tnodes\t\tcutoffs\t\tfirst move\tnull window\taspiration");
+		for (int setting = 0; setting < SETTINGS.length; setting++)
+		{
+			SearchEngine engine = new SearchEngine(size, weights);
+			engine.setTranspositionTable(new TranspositionTable(TranspositionTable.DEFAULT_SIZE));
+			apply(engine, setting);
+			engine.setRandomSeed(1);
+			for (int i = 0; i < positions; i++) // warm up
+				engine.calculateMove(boards[i], Positions.getColorToMove((i == 0) ? 0 : RANDOM_PLIES), Math.min(level, 5));
+			long nodes = 0;
+			long cutoffs = 0;
+			long firstMoveCutoffs = 0;
+			long[] counters = new long[4];
+			long start = System.currentTimeMillis();
+			for (int i = 0; i < positions; i++)
+			{
+				engine.getTranspositionTable().clear();
+				engine.setGameHistory(boards, 0);
+				engine.calculateMove(boards[i], Positions.getColorToMove((i == 0) ? 0 : RANDOM_PLIES), level);
+				nodes += engine.getNodes();
+				cutoffs += engine.getCutoffs();
+				firstMoveCutoffs += engine.getFirstMoveCutoffs();
+				long[] research = engine.getResearchCounters();
+				for (int j = 0; j < counters.length; j++)
+					counters[j] += research[j];
+			}
+			long time = Math.max(1, System.currentTimeMillis() - start);
+			System.out.println(pad(SETTINGS[setting], 24) + time + "\t\t" + pad(String.valueOf(nodes), 16)
+				+ pad(String.valueOf(cutoffs), 16) + pad(percent(firstMoveCutoffs, cutoffs), 16)
+				+ pad(percent(counters[1], counters[0]), 16) + percent(counters[3], counters[2]));
+		}
+	}
+
+	/**
+	 * @return a ratio as a percentage with one decimal digit, or - for none
+	 */
+	private static String percent(long count, long total)
+	{
+		return (total == 0) ? "-" : Math.round(count * 1000.0 / total) / 10.0 + "%";
+	}
+
+	/**
+	 * @return a string padded with spaces to a length
+	 */
+	private static String pad(String string, int length)
+	{
+		StringBuffer buffer = new StringBuffer(string);
+		while (buffer.length() < length)
+			buffer.append(' ');
+		return buffer.toString();
+	}
+
+	/**
+	 * Displays usage information.
+	 */
+	private static void displayHelp()
+	{
+		System.out.println("Usage: java checkers.tools.SearchStatistics [-size n] [-level n] [-positions n]");
+		System.out.println("  -size       board size: 6, 8 or 10 (default 8)");
+		System.out.println("  -level      search level (default 9)");
+		System.out.println("  -positions  number of test positions (default 16)");
+	}
+}
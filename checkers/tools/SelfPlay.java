@@ -0,0 +1,351 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.tools;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Properties;
+
+import checkers.engine.Weights;
+import checkers.game.Board;
+import checkers.game.CPUPlayer;
+import checkers.game.Display;
+import checkers.game.Game;
+import checkers.game.Move;
+import checkers.game.Player;
+
+/**
+ * The SelfPlay class.
+ * Console tool that plays CPU versus CPU games without the UI, several games at a
+ * time on worker threads, and writes the result of every game to a file.
+ * Each worker plays its games one after the other in its own headless Game, with the
+ * Java engine (the native library holds the state of a single game).
+ * Games that reach the moves limit are stopped and counted as unfinished.
+ *
+ * Usage: java checkers.tools.SelfPlay [-games n] [-size n] [-levels white black]
+ *        [-weights white black] [-threads n] [-hash mb] [-maxMoves n] [-out file]
+ */
+public class SelfPlay
+{
+	/**
+	 * Default results file.
+	 */
+	public static final String DEFAULT_RESULTS_FILE = "data/selfplay.txt";
+
+	/**
+	 * Names of the results, by winner (-1 for unfinished, 0 for draw, or Player color).
+	 */
+	private static final String[] RESULTS = {"unfinished", "draw", "white", "black"};
+
+	/**
+	 * Game properties of the headless games.
+	 */
+	private Properties _properties;
+
+	/**
+	 * Board dimension.
+	 */
+	private int _size;
+
+	/**
+	 * Levels of the white and black players.
+	 */
+	private int _whiteLevel;
+	private int _blackLevel;
+
+	/**
+	 * Weights of the white and black players, null for the weights file of the board size.
+	 */
+	private Weights _whiteWeights;
+	private Weights _blackWeights;
+
+	/**
+	 * Moves limit of a game.
+	 */
+	private int _maxMoves;
+
+	/**
+	 * Number of games to play.
+	 */
+	private int _games;
+
+	/**
+	 * Number of games handed to the workers so far.
+	 */
+	private int _started;
+
+	/**
+	 * Number of games by result, indexed as RESULTS.
+	 */
+	private int[] _results;
+
+	/**
+	 * Total moves of the played games.
+	 */
+	private long _moves;
+
+	/**
+	 * Results file writer.
+	 */
+	private PrintWriter _writer;
+
+	/**
+	 * Constructs a self-play runner.
+	 * @param properties game properties of the headless games
+	 * @param size board dimension
+	 * @param whiteLevel level of the white player
+	 * @param blackLevel level of the black player
+	 * @param whiteWeights weights of the white player, or null
+	 * @param blackWeights weights of the black player, or null
+	 * @param maxMoves moves limit of a game
+	 */
+	public SelfPlay(Properties properties, int size, int whiteLevel, int blackLevel,
+		Weights whiteWeights, Weights blackWeights, int maxMoves)
+	{
+		_properties = properties;
+		_size = size;
+		_whiteLevel = whiteLevel;
+		_blackLevel = blackLevel;
+		_whiteWeights = whiteWeights;
+		_blackWeights = blackWeights;
+		_maxMoves = maxMoves;
+	}
+
+	/**
+	 * Plays games on worker threads, and waits for them to finish.
+	 * @param games number of games
+	 * @param threads number of worker threads
+	 * @param writer where the result of each game is written, one line per game
+	 * @return number of games by result: unfinished, draws, white wins, black wins
+	 */
+	public int[] run(int games, int threads, PrintWriter writer)
+	{
+		_games = games;
+		_started = 0;
+		_results = new int[RESULTS.length];
+		_moves = 0;
+		_writer = writer;
+		_writer.println("# game\tresult\tmoves\ttime(ms)");
+		Thread[] workers = new Thread[Math.max(1, Math.min(threads, games))];
+		for (int i = 0; i < workers.length; i++)
+		{
+			workers[i] = new Thread(new Worker(), "Self play " + i);
+			workers[i].start();
+		}
+		for (int i = 0; i < workers.length; i++)
+		{
+			try
+			{
+				workers[i].join();
+			}
+			catch (InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		_writer.flush();
+		return _results;
+	}
+
+	/**
+	 * Returns the total number of moves of the played games.
+	 * @return moves count
+	 */
+	public long getMoves()
+	{
+		return _moves;
+	}
+
+	/**
+	 * Hands the next game to a worker.
+	 * @return index of the game, or -1 if all the games were handed out
+	 */
+	private synchronized int nextGame()
+	{
+		return (_started < _games) ? _started++ : -1;
+	}
+
+	/**
+	 * Records the result of a game.
+	 */
+	private synchronized void record(int game, byte winner, int moves, long time)
+	{
+		_results[winner + 1]++;
+		_moves += moves;
+		_writer.println(game + "\t" + RESULTS[winner + 1] + "\t" + moves + "\t" + time);
+	}
+
+	/**
+	 * Plays games in its own headless Game until all the games were handed out.
+	 */
+	private class Worker implements Runnable, Display
+	{
+		/**
+		 * The game of this worker.
+		 */
+		private Game _game;
+
+		/**
+		 * Moves shown in the current game.
+		 */
+		private int _shownMoves;
+
+		/**
+		 * Plays the games.
+		 */
+		public void run()
+		{
+			_game = new Game(_properties, this);
+			for (int index = nextGame(); index >= 0; index = nextGame())
+			{
+				CPUPlayer white = new CPUPlayer(Player.PLAYER_WHITE, _whiteLevel);
+				CPUPlayer black = new CPUPlayer(Player.PLAYER_BLACK, _blackLevel);
+				white.setWeights(_whiteWeights);
+				black.setWeights(_blackWeights);
+				Board board = new Board(_size, Positions.getStartRows(_size), white, black);
+				_game.setPosition(white, black, board, Player.PLAYER_WHITE);
+				_shownMoves = 0;
+				long start = System.currentTimeMillis();
+				byte winner = _game.play();
+				record(index, winner, _shownMoves, System.currentTimeMillis() - start);
+			}
+		}
+
+		/**
+		 * Stops the game when it reaches the moves limit.
+		 * @param move the played Move
+		 */
+		public void showMove(Move move)
+		{
+			if (++_shownMoves >= _maxMoves)
+				_game.stopGame();
+		}
+
+		/**
+		 * Ignores the updates.
+		 * @param undo is Undo available
+		 * @param redo is Redo available
+		 */
+		public void update(boolean undo, boolean redo)
+		{
+		}
+
+		/**
+		 * Ignores the messages.
+		 * @param message the message
+		 */
+		public void showMessage(String message)
+		{
+		}
+	}
+
+	/**
+	 * Main method.
+	 * @param args options
+	 */
+	public static void main(String[] args)
+	{
+		System.out.println("Dam Ka! Self Play\n");
+		int games = 100;
+		int size = 8;
+		int whiteLevel = 3;
+		int blackLevel = 3;
+		String whiteWeights = null;
+		String blackWeights = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int hash = -1;
+		int maxMoves = 300;
+		String fileName = DEFAULT_RESULTS_FILE;
+		try
+		{
+			for (int i = 0; i < args.length; i++)
+			{
+				if (args[i].equals("-games") && i + 1 < args.length)
+					games = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-size") && i + 1 < args.length)
+					size = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-levels") && i + 2 < args.length)
+				{
+					whiteLevel = Integer.parseInt(args[++i]);
+					blackLevel = Integer.parseInt(args[++i]);
+				}
+				else if (args[i].equals("-weights") && i + 2 < args.length)
+				{
+					whiteWeights = args[++i];
+					blackWeights = args[++i];
+				}
+				else if (args[i].equals("-threads") && i + 1 < args.length)
+					threads = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-hash") && i + 1 < args.length)
+					hash = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-maxMoves") && i + 1 < args.length)
+					maxMoves = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-out") && i + 1 < args.length)
+					fileName = args[++i];
+				else
+				{
+					displayHelp();
+					return;
+				}
+			}
+		}
+		catch (NumberFormatException nfe)
+		{
+			displayHelp();
+			return;
+		}
+		Properties properties = Game.loadProperties();
+		properties.setProperty(Game.ENGINE_PROPERTY, CPUPlayer.ENGINE_JAVA);
+		properties.setProperty(Game.THREADS_PROPERTY, "1"); // the games run in parallel instead
+		if (hash >= 0)
+			properties.setProperty(Game.HASH_SIZE_PROPERTY, String.valueOf(hash));
+		SelfPlay selfPlay;
+		PrintWriter writer;
+		try
+		{
+			selfPlay = new SelfPlay(properties, size, whiteLevel, blackLevel,
+				(whiteWeights == null) ? null : Weights.load(whiteWeights),
+				(blackWeights == null) ? null : Weights.load(blackWeights), maxMoves);
+			writer = new PrintWriter(new FileWriter(fileName));
+		}
+		catch (IOException ioe)
+		{
+			System.err.println("Error: " + ioe.getMessage());
+			return;
+		}
+		System.out.println(games + " games on a " + size + "x" + size + " board, white level " + whiteLevel
+			+ ", black level " + blackLevel + ", " + threads + " threads");
+		long start = System.currentTimeMillis();
+		int[] results = selfPlay.run(games, threads, writer);
+		long time = Math.max(1, System.currentTimeMillis() - start);
+		writer.close();
+		System.out.println("white wins " + results[Player.PLAYER_WHITE + 1] + ", black wins "
+			+ results[Player.PLAYER_BLACK + 1] + ", draws " + results[1] + ", unfinished " + results[0]);
+		System.out.println(games + " games, " + selfPlay.getMoves() + " moves in " + time + " ms, "
+			+ ((int) (games * 100000L / time)) / 100.0 + " games/sec");
+		System.out.println("results written to " + fileName);
+	}
+
+	/**
+	 * Displays usage information.
+	 */
+	private static void displayHelp()
+	{
+		System.out.println("Usage: java checkers.tools.SelfPlay [-games n] [-size n] [-levels white black]");
+		System.out.println("       [-weights white black] [-threads n] [-hash mb] [-maxMoves n] [-out file]");
+		System.out.println("  -games     number of games (default 100)");
+		System.out.println("  -size      board size: 6, 8 or 10 (default 8)");
+		System.out.println("  -levels    levels of the white and black players (default 3 3)");
+		System.out.println("  -weights   weights files of the white and black players");
+		System.out.println("             (default: the weights file of the board size)");
+		System.out.println("  -threads   number of games played at a time (default: number of processors)");
+		System.out.println("  -hash      transposition table size of each player, in megabytes");
+		System.out.println("             (default: the hashSize game property)");
+		System.out.println("  -maxMoves  moves after which a game is stopped as unfinished (default 300)");
+		System.out.println("  -out       results file (default " + DEFAULT_RESULTS_FILE + ")");
+	}
+}
@@ -0,0 +1,562 @@
+/*****************************************************************************
+ *               Dam Ka ! An Intelligent Game Of Checkers                    *
+ *                  Workshop In Reinforcement Learning                       *
+ *                      Ron Cohen        Yaniv Fais                          *
+ *****************************************************************************/
+package checkers.tools;
+
+import java.io.IOException;
+import java.util.Random;
+
+import checkers.engine.Learner;
+import checkers.engine.SearchEngine;
+import checkers.engine.Weights;
+import checkers.game.BitBoard;
+import checkers.game.MoveGenerator;
+import checkers.game.MoveList;
+import checkers.game.Player;
+
+/**
+ * The Trainer class.
+ * Console tool that trains the evaluation weights of a board size with Q-Learning
+ * in self-play, as the native Trainer::trainStages does, with the episodes played in
+ * parallel on worker threads.
+ *
+ * The stages are trained one after the other, starting from the end-game stage.
+ * In an episode, random moves lead from the starting position to the trained stage,
+ * then white plays up to 50 moves in that stage, a quarter of them random, and learns
+ * from each (see Learner). Black plays with the opponent weights.
+ *
+ * Each worker plays an episode on its own copy of the weights, then the changes it
+ * made to the trained stage are added to the shared weights. After each episode, the
+ * shared weights are compared with the average of the last AVERAGE_HISTORY episodes:
+ * when the mean squared difference is small, the episode counts as a step, and the
+ * opponent takes the average weights. A stage is done after the given number of steps,
+ * or MAX_CONVERGENCE_ATTEMPTS episodes, and its weights are then set to the average.
+ *
+ * The weights are saved to the weights file at each checkpoint and at the end of each stage.
+ *
+ * Usage: java checkers.tools.Trainer [-size n] [-level l] [-steps s] [-diff d]
+ *        [-threads n] [-from file] [-out file] [-checkpoint n]
+ */
+public class Trainer
+{
+	/**
+	 * Number of episodes averaged for the convergence test.
+	 */
+	public static final int AVERAGE_HISTORY = 10;
+
+	/**
+	 * Most episodes of a stage.
+	 */
+	public static final int MAX_CONVERGENCE_ATTEMPTS = 5000;
+
+	/**
+	 * Most random moves to reach the trained stage.
+	 */
+	private static final int MAX_RANDOM_MOVES = 1000;
+
+	/**
+	 * Most moves of white in the trained stage.
+	 */
+	private static final int MAX_STAGE_MOVES = 50;
+
+	/**
+	 * Number of episodes between progress reports.
+	 */
+	private static final int REPORT_INTERVAL = 500;
+
+	/**
+	 * Board dimension.
+	 */
+	private int _size;
+
+	/**
+	 * Level of the players.
+	 */
+	private int _level;
+
+	/**
+	 * Steps of each stage.
+	 */
+	private int _maxSteps;
+
+	/**
+	 * Difference factor of the convergence test.
+	 */
+	private double _diffFactor;
+
+	/**
+	 * The learned weights, and the opponent weights.
+	 */
+	private Weights _weights;
+	private Weights _opponent;
+
+	/**
+	 * The trained stage.
+	 */
+	private int _stage;
+
+	/**
+	 * Episodes which reached the trained stage, and steps, in the trained stage.
+	 */
+	private int _attempt;
+	private int _count;
+
+	/**
+	 * Trained stage weights after the last AVERAGE_HISTORY episodes.
+	 */
+	private double[][] _lastWeights;
+
+	/**
+	 * Number of episodes played, and moves learned from.
+	 */
+	private long _episodes;
+	private long _learned;
+
+	/**
+	 * Weights file, and episodes between its checkpoints (0 for none).
+	 */
+	private String _fileName;
+	private int _checkpoint;
+
+	/**
+	 * Constructs a trainer.
+	 * @param size board dimension
+	 * @param level level of the players
+	 * @param maxSteps steps of each stage
+	 * @param diffFactor difference factor of the convergence test
+	 * @param weights initial weights, trained in place
+	 */
+	public Trainer(int size, int level, int maxSteps, double diffFactor, Weights weights)
+	{
+		_size = size;
+		_level = level;
+		_maxSteps = maxSteps;
+		_diffFactor = diffFactor;
+		_weights = weights;
+		_opponent = new Weights(weights);
+		_lastWeights = new double[AVERAGE_HISTORY][Weights.PARAMS_NUM];
+	}
+
+	/**
+	 * Sets the checkpoints.
+	 * @param fileName weights file, or null for none
+	 * @param checkpoint episodes between checkpoints, 0 to save only at the end of stages
+	 */
+	public void setCheckpoint(String fileName, int checkpoint)
+	{
+		_fileName = fileName;
+		_checkpoint = checkpoint;
+	}
+
+	/**
+	 * @return number of episodes played
+	 */
+	public long getEpisodes()
+	{
+		return _episodes;
+	}
+
+	/**
+	 * @return number of moves learned from
+	 */
+	public long getLearned()
+	{
+		return _learned;
+	}
+
+	/**
+	 * Trains all the stages.
+	 * @param threads number of worker threads
+	 * @throws IOException if the weights cannot be saved
+	 */
+	public void train(int threads) throws IOException
+	{
+		for (int stage = 0; stage < Weights.STAGES; stage++)
+			trainStage(stage, threads);
+	}
+
+	/**
+	 * Trains a stage, and sets its weights to the average of the last episodes.
+	 * @param stage game stage
+	 * @param threads number of worker threads
+	 * @throws IOException if the weights cannot be saved
+	 */
+	public void trainStage(int stage, int threads) throws IOException
+	{
+		_stage = stage;
+		_attempt = 0;
+		_count = 0;
+		for (int p = 0; p < AVERAGE_HISTORY; p++)
+			for (int w = 0; w < Weights.PARAMS_NUM; w++)
+				_lastWeights[p][w] = 0.0;
+		System.out.println("Training stage " + stage);
+		Thread[] workers = new Thread[Math.max(1, threads)];
+		for (int i = 0; i < workers.length; i++)
+		{
+			workers[i] = new Thread(new Worker(i), "Trainer " + i);
+			workers[i].start();
+		}
+		for (int i = 0; i < workers.length; i++)
+		{
+			try
+			{
+				workers[i].join();
+			}
+			catch (InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (_count < _maxSteps)
+			System.out.println("Training incomplete for stage " + stage + ", step " + _count);
+		if (_attempt > 0)
+			for (int w = 0; w < Weights.PARAMS_NUM; w++)
+				_weights.setWeight(stage, w, getAverage(w));
+		System.out.println("stage " + stage + ": " + _count + " steps, " + _attempt + " episodes in stage");
+		save();
+	}
+
+	/**
+	 * Saves the weights to the weights file, if any.
+	 * @throws IOException if the weights cannot be saved
+	 */
+	private synchronized void save() throws IOException
+	{
+		if (_fileName != null)
+			_weights.save(_fileName);
+	}
+
+	/**
+	 * Starts an episode: copies the shared weights for a worker.
+	 * @param weights set with the learned weights
+	 * @param opponent set with the opponent weights
+	 * @return learning rate of the episode, or -1 if the stage is done
+	 */
+	private synchronized double beginEpisode(Weights weights, Weights opponent)
+	{
+		if (_count >= _maxSteps || _attempt > MAX_CONVERGENCE_ATTEMPTS)
+			return -1;
+		for (int stage = 0; stage < Weights.STAGES; stage++)
+			for (int w = 0; w < Weights.PARAMS_NUM; w++)
+			{
+				weights.setWeight(stage, w, _weights.getWeight(stage, w));
+				opponent.setWeight(stage, w, _opponent.getWeight(stage, w));
+			}
+		return 0.25 * 100 / (100 + _attempt);
+	}
+
+	/**
+	 * Ends an episode: adds the changes a worker made to the trained stage weights
+	 * to the shared weights, and checks their convergence.
+	 * @param trained true iff the episode reached the trained stage
+	 * @param start trained stage weights at the start of the episode
+	 * @param weights worker's weights at the end of the episode
+	 * @param learned number of moves learned from
+	 */
+	private synchronized void endEpisode(boolean trained, int[] start, Weights weights, int learned)
+	{
+		_episodes++;
+		_learned += learned;
+		if (trained)
+		{
+			for (int w = 0; w < Weights.PARAMS_NUM; w++)
+				_weights.setWeight(_stage, w, _weights.getWeight(_stage, w) + weights.getWeight(_stage, w) - start[w]);
+			Learner.normalize(_weights, _stage);
+			_attempt++;
+			int history = Math.min(_attempt, AVERAGE_HISTORY);
+			double mse = 0.0;
+			for (int w = 0; w < Weights.PARAMS_NUM; w++)
+			{
+				double currentWeight = Weights.unscale(_weights.getWeight(_stage, w));
+				double averageWeight = 0.0;
+				for (int p = 0; p < history; p++)
+					averageWeight += _lastWeights[p][w];
+				averageWeight /= history;
+				mse += (averageWeight - currentWeight) * (averageWeight - currentWeight);
+				_lastWeights[_attempt % AVERAGE_HISTORY][w] = currentWeight;
+			}
+			// If MSE is below the convergence factor, increase step counter
+			// and set the opponent weights to the average
+			if (_count < _maxSteps && mse < _diffFactor * (_stage + 1) * (((double) _maxSteps) / (_maxSteps + _count)))
+			{
+				_count++;
+				for (int w = 0; w < Weights.PARAMS_NUM; w++)
+					_opponent.setWeight(_stage, w, getAverage(w));
+			}
+		}
+		if (_episodes % REPORT_INTERVAL == 0)
+			System.out.println("  " + _episodes + " episodes, stage " + _stage + ": step " + _count
+				+ ", " + _attempt + " episodes in stage");
+		if (_checkpoint > 0 && _episodes % _checkpoint == 0)
+		{
+			try
+			{
+				save();
+			}
+			catch (IOException ioe)
+			{
+				System.err.println("Error: " + ioe.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * @return average weight of a parameter of the trained stage over the last episodes
+	 */
+	private double getAverage(int param)
+	{
+		int history = Math.min(_attempt, AVERAGE_HISTORY);
+		double average = 0.0;
+		for (int p = 0; p < history; p++)
+			average += _lastWeights[p][param];
+		return average / history;
+	}
+
+	/**
+	 * Plays episodes on its own copy of the weights until the stage is done.
+	 */
+	private class Worker implements Runnable
+	{
+		/**
+		 * Random moves generator.
+		 */
+		private Random _random;
+
+		/**
+		 * Weights of the white and black players.
+		 */
+		private Weights _whiteWeights;
+		private Weights _blackWeights;
+
+		/**
+		 * Search engines of the white and black players.
+		 */
+		private SearchEngine _white;
+		private SearchEngine _black;
+
+		/**
+		 * White's learner.
+		 */
+		private Learner _learner;
+
+		/**
+		 * Move generator and list.
+		 */
+		private MoveGenerator _generator;
+		private MoveList _moves;
+
+		/**
+		 * Number of moves learned from in the current episode.
+		 */
+		private int _learned;
+
+		/**
+		 * Constructs a worker.
+		 * @param index index of the worker, seeds its random moves
+		 */
+		public Worker(int index)
+		{
+			_random = new Random(System.currentTimeMillis() + index);
+			_whiteWeights = new Weights();
+			_blackWeights = new Weights();
+			_white = new SearchEngine(_size, _whiteWeights);
+			_black = new SearchEngine(_size, _blackWeights);
+			_black.getEvaluator().setLearning(true);
+			_learner = new Learner(_white, Player.PLAYER_WHITE, _level);
+			_generator = new MoveGenerator();
+			_moves = new MoveList();
+		}
+
+		/**
+		 * Plays the episodes.
+		 */
+		public void run()
+		{
+			int[] start = new int[Weights.PARAMS_NUM];
+			for (double alpha = beginEpisode(_whiteWeights, _blackWeights); alpha >= 0;
+				alpha = beginEpisode(_whiteWeights, _blackWeights))
+			{
+				System.arraycopy(_whiteWeights.getStageWeights(_stage), 0, start, 0, Weights.PARAMS_NUM);
+				_learned = 0;
+				boolean trained = playEpisode(alpha);
+				endEpisode(trained, start, _whiteWeights, _learned);
+			}
+		}
+
+		/**
+		 * Plays an episode.
+		 * @param alpha learning rate
+		 * @return true iff white played in the trained stage
+		 */
+		private boolean playEpisode(double alpha)
+		{
+			int stage = _stage;
+			BitBoard board = Positions.getStartPosition(_size);
+			int currentStage = _white.getEvaluator().getStage(board);
+			// First, reach the trained stage, by making random moves on the previous stages.
+			for (int moves = 0; currentStage > stage && moves < MAX_RANDOM_MOVES; moves++)
+			{
+				if (!playRandom(board, Player.PLAYER_WHITE) || !playRandom(board, Player.PLAYER_BLACK))
+					break;
+				currentStage = _white.getEvaluator().getStage(board);
+			}
+			boolean trained = false;
+			// Make some moves in the trained stage
+			for (int moves = 0; moves < MAX_STAGE_MOVES && currentStage == stage; moves++)
+			{
+				int count = _generator.generate(board, Player.PLAYER_WHITE, _moves);
+				if (count == 0)
+					break;
+				// White player makes the "best" known move, or a random move.
+				int index;
+				int expectedValue;
+				BitBoard whiteBoard = (BitBoard) board.clone();
+				if (_random.nextInt(4) == 0)
+				{
+					index = _random.nextInt(count);
+					_moves.makeMove(whiteBoard, index);
+					expectedValue = _white.getEvaluator().evaluate(whiteBoard, Player.PLAYER_WHITE);
+				}
+				else
+				{
+					index = _moves.indexOf(_white.calculateMove(board, Player.PLAYER_WHITE, _level));
+					_moves.makeMove(whiteBoard, index);
+					expectedValue = (count > 1) ? _white.getValue()
+						: _white.getEvaluator().evaluate(whiteBoard, Player.PLAYER_WHITE);
+				}
+				trained = true;
+				// Black player makes move
+				int[] blackMove = _black.calculateMove(whiteBoard, Player.PLAYER_BLACK, _level);
+				if (blackMove == null)
+					break;
+				BitBoard blackBoard = (BitBoard) whiteBoard.clone();
+				_generator.generate(blackBoard, Player.PLAYER_BLACK, _moves);
+				_moves.makeMove(blackBoard, _moves.indexOf(blackMove));
+				_learner.learn(board, blackBoard, expectedValue, alpha);
+				_learned++;
+				board = blackBoard;
+				currentStage = _white.getEvaluator().getStage(board);
+			}
+			return trained;
+		}
+
+		/**
+		 * Makes a random move.
+		 * @param board the board
+		 * @param color color of the moving player
+		 * @return false if the player has no moves
+		 */
+		private boolean playRandom(BitBoard board, byte color)
+		{
+			int count = _generator.generate(board, color, _moves);
+			if (count == 0)
+				return false;
+			_moves.makeMove(board, _random.nextInt(count));
+			return true;
+		}
+	}
+
+	/**
+	 * Main method.
+	 * @param args options
+	 */
+	public static void main(String[] args)
+	{
+		System.out.println("Dam Ka! Machine Learning Trainer\n");
+		int size = 8;
+		int level = 3;
+		int steps = 100;
+		double diffFactor = 0.4;
+		int threads = Runtime.getRuntime().availableProcessors();
+		String from = null;
+		String fileName = null;
+		int checkpoint = 1000;
+		try
+		{
+			for (int i = 0; i < args.length; i++)
+			{
+				if (args[i].equals("-size") && i + 1 < args.length)
+					size = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-level") && i + 1 < args.length)
+					level = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-steps") && i + 1 < args.length)
+					steps = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-diff") && i + 1 < args.length)
+					diffFactor = Double.parseDouble(args[++i]);
+				else if (args[i].equals("-threads") && i + 1 < args.length)
+					threads = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-from") && i + 1 < args.length)
+					from = args[++i];
+				else if (args[i].equals("-out") && i + 1 < args.length)
+					fileName = args[++i];
+				else if (args[i].equals("-checkpoint") && i + 1 < args.length)
+					checkpoint = Integer.parseInt(args[++i]);
+				else
+				{
+					displayHelp();
+					return;
+				}
+			}
+		}
+		catch (NumberFormatException nfe)
+		{
+			displayHelp();
+			return;
+		}
+		if (level <= 0 || steps <= 0 || diffFactor <= 0)
+		{
+			displayHelp();
+			return;
+		}
+		if (fileName == null)
+			fileName = Weights.getFileName(size);
+		Weights weights;
+		try
+		{
+			weights = (from == null) ? new Weights() : Weights.load(from);
+		}
+		catch (IOException ioe)
+		{
+			System.err.println("Error: " + ioe.getMessage());
+			return;
+		}
+		System.out.println(size + "x" + size + " board, level " + level + ", " + steps + " steps, diff " + diffFactor
+			+ ", " + threads + " threads");
+		Trainer trainer = new Trainer(size, level, steps, diffFactor, weights);
+		trainer.setCheckpoint(fileName, checkpoint);
+		long start = System.currentTimeMillis();
+		try
+		{
+			trainer.train(threads);
+		}
+		catch (IOException ioe)
+		{
+			System.err.println("Error: " + ioe.getMessage());
+			return;
+		}
+		long time = Math.max(1, System.currentTimeMillis() - start);
+		System.out.println(trainer.getEpisodes() + " episodes, " + trainer.getLearned() + " moves learned in "
+			+ time + " ms, " + ((int) (trainer.getEpisodes() * 100000L / time)) / 100.0 + " episodes/sec");
+		System.out.println("Machine player weights for " + size + "x" + size + " board saved to " + fileName);
+	}
+
+	/**
+	 * Displays usage information.
+	 */
+	private static void displayHelp()
+	{
+		System.out.println("Usage: java checkers.tools.Trainer [-size n] [-level l] [-steps s] [-diff d]");
+		System.out.println("       [-threads n] [-from file] [-out file] [-checkpoint n]");
+		System.out.println("  -size        board size: 6, 8 or 10 (default 8)");
+		System.out.println("  -level       level of the players (min-max tree depth) (default 3)");
+		System.out.println("  -steps       number of steps of each stage (default 100)");
+		System.out.println("  -diff        difference factor for weights update in step (default 0.4)");
+		System.out.println("  -threads     number of episodes played at a time (default: number of processors)");
+		System.out.println("  -from        initial weights file (default: all weights maximal)");
+		System.out.println("  -out         weights file (default: the weights file of the board size)");
+		System.out.println("  -checkpoint  episodes between saves of the weights, 0 to save at the end");
+		System.out.println("               of each stage only (default 1000)");
+	}
+}